@@ -14,6 +14,19 @@ android {
         versionName = "1.0"
 
         testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
+
+        // Endpoint accepting binary location frames, e.g. -PlocationFrameUrl=https://host/locations/frames.
+        // Empty keeps uploads on the JSON API.
+        buildConfigField("String", "LOCATION_FRAME_URL",
+            "\"${providers.gradleProperty("locationFrameUrl").getOrElse("")}\"")
+        // WebSocket stream of remote fixes, e.g. -PlocationStreamUrl=wss://host/locations/stream.
+        // Empty keeps remote users on polling only.
+        buildConfigField("String", "LOCATION_STREAM_URL",
+            "\"${providers.gradleProperty("locationStreamUrl").getOrElse("")}\"")
+    }
+
+    buildFeatures {
+        buildConfig = true
     }
 
     buildTypes {
@@ -41,6 +54,8 @@ dependencies {
     implementation("com.squareup.retrofit2:retrofit:2.9.0")
     implementation("com.squareup.retrofit2:converter-gson:2.9.0")
     implementation("com.google.code.gson:gson:2.10.1")
+    // OkHttp version used by Retrofit 2.9.0, needed directly for the location stream
+    implementation("com.squareup.okhttp3:okhttp:3.14.9")
 
     // My tracking library
     implementation ("com.github.OmriRoter:live-location-tracking-sdk:v1.2.3")
@@ -50,6 +65,7 @@ dependencies {
 
     // Testing
     testImplementation("junit:junit:4.13.2")
+    testImplementation("com.squareup.okhttp3:mockwebserver:3.14.9")
     androidTestImplementation("androidx.test.ext:junit:1.1.5")
     androidTestImplementation("androidx.test.espresso:espresso-core:3.5.1")
 }
\ No newline at end of file
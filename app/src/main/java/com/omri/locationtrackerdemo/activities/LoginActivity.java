@@ -2,6 +2,8 @@ package com.omri.locationtrackerdemo.activities;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
@@ -10,10 +12,12 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
-import com.google.gson.Gson;
 import com.omri.locationtrackerdemo.R;
 import com.omri.locationtrackerdemo.data.preferences.UserPreferences;
 import com.omri.locationtrackerdemo.data.repository.LocationRepository;
+import com.omri.locationtrackerdemo.data.session.BackgroundSessionStore;
+import com.omri.locationtrackerdemo.data.session.SessionSnapshot;
+import com.omri.locationtrackerdemo.metrics.StartupTrace;
 import com.omri.trackinglibrary.interfaces.UserCallback;
 import com.omri.trackinglibrary.models.User;
 import java.util.Objects;
@@ -36,6 +40,13 @@ import java.util.Objects;
  * - Error handling and user feedback
  * - Loading state management
  * - Automatic navigation to MapActivity upon successful authentication
+ * - Skipping the screen entirely when a saved session can be restored
+ *
+ * Session restore:
+ * A signed {@link SessionSnapshot} saved by MapActivity for the stored user opens the map
+ * right away, without inflating this screen or verifying the user first. The snapshot is
+ * loaded in the background while the window is still empty and handed to MapActivity with
+ * the intent, which shows the saved state and revalidates it with the server.
  */
 public class LoginActivity extends AppCompatActivity {
     private static final String TAG = "LoginActivity";
@@ -49,14 +60,23 @@ public class LoginActivity extends AppCompatActivity {
     // Dependencies
     private LocationRepository locationRepository;
     private UserPreferences userPreferences;
-    private Gson gson;
+    private BackgroundSessionStore sessionStore;
+    private StartupTrace startupTrace;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_login);
+        startupTrace = StartupTrace.startProcess(Process.getStartElapsedRealtime(), SystemClock::elapsedRealtime);
 
         initializeDependencies();
+        restoreSession();
+    }
+
+    /**
+     * Inflates the login screen, used when no saved session can be restored
+     */
+    private void showLoginScreen() {
+        setContentView(R.layout.activity_login);
         initializeViews();
         setupClickListeners();
         checkSavedUserId();
@@ -64,13 +84,37 @@ public class LoginActivity extends AppCompatActivity {
 
     /**
      * Initializes all dependencies required by the activity.
-     * This includes the location repository for API calls,
-     * user preferences for local storage, and Gson for JSON parsing.
+     * This includes the location repository for API calls
+     * and user preferences for local storage.
      */
     private void initializeDependencies() {
         locationRepository = new LocationRepository();
         userPreferences = new UserPreferences(this);
-        gson = new Gson();
+        sessionStore = BackgroundSessionStore.get(getFilesDir());
+    }
+
+    /**
+     * Opens the map for the stored user if a trusted session snapshot exists, otherwise
+     * shows the login screen. The snapshot is loaded off the main thread.
+     */
+    private void restoreSession() {
+        String savedUserId = userPreferences.getUserId();
+        if (savedUserId == null) {
+            showLoginScreen();
+            return;
+        }
+        sessionStore.load(snapshot -> runOnUiThread(() -> {
+            if (isFinishing() || isDestroyed()) {
+                return;
+            }
+            if (snapshot == null || !snapshot.getUserId().equals(savedUserId)) {
+                showLoginScreen();
+                return;
+            }
+            Log.d(TAG, "Restoring session of " + savedUserId);
+            startupTrace.setPath(StartupTrace.PATH_RESTORED);
+            startMapActivity(savedUserId, snapshot);
+        }));
     }
 
     /**
@@ -98,12 +142,15 @@ public class LoginActivity extends AppCompatActivity {
 
     /**
      * Checks for a previously saved user ID in SharedPreferences
-     * and populates the login input field if found.
+     * and populates the login input field if found. The user is looked up
+     * while the screen is shown, which opens the backend connection and lets
+     * the login and the map screen's status check answer from the cache.
      */
     private void checkSavedUserId() {
         String savedUserId = userPreferences.getUserId();
         if (savedUserId != null) {
             loginUserIdInput.setText(savedUserId);
+            locationRepository.prefetchUser(savedUserId);
         }
     }
 
@@ -129,7 +176,7 @@ public class LoginActivity extends AppCompatActivity {
         locationRepository.verifyUser(userId, new UserCallback() {
             @Override
             public void onSuccess(User user) {
-                Log.d(TAG, "Verify user response: " + gson.toJson(user));
+                Log.d(TAG, "Verified user " + (user != null ? user.getId() : null));
                 runOnUiThread(() -> {
                     setLoading(false);
                     if (user != null && user.getId() != null) {
@@ -176,7 +223,7 @@ public class LoginActivity extends AppCompatActivity {
         locationRepository.createUser(username, new UserCallback() {
             @Override
             public void onSuccess(User user) {
-                Log.d(TAG, "Create user response: " + gson.toJson(user));
+                Log.d(TAG, "Created user " + (user != null ? user.getId() : null));
                 runOnUiThread(() -> {
                     setLoading(false);
                     if (user != null && user.getId() != null) {
@@ -255,7 +302,7 @@ public class LoginActivity extends AppCompatActivity {
      */
     private void saveUserAndStartMap(User user) {
         userPreferences.setUserId(user.getId());
-        startMapActivity(user.getId());
+        startMapActivity(user.getId(), null);
     }
 
     /**
@@ -263,10 +310,14 @@ public class LoginActivity extends AppCompatActivity {
      * and finishes this activity to prevent back navigation
      *
      * @param userId The verified user ID to pass to MapActivity
+     * @param snapshot The restored session to show, or null after a regular login
      */
-    private void startMapActivity(String userId) {
+    private void startMapActivity(String userId, SessionSnapshot snapshot) {
         Intent intent = new Intent(this, MapActivity.class);
         intent.putExtra("USER_ID", userId);
+        if (snapshot != null) {
+            MapActivity.putSession(intent, snapshot);
+        }
         startActivity(intent);
         finish();
     }
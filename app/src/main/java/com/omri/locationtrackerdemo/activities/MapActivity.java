@@ -1,7 +1,20 @@
 package com.omri.locationtrackerdemo.activities;
 
+import android.Manifest;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
 import android.location.Location;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
 import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -17,34 +30,80 @@ import com.google.android.material.floatingactionbutton.ExtendedFloatingActionBu
 import com.google.android.material.switchmaterial.SwitchMaterial;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
+import com.omri.locationtrackerdemo.BuildConfig;
 import com.omri.locationtrackerdemo.R;
+import com.omri.locationtrackerdemo.data.history.LocationHistory;
+import com.omri.locationtrackerdemo.data.history.TrackPlayback;
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+import com.omri.locationtrackerdemo.data.network.NetworkRuntime;
 import com.omri.locationtrackerdemo.data.preferences.UserPreferences;
 import com.omri.locationtrackerdemo.data.repository.LocationRepository;
+import com.omri.locationtrackerdemo.data.repository.LocationUploadQueue;
+import com.omri.locationtrackerdemo.data.session.BackgroundSessionStore;
+import com.omri.locationtrackerdemo.data.session.SessionSnapshot;
+import com.omri.locationtrackerdemo.data.spatial.UserPositionIndex;
 import com.omri.locationtrackerdemo.interfaces.LocationUpdateListener;
 import com.omri.locationtrackerdemo.interfaces.RemoteUserLocationListener;
+import com.omri.locationtrackerdemo.managers.FreshnessTracker;
 import com.omri.locationtrackerdemo.managers.LocationManager;
 import com.omri.locationtrackerdemo.managers.RemoteTrackingManager;
+import com.omri.locationtrackerdemo.metrics.Counter;
+import com.omri.locationtrackerdemo.metrics.LatencyHistogram;
+import com.omri.locationtrackerdemo.metrics.MetricsRegistry;
+import com.omri.locationtrackerdemo.metrics.StartupTrace;
+import com.omri.locationtrackerdemo.services.LocationSharingService;
 import com.omri.locationtrackerdemo.ui.map.MapViewController;
+import com.omri.locationtrackerdemo.ui.map.MetricsOverlay;
+import com.omri.locationtrackerdemo.ui.map.PlaybackController;
+import com.omri.locationtrackerdemo.utils.JankMonitor;
 import com.omri.locationtrackerdemo.utils.TimeFormatter;
-import com.omri.trackinglibrary.interfaces.LocationCallback;
 import com.omri.trackinglibrary.interfaces.UserCallback;
 import com.omri.trackinglibrary.models.User;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * MapActivity is responsible for displaying a map view and handling
  * location tracking for both the local user and remote users.
  * It integrates with location managers and repositories to update
  * and retrieve location data, and manages UI elements for user interaction.
+ * A saved {@link SessionSnapshot}, passed in the intent by the login screen, is shown
+ * before the server answers: the sharing switch and the last own fix come from the
+ * snapshot, and the status check that follows only changes them if the server disagrees.
+ * Session saves run on the {@link BackgroundSessionStore} thread. Cold starts are timed by the
+ * process {@link StartupTrace} up to the first map frame and the first live fix shown.
+ * Sharing runs in the {@link LocationSharingService}, which keeps uploading while the
+ * screen is in the background; the visible screen binds to it for live fixes.
  */
 public class MapActivity extends AppCompatActivity implements OnMapReadyCallback,
         LocationUpdateListener, RemoteUserLocationListener {
-
+    private static final String TAG = "MapActivity";
 
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1;
+    private static final int NOTIFICATION_PERMISSION_REQUEST_CODE = 2;
+    private static final String HISTORY_DIR = "location-history";
+    // Above the 30 s poll ceiling and the 60 s upload heartbeat of a parked user
+    private static final long STALE_AFTER_MS = 120_000;
+    private static final long STALENESS_CHECK_INTERVAL_MS = 5_000;
+    private static final double NEAREST_USER_MAX_DISTANCE_METERS = 100_000;
+    private static final long PLAYBACK_WINDOW_MS = 60 * 60 * 1000;
+    private static final double PLAYBACK_SPEED = 60;
+    private static final String EXTRA_SESSION_USER_ID = "SESSION_USER_ID";
+    private static final String EXTRA_SESSION_ACTIVE = "SESSION_ACTIVE";
+    private static final String EXTRA_SESSION_SAVED_AT = "SESSION_SAVED_AT";
+    private static final String EXTRA_SESSION_FIX_LATITUDE = "SESSION_FIX_LATITUDE";
+    private static final String EXTRA_SESSION_FIX_LONGITUDE = "SESSION_FIX_LONGITUDE";
+    private static final String EXTRA_SESSION_FIX_TIME = "SESSION_FIX_TIME";
 
     /**
      * Switch for enabling or disabling location sharing.
@@ -92,15 +151,67 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
     private Button searchUserButton;
 
     /**
-     * Manages the local user's location updates.
+     * Sharing service while it runs and this screen is visible, null otherwise.
+     */
+    private LocationSharingService sharingService;
+
+    /**
+     * Whether this screen is bound to the sharing service, which it does while visible.
      */
-    private LocationManager locationManager;
+    private boolean sharingServiceBound;
+
+    /**
+     * Attaches to the sharing service whenever it runs while this screen is visible.
+     */
+    private final ServiceConnection sharingConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            sharingService = ((LocationSharingService.LocalBinder) binder).getService();
+            sharingService.attach(MapActivity.this, uploadListener);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            sharingService = null;
+        }
+    };
+
+    /**
+     * Shows the results of the sharing service's uploads.
+     */
+    private final LocationUploadQueue.Listener uploadListener = new LocationUploadQueue.Listener() {
+        @Override
+        public void onUploaded(LocationFix latest) {
+            // Called on the upload thread, format there and only set the text on the main thread
+            String updateTime = TimeFormatter.formatTime(new Date());
+            runOnUiThread(() -> updateTimeChip.setText(updateTime));
+        }
+
+        @Override
+        public void onUploadFailed(String error) {
+            runOnUiThread(() ->
+                    Toast.makeText(MapActivity.this,
+                            "Failed to update location: " + error,
+                            Toast.LENGTH_SHORT).show());
+        }
+    };
 
     /**
      * Manages remote tracking operations for other users.
      */
     private RemoteTrackingManager remoteTrackingManager;
 
+    /**
+     * Remote users that were tracked when the screen was paused, tracked again on resume.
+     */
+    private List<String> pausedTrackedUserIds = new ArrayList<>();
+
+    /**
+     * Users tracked again after a resume, whose first update only moves their marker
+     * instead of focusing the camera and announcing them again.
+     */
+    private final Set<String> resumedUserIds = Collections.synchronizedSet(new HashSet<>());
+
     /**
      * Repository for handling location data (e.g., database or network).
      */
@@ -111,11 +222,123 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
      */
     private UserPreferences userPreferences;
 
+    /**
+     * Latest positions of the local and tracked users, for nearby and nearest queries.
+     */
+    private final UserPositionIndex positionIndex = new UserPositionIndex();
+
+    /**
+     * On-device history of every local and remote fix shown on the map.
+     */
+    private LocationHistory locationHistory;
+
+    /**
+     * Last remote fix recorded into the history per user, so fixes polled again are skipped.
+     */
+    private final Map<String, LocationFix> recordedRemoteFixes = new ConcurrentHashMap<>();
+
     /**
      * Controls the Google Map, including markers and camera positioning.
      */
     private MapViewController mapViewController;
 
+    /**
+     * Replays the recorded history of the tracked users on the map, created with the map.
+     */
+    private PlaybackController playbackController;
+
+    /**
+     * Users whose live tracking is suspended while their history is replayed.
+     */
+    private List<String> playbackUserIds = new ArrayList<>();
+
+    /**
+     * Frame interval and main thread work statistics, only created in debuggable builds.
+     */
+    private JankMonitor jankMonitor;
+
+    /**
+     * Latency histograms and counters of the tracking pipeline, enabled in debuggable builds
+     * and while the overlay is shown.
+     */
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+
+    /**
+     * Time from a remote update reaching the activity to its marker being moved.
+     */
+    private final LatencyHistogram pollToRenderDelay = metrics.histogram("delay.pollToRender");
+
+    /**
+     * Tracking errors, which are otherwise only shown as a toast.
+     */
+    private final Counter trackingErrors = metrics.counter("remote.trackingErrors");
+
+    /**
+     * Debug overlay with the metrics snapshot, toggled by long-pressing the tracking status.
+     */
+    private MetricsOverlay metricsOverlay;
+
+    /**
+     * Signed snapshot of the session, written in the background.
+     */
+    private BackgroundSessionStore sessionStore;
+
+    /**
+     * Snapshot the screen was opened with, null if it had to wait for the server.
+     */
+    private SessionSnapshot restoredSession;
+
+    /**
+     * Sharing state last confirmed by the server, null until the status check answered.
+     */
+    private Boolean confirmedSharing;
+
+    /**
+     * The local user's latest fix, saved with the session.
+     */
+    private volatile LocationFix lastOwnFix;
+
+    /**
+     * Set while the sharing switch is changed from code, so no status write is sent.
+     */
+    private boolean updatingSharingSwitch;
+
+    /**
+     * Set once the user toggled sharing, whose own write then wins over the status check.
+     */
+    private boolean sharingChangedByUser;
+
+    /**
+     * Cold start phases of this process.
+     */
+    private StartupTrace startupTrace;
+
+    /**
+     * Status checks that changed the state restored from a session snapshot.
+     */
+    private final Counter sessionRollbacks = metrics.counter("session.rollbacks");
+
+    /**
+     * Main thread handler running the periodic stale marker check.
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Greys out markers whose users have not delivered a fresh location for a while.
+     */
+    private final Runnable stalenessCheck = new Runnable() {
+        @Override
+        public void run() {
+            if (mapViewController != null) {
+                for (String userId : remoteTrackingManager.getTrackedUserIds()) {
+                    long stalenessMs = remoteTrackingManager.getStalenessMs(userId);
+                    mapViewController.setRemoteUserStale(userId, stalenessMs > STALE_AFTER_MS);
+                }
+            }
+            mainHandler.postDelayed(this, STALENESS_CHECK_INTERVAL_MS);
+        }
+    };
+
     /**
      * Called when the activity is created. Responsible for setting
      * the content view and initializing important components.
@@ -125,27 +348,42 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // Also started here when the process is recreated straight into this screen
+        startupTrace = StartupTrace.startProcess(Process.getStartElapsedRealtime(), SystemClock::elapsedRealtime);
         setContentView(R.layout.activity_map);
 
         initializeComponents();
         validateUserLogin();
         initializeViews();
+        startupTrace.mark(StartupTrace.PHASE_MAP_CREATED);
         setupMap();
+        restoreSession();
         checkAndUpdateSharingStatus();
     }
 
     /**
      * Initializes core components such as the LocationRepository,
-     * UserPreferences, LocationManager, and RemoteTrackingManager.
+     * UserPreferences, and RemoteTrackingManager. Device location and uploads
+     * are handled by the sharing service.
      */
     private void initializeComponents() {
         locationRepository = new LocationRepository();
         userPreferences = new UserPreferences(this);
-        locationManager = new LocationManager(this);
+        sessionStore = BackgroundSessionStore.get(getFilesDir());
+        locationHistory = new LocationHistory(new File(getFilesDir(), HISTORY_DIR));
         remoteTrackingManager = new RemoteTrackingManager(locationRepository.getLocationTracker());
+        remoteTrackingManager.setStatusSource(locationRepository::getUserStatus);
+        if (!BuildConfig.LOCATION_STREAM_URL.isEmpty()) {
+            remoteTrackingManager.enableStreaming(NetworkRuntime.getDefault().getHttpClient(),
+                    BuildConfig.LOCATION_STREAM_URL);
+        }
 
-        locationManager.setLocationUpdateListener(this);
         remoteTrackingManager.setLocationListener(this);
+        remoteTrackingManager.setPositionIndex(positionIndex);
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            jankMonitor = new JankMonitor(getWindowManager().getDefaultDisplay().getRefreshRate());
+            metrics.setEnabled(true);
+        }
     }
 
     /**
@@ -173,6 +411,7 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
         searchUserIdInputLayout = findViewById(R.id.searchUserIdInputLayout);
         searchUserIdEditText = findViewById(R.id.searchUserIdEditText);
         searchUserButton = findViewById(R.id.searchUserButton);
+        metricsOverlay = new MetricsOverlay(findViewById(R.id.metricsOverlay), metrics);
 
         setupViewListeners();
     }
@@ -182,20 +421,56 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
      * such as toggling location sharing or searching for a user ID.
      */
     private void setupViewListeners() {
-        locationSharingSwitch.setOnCheckedChangeListener((buttonView, isChecked) ->
-                updateLocationSharing(isChecked));
+        locationSharingSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            if (!updatingSharingSwitch) {
+                sharingChangedByUser = true;
+                updateLocationSharing(isChecked);
+            }
+        });
 
         myLocationFab.setOnClickListener(v -> focusOnMyLocation());
+        myLocationFab.setOnLongClickListener(v -> {
+            showNearestTrackedUser();
+            return true;
+        });
+
+        trackingStatus.setOnLongClickListener(v -> {
+            metricsOverlay.toggle();
+            return true;
+        });
+        updateTimeChip.setOnLongClickListener(v -> {
+            togglePlayback();
+            return true;
+        });
+        findViewById(R.id.metricsOverlay).setOnLongClickListener(v -> {
+            metricsOverlay.share(this);
+            return true;
+        });
 
         searchUserButton.setOnClickListener(v -> {
             String userIdToSearch = Objects.requireNonNull(searchUserIdEditText.getText()).toString().trim();
             searchUserIdInputLayout.setError(null);
 
-            if (userIdToSearch.isEmpty()) {
+            // Several comma separated IDs are tracked together
+            List<String> userIds = new ArrayList<>();
+            for (String userId : userIdToSearch.split(",")) {
+                if (!userId.trim().isEmpty()) {
+                    userIds.add(userId.trim());
+                }
+            }
+            if (userIds.isEmpty()) {
                 searchUserIdInputLayout.setError("Please enter user ID");
                 return;
             }
-            remoteTrackingManager.startTrackingUser(userIdToSearch);
+            if (playbackController != null) {
+                playbackController.stop();
+                playbackUserIds = new ArrayList<>();
+            }
+            if (mapViewController != null) {
+                mapViewController.clearRemoteUserMarker();
+            }
+            resumedUserIds.clear();
+            remoteTrackingManager.startTrackingUsers(userIds);
         });
     }
 
@@ -219,9 +494,164 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
     @Override
     public void onMapReady(@NonNull GoogleMap googleMap) {
         mapViewController = new MapViewController(googleMap);
-        if (locationManager.hasLocationPermission()) {
+        playbackController = new PlaybackController(mapViewController);
+        playbackController.setListener(new PlaybackController.Listener() {
+            @Override
+            public void onPlaybackFinished() {
+                stopPlayback();
+            }
+
+            @Override
+            public void onPlaybackError(String error) {
+                Toast.makeText(MapActivity.this, "Replay failed: " + error, Toast.LENGTH_SHORT).show();
+                stopPlayback();
+            }
+        });
+        if (LocationManager.hasLocationPermission(this)) {
             mapViewController.enableMyLocation(true);
         }
+        googleMap.setOnMapLoadedCallback(() -> markStartupPhase(StartupTrace.PHASE_FIRST_MAP_FRAME));
+        // The saved fix, unless a live one arrived first
+        LocationFix restoredFix = restoredSession != null ? restoredSession.getLastFix() : null;
+        if (restoredFix != null && lastOwnFix == restoredFix) {
+            mapViewController.updateLocalLocation(toLocation(restoredFix));
+        }
+    }
+
+    /**
+     * Adds a session snapshot the login screen already verified to the intent opening
+     * this screen, so it is not read from the store again.
+     *
+     * @param intent Intent starting MapActivity.
+     * @param snapshot The restored session.
+     */
+    static void putSession(Intent intent, SessionSnapshot snapshot) {
+        intent.putExtra(EXTRA_SESSION_USER_ID, snapshot.getUserId());
+        intent.putExtra(EXTRA_SESSION_ACTIVE, snapshot.isActive());
+        intent.putExtra(EXTRA_SESSION_SAVED_AT, snapshot.getSavedAtMs());
+        LocationFix fix = snapshot.getLastFix();
+        if (fix != null) {
+            intent.putExtra(EXTRA_SESSION_FIX_LATITUDE, fix.getLatitude());
+            intent.putExtra(EXTRA_SESSION_FIX_LONGITUDE, fix.getLongitude());
+            intent.putExtra(EXTRA_SESSION_FIX_TIME, fix.getTimestampMs());
+        }
+    }
+
+    /**
+     * Reads the snapshot added by {@link #putSession(Intent, SessionSnapshot)}.
+     *
+     * @return The snapshot, or null if the screen was opened without one.
+     */
+    private static SessionSnapshot getSession(Intent intent) {
+        String userId = intent.getStringExtra(EXTRA_SESSION_USER_ID);
+        if (userId == null) {
+            return null;
+        }
+        LocationFix fix = null;
+        if (intent.hasExtra(EXTRA_SESSION_FIX_TIME)) {
+            fix = new LocationFix(userId,
+                    intent.getDoubleExtra(EXTRA_SESSION_FIX_LATITUDE, 0),
+                    intent.getDoubleExtra(EXTRA_SESSION_FIX_LONGITUDE, 0),
+                    intent.getLongExtra(EXTRA_SESSION_FIX_TIME, 0));
+        }
+        return new SessionSnapshot(userId, intent.getBooleanExtra(EXTRA_SESSION_ACTIVE, false), fix,
+                intent.getLongExtra(EXTRA_SESSION_SAVED_AT, 0));
+    }
+
+    /**
+     * Shows the state of the saved session the login screen passed for the logged in
+     * user, if there is one, before the server has been asked. The status check
+     * revalidates it.
+     */
+    private void restoreSession() {
+        String userId = userPreferences.getUserId();
+        SessionSnapshot snapshot = getSession(getIntent());
+        if (snapshot == null || !snapshot.getUserId().equals(userId)) {
+            return;
+        }
+        restoredSession = snapshot;
+        showSharingState(snapshot.isActive());
+        LocationFix fix = snapshot.getLastFix();
+        if (fix != null) {
+            lastOwnFix = fix;
+            latitudeText.setText(String.format(Locale.getDefault(), "%.6f", fix.getLatitude()));
+            longitudeText.setText(String.format(Locale.getDefault(), "%.6f", fix.getLongitude()));
+        }
+    }
+
+    /**
+     * Sets the sharing switch and starts or stops location updates without writing
+     * the status to the server, e.g. for a state the server reported.
+     *
+     * @param isActive Whether the local user shares their location.
+     */
+    private void showSharingState(boolean isActive) {
+        updatingSharingSwitch = true;
+        locationSharingSwitch.setChecked(isActive);
+        updatingSharingSwitch = false;
+        trackingStatus.setText(isActive ? "Sharing Location" : "Not Sharing Location");
+        setSharingServiceRunning(isActive);
+    }
+
+    /**
+     * Starts or stops the foreground service that shares the device location.
+     *
+     * @param running Whether the local user shares their location.
+     */
+    private void setSharingServiceRunning(boolean running) {
+        if (running) {
+            if (LocationManager.hasLocationPermission(this)) {
+                LocationSharingService.start(this);
+            }
+        } else {
+            sharingService = null;
+            LocationSharingService.stop(this);
+        }
+    }
+
+    /**
+     * Asks for the permission to show the sharing notification, without which sharing
+     * still runs but is not visible in the notification shade.
+     */
+    private void requestNotificationPermission() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && checkSelfPermission(Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
+            requestPermissions(new String[]{Manifest.permission.POST_NOTIFICATIONS},
+                    NOTIFICATION_PERMISSION_REQUEST_CODE);
+        }
+    }
+
+    /**
+     * Saves the session with the sharing state the server confirmed and the latest own fix,
+     * so the next cold start can open the map right away. Written in the background.
+     */
+    private void saveSession() {
+        String userId = userPreferences.getUserId();
+        if (userId == null || confirmedSharing == null) {
+            return;
+        }
+        sessionStore.save(new SessionSnapshot(userId, confirmedSharing, lastOwnFix, System.currentTimeMillis()));
+    }
+
+    /**
+     * Drops the saved session and returns to the login screen, e.g. when the server
+     * does not know the restored user.
+     */
+    private void endSession() {
+        sessionStore.clear();
+        startActivity(new Intent(this, LoginActivity.class));
+        finish();
+    }
+
+    /**
+     * Records a cold start phase and logs the trace the first time it is reached.
+     *
+     * @param phase One of the {@link StartupTrace} phases.
+     */
+    private void markStartupPhase(String phase) {
+        if (startupTrace.mark(phase)) {
+            Log.i(TAG, startupTrace.toString());
+        }
     }
 
     /**
@@ -243,11 +673,12 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
             @Override
             public void onSuccess(User user) {
                 runOnUiThread(() -> {
+                    confirmedSharing = isEnabled;
+                    saveSession();
                     trackingStatus.setText(isEnabled ? "Sharing Location" : "Not Sharing Location");
+                    setSharingServiceRunning(isEnabled);
                     if (isEnabled) {
-                        locationManager.startLocationUpdates();
-                    } else {
-                        locationManager.stopLocationUpdates();
+                        requestNotificationPermission();
                     }
                 });
             }
@@ -266,20 +697,33 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
 
     /**
      * Checks and updates the initial location sharing status of the user
-     * by fetching the user's status from the repository.
+     * by fetching the user's status from the repository. A state restored from a
+     * session snapshot is revalidated with the server and rolled back if the server
+     * disagrees, unless the user already toggled sharing themselves.
      */
     private void checkAndUpdateSharingStatus() {
         String userId = userPreferences.getUserId();
         if (userId == null) return;
 
-        locationRepository.getUserStatus(userId, new UserCallback() {
+        locationRepository.getUserStatus(userId, restoredSession != null, new UserCallback() {
             @Override
             public void onSuccess(User user) {
                 runOnUiThread(() -> {
-                    locationSharingSwitch.setChecked(user.isActive());
-                    if (user.isActive()) {
-                        locationManager.startLocationUpdates();
+                    if (user == null || (user.getId() != null && !user.getId().equals(userId))) {
+                        Log.w(TAG, "Status check did not return the logged in user");
+                        endSession();
+                        return;
+                    }
+                    if (sharingChangedByUser) {
+                        return;
+                    }
+                    if (restoredSession != null && restoredSession.isActive() != user.isActive()) {
+                        sessionRollbacks.increment();
+                        Log.d(TAG, "Restored sharing state rolled back to " + user.isActive());
                     }
+                    confirmedSharing = user.isActive();
+                    showSharingState(user.isActive());
+                    saveSession();
                 });
             }
 
@@ -295,58 +739,72 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
     }
 
     /**
-     * Callback from the LocationManager when a new location is available.
-     * Updates the UI and optionally updates the remote location if sharing is enabled.
+     * Callback from the sharing service when a new location is available; the service
+     * has already queued it for upload. Runs on the location pipeline thread: history,
+     * position index and text formatting happen here, only the view and map updates are
+     * posted to the main thread.
      *
      * @param location The updated Location object.
      */
     @Override
     public void onLocationUpdated(Location location) {
-        updateLocationDisplay(location);
-        if (locationSharingSwitch.isChecked()) {
-            updateRemoteLocation(location);
+        String userId = userPreferences.getUserId();
+        if (userId != null) {
+            lastOwnFix = new LocationFix(userId, location.getLatitude(), location.getLongitude(),
+                    location.getTime());
+            locationHistory.record(userId, location.getTime(), location.getLatitude(),
+                    location.getLongitude(), location.hasAccuracy() ? location.getAccuracy() : Float.NaN);
+            positionIndex.update(userId, location.getLatitude(), location.getLongitude(), location.getTime());
         }
+        updateLocationDisplay(location);
     }
 
     /**
-     * Updates the UI elements with the newly received location and
-     * moves the local map marker to the new position.
+     * Formats the newly received location and posts the UI update that
+     * shows it and moves the camera to the new position.
      *
      * @param location The user's current location.
      */
     private void updateLocationDisplay(Location location) {
-        latitudeText.setText(String.format(Locale.getDefault(), "%.6f", location.getLatitude()));
-        longitudeText.setText(String.format(Locale.getDefault(), "%.6f", location.getLongitude()));
-        mapViewController.updateLocalLocation(location);
+        String latitude = String.format(Locale.getDefault(), "%.6f", location.getLatitude());
+        String longitude = String.format(Locale.getDefault(), "%.6f", location.getLongitude());
+        runOnUiThreadTimed(() -> {
+            latitudeText.setText(latitude);
+            longitudeText.setText(longitude);
+            if (mapViewController != null) {
+                mapViewController.updateLocalLocation(location);
+            }
+            markStartupPhase(StartupTrace.PHASE_FIRST_FIX);
+        });
     }
 
     /**
-     * Updates the remote database or service with the new location
-     * and sets the time chip to show the last update time.
+     * Posts work to the main thread and records how long it took there.
      *
-     * @param location The user's current location to send to the remote repository.
-     */
-    private void updateRemoteLocation(Location location) {
-        locationRepository.updateLocation(
-                userPreferences.getUserId(),
-                location.getLatitude(),
-                location.getLongitude(),
-                new LocationCallback() {
-                    @Override
-                    public void onSuccess(com.omri.trackinglibrary.models.Location loc) {
-                        runOnUiThread(() ->
-                                updateTimeChip.setText(TimeFormatter.formatTime(new Date())));
-                    }
+     * @param action View or map mutation to run on the main thread.
+     */
+    private void runOnUiThreadTimed(Runnable action) {
+        runOnUiThread(() -> {
+            long start = System.nanoTime();
+            action.run();
+            if (jankMonitor != null) {
+                jankMonitor.recordMainThreadWork(System.nanoTime() - start);
+            }
+        });
+    }
 
-                    @Override
-                    public void onError(String error) {
-                        runOnUiThread(() ->
-                                Toast.makeText(MapActivity.this,
-                                        "Failed to update location: " + error,
-                                        Toast.LENGTH_SHORT).show());
-                    }
-                }
-        );
+    /**
+     * Builds an Android location from a saved fix, e.g. to show it on the map.
+     *
+     * @param fix The saved fix.
+     * @return Location carrying the fix's coordinates and time.
+     */
+    private static Location toLocation(LocationFix fix) {
+        Location location = new Location("session");
+        location.setLatitude(fix.getLatitude());
+        location.setLongitude(fix.getLongitude());
+        location.setTime(fix.getTimestampMs());
+        return location;
     }
 
     /**
@@ -355,23 +813,63 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
      * @param userId         The user ID being tracked.
      * @param remoteLocation The latest remote location data.
      * @param isFirstUpdate  True if this is the first time we get a location for the user.
+     * @param stalenessMs    Age of the location in milliseconds.
+     * @param fixTimeMs      Server time of the fix, 0 if unknown.
      */
     @Override
     public void onRemoteLocationUpdated(String userId,
                                         com.omri.trackinglibrary.models.Location remoteLocation,
-                                        boolean isFirstUpdate) {
-        runOnUiThread(() -> {
-            if (isFirstUpdate) {
+                                        boolean isFirstUpdate,
+                                        long stalenessMs,
+                                        long fixTimeMs) {
+        final long receivedNanos = metrics.startTimer();
+        final boolean announce = isFirstUpdate && !resumedUserIds.remove(userId);
+        recordRemoteFix(userId, remoteLocation.getLatitude(), remoteLocation.getLongitude(),
+                fixTimeMs, stalenessMs);
+        runOnUiThreadTimed(() -> {
+            if (announce) {
                 // Only focus on remote user's location on first update
-                mapViewController.updateRemoteUserLocation(userId, remoteLocation);
+                mapViewController.updateRemoteUserLocation(userId, remoteLocation, stalenessMs);
                 Toast.makeText(this, "Found and tracking user: " + userId, Toast.LENGTH_SHORT).show();
             } else {
                 // Just update marker without camera movement
-                mapViewController.updateRemoteUserMarker(userId, remoteLocation);
+                mapViewController.updateRemoteUserMarker(userId, remoteLocation, stalenessMs);
             }
+            mapViewController.setRemoteUserStale(userId, stalenessMs > STALE_AFTER_MS);
+            pollToRenderDelay.recordSince(receivedNanos);
+            markStartupPhase(StartupTrace.PHASE_FIRST_FIX);
         });
     }
 
+    /**
+     * Records a remote fix into the history unless it is the one recorded last for the user.
+     * Every poll returns the user's latest fix, so a parked user would otherwise add the
+     * same point again on each poll: fixes are recorded once per server fix time, or once
+     * per position when the server does not report the time.
+     *
+     * @param userId      The remote user.
+     * @param latitude    Latitude of the fix.
+     * @param longitude   Longitude of the fix.
+     * @param fixTimeMs   Server time of the fix, 0 if unknown.
+     * @param stalenessMs Age of the fix, used to time it when the server did not.
+     */
+    private void recordRemoteFix(String userId, double latitude, double longitude,
+                                 long fixTimeMs, long stalenessMs) {
+        LocationFix previous = recordedRemoteFixes.get(userId);
+        long timeMs = fixTimeMs;
+        if (fixTimeMs == FreshnessTracker.UNKNOWN_TIME) {
+            if (previous != null && previous.getLatitude() == latitude
+                    && previous.getLongitude() == longitude) {
+                return;
+            }
+            timeMs = System.currentTimeMillis() - stalenessMs;
+        } else if (previous != null && previous.getTimestampMs() == fixTimeMs) {
+            return;
+        }
+        recordedRemoteFixes.put(userId, new LocationFix(userId, latitude, longitude, timeMs));
+        locationHistory.record(userId, timeMs, latitude, longitude, Float.NaN);
+    }
+
     /**
      * Callback indicating that the remote user is inactive.
      *
@@ -393,6 +891,7 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
      */
     @Override
     public void onTrackingError(String error) {
+        trackingErrors.increment();
         runOnUiThread(() ->
                 Toast.makeText(this,
                         "Tracking error: " + error,
@@ -402,10 +901,79 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
 
     /**
      * Repositions the map camera to the user's current location
-     * if it is available.
+     * if it is available, and makes the camera follow it again after the user panned away.
      */
     private void focusOnMyLocation() {
-        mapViewController.focusOnLocation(locationManager.getLastLocation());
+        LocationFix fix = lastOwnFix;
+        mapViewController.focusOnLocation(fix != null ? toLocation(fix) : null);
+    }
+
+    /**
+     * Names the tracked user closest to the local user's latest fix, looked up in the
+     * position index.
+     */
+    private void showNearestTrackedUser() {
+        String userId = userPreferences.getUserId();
+        LocationFix fix = lastOwnFix;
+        if (fix == null) {
+            Toast.makeText(this, "Your location is not known yet", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        List<UserPositionIndex.Neighbor> nearest = positionIndex.findNearest(fix.getLatitude(),
+                fix.getLongitude(), 1, NEAREST_USER_MAX_DISTANCE_METERS,
+                entry -> !entry.userId.equals(userId));
+        if (nearest.isEmpty()) {
+            Toast.makeText(this, "No tracked user nearby", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        UserPositionIndex.Neighbor neighbor = nearest.get(0);
+        String distance = neighbor.distanceMeters < 1_000
+                ? String.format(Locale.getDefault(), "%.0f m", neighbor.distanceMeters)
+                : String.format(Locale.getDefault(), "%.1f km", neighbor.distanceMeters / 1_000);
+        Toast.makeText(this, "Nearest tracked user: " + neighbor.entry.userId + ", " + distance + " away",
+                Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * Starts replaying the last hour of the tracked users' history at
+     * {@link #PLAYBACK_SPEED} times real time, or ends a running replay. Live tracking of
+     * the replayed users is suspended meanwhile, so only the replay moves their markers.
+     */
+    private void togglePlayback() {
+        if (playbackController == null) {
+            return;
+        }
+        if (playbackController.getPlayback() != null) {
+            stopPlayback();
+            return;
+        }
+        List<String> userIds = new ArrayList<>(remoteTrackingManager.getTrackedUserIds());
+        if (userIds.isEmpty()) {
+            Toast.makeText(this, "Track a user to replay their last hour", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        remoteTrackingManager.stopTracking();
+        playbackUserIds = userIds;
+        long nowMs = System.currentTimeMillis();
+        TrackPlayback playback = locationHistory.createPlayback(userIds, nowMs - PLAYBACK_WINDOW_MS,
+                nowMs, playbackController);
+        playback.setSpeed(PLAYBACK_SPEED);
+        playbackController.start(playback);
+        Toast.makeText(this, "Replaying the last hour, long-press again to stop", Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * Ends a running replay and resumes live tracking of the replayed users, whose
+     * markers then move to their live positions.
+     */
+    private void stopPlayback() {
+        if (playbackController == null || playbackController.getPlayback() == null) {
+            return;
+        }
+        playbackController.stop();
+        resumedUserIds.addAll(playbackUserIds);
+        remoteTrackingManager.startTrackingUsers(playbackUserIds);
+        playbackUserIds = new ArrayList<>();
     }
 
     /**
@@ -422,33 +990,94 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
                                            @NonNull int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         if (requestCode == LOCATION_PERMISSION_REQUEST_CODE && mapViewController != null) {
-            mapViewController.enableMyLocation(locationManager.hasLocationPermission());
-            if (locationManager.hasLocationPermission() && locationSharingSwitch.isChecked()) {
-                locationManager.startLocationUpdates();
+            mapViewController.enableMyLocation(LocationManager.hasLocationPermission(this));
+            if (locationSharingSwitch.isChecked()) {
+                setSharingServiceRunning(true);
             }
         }
     }
 
     /**
      * Lifecycle callback invoked when the activity is resumed.
-     * Restarts location updates if sharing is enabled.
+     * Makes sure the sharing service runs if sharing is enabled and binds to it
+     * for live fixes, and tracks the remote users again that were tracked when the
+     * screen was paused.
      */
     @Override
     protected void onResume() {
         super.onResume();
         if (locationSharingSwitch.isChecked()) {
-            locationManager.startLocationUpdates();
+            setSharingServiceRunning(true);
         }
+        // Without BIND_AUTO_CREATE: connects whenever the service runs, but never starts it
+        sharingServiceBound = bindService(new Intent(this, LocationSharingService.class), sharingConnection, 0);
+        if (jankMonitor != null) {
+            jankMonitor.start();
+        }
+        if (mapViewController != null) {
+            mapViewController.resumeMarkerAnimation();
+        }
+        metricsOverlay.resume();
+        if (!pausedTrackedUserIds.isEmpty()) {
+            // Their markers are still shown, so the first update does not refocus the camera
+            resumedUserIds.addAll(pausedTrackedUserIds);
+            remoteTrackingManager.startTrackingUsers(pausedTrackedUserIds);
+            pausedTrackedUserIds = new ArrayList<>();
+        }
+        mainHandler.postDelayed(stalenessCheck, STALENESS_CHECK_INTERVAL_MS);
     }
 
     /**
      * Lifecycle callback invoked when the activity is paused.
-     * Stops location updates and any remote tracking.
+     * Stops remote tracking, remembering the tracked users for {@link #onResume()}, and logs
+     * the frame statistics collected while the screen was visible. Sharing continues in
+     * the service, which batches fixes from now on.
      */
     @Override
     protected void onPause() {
         super.onPause();
-        locationManager.stopLocationUpdates();
+        mainHandler.removeCallbacks(stalenessCheck);
+        metricsOverlay.pause();
+        if (mapViewController != null) {
+            mapViewController.pauseMarkerAnimation();
+        }
+        if (jankMonitor != null) {
+            jankMonitor.stop();
+            jankMonitor.logAndReset("MapActivity");
+        }
+        if (sharingService != null) {
+            sharingService.detach();
+            sharingService = null;
+        }
+        if (sharingServiceBound) {
+            unbindService(sharingConnection);
+            sharingServiceBound = false;
+        }
+        if (playbackController != null && playbackController.getPlayback() != null) {
+            // A replay is not resumed, its users are tracked live again instead
+            playbackController.stop();
+            pausedTrackedUserIds = playbackUserIds;
+            playbackUserIds = new ArrayList<>();
+        } else {
+            pausedTrackedUserIds = new ArrayList<>(remoteTrackingManager.getTrackedUserIds());
+        }
         remoteTrackingManager.stopTracking();
+        saveSession();
+    }
+
+    /**
+     * Lifecycle callback invoked when the activity is destroyed.
+     * Releases the upload scheduler and history thread. Sharing, if enabled, continues
+     * in the service.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mapViewController != null) {
+            mapViewController.release();
+        }
+        metricsOverlay.setShown(false);
+        locationRepository.shutdown();
+        locationHistory.shutdown();
     }
 }
@@ -0,0 +1,181 @@
+package com.omri.locationtrackerdemo.data.history;
+
+import android.util.Log;
+
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the local and remote fixes shown on the map into a {@link LocationHistoryStore}.
+ * The store is opened and written on a dedicated background thread, so recording from the
+ * main thread or the location pipeline thread only posts a task. Buffered fixes are
+ * written to disk every {@link #FLUSH_INTERVAL_MS} and on {@link #shutdown()}. Segments
+ * older than {@link #RETENTION_MS} are deleted once the store is open and then daily.
+ */
+public class LocationHistory {
+    private static final String TAG = "LocationHistory";
+    public static final long FLUSH_INTERVAL_MS = 30_000;
+    public static final long RETENTION_MS = 7 * 24 * 60 * 60 * 1000L;
+    public static final long RETENTION_SWEEP_INTERVAL_MS = 24 * 60 * 60 * 1000L;
+
+    /**
+     * Receives the result of an asynchronous range query on the history thread
+     */
+    public interface QueryCallback {
+        void onResult(List<LocationSample> samples);
+
+        void onError(String error);
+    }
+
+    private final ScheduledExecutorService executor;
+    private volatile LocationHistoryStore store;
+
+    /**
+     * Opens the history in the background
+     * @param directory Root directory of the store
+     */
+    public LocationHistory(File directory) {
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "LocationHistory");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(() -> {
+            try {
+                store = new LocationHistoryStore(directory);
+            } catch (IOException e) {
+                Log.e(TAG, "Location history unavailable", e);
+            }
+        });
+        executor.scheduleWithFixedDelay(this::flushStore, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+        // Runs right after the open task on the same thread
+        executor.scheduleWithFixedDelay(this::deleteExpired, 0, RETENTION_SWEEP_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a fix for appending
+     * @param userId ID of the user
+     * @param timeMs Time of the fix in milliseconds since epoch
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @param accuracyMeters Horizontal accuracy radius, NaN if unknown
+     */
+    public void record(String userId, long timeMs, double latitude, double longitude, float accuracyMeters) {
+        try {
+            executor.execute(() -> {
+                LocationHistoryStore current = store;
+                if (current == null) {
+                    return;
+                }
+                try {
+                    current.append(userId, timeMs, latitude, longitude, accuracyMeters);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to record fix", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shut down, late fixes are not recorded
+        }
+    }
+
+    /**
+     * Reads a user's fixes in a time range on the history thread
+     * @param userId ID of the user
+     * @param fromMs Start of the range, inclusive
+     * @param toMs End of the range, exclusive
+     * @param callback Receives the fixes in the order they were appended
+     */
+    public void query(String userId, long fromMs, long toMs, QueryCallback callback) {
+        executor.execute(() -> {
+            LocationHistoryStore current = store;
+            if (current == null) {
+                callback.onError("Location history unavailable");
+                return;
+            }
+            try {
+                callback.onResult(current.query(userId, fromMs, toMs));
+            } catch (IOException e) {
+                callback.onError(e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Creates a playback of recorded tracks that reads its windows on the history thread
+     * @param userIds Users to replay
+     * @param fromMs Start of the replayed time range
+     * @param toMs End of the replayed time range
+     * @param sink Receives the replayed fixes on the frame thread
+     */
+    public TrackPlayback createPlayback(Collection<String> userIds, long fromMs, long toMs,
+                                        TrackPlayback.Sink sink) {
+        return new TrackPlayback((userId, from, to, visitor) -> {
+            LocationHistoryStore current = store;
+            if (current == null) {
+                throw new IOException("Location history unavailable");
+            }
+            current.query(userId, from, to, visitor);
+        }, userIds, fromMs, toMs, executor, sink);
+    }
+
+    /**
+     * Provides the store for synchronous reads, or null if it is not open yet or failed to open
+     */
+    public LocationHistoryStore getStore() {
+        return store;
+    }
+
+    /**
+     * Writes buffered fixes and stops the history thread
+     */
+    public void shutdown() {
+        executor.execute(() -> {
+            LocationHistoryStore current = store;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to close location history", e);
+                }
+            }
+        });
+        executor.shutdown();
+    }
+
+    private void deleteExpired() {
+        LocationHistoryStore current = store;
+        if (current == null) {
+            return;
+        }
+        try {
+            int deleted = current.deleteBefore(System.currentTimeMillis() - RETENTION_MS);
+            if (deleted > 0) {
+                Log.d(TAG, "Deleted " + deleted + " expired history segments");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to delete expired history", e);
+        }
+    }
+
+    private void flushStore() {
+        LocationHistoryStore current = store;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to flush location history", e);
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package com.omri.locationtrackerdemo.data.history;
+
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * On-device location history of any number of users, stored as append-only segment files.
+ *
+ * Each user has a directory holding one segment per time partition ({@code partitionMs},
+ * one hour by default). Fixes are buffered per user in a {@link TrackEncoder} and written
+ * as a block once {@code blockPoints} are buffered, the partition changes, a fix arrives
+ * out of time order, or {@link #flush()} is called. Every block records its time range in
+ * its header; these headers form a sparse time index, so a range query only maps the
+ * segments of the overlapping partitions and only decodes the overlapping blocks, starting
+ * at the key point of {@link TrackReader#seekToTime(long)}. A fix with the same time as
+ * the user's latest one, e.g. the same remote fix polled again, is not appended.
+ *
+ * Layout:
+ * - {@code <hex user ID>/<partition start, 20 digits>.seg}
+ * - block: int track length, long first time, long last time, int CRC32 of the track, track
+ *
+ * A torn block at the end of a segment (process killed mid-write) fails its length or
+ * CRC check and is truncated when the segment is first read. Buffered fixes that were
+ * not flushed are lost with the process, at most {@code blockPoints} per user.
+ * All methods are synchronized; appends are meant to run on a background thread,
+ * see {@link LocationHistory}.
+ */
+public class LocationHistoryStore implements Closeable {
+    public static final long DEFAULT_PARTITION_MS = 60 * 60 * 1000;
+    public static final int DEFAULT_BLOCK_POINTS = 256;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int BLOCK_HEADER_BYTES = 4 + 8 + 8 + 4;
+
+    /**
+     * Receives the points of a range query in the order they were appended,
+     * which is time order unless fixes arrived out of order
+     */
+    public interface PointVisitor {
+        /**
+         * @param reader Cursor positioned on the point; only valid during the call
+         * @return false to stop the query
+         */
+        boolean visit(TrackReader reader);
+    }
+
+    private static class Block {
+        final long offset;
+        final int length;
+        final long firstTimeMs;
+        final long lastTimeMs;
+
+        Block(long offset, int length, long firstTimeMs, long lastTimeMs) {
+            this.offset = offset;
+            this.length = length;
+            this.firstTimeMs = firstTimeMs;
+            this.lastTimeMs = lastTimeMs;
+        }
+    }
+
+    private static class Segment {
+        final File file;
+        // Null until the segment is first read or written
+        List<Block> blocks;
+        long bytes;
+        MappedByteBuffer mapped;
+
+        Segment(File file) {
+            this.file = file;
+        }
+    }
+
+    private static class UserTrack {
+        final File directory;
+        final NavigableMap<Long, Segment> segments = new TreeMap<>();
+        final TrackEncoder pending;
+        long pendingPartition;
+        // Time of the latest fix, read from the newest segment when an existing track is first appended to
+        long lastTimeMs;
+        boolean lastTimeKnown;
+
+        UserTrack(File directory, int indexInterval) {
+            this.directory = directory;
+            this.pending = new TrackEncoder(indexInterval);
+        }
+    }
+
+    private final File directory;
+    private final long partitionMs;
+    private final int blockPoints;
+    private final Map<String, UserTrack> users = new HashMap<>();
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+    private long pointCount;
+
+    /**
+     * Opens a store with one hour partitions and {@link #DEFAULT_BLOCK_POINTS} point blocks
+     * @param directory Root directory of the store, created if missing
+     */
+    public LocationHistoryStore(File directory) throws IOException {
+        this(directory, DEFAULT_PARTITION_MS, DEFAULT_BLOCK_POINTS);
+    }
+
+    /**
+     * Opens a store, listing the segments left by a previous process
+     * @param directory Root directory of the store, created if missing
+     * @param partitionMs Time span covered by one segment file
+     * @param blockPoints Number of buffered fixes that are written as one block
+     */
+    public LocationHistoryStore(File directory, long partitionMs, int blockPoints) throws IOException {
+        if (partitionMs <= 0 || blockPoints < 1) {
+            throw new IllegalArgumentException("Invalid partition or block size");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create history directory " + directory);
+        }
+        this.directory = directory;
+        this.partitionMs = partitionMs;
+        this.blockPoints = blockPoints;
+        File[] userDirectories = directory.listFiles(File::isDirectory);
+        if (userDirectories != null) {
+            for (File userDirectory : userDirectories) {
+                String userId = decodeUserId(userDirectory.getName());
+                if (userId != null) {
+                    users.put(userId, openTrack(userDirectory));
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends a fix of a user
+     * @param userId ID of the user
+     * @param sample The fix; speed and bearing are not stored
+     * @return False if the fix repeats the time of the user's latest fix and was skipped
+     */
+    public boolean append(String userId, LocationSample sample) throws IOException {
+        return append(userId, sample.getTimestampMs(), sample.getLatitude(), sample.getLongitude(),
+                sample.getAccuracyMeters());
+    }
+
+    /**
+     * Appends a fix of a user
+     * @param userId ID of the user
+     * @param timeMs Time of the fix in milliseconds since epoch
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @param accuracyMeters Horizontal accuracy radius, NaN if unknown
+     * @return False if the fix repeats the time of the user's latest fix and was skipped
+     */
+    public synchronized boolean append(String userId, long timeMs, double latitude, double longitude,
+                                       float accuracyMeters) throws IOException {
+        UserTrack track = users.get(userId);
+        if (track == null) {
+            track = new UserTrack(new File(directory, encodeUserId(userId)), indexInterval());
+            track.lastTimeKnown = true;
+            track.lastTimeMs = Long.MIN_VALUE;
+            users.put(userId, track);
+        }
+        if (!track.lastTimeKnown) {
+            loadLastTime(track);
+        }
+        if (timeMs == track.lastTimeMs) {
+            return false;
+        }
+        track.lastTimeMs = timeMs;
+        long partition = partitionOf(timeMs);
+        TrackEncoder pending = track.pending;
+        if (pending.size() > 0 && (partition != track.pendingPartition || timeMs < pending.getLastTimeMs())) {
+            // Blocks are time ordered and never span partitions
+            writePending(track);
+        }
+        track.pendingPartition = partition;
+        pending.append(timeMs, latitude, longitude, accuracyMeters);
+        pointCount++;
+        if (pending.size() >= blockPoints) {
+            writePending(track);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the buffered fixes of all users to their segments
+     */
+    public synchronized void flush() throws IOException {
+        for (UserTrack track : users.values()) {
+            if (track.pending.size() > 0) {
+                writePending(track);
+            }
+        }
+    }
+
+    /**
+     * Reads the fixes of a user in a time range, including buffered ones
+     * @param userId ID of the user
+     * @param fromMs Start of the range, inclusive
+     * @param toMs End of the range, exclusive
+     * @param visitor Receives the points
+     */
+    public synchronized void query(String userId, long fromMs, long toMs, PointVisitor visitor) throws IOException {
+        UserTrack track = users.get(userId);
+        if (track == null || fromMs >= toMs) {
+            return;
+        }
+        long fromPartition = partitionOf(fromMs);
+        for (Segment segment : track.segments.subMap(fromPartition, true, toMs, false).values()) {
+            loadBlocks(segment);
+            for (Block block : segment.blocks) {
+                if (block.lastTimeMs < fromMs || block.firstTimeMs >= toMs) {
+                    continue;
+                }
+                ByteBuffer buffer = map(segment).duplicate();
+                buffer.position((int) block.offset + BLOCK_HEADER_BYTES);
+                buffer.limit((int) block.offset + BLOCK_HEADER_BYTES + block.length);
+                if (!visitRange(TrackReader.open(buffer), fromMs, toMs, visitor)) {
+                    return;
+                }
+            }
+        }
+        if (track.pending.size() > 0) {
+            visitRange(TrackReader.open(track.pending.toByteArray()), fromMs, toMs, visitor);
+        }
+    }
+
+    /**
+     * Reads the fixes of a user in a time range into samples
+     * @param userId ID of the user
+     * @param fromMs Start of the range, inclusive
+     * @param toMs End of the range, exclusive
+     * @return The fixes in the order they were appended, see {@link PointVisitor}
+     */
+    public List<LocationSample> query(String userId, long fromMs, long toMs) throws IOException {
+        List<LocationSample> samples = new ArrayList<>();
+        query(userId, fromMs, toMs, reader -> samples.add(reader.toSample()));
+        return samples;
+    }
+
+    /**
+     * Deletes whole segments that end at or before a time, e.g. to keep a week of history
+     * @param timeMs Oldest time to keep
+     * @return Number of deleted segment files
+     */
+    public synchronized int deleteBefore(long timeMs) throws IOException {
+        int deleted = 0;
+        for (UserTrack track : users.values()) {
+            NavigableMap<Long, Segment> expired = track.segments.headMap(partitionOf(timeMs), false);
+            for (Segment segment : expired.values()) {
+                segment.mapped = null;
+                if (segment.file.exists() && !segment.file.delete()) {
+                    throw new IOException("Cannot delete " + segment.file);
+                }
+                deleted++;
+            }
+            expired.clear();
+        }
+        return deleted;
+    }
+
+    /**
+     * @return IDs of all users with recorded history
+     */
+    public synchronized List<String> getUserIds() {
+        return new ArrayList<>(users.keySet());
+    }
+
+    /**
+     * @return Number of fixes appended since the store was opened
+     */
+    public synchronized long getAppendedCount() {
+        return pointCount;
+    }
+
+    /**
+     * @return Bytes used by segment files
+     */
+    public synchronized long getDiskBytes() {
+        long bytes = 0;
+        for (UserTrack track : users.values()) {
+            for (Segment segment : track.segments.values()) {
+                bytes += segment.blocks != null ? segment.bytes : segment.file.length();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes buffered fixes. Mapped segments stay readable until they are garbage collected.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        for (UserTrack track : users.values()) {
+            for (Segment segment : track.segments.values()) {
+                segment.mapped = null;
+            }
+        }
+    }
+
+    /**
+     * Reads the time of the last fix in the newest segment of a track opened from disk
+     */
+    private void loadLastTime(UserTrack track) throws IOException {
+        track.lastTimeMs = Long.MIN_VALUE;
+        Map.Entry<Long, Segment> newest = track.segments.lastEntry();
+        if (newest != null) {
+            loadBlocks(newest.getValue());
+            List<Block> blocks = newest.getValue().blocks;
+            if (!blocks.isEmpty()) {
+                track.lastTimeMs = blocks.get(blocks.size() - 1).lastTimeMs;
+            }
+        }
+        track.lastTimeKnown = true;
+    }
+
+    private boolean visitRange(TrackReader reader, long fromMs, long toMs, PointVisitor visitor) {
+        reader.seekToTime(fromMs);
+        while (reader.next() && reader.getTimeMs() < toMs) {
+            if (!visitor.visit(reader)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writePending(UserTrack track) throws IOException {
+        TrackEncoder pending = track.pending;
+        byte[] encoded = pending.toByteArray();
+        long firstTimeMs = TrackReader.open(encoded).getFirstTimeMs();
+        long lastTimeMs = pending.getLastTimeMs();
+        pending.clear();
+
+        Segment segment = track.segments.get(track.pendingPartition);
+        if (segment == null) {
+            if (!track.directory.isDirectory() && !track.directory.mkdirs()) {
+                throw new IOException("Cannot create history directory " + track.directory);
+            }
+            segment = new Segment(new File(track.directory,
+                    String.format(Locale.US, "%020d%s", track.pendingPartition, SEGMENT_SUFFIX)));
+            track.segments.put(track.pendingPartition, segment);
+        }
+        loadBlocks(segment);
+
+        crc.reset();
+        crc.update(encoded, 0, encoded.length);
+        headerBuffer.clear();
+        headerBuffer.putInt(encoded.length);
+        headerBuffer.putLong(firstTimeMs);
+        headerBuffer.putLong(lastTimeMs);
+        headerBuffer.putInt((int) crc.getValue());
+        try (FileOutputStream out = new FileOutputStream(segment.file, true)) {
+            out.write(headerBuffer.array(), 0, BLOCK_HEADER_BYTES);
+            out.write(encoded);
+        }
+        segment.blocks.add(new Block(segment.bytes, encoded.length, firstTimeMs, lastTimeMs));
+        segment.bytes += BLOCK_HEADER_BYTES + encoded.length;
+    }
+
+    /**
+     * Maps the whole segment, again if it grew since the last mapping
+     */
+    private MappedByteBuffer map(Segment segment) throws IOException {
+        if (segment.mapped == null || segment.mapped.capacity() < segment.bytes) {
+            try (RandomAccessFile file = new RandomAccessFile(segment.file, "r")) {
+                segment.mapped = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, segment.bytes);
+            }
+        }
+        return segment.mapped;
+    }
+
+    /**
+     * Reads the block headers of a segment, truncating a torn block at its end
+     */
+    private void loadBlocks(Segment segment) throws IOException {
+        if (segment.blocks != null) {
+            return;
+        }
+        List<Block> blocks = new ArrayList<>();
+        long validBytes = 0;
+        if (segment.file.exists()) {
+            try (RandomAccessFile file = new RandomAccessFile(segment.file, "rw")) {
+                long length = file.length();
+                while (validBytes + BLOCK_HEADER_BYTES <= length) {
+                    file.seek(validBytes);
+                    int trackLength = file.readInt();
+                    long firstTimeMs = file.readLong();
+                    long lastTimeMs = file.readLong();
+                    int expectedCrc = file.readInt();
+                    long end = validBytes + BLOCK_HEADER_BYTES + trackLength;
+                    if (trackLength <= 0 || end > length || lastTimeMs < firstTimeMs) {
+                        break;
+                    }
+                    if (end == length && !checkCrc(file, trackLength, expectedCrc)) {
+                        // Only the last block can be torn, earlier ones were complete when followed
+                        break;
+                    }
+                    blocks.add(new Block(validBytes, trackLength, firstTimeMs, lastTimeMs));
+                    validBytes = end;
+                }
+                if (validBytes < length) {
+                    file.setLength(validBytes);
+                }
+            }
+        }
+        segment.blocks = blocks;
+        segment.bytes = validBytes;
+    }
+
+    private boolean checkCrc(RandomAccessFile file, int trackLength, int expectedCrc) throws IOException {
+        byte[] track = new byte[trackLength];
+        file.readFully(track);
+        crc.reset();
+        crc.update(track, 0, trackLength);
+        return (int) crc.getValue() == expectedCrc;
+    }
+
+    private UserTrack openTrack(File userDirectory) {
+        UserTrack track = new UserTrack(userDirectory, indexInterval());
+        File[] files = userDirectory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    long partition = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    track.segments.put(partition, new Segment(file));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        return track;
+    }
+
+    private int indexInterval() {
+        return Math.min(TrackEncoder.DEFAULT_INDEX_INTERVAL, blockPoints);
+    }
+
+    private long partitionOf(long timeMs) {
+        return Math.floorDiv(timeMs, partitionMs) * partitionMs;
+    }
+
+    /**
+     * User IDs become directory names as hex of their UTF-8 bytes, so any ID is a valid name
+     */
+    private static String encodeUserId(String userId) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : userId.getBytes(StandardCharsets.UTF_8)) {
+            name.append(String.format(Locale.US, "%02x", b & 0xFF));
+        }
+        return name.toString();
+    }
+
+    private static String decodeUserId(String name) {
+        if (name.isEmpty() || name.length() % 2 != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[name.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(name.charAt(2 * i), 16);
+            int low = Character.digit(name.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,209 @@
+package com.omri.locationtrackerdemo.data.history;
+
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Incrementally encodes a track of (time, latitude, longitude, accuracy) points into
+ * the compact format read by {@link TrackReader}.
+ *
+ * Coordinates are stored as fixed-point microdegrees (about 0.1 m), accuracy in
+ * decimeters. Every point is written as zig-zag varint deltas from the previous one,
+ * so a fix taken a few seconds and meters after the last costs about six bytes.
+ * Every {@code indexInterval} points a key point with absolute values is written and
+ * its byte offset and time recorded in the index, which lets a reader seek without
+ * decoding from the start.
+ *
+ * Layout:
+ * - magic "TRK", version byte
+ * - varint index interval, point count, index entry count
+ * - index entries: varint data offset delta, zig-zag time delta
+ * - varint data length, data
+ */
+public class TrackEncoder {
+    public static final int DEFAULT_INDEX_INTERVAL = 64;
+
+    static final byte[] MAGIC = {'T', 'R', 'K'};
+    static final byte VERSION = 1;
+    static final double MICRODEGREES = 1e6;
+    static final float ACCURACY_UNITS_PER_METER = 10;
+
+    private final int indexInterval;
+
+    private byte[] data = new byte[256];
+    private int dataLength;
+    private int[] indexOffsets = new int[16];
+    private long[] indexTimes = new long[16];
+    private int indexCount;
+    private int pointCount;
+
+    private long lastTime;
+    private long lastLat;
+    private long lastLon;
+    private long lastAccuracy;
+
+    /**
+     * Creates an encoder writing a key point every {@link #DEFAULT_INDEX_INTERVAL} points
+     */
+    public TrackEncoder() {
+        this(DEFAULT_INDEX_INTERVAL);
+    }
+
+    /**
+     * Creates an encoder
+     * @param indexInterval Number of points between two key points
+     */
+    public TrackEncoder(int indexInterval) {
+        if (indexInterval < 1) {
+            throw new IllegalArgumentException("Invalid index interval");
+        }
+        this.indexInterval = indexInterval;
+    }
+
+    /**
+     * Appends a sample, keeping its time, position and accuracy
+     * @param sample The fix to append
+     */
+    public void append(LocationSample sample) {
+        append(sample.getTimestampMs(), sample.getLatitude(), sample.getLongitude(),
+                sample.getAccuracyMeters());
+    }
+
+    /**
+     * Appends a point
+     * @param timeMs Time of the fix in milliseconds since epoch
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @param accuracyMeters Horizontal accuracy radius, NaN if unknown
+     */
+    public void append(long timeMs, double latitude, double longitude, float accuracyMeters) {
+        long lat = toMicrodegrees(latitude);
+        long lon = toMicrodegrees(longitude);
+        long accuracy = toAccuracyUnits(accuracyMeters);
+
+        ensureCapacity(4 * VarInts.MAX_BYTES);
+        if (pointCount % indexInterval == 0) {
+            addIndexEntry(timeMs);
+            dataLength = VarInts.write(VarInts.zigZag(timeMs), data, dataLength);
+            dataLength = VarInts.write(VarInts.zigZag(lat), data, dataLength);
+            dataLength = VarInts.write(VarInts.zigZag(lon), data, dataLength);
+            dataLength = VarInts.write(accuracy, data, dataLength);
+        } else {
+            dataLength = VarInts.write(VarInts.zigZag(timeMs - lastTime), data, dataLength);
+            dataLength = VarInts.write(VarInts.zigZag(lat - lastLat), data, dataLength);
+            dataLength = VarInts.write(VarInts.zigZag(lon - lastLon), data, dataLength);
+            dataLength = VarInts.write(VarInts.zigZag(accuracy - lastAccuracy), data, dataLength);
+        }
+        lastTime = timeMs;
+        lastLat = lat;
+        lastLon = lon;
+        lastAccuracy = accuracy;
+        pointCount++;
+    }
+
+    static long toMicrodegrees(double degrees) {
+        return Math.round(degrees * MICRODEGREES);
+    }
+
+    /**
+     * Accuracy in decimeters plus one, zero meaning unknown
+     */
+    static long toAccuracyUnits(float accuracyMeters) {
+        if (Float.isNaN(accuracyMeters) || accuracyMeters < 0) {
+            return 0;
+        }
+        return Math.min(Math.round(accuracyMeters * ACCURACY_UNITS_PER_METER), Integer.MAX_VALUE) + 1;
+    }
+
+    private void addIndexEntry(long timeMs) {
+        if (indexCount == indexOffsets.length) {
+            indexOffsets = Arrays.copyOf(indexOffsets, indexCount * 2);
+            indexTimes = Arrays.copyOf(indexTimes, indexCount * 2);
+        }
+        indexOffsets[indexCount] = dataLength;
+        indexTimes[indexCount] = timeMs;
+        indexCount++;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (dataLength + extra > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + extra));
+        }
+    }
+
+    /**
+     * Number of appended points
+     */
+    public int size() {
+        return pointCount;
+    }
+
+    /**
+     * Size of the encoded point data, excluding header and index
+     */
+    public int getDataBytes() {
+        return dataLength;
+    }
+
+    /**
+     * Time of the last appended point
+     * @throws IllegalStateException if the track is empty
+     */
+    public long getLastTimeMs() {
+        if (pointCount == 0) {
+            throw new IllegalStateException("Empty track");
+        }
+        return lastTime;
+    }
+
+    /**
+     * Drops all points so the encoder can be reused without reallocating
+     */
+    public void clear() {
+        dataLength = 0;
+        indexCount = 0;
+        pointCount = 0;
+    }
+
+    /**
+     * Writes header, index and data
+     * @param out Destination stream, not closed
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] header = new byte[MAGIC.length + 1 + (4 + 2 * indexCount) * VarInts.MAX_BYTES];
+        System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+        int offset = MAGIC.length;
+        header[offset++] = VERSION;
+        offset = VarInts.write(indexInterval, header, offset);
+        offset = VarInts.write(pointCount, header, offset);
+        offset = VarInts.write(indexCount, header, offset);
+        int previousOffset = 0;
+        long previousTime = 0;
+        for (int i = 0; i < indexCount; i++) {
+            offset = VarInts.write(indexOffsets[i] - previousOffset, header, offset);
+            offset = VarInts.write(VarInts.zigZag(indexTimes[i] - previousTime), header, offset);
+            previousOffset = indexOffsets[i];
+            previousTime = indexTimes[i];
+        }
+        offset = VarInts.write(dataLength, header, offset);
+        out.write(header, 0, offset);
+        out.write(data, 0, dataLength);
+    }
+
+    /**
+     * Encodes the track into a new array
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(dataLength + 16 + indexCount * 4);
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,370 @@
+package com.omri.locationtrackerdemo.data.history;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Replays recorded tracks of several users on a playback clock running 1 to 500 times
+ * faster than real time, with pause and seek.
+ *
+ * The clock advances on every display frame ({@link #onFrame(long)}) and each frame
+ * delivers at most one fix per user, the latest one the clock has passed, so fast
+ * playback skips intermediate fixes instead of flooding the UI thread. Fixes are read
+ * from the {@link Source} in windows of track time on the loader executor, one window
+ * ahead of the clock, so the whole track is never held in memory.
+ *
+ * All methods except the loading itself run on the frame thread. Driven with synthetic
+ * frame times and a direct executor the output is deterministic, which makes the
+ * playback usable as a load source for rendering benchmarks.
+ */
+public class TrackPlayback {
+    public static final double MIN_SPEED = 1;
+    public static final double MAX_SPEED = 500;
+    /** Wall time of playback a loaded window covers */
+    static final long WINDOW_WALL_MS = 2_000;
+    static final long MIN_WINDOW_MS = 10_000;
+    /** How far before a seek target fixes are read, so users appear where they last were */
+    static final long SEEK_LOOKBACK_MS = 5 * 60_000;
+    /** Longest wall time one frame may advance the clock by, e.g. after the app was stalled */
+    static final long MAX_FRAME_MS = 250;
+
+    /**
+     * Reads recorded fixes, e.g. {@code LocationHistoryStore::query}
+     */
+    public interface Source {
+        void read(String userId, long fromMs, long toMs, LocationHistoryStore.PointVisitor visitor)
+                throws IOException;
+    }
+
+    /**
+     * Receives the replayed fixes on the frame thread
+     */
+    public interface Sink {
+        /**
+         * @param isFirst Whether this is the user's first fix since the start or the last seek
+         */
+        void onPlaybackFix(String userId, long timeMs, double latitude, double longitude, boolean isFirst);
+
+        void onPlaybackError(String error);
+
+        void onPlaybackFinished();
+    }
+
+    /**
+     * Fixes of all users in a range of track time, in time order per user
+     */
+    private static final class Window {
+        final int generation;
+        final long toMs;
+        final long[][] times;
+        final double[][] latitudes;
+        final double[][] longitudes;
+        final int[] counts;
+        final int[] cursors;
+        final String error;
+
+        Window(int generation, long toMs, int users, String error) {
+            this.generation = generation;
+            this.toMs = toMs;
+            this.times = new long[users][];
+            this.latitudes = new double[users][];
+            this.longitudes = new double[users][];
+            this.counts = new int[users];
+            this.cursors = new int[users];
+            this.error = error;
+        }
+    }
+
+    private final Source source;
+    private final String[] userIds;
+    private final long startMs;
+    private final long endMs;
+    private final Executor loader;
+    private final Sink sink;
+
+    private final ConcurrentLinkedQueue<Window> loaded = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<Window> windows = new ArrayDeque<>();
+    private final Set<String> deliveredUsers = new HashSet<>();
+    // Incremented by seek, so windows loaded for the old position are dropped
+    private int generation;
+    private boolean loading;
+    private long loadedUntilMs;
+
+    private double positionMs;
+    private double speed = MIN_SPEED;
+    private boolean playing;
+    private boolean finished;
+    private long lastFrameNanos;
+
+    private long deliveredCount;
+    private long skippedCount;
+
+    /**
+     * Creates a playback positioned at the start of the range
+     * @param source Reads the recorded fixes
+     * @param userIds Users to replay
+     * @param startMs Start of the replayed time range
+     * @param endMs End of the replayed time range
+     * @param loader Executor reading windows, e.g. the history thread
+     * @param sink Receives the fixes
+     */
+    public TrackPlayback(Source source, Collection<String> userIds, long startMs, long endMs,
+                         Executor loader, Sink sink) {
+        if (endMs <= startMs) {
+            throw new IllegalArgumentException("Empty time range");
+        }
+        this.source = source;
+        this.userIds = userIds.toArray(new String[0]);
+        this.startMs = startMs;
+        this.endMs = endMs;
+        this.loader = loader;
+        this.sink = sink;
+        seek(startMs);
+    }
+
+    public void play() {
+        if (finished) {
+            seek(startMs);
+        }
+        playing = true;
+        lastFrameNanos = 0;
+    }
+
+    public void pause() {
+        playing = false;
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * Sets how many times faster than real time the clock runs
+     * @param speed Multiplier, clamped to {@link #MIN_SPEED}..{@link #MAX_SPEED}
+     */
+    public void setSpeed(double speed) {
+        this.speed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Moves the clock; the next frame shows every user at its last fix before the time
+     * @param timeMs Track time, clamped to the replayed range
+     */
+    public void seek(long timeMs) {
+        long target = Math.max(startMs, Math.min(endMs, timeMs));
+        generation++;
+        windows.clear();
+        loaded.clear();
+        deliveredUsers.clear();
+        loading = false;
+        finished = false;
+        positionMs = target;
+        loadedUntilMs = Math.max(startMs, target - SEEK_LOOKBACK_MS);
+        requestWindow();
+    }
+
+    /**
+     * Whether a window is being read; it is picked up by a later frame, also while paused
+     */
+    public boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * Current track time of the clock
+     */
+    public long getPositionMs() {
+        return (long) positionMs;
+    }
+
+    public long getStartMs() {
+        return startMs;
+    }
+
+    public long getEndMs() {
+        return endMs;
+    }
+
+    /**
+     * @return Number of fixes handed to the sink
+     */
+    public long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /**
+     * @return Number of fixes passed within a frame and superseded by a later one
+     */
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Advances the clock by the time since the previous frame and delivers the fixes it passed
+     * @param frameTimeNanos Frame time, e.g. from Choreographer
+     */
+    public void onFrame(long frameTimeNanos) {
+        takeLoadedWindows();
+        if (playing && lastFrameNanos != 0) {
+            double elapsedMs = Math.min(MAX_FRAME_MS, (frameTimeNanos - lastFrameNanos) / 1e6);
+            positionMs = Math.min(endMs, positionMs + Math.max(0, elapsedMs) * speed);
+        }
+        lastFrameNanos = frameTimeNanos;
+        dispatch();
+        requestWindow();
+        if (playing && positionMs >= endMs && windows.isEmpty() && !loading && loadedUntilMs >= endMs) {
+            playing = false;
+            finished = true;
+            sink.onPlaybackFinished();
+        }
+    }
+
+    private void takeLoadedWindows() {
+        Window window;
+        while ((window = loaded.poll()) != null) {
+            if (window.generation != generation) {
+                continue;
+            }
+            loading = false;
+            if (window.error != null) {
+                playing = false;
+                sink.onPlaybackError(window.error);
+                continue;
+            }
+            windows.add(window);
+        }
+    }
+
+    /**
+     * Delivers each user's latest fix at or before the clock, dropping windows the clock has passed
+     */
+    private void dispatch() {
+        long position = (long) positionMs;
+        for (int user = 0; user < userIds.length; user++) {
+            Window last = null;
+            int lastIndex = -1;
+            int passed = 0;
+            for (Window window : windows) {
+                int cursor = window.cursors[user];
+                while (cursor < window.counts[user] && window.times[user][cursor] <= position) {
+                    last = window;
+                    lastIndex = cursor;
+                    cursor++;
+                    passed++;
+                }
+                window.cursors[user] = cursor;
+                if (cursor < window.counts[user]) {
+                    break;
+                }
+            }
+            if (last != null) {
+                String userId = userIds[user];
+                skippedCount += passed - 1;
+                deliveredCount++;
+                sink.onPlaybackFix(userId, last.times[user][lastIndex], last.latitudes[user][lastIndex],
+                        last.longitudes[user][lastIndex], deliveredUsers.add(userId));
+            }
+        }
+        while (!windows.isEmpty() && windows.peek().toMs <= position && isConsumed(windows.peek())) {
+            windows.poll();
+        }
+    }
+
+    private boolean isConsumed(Window window) {
+        for (int user = 0; user < userIds.length; user++) {
+            if (window.cursors[user] < window.counts[user]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts loading the next window once the clock comes within one window of the loaded range
+     */
+    private void requestWindow() {
+        long windowMs = Math.max(MIN_WINDOW_MS, (long) (WINDOW_WALL_MS * speed));
+        if (loading || loadedUntilMs >= endMs || loadedUntilMs - positionMs > windowMs) {
+            return;
+        }
+        final long fromMs = loadedUntilMs;
+        final long toMs = Math.min(endMs, Math.max(fromMs, (long) positionMs) + windowMs);
+        final int requestGeneration = generation;
+        loading = true;
+        loadedUntilMs = toMs;
+        loader.execute(() -> loaded.add(load(requestGeneration, fromMs, toMs)));
+    }
+
+    /**
+     * Reads one window. Runs on the loader executor.
+     */
+    private Window load(int requestGeneration, long fromMs, long toMs) {
+        Window window = new Window(requestGeneration, toMs, userIds.length, null);
+        try {
+            for (int user = 0; user < userIds.length; user++) {
+                final int index = user;
+                window.times[index] = new long[16];
+                window.latitudes[index] = new double[16];
+                window.longitudes[index] = new double[16];
+                source.read(userIds[user], fromMs, toMs, reader -> {
+                    int count = window.counts[index];
+                    if (count == window.times[index].length) {
+                        window.times[index] = Arrays.copyOf(window.times[index], count * 2);
+                        window.latitudes[index] = Arrays.copyOf(window.latitudes[index], count * 2);
+                        window.longitudes[index] = Arrays.copyOf(window.longitudes[index], count * 2);
+                    }
+                    window.times[index][count] = reader.getTimeMs();
+                    window.latitudes[index][count] = reader.getLatitude();
+                    window.longitudes[index][count] = reader.getLongitude();
+                    window.counts[index] = count + 1;
+                    return true;
+                });
+                sortByTime(window, index);
+            }
+        } catch (IOException e) {
+            return new Window(requestGeneration, toMs, userIds.length, "Failed to read history: " + e.getMessage());
+        }
+        return window;
+    }
+
+    /**
+     * Fixes arrive in append order, which is only out of time order after clock jumps
+     */
+    private static void sortByTime(Window window, int user) {
+        long[] times = window.times[user];
+        int count = window.counts[user];
+        boolean sorted = true;
+        for (int i = 1; i < count && sorted; i++) {
+            sorted = times[i - 1] <= times[i];
+        }
+        if (sorted) {
+            return;
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(times[a], times[b]));
+        long[] sortedTimes = new long[count];
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        for (int i = 0; i < count; i++) {
+            sortedTimes[i] = times[order[i]];
+            latitudes[i] = window.latitudes[user][order[i]];
+            longitudes[i] = window.longitudes[user][order[i]];
+        }
+        window.times[user] = sortedTimes;
+        window.latitudes[user] = latitudes;
+        window.longitudes[user] = longitudes;
+    }
+}
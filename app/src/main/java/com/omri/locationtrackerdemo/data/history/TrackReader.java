@@ -0,0 +1,248 @@
+package com.omri.locationtrackerdemo.data.history;
+
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Forward cursor over a track written by {@link TrackEncoder}.
+ *
+ * Points are decoded one at a time into primitive fields, so iterating a track does
+ * not allocate per point and works directly on a heap or memory-mapped buffer.
+ * {@link #seek(int)} and {@link #seekToTime(long)} jump to the nearest preceding key
+ * point through the index and decode at most {@code indexInterval} points from there.
+ *
+ * Usage:
+ * <pre>
+ * TrackReader reader = TrackReader.open(buffer);
+ * reader.seekToTime(from);
+ * while (reader.next() &amp;&amp; reader.getTimeMs() &lt; to) { ... }
+ * </pre>
+ */
+public class TrackReader {
+    private final ByteBuffer data;
+    private final int indexInterval;
+    private final int pointCount;
+    private final int[] indexOffsets;
+    private final long[] indexTimes;
+
+    // Index of the point the cursor is on, -1 before the first next()
+    private int position = -1;
+    // Set by seekToTime() when the matching point is already decoded
+    private boolean holdCurrent;
+
+    private long time;
+    private long lat;
+    private long lon;
+    private long accuracy;
+
+    private TrackReader(ByteBuffer data, int indexInterval, int pointCount,
+                        int[] indexOffsets, long[] indexTimes) {
+        this.data = data;
+        this.indexInterval = indexInterval;
+        this.pointCount = pointCount;
+        this.indexOffsets = indexOffsets;
+        this.indexTimes = indexTimes;
+    }
+
+    /**
+     * Opens an encoded track
+     * @param bytes Output of {@link TrackEncoder#toByteArray()}
+     */
+    public static TrackReader open(byte[] bytes) throws IOException {
+        return open(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Opens an encoded track starting at the buffer position. The buffer itself is
+     * not modified; the reader works on a view of it.
+     * @param buffer Buffer holding one encoded track
+     * @throws IOException if the buffer does not hold a valid track
+     */
+    public static TrackReader open(ByteBuffer buffer) throws IOException {
+        ByteBuffer in = buffer.slice();
+        try {
+            for (byte b : TrackEncoder.MAGIC) {
+                if (in.get() != b) {
+                    throw new IOException("Not a track");
+                }
+            }
+            if (in.get() != TrackEncoder.VERSION) {
+                throw new IOException("Unsupported track version");
+            }
+            int indexInterval = (int) VarInts.read(in);
+            int pointCount = (int) VarInts.read(in);
+            int indexCount = (int) VarInts.read(in);
+            if (indexInterval < 1 || pointCount < 0 || indexCount < 0
+                    || indexCount != (pointCount + indexInterval - 1) / indexInterval) {
+                throw new IOException("Corrupt track header");
+            }
+            int[] offsets = new int[indexCount];
+            long[] times = new long[indexCount];
+            int offset = 0;
+            long time = 0;
+            for (int i = 0; i < indexCount; i++) {
+                offset += (int) VarInts.read(in);
+                time += VarInts.unZigZag(VarInts.read(in));
+                offsets[i] = offset;
+                times[i] = time;
+            }
+            int dataLength = (int) VarInts.read(in);
+            if (dataLength < 0 || dataLength > in.remaining()) {
+                throw new IOException("Truncated track");
+            }
+            ByteBuffer data = in.slice();
+            data.limit(dataLength);
+            return new TrackReader(data, indexInterval, pointCount, offsets, times);
+        } catch (BufferUnderflowException | IllegalStateException e) {
+            throw new IOException("Truncated track", e);
+        }
+    }
+
+    /**
+     * Advances to the next point
+     * @return false when the track has no more points
+     */
+    public boolean next() {
+        if (holdCurrent) {
+            holdCurrent = false;
+            return true;
+        }
+        if (position + 1 >= pointCount) {
+            return false;
+        }
+        position++;
+        if (position % indexInterval == 0) {
+            time = VarInts.unZigZag(VarInts.read(data));
+            lat = VarInts.unZigZag(VarInts.read(data));
+            lon = VarInts.unZigZag(VarInts.read(data));
+            accuracy = VarInts.read(data);
+        } else {
+            time += VarInts.unZigZag(VarInts.read(data));
+            lat += VarInts.unZigZag(VarInts.read(data));
+            lon += VarInts.unZigZag(VarInts.read(data));
+            accuracy += VarInts.unZigZag(VarInts.read(data));
+        }
+        return true;
+    }
+
+    /**
+     * Positions the cursor so that the next call to {@link #next()} returns the given point
+     * @param pointIndex Index of the point, 0 based
+     */
+    public void seek(int pointIndex) {
+        if (pointIndex < 0 || pointIndex > pointCount) {
+            throw new IndexOutOfBoundsException("Point " + pointIndex + " of " + pointCount);
+        }
+        holdCurrent = false;
+        if (pointIndex == pointCount) {
+            position = pointCount - 1;
+            return;
+        }
+        int key = pointIndex / indexInterval;
+        data.position(indexOffsets[key]);
+        position = key * indexInterval - 1;
+        while (position + 1 < pointIndex) {
+            next();
+        }
+    }
+
+    /**
+     * Positions the cursor so that the next call to {@link #next()} returns the first
+     * point at or after the given time. Assumes points were appended in time order.
+     * @param timeMs Time in milliseconds since epoch
+     */
+    public void seekToTime(long timeMs) {
+        int key = Arrays.binarySearch(indexTimes, timeMs);
+        if (key < 0) {
+            // Start at the last key point before the time, or the first one
+            key = Math.max(0, -key - 2);
+        } else {
+            // Equal times can span key points, start at the first of them
+            while (key > 0 && indexTimes[key - 1] == timeMs) {
+                key--;
+            }
+        }
+        seek(Math.min(key * indexInterval, pointCount));
+        while (next()) {
+            if (time >= timeMs) {
+                holdCurrent = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Number of points in the track
+     */
+    public int size() {
+        return pointCount;
+    }
+
+    public int getIndexInterval() {
+        return indexInterval;
+    }
+
+    /**
+     * Index of the current point, -1 before the first {@link #next()}
+     */
+    public int getPosition() {
+        return holdCurrent ? position - 1 : position;
+    }
+
+    /**
+     * Time of the last point, decoding at most one index interval
+     * @throws IllegalStateException if the track is empty
+     */
+    public long getLastTimeMs() {
+        if (pointCount == 0) {
+            throw new IllegalStateException("Empty track");
+        }
+        TrackReader copy = new TrackReader(data.duplicate(), indexInterval, pointCount,
+                indexOffsets, indexTimes);
+        copy.seek(pointCount - 1);
+        copy.next();
+        return copy.time;
+    }
+
+    /**
+     * Time of the first point
+     * @throws IllegalStateException if the track is empty
+     */
+    public long getFirstTimeMs() {
+        if (pointCount == 0) {
+            throw new IllegalStateException("Empty track");
+        }
+        return indexTimes[0];
+    }
+
+    public long getTimeMs() {
+        return time;
+    }
+
+    public double getLatitude() {
+        return lat / TrackEncoder.MICRODEGREES;
+    }
+
+    public double getLongitude() {
+        return lon / TrackEncoder.MICRODEGREES;
+    }
+
+    /**
+     * Accuracy of the current point, NaN if it was unknown
+     */
+    public float getAccuracyMeters() {
+        return accuracy == 0 ? Float.NaN : (accuracy - 1) / TrackEncoder.ACCURACY_UNITS_PER_METER;
+    }
+
+    /**
+     * Copies the current point into a sample; speed and bearing are not stored
+     */
+    public LocationSample toSample() {
+        return new LocationSample(getLatitude(), getLongitude(), getAccuracyMeters(),
+                Float.NaN, Float.NaN, time);
+    }
+}
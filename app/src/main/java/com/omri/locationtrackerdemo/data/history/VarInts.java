@@ -0,0 +1,55 @@
+package com.omri.locationtrackerdemo.data.history;
+
+import java.nio.ByteBuffer;
+
+/**
+ * LEB128 style variable length integers with zig-zag mapping for signed deltas,
+ * so small positive and negative values both take one or two bytes.
+ * Shared by the history track format and the location wire format.
+ */
+public final class VarInts {
+    /** Longest encoding of a 64 bit value */
+    public static final int MAX_BYTES = 10;
+
+    private VarInts() {
+    }
+
+    public static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes an unsigned varint
+     * @param value Value, treated as unsigned
+     * @param target Destination with at least {@link #MAX_BYTES} free from offset
+     * @param offset Position of the first byte
+     * @return Position after the last written byte
+     */
+    public static int write(long value, byte[] target, int offset) {
+        while ((value & ~0x7FL) != 0) {
+            target[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        target[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * Reads an unsigned varint at the buffer position and advances it
+     */
+    public static long read(ByteBuffer buffer) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+}
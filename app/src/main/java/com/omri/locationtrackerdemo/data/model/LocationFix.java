@@ -0,0 +1,75 @@
+package com.omri.locationtrackerdemo.data.model;
+
+/**
+ * Immutable snapshot of a single location fix of a user.
+ * Plain Java counterpart of android.location.Location and the tracking library's
+ * Location, holding only what is uploaded and stored.
+ */
+public final class LocationFix {
+    /** Sequence value of fixes that have not been written to the journal */
+    public static final long NO_SEQUENCE = -1;
+
+    private final String userId;
+    private final double latitude;
+    private final double longitude;
+    private final long timestampMs;
+    private final long sequence;
+
+    /**
+     * Creates a new fix
+     * @param userId ID of the user the fix belongs to
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @param timestampMs Wall clock time of the fix in milliseconds since epoch
+     */
+    public LocationFix(String userId, double latitude, double longitude, long timestampMs) {
+        this(userId, latitude, longitude, timestampMs, NO_SEQUENCE);
+    }
+
+    /**
+     * Creates a new fix with a journal sequence number
+     * @param sequence Sequence number assigned by the journal
+     */
+    public LocationFix(String userId, double latitude, double longitude, long timestampMs, long sequence) {
+        this.userId = userId;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.timestampMs = timestampMs;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Returns a copy of this fix carrying the given journal sequence number
+     */
+    public LocationFix withSequence(long sequence) {
+        return new LocationFix(userId, latitude, longitude, timestampMs, sequence);
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public long getTimestampMs() {
+        return timestampMs;
+    }
+
+    /**
+     * @return Journal sequence number, or {@link #NO_SEQUENCE} if the fix was not journaled
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public String toString() {
+        return "LocationFix{" + userId + " " + latitude + "," + longitude + " @" + timestampMs + "}";
+    }
+}
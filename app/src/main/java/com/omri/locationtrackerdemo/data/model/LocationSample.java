@@ -0,0 +1,70 @@
+package com.omri.locationtrackerdemo.data.model;
+
+/**
+ * Immutable plain Java copy of a device fix as delivered by the location provider,
+ * including the quality and motion fields that android.location.Location may omit.
+ * Missing values are stored as {@link Float#NaN}.
+ */
+public final class LocationSample {
+    private final double latitude;
+    private final double longitude;
+    private final float accuracyMeters;
+    private final float speedMps;
+    private final float bearingDegrees;
+    private final long timestampMs;
+
+    /**
+     * Creates a new sample
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @param accuracyMeters Horizontal accuracy radius, NaN if unknown
+     * @param speedMps Ground speed in meters per second, NaN if unknown
+     * @param bearingDegrees Bearing in degrees clockwise from north, NaN if unknown
+     * @param timestampMs Time of the fix in milliseconds since epoch
+     */
+    public LocationSample(double latitude, double longitude, float accuracyMeters,
+                          float speedMps, float bearingDegrees, long timestampMs) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracyMeters = accuracyMeters;
+        this.speedMps = speedMps;
+        this.bearingDegrees = bearingDegrees;
+        this.timestampMs = timestampMs;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public float getAccuracyMeters() {
+        return accuracyMeters;
+    }
+
+    public boolean hasAccuracy() {
+        return !Float.isNaN(accuracyMeters);
+    }
+
+    public float getSpeedMps() {
+        return speedMps;
+    }
+
+    public boolean hasSpeed() {
+        return !Float.isNaN(speedMps);
+    }
+
+    public float getBearingDegrees() {
+        return bearingDegrees;
+    }
+
+    public boolean hasBearing() {
+        return !Float.isNaN(bearingDegrees);
+    }
+
+    public long getTimestampMs() {
+        return timestampMs;
+    }
+}
@@ -0,0 +1,54 @@
+package com.omri.locationtrackerdemo.data.network;
+
+import com.omri.trackinglibrary.LocationTrackerImpl;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Process-wide networking shared by all screens, so that the tracking library's own client
+ * and its pooled connections survive activity transitions.
+ * The tracking library builds its HTTP client inside {@link LocationTrackerImpl} and does
+ * not expose it or its endpoint, so the runtime shares one tracker instead of each
+ * repository creating its own. Its connection is opened by the first lookup, see
+ * {@code LocationRepository.prefetchUser}. The app's own endpoints, e.g. binary uploads,
+ * share a separate {@link OkHttpClient}.
+ */
+public class NetworkRuntime {
+    private static NetworkRuntime defaultRuntime;
+
+    private LocationTrackerImpl locationTracker;
+    private OkHttpClient httpClient;
+
+    /**
+     * The process-wide runtime, created on first use
+     */
+    public static synchronized NetworkRuntime getDefault() {
+        if (defaultRuntime == null) {
+            defaultRuntime = new NetworkRuntime();
+        }
+        return defaultRuntime;
+    }
+
+    NetworkRuntime() {
+    }
+
+    /**
+     * Provides the tracking library instance shared by all repositories
+     */
+    public synchronized LocationTrackerImpl getLocationTracker() {
+        if (locationTracker == null) {
+            locationTracker = new LocationTrackerImpl();
+        }
+        return locationTracker;
+    }
+
+    /**
+     * Provides the client for the app's own endpoints, created on first use
+     */
+    public synchronized OkHttpClient getHttpClient() {
+        if (httpClient == null) {
+            httpClient = new OkHttpClient();
+        }
+        return httpClient;
+    }
+}
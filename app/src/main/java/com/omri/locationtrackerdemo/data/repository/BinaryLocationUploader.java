@@ -0,0 +1,116 @@
+package com.omri.locationtrackerdemo.data.repository;
+
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+import com.omri.locationtrackerdemo.data.wire.LocationFrameCodec;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Uploads batches of fixes as one binary {@link LocationFrameCodec} frame per request.
+ *
+ * The format is negotiated by the response: a server that does not know the endpoint or
+ * the media type answers 404, 405, 406, 415 or 501, after which the uploader reports
+ * itself unsupported and the caller uploads with the JSON API instead. Any other failure
+ * is an ordinary upload error and the binary format is tried again with the next batch.
+ */
+public class BinaryLocationUploader {
+    private static final MediaType FRAME_TYPE = MediaType.parse(LocationFrameCodec.CONTENT_TYPE);
+
+    public interface Callback {
+        void onSuccess();
+
+        /**
+         * Called when the server rejected the format; the batch was not stored
+         * @param code HTTP status of the rejection
+         */
+        void onUnsupported(int code);
+
+        void onError(String error);
+    }
+
+    private final OkHttpClient httpClient;
+    private final String url;
+    private volatile boolean supported = true;
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong fixesSent = new AtomicLong();
+
+    /**
+     * Creates an uploader
+     * @param httpClient Client performing the requests
+     * @param url Endpoint accepting POSTed frames
+     */
+    public BinaryLocationUploader(OkHttpClient httpClient, String url) {
+        this.httpClient = httpClient;
+        this.url = url;
+    }
+
+    /**
+     * Posts the fixes as one frame
+     * @param fixes Batch to upload, never empty
+     * @param callback Called once with the result on an OkHttp thread
+     */
+    public void upload(List<LocationFix> fixes, Callback callback) {
+        final byte[] frame = LocationFrameCodec.encode(fixes);
+        Request request = new Request.Builder()
+                .url(url)
+                .header("Accept", LocationFrameCodec.CONTENT_TYPE + ", application/json")
+                .post(RequestBody.create(FRAME_TYPE, frame))
+                .build();
+        httpClient.newCall(request).enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                callback.onError("Frame upload failed: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                int code = response.code();
+                response.close();
+                if (response.isSuccessful()) {
+                    bytesSent.addAndGet(frame.length);
+                    fixesSent.addAndGet(fixes.size());
+                    callback.onSuccess();
+                } else if (isRejection(code)) {
+                    supported = false;
+                    callback.onUnsupported(code);
+                } else {
+                    callback.onError("Frame upload failed: HTTP " + code);
+                }
+            }
+        });
+    }
+
+    private static boolean isRejection(int code) {
+        return code == 404 || code == 405 || code == 406 || code == 415 || code == 501;
+    }
+
+    /**
+     * @return false once the server rejected the format
+     */
+    public boolean isSupported() {
+        return supported;
+    }
+
+    /**
+     * Number of frame bytes in successful uploads
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * Number of fixes in successful uploads
+     */
+    public long getFixesSent() {
+        return fixesSent.get();
+    }
+}
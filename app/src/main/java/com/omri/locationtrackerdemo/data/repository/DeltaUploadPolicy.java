@@ -0,0 +1,147 @@
+package com.omri.locationtrackerdemo.data.repository;
+
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+import com.omri.locationtrackerdemo.utils.GeoUtils;
+
+/**
+ * Send-on-delta upload policy. A fix is uploaded only when, compared with the last
+ * uploaded fix:
+ * - the position moved further than the larger of both accuracy radii (at least
+ *   {@code minDistanceMeters}), so GPS jitter of a standing user is ignored
+ * - the heading changed by {@code headingChangeDegrees} while moving
+ * - the speed changed by {@code speedChangeMps}
+ * - {@code heartbeatMs} passed, which keeps the user marked as active on the server
+ * Counters per trigger make the upload reduction measurable.
+ */
+public class DeltaUploadPolicy implements UploadPolicy {
+    public static final double DEFAULT_MIN_DISTANCE_METERS = 5;
+    public static final double DEFAULT_HEADING_CHANGE_DEGREES = 30;
+    public static final double DEFAULT_SPEED_CHANGE_MPS = 3;
+    public static final long DEFAULT_HEARTBEAT_MS = 60_000;
+
+    /** Below this speed the bearing reported by the provider is noise */
+    private static final float MIN_SPEED_FOR_HEADING_MPS = 1.5f;
+
+    private final double minDistanceMeters;
+    private final double headingChangeDegrees;
+    private final double speedChangeMps;
+    private final long heartbeatMs;
+
+    private LocationSample lastUploaded;
+    private long evaluatedCount;
+    private long uploadedCount;
+    private long distanceTriggers;
+    private long headingTriggers;
+    private long speedTriggers;
+    private long heartbeatTriggers;
+
+    /**
+     * Creates a policy with the default thresholds
+     */
+    public DeltaUploadPolicy() {
+        this(DEFAULT_MIN_DISTANCE_METERS, DEFAULT_HEADING_CHANGE_DEGREES,
+                DEFAULT_SPEED_CHANGE_MPS, DEFAULT_HEARTBEAT_MS);
+    }
+
+    /**
+     * Creates a policy with custom thresholds
+     * @param minDistanceMeters Smallest displacement that triggers an upload
+     * @param headingChangeDegrees Heading change that triggers an upload while moving
+     * @param speedChangeMps Speed change that triggers an upload
+     * @param heartbeatMs Longest time between two uploads
+     */
+    public DeltaUploadPolicy(double minDistanceMeters, double headingChangeDegrees,
+                             double speedChangeMps, long heartbeatMs) {
+        this.minDistanceMeters = minDistanceMeters;
+        this.headingChangeDegrees = headingChangeDegrees;
+        this.speedChangeMps = speedChangeMps;
+        this.heartbeatMs = heartbeatMs;
+    }
+
+    @Override
+    public synchronized boolean shouldUpload(LocationSample sample) {
+        evaluatedCount++;
+        if (lastUploaded == null || triggers(lastUploaded, sample)) {
+            lastUploaded = sample;
+            uploadedCount++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean triggers(LocationSample last, LocationSample sample) {
+        if (sample.getTimestampMs() - last.getTimestampMs() >= heartbeatMs) {
+            heartbeatTriggers++;
+            return true;
+        }
+
+        double threshold = minDistanceMeters;
+        if (sample.hasAccuracy()) {
+            threshold = Math.max(threshold, sample.getAccuracyMeters());
+        }
+        if (last.hasAccuracy()) {
+            threshold = Math.max(threshold, last.getAccuracyMeters());
+        }
+        double meters = GeoUtils.distanceMeters(last.getLatitude(), last.getLongitude(),
+                sample.getLatitude(), sample.getLongitude());
+        if (meters > threshold) {
+            distanceTriggers++;
+            return true;
+        }
+
+        if (sample.hasSpeed() && last.hasSpeed()
+                && Math.abs(sample.getSpeedMps() - last.getSpeedMps()) >= speedChangeMps) {
+            speedTriggers++;
+            return true;
+        }
+
+        if (sample.hasBearing() && last.hasBearing() && sample.hasSpeed()
+                && sample.getSpeedMps() >= MIN_SPEED_FOR_HEADING_MPS
+                && headingDifference(last.getBearingDegrees(), sample.getBearingDegrees()) >= headingChangeDegrees) {
+            headingTriggers++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Smallest angle between two bearings, in degrees [0, 180]
+     */
+    static double headingDifference(double a, double b) {
+        double diff = Math.abs(a - b) % 360;
+        return diff > 180 ? 360 - diff : diff;
+    }
+
+    @Override
+    public synchronized void reset() {
+        lastUploaded = null;
+    }
+
+    public synchronized long getEvaluatedCount() {
+        return evaluatedCount;
+    }
+
+    public synchronized long getUploadedCount() {
+        return uploadedCount;
+    }
+
+    public synchronized long getSuppressedCount() {
+        return evaluatedCount - uploadedCount;
+    }
+
+    public synchronized long getDistanceTriggers() {
+        return distanceTriggers;
+    }
+
+    public synchronized long getHeadingTriggers() {
+        return headingTriggers;
+    }
+
+    public synchronized long getSpeedTriggers() {
+        return speedTriggers;
+    }
+
+    public synchronized long getHeartbeatTriggers() {
+        return heartbeatTriggers;
+    }
+}
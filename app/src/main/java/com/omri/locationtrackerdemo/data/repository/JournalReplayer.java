@@ -0,0 +1,92 @@
+package com.omri.locationtrackerdemo.data.repository;
+
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Uploads the fixes pending in a {@link LocationJournal}, oldest first, in batches of at
+ * most {@code batchSize} fixes.
+ *
+ * Each batch is acknowledged in the journal only after the sink accepted it, so a failed
+ * upload or process death leaves that batch and everything after it pending for the next
+ * replay. Batches are sent one at a time; callers must not start a replay while another
+ * one is running.
+ */
+public class JournalReplayer {
+    private final LocationJournal journal;
+    private final int batchSize;
+    private final LocationUploadQueue.Sink sink;
+
+    private long replayedCount;
+    private long batchCount;
+
+    /**
+     * Creates a replayer
+     * @param journal Journal holding the pending fixes
+     * @param batchSize Largest number of fixes per upload
+     * @param sink Uploads one batch, e.g. as a binary frame
+     */
+    public JournalReplayer(LocationJournal journal, int batchSize, LocationUploadQueue.Sink sink) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch size");
+        }
+        this.journal = journal;
+        this.batchSize = batchSize;
+        this.sink = sink;
+    }
+
+    /**
+     * Uploads batches until nothing is pending
+     * @param callback Called once: on success when the journal is caught up, or with the first error
+     */
+    public void replay(LocationUploadQueue.SinkCallback callback) {
+        final List<LocationFix> batch;
+        try {
+            batch = journal.readPending(journal.getAcknowledgedSequence(), batchSize);
+        } catch (IOException e) {
+            callback.onError("Journal read failed: " + e.getMessage());
+            return;
+        }
+        if (batch.isEmpty()) {
+            callback.onSuccess();
+            return;
+        }
+        sink.upload(batch, new LocationUploadQueue.SinkCallback() {
+            @Override
+            public void onSuccess() {
+                try {
+                    journal.acknowledge(batch.get(batch.size() - 1).getSequence());
+                } catch (IOException e) {
+                    callback.onError("Journal acknowledge failed: " + e.getMessage());
+                    return;
+                }
+                synchronized (JournalReplayer.this) {
+                    replayedCount += batch.size();
+                    batchCount++;
+                }
+                replay(callback);
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        });
+    }
+
+    /**
+     * Number of fixes in accepted batches
+     */
+    public synchronized long getReplayedCount() {
+        return replayedCount;
+    }
+
+    /**
+     * Number of accepted batches
+     */
+    public synchronized long getBatchCount() {
+        return batchCount;
+    }
+}
@@ -0,0 +1,442 @@
+package com.omri.locationtrackerdemo.data.repository;
+
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of outbound location fixes.
+ *
+ * Every fix is appended before its upload is attempted and receives a monotonically
+ * increasing sequence number. Uploads acknowledge a sequence watermark; segments whose
+ * records are all acknowledged are deleted. Unacknowledged records survive process
+ * death and can be read back in batches for replay.
+ *
+ * Layout:
+ * - {@code segment-<firstSeq>.log} files, rolled over at {@code segmentBytes}
+ * - {@code ack} holding the acknowledged watermark, replaced atomically via rename
+ * - record: int payload length, payload (seq, timestamp, lat, lon, UTF-8 user ID), int CRC32
+ *
+ * A torn record at the end of a segment (process killed mid-write) fails its length
+ * or CRC check and is truncated during recovery. When the journal grows beyond
+ * {@code maxBytes} the oldest segment is dropped and counted in {@link #getDroppedCount()}.
+ * Writes go to the OS page cache without fsync, which survives process death but not
+ * power loss.
+ */
+public class LocationJournal implements Closeable {
+    public static final long DEFAULT_SEGMENT_BYTES = 256 * 1024;
+    public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String ACK_FILE = "ack";
+    private static final int HEADER_BYTES = 4;
+    private static final int CRC_BYTES = 4;
+    private static final int FIXED_PAYLOAD_BYTES = 8 + 8 + 8 + 8 + 2;
+    private static final int MAX_PAYLOAD_BYTES = FIXED_PAYLOAD_BYTES + 0xFFFF;
+
+    private static class Segment {
+        final File file;
+        long firstSequence;
+        long lastSequence;
+        long records;
+        long bytes;
+
+        Segment(File file) {
+            this.file = file;
+        }
+    }
+
+    private final File directory;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final List<Segment> segments = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(256);
+    private int lastRecordBytes;
+
+    private FileChannel activeChannel;
+    private long nextSequence = 1;
+    private long acknowledgedSequence;
+    private long droppedCount;
+
+    // Where the last readPending() stopped, so sequential replay does not rescan segments
+    private Segment readSegment;
+    private long readOffset;
+    private long readSequence = -1;
+
+    /**
+     * Opens the journal, recovering segments left by a previous process
+     * @param directory Directory holding the journal files, created if missing
+     * @param segmentBytes Size at which a new segment is started
+     * @param maxBytes Upper bound of the journal's disk usage
+     */
+    public LocationJournal(File directory, long segmentBytes, long maxBytes) throws IOException {
+        if (segmentBytes <= 0 || maxBytes < segmentBytes) {
+            throw new IllegalArgumentException("maxBytes must be at least segmentBytes");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        recover();
+    }
+
+    /**
+     * Appends a fix to the journal
+     * @param fix The fix to record
+     * @return The fix carrying its assigned sequence number
+     */
+    public synchronized LocationFix append(LocationFix fix) throws IOException {
+        LocationFix journaled = fix.withSequence(nextSequence);
+        byte[] userId = fix.getUserId().getBytes(StandardCharsets.UTF_8);
+        if (userId.length > 0xFFFF) {
+            throw new IllegalArgumentException("User ID too long");
+        }
+        int payloadLength = FIXED_PAYLOAD_BYTES + userId.length;
+        int recordLength = HEADER_BYTES + payloadLength + CRC_BYTES;
+
+        Segment segment = activeSegment(recordLength);
+        if (writeBuffer.capacity() < recordLength) {
+            writeBuffer = ByteBuffer.allocate(recordLength);
+        }
+        ByteBuffer buffer = writeBuffer;
+        buffer.clear();
+        buffer.putInt(payloadLength);
+        buffer.putLong(journaled.getSequence());
+        buffer.putLong(fix.getTimestampMs());
+        buffer.putDouble(fix.getLatitude());
+        buffer.putDouble(fix.getLongitude());
+        buffer.putShort((short) userId.length);
+        buffer.put(userId);
+        crc.reset();
+        crc.update(buffer.array(), HEADER_BYTES, payloadLength);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            activeChannel.write(buffer);
+        }
+
+        if (segment.records == 0) {
+            segment.firstSequence = journaled.getSequence();
+        }
+        segment.lastSequence = journaled.getSequence();
+        segment.records++;
+        segment.bytes += recordLength;
+        nextSequence++;
+        enforceDiskBound();
+        return journaled;
+    }
+
+    /**
+     * Marks every record up to and including the given sequence as uploaded
+     * and deletes segments that hold no pending records anymore
+     */
+    public synchronized void acknowledge(long sequence) throws IOException {
+        if (sequence <= acknowledgedSequence) {
+            return;
+        }
+        acknowledgedSequence = Math.min(sequence, nextSequence - 1);
+        writeAckFile();
+        while (!segments.isEmpty()) {
+            Segment oldest = segments.get(0);
+            boolean isActive = segments.size() == 1;
+            if (oldest.lastSequence > acknowledgedSequence || (isActive && oldest.records == 0)) {
+                break;
+            }
+            deleteOldestSegment();
+        }
+    }
+
+    /**
+     * Reads pending records in sequence order
+     * @param afterSequence Only records with a greater sequence are returned
+     * @param maxCount Maximum number of records to return
+     * @return Up to {@code maxCount} records, empty when nothing is pending
+     */
+    public synchronized List<LocationFix> readPending(long afterSequence, int maxCount) throws IOException {
+        List<LocationFix> fixes = new ArrayList<>(Math.min(maxCount, 1024));
+        long after = Math.max(afterSequence, acknowledgedSequence);
+        int startIndex = 0;
+        long startOffset = 0;
+        if (readSegment != null && readSequence == after && segments.contains(readSegment)) {
+            startIndex = segments.indexOf(readSegment);
+            startOffset = readOffset;
+        }
+
+        for (int i = startIndex; i < segments.size() && fixes.size() < maxCount; i++) {
+            Segment segment = segments.get(i);
+            if (segment.records == 0 || segment.lastSequence <= after) {
+                continue;
+            }
+            long offset = i == startIndex ? startOffset : 0;
+            offset = readRecords(segment, offset, after, maxCount, fixes);
+            readSegment = segment;
+            readOffset = offset;
+        }
+        readSequence = fixes.isEmpty() ? -1 : fixes.get(fixes.size() - 1).getSequence();
+        return fixes;
+    }
+
+    public synchronized long getAcknowledgedSequence() {
+        return acknowledgedSequence;
+    }
+
+    /**
+     * @return Sequence number of the last appended record, 0 if none
+     */
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * @return Number of records appended but not yet acknowledged or dropped
+     */
+    public synchronized long getPendingCount() {
+        long pending = 0;
+        for (Segment segment : segments) {
+            if (segment.records == 0 || segment.lastSequence <= acknowledgedSequence) {
+                continue;
+            }
+            pending += segment.lastSequence - Math.max(segment.firstSequence - 1, acknowledgedSequence);
+        }
+        return pending;
+    }
+
+    /**
+     * @return Bytes currently used by segment files
+     */
+    public synchronized long getDiskBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return Number of unacknowledged records discarded to respect the disk bound
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (activeChannel != null) {
+            activeChannel.close();
+            activeChannel = null;
+        }
+    }
+
+    private Segment activeSegment(int recordLength) throws IOException {
+        Segment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (active == null || (active.records > 0 && active.bytes + recordLength > segmentBytes)) {
+            close();
+            active = new Segment(new File(directory,
+                    String.format(Locale.US, "%s%020d%s", SEGMENT_PREFIX, nextSequence, SEGMENT_SUFFIX)));
+            segments.add(active);
+        }
+        if (activeChannel == null) {
+            activeChannel = new FileOutputStream(active.file, true).getChannel();
+        }
+        return active;
+    }
+
+    private void enforceDiskBound() throws IOException {
+        while (segments.size() > 1 && getDiskBytes() > maxBytes) {
+            Segment oldest = segments.get(0);
+            long unacknowledged = oldest.lastSequence - Math.max(oldest.firstSequence - 1, acknowledgedSequence);
+            droppedCount += Math.max(0, unacknowledged);
+            deleteOldestSegment();
+        }
+    }
+
+    private void deleteOldestSegment() throws IOException {
+        Segment oldest = segments.remove(0);
+        if (segments.isEmpty()) {
+            close();
+        }
+        if (oldest == readSegment) {
+            readSegment = null;
+            readSequence = -1;
+        }
+        if (oldest.file.exists() && !oldest.file.delete()) {
+            throw new IOException("Cannot delete " + oldest.file);
+        }
+    }
+
+    /**
+     * Reads records of a segment starting at a byte offset
+     * @return Offset after the last record consumed
+     */
+    private long readRecords(Segment segment, long offset, long after, int maxCount,
+                             List<LocationFix> out) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment.file, "r")) {
+            FileChannel channel = file.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(segment.bytes, 64 * 1024) + MAX_PAYLOAD_BYTES);
+            buffer.flip();
+            long position = offset;
+            channel.position(offset);
+            while (out.size() < maxCount) {
+                LocationFix fix = nextRecord(channel, buffer);
+                if (fix == null) {
+                    break;
+                }
+                position += lastRecordBytes;
+                if (fix.getSequence() > after) {
+                    out.add(fix);
+                }
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Decodes the next record from a buffered channel and stores its size in {@code lastRecordBytes}
+     * @return The record, or null at end of data or on a torn/corrupt record
+     */
+    private LocationFix nextRecord(FileChannel channel, ByteBuffer buffer) throws IOException {
+        if (!fill(channel, buffer, HEADER_BYTES)) {
+            return null;
+        }
+        int payloadLength = buffer.getInt();
+        if (payloadLength < FIXED_PAYLOAD_BYTES || payloadLength > MAX_PAYLOAD_BYTES) {
+            return null;
+        }
+        if (!fill(channel, buffer, payloadLength + CRC_BYTES)) {
+            return null;
+        }
+        int payloadStart = buffer.position();
+        crc.reset();
+        crc.update(buffer.array(), buffer.arrayOffset() + payloadStart, payloadLength);
+        int expectedCrc = buffer.getInt(payloadStart + payloadLength);
+        if ((int) crc.getValue() != expectedCrc) {
+            return null;
+        }
+        long sequence = buffer.getLong();
+        long timestamp = buffer.getLong();
+        double latitude = buffer.getDouble();
+        double longitude = buffer.getDouble();
+        int userIdLength = buffer.getShort() & 0xFFFF;
+        if (FIXED_PAYLOAD_BYTES + userIdLength != payloadLength) {
+            return null;
+        }
+        String userId = new String(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                userIdLength, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + userIdLength + CRC_BYTES);
+        lastRecordBytes = HEADER_BYTES + payloadLength + CRC_BYTES;
+        return new LocationFix(userId, latitude, longitude, timestamp, sequence);
+    }
+
+    /**
+     * Ensures at least {@code needed} bytes are readable in the buffer
+     * @return false if the channel ends first
+     */
+    private static boolean fill(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return true;
+        }
+        buffer.compact();
+        while (buffer.position() < needed) {
+            if (channel.read(buffer) < 0) {
+                buffer.flip();
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Rebuilds the segment list from disk, truncating torn records and
+     * removing fully acknowledged segments
+     */
+    private void recover() throws IOException {
+        acknowledgedSequence = readAckFile();
+        File[] files = directory.listFiles((dir, name) ->
+                name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            files = new File[0];
+        }
+        Arrays.sort(files);
+
+        long lastSequence = acknowledgedSequence;
+        for (File file : files) {
+            Segment segment = new Segment(file);
+            long validBytes = scanSegment(segment);
+            if (validBytes < file.length()) {
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(validBytes);
+                }
+            }
+            if (segment.records == 0 || segment.lastSequence <= acknowledgedSequence) {
+                if (!file.delete()) {
+                    throw new IOException("Cannot delete " + file);
+                }
+                continue;
+            }
+            lastSequence = Math.max(lastSequence, segment.lastSequence);
+            segments.add(segment);
+        }
+        nextSequence = lastSequence + 1;
+    }
+
+    /**
+     * Reads a segment to find its sequence range and the length of its valid prefix
+     */
+    private long scanSegment(Segment segment) throws IOException {
+        long validBytes = 0;
+        try (RandomAccessFile file = new RandomAccessFile(segment.file, "r")) {
+            FileChannel channel = file.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024 + MAX_PAYLOAD_BYTES);
+            buffer.flip();
+            LocationFix fix;
+            while ((fix = nextRecord(channel, buffer)) != null) {
+                if (segment.records == 0) {
+                    segment.firstSequence = fix.getSequence();
+                }
+                segment.lastSequence = fix.getSequence();
+                segment.records++;
+                validBytes += lastRecordBytes;
+            }
+        }
+        segment.bytes = validBytes;
+        return validBytes;
+    }
+
+    private long readAckFile() throws IOException {
+        File ackFile = new File(directory, ACK_FILE);
+        if (!ackFile.exists()) {
+            return 0;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(ackFile, "r")) {
+            return file.length() >= 8 ? file.readLong() : 0;
+        }
+    }
+
+    private void writeAckFile() throws IOException {
+        File temp = new File(directory, ACK_FILE + ".tmp");
+        try (RandomAccessFile file = new RandomAccessFile(temp, "rw")) {
+            file.setLength(0);
+            file.writeLong(acknowledgedSequence);
+        }
+        if (!temp.renameTo(new File(directory, ACK_FILE))) {
+            throw new IOException("Cannot replace ack file");
+        }
+    }
+}
@@ -1,19 +1,143 @@
 package com.omri.locationtrackerdemo.data.repository;
 
+import android.util.Log;
+
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+import com.omri.locationtrackerdemo.data.network.NetworkRuntime;
+import com.omri.locationtrackerdemo.metrics.Counter;
+import com.omri.locationtrackerdemo.metrics.LatencyHistogram;
+import com.omri.locationtrackerdemo.metrics.MetricsRegistry;
 import com.omri.trackinglibrary.LocationTrackerImpl;
 import com.omri.trackinglibrary.interfaces.LocationCallback;
 import com.omri.trackinglibrary.interfaces.UserCallback;
+import com.omri.trackinglibrary.models.Location;
+import com.omri.trackinglibrary.models.User;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.OkHttpClient;
 
 /**
  * Repository that handles all location tracking and user management operations.
  * Provides a clean interface to the LocationTracker library and centralizes
- * all remote data operations.
+ * all remote data operations. All repositories share the tracker of the
+ * {@link NetworkRuntime}, so its connections outlive the screen that created them.
+ * User status and verification lookups go through process-wide {@link LookupCache}s:
+ * concurrent lookups of a user share one backend call, a status is reused for
+ * {@link #USER_STATUS_TTL_MS} and revalidated in the background for a while after, and
+ * the app's own status writes replace the cached status.
+ * Outbound fixes from the location sharing path go through a {@link LocationUploadQueue}
+ * so that at most one location upload is in flight at a time. When a journal directory
+ * is supplied every fix is first written to a {@link LocationJournal} and acknowledged only
+ * once the server accepted it. With binary uploads every upload sends the journal's
+ * backlog, including what a previous process left, in frames of up to
+ * {@link #REPLAY_BATCH_SIZE} fixes through a {@link JournalReplayer}. The JSON API only
+ * stores a user's current position, so without binary uploads the newest journaled fix is
+ * sent, unless a newer fix was uploaded since, and the older backlog it supersedes is
+ * acknowledged with it.
+ * Fixes offered through {@link #offerLocation(String, LocationSample)} are first filtered
+ * by an {@link UploadPolicy}, by default a {@link DeltaUploadPolicy}. Batches delivered by
+ * batched location requests go through {@link #offerLocations(String, List)} and are uploaded
+ * as one request right away.
+ * Backend calls are timed in the default {@link MetricsRegistry} under {@code api.<endpoint>},
+ * together with the delay from taking a fix to its successful upload.
+ * With {@link #enableBinaryUploads(OkHttpClient, String)} queued batches are posted as
+ * compact binary frames, falling back to the JSON API for good if the server rejects the format.
  */
 public class LocationRepository {
+    private static final String TAG = "LocationRepository";
+    private static final int UPLOAD_BATCH_SIZE = 10;
+    private static final long UPLOAD_MAX_DELAY_MS = 1000;
+    private static final int REPLAY_BATCH_SIZE = 500;
+    public static final long USER_STATUS_TTL_MS = 30_000;
+    public static final long USER_STATUS_MAX_STALE_MS = 120_000;
+    // Users are not deleted in practice, verification only has to catch mistyped IDs
+    public static final long USER_IDENTITY_TTL_MS = 10 * 60_000;
+
+    // Shared by all repositories like the tracker, so lookups survive screen changes
+    private static final LookupCache<User> USER_STATUS_CACHE =
+            new LookupCache<>(USER_STATUS_TTL_MS, USER_STATUS_MAX_STALE_MS);
+    private static final LookupCache<User> USER_IDENTITY_CACHE = new LookupCache<>(USER_IDENTITY_TTL_MS, 0);
+    // Time of the newest fix any repository uploaded, so a replayed fix never moves the user back
+    private static final AtomicLong NEWEST_UPLOADED_FIX_MS = new AtomicLong();
+
     private final LocationTrackerImpl locationTracker;
+    private final ScheduledExecutorService uploadScheduler;
+    private final LocationUploadQueue uploadQueue;
+    private volatile LocationJournal journal;
+    private volatile JournalReplayer replayer;
+    private volatile LocationFix replayedFix;
+    private volatile UploadPolicy uploadPolicy = new DeltaUploadPolicy();
+    private volatile BinaryLocationUploader binaryUploader;
+
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    private final LatencyHistogram updateLocationLatency = metrics.histogram("api.updateLocation");
+    private final Counter updateLocationErrors = metrics.counter("api.updateLocation.errors");
+    private final LatencyHistogram uploadFrameLatency = metrics.histogram("api.uploadFrame");
+    private final Counter uploadFrameErrors = metrics.counter("api.uploadFrame.errors");
+    private final LatencyHistogram userStatusLatency = metrics.histogram("api.getUserStatus");
+    private final Counter userStatusErrors = metrics.counter("api.getUserStatus.errors");
+    private final LatencyHistogram verifyUserLatency = metrics.histogram("api.verifyUser");
+    private final Counter verifyUserErrors = metrics.counter("api.verifyUser.errors");
+    private final LatencyHistogram fixToUploadDelay = metrics.histogram("delay.fixToUpload");
+    private final Counter suppressedFixes = metrics.counter("upload.suppressed");
 
     public LocationRepository() {
-        this.locationTracker = new LocationTrackerImpl();
+        this(null);
+    }
+
+    /**
+     * Creates a repository that journals outbound fixes
+     * @param journalDirectory Directory for the upload journal, or null to upload without journaling
+     */
+    public LocationRepository(File journalDirectory) {
+        this.locationTracker = NetworkRuntime.getDefault().getLocationTracker();
+        this.uploadScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "LocationUpload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.uploadQueue = new LocationUploadQueue(this::uploadBatch,
+                UPLOAD_BATCH_SIZE, UPLOAD_MAX_DELAY_MS, uploadScheduler);
+        if (journalDirectory != null) {
+            uploadScheduler.execute(() -> openJournal(journalDirectory));
+        }
+    }
+
+    /**
+     * Opens the journal and queues the newest fix a previous process did not upload, which
+     * starts the replay of its backlog. Runs on the upload thread.
+     */
+    private void openJournal(File journalDirectory) {
+        try {
+            LocationJournal opened = new LocationJournal(journalDirectory,
+                    LocationJournal.DEFAULT_SEGMENT_BYTES, LocationJournal.DEFAULT_MAX_BYTES);
+            replayer = new JournalReplayer(opened, REPLAY_BATCH_SIZE, this::uploadReplayBatch);
+            journal = opened;
+            long last = opened.getLastSequence();
+            if (last <= opened.getAcknowledgedSequence()) {
+                return;
+            }
+            List<LocationFix> newest = opened.readPending(last - 1, 1);
+            if (newest.isEmpty()) {
+                return;
+            }
+            Log.d(TAG, "Replaying " + opened.getPendingCount() + " journaled fixes");
+            replayedFix = newest.get(0);
+            uploadQueue.enqueue(replayedFix);
+        } catch (IOException e) {
+            Log.e(TAG, "Upload journal unavailable, uploading without it", e);
+            replayer = null;
+            journal = null;
+        }
     }
 
     /**
@@ -24,7 +148,385 @@ public class LocationRepository {
      * @param callback Callback for the operation result
      */
     public void updateLocation(String userId, double latitude, double longitude, LocationCallback callback) {
-        locationTracker.updateLocation(userId, latitude, longitude, callback);
+        locationTracker.updateLocation(userId, latitude, longitude, timed(callback));
+    }
+
+    /**
+     * Queues a local fix for upload if the upload policy considers it a meaningful change
+     * @param userId User identifier
+     * @param sample The new local fix
+     * @return true if the fix was queued, false if the policy suppressed it
+     */
+    public boolean offerLocation(String userId, LocationSample sample) {
+        if (!uploadPolicy.shouldUpload(sample)) {
+            suppressedFixes.increment();
+            return false;
+        }
+        enqueue(new LocationFix(userId, sample.getLatitude(), sample.getLongitude(), sample.getTimestampMs()));
+        return true;
+    }
+
+    /**
+     * Queues fixes that were delivered together, e.g. by a batched location request, and
+     * uploads them in a single request right away: the device is awake for the batch anyway,
+     * and waiting for further fixes would only keep the radio up longer. Each fix is still
+     * filtered by the upload policy.
+     * @param userId User identifier
+     * @param samples The new local fixes, the newest last
+     * @return Number of fixes queued
+     */
+    public int offerLocations(String userId, List<LocationSample> samples) {
+        List<LocationFix> fixes = new ArrayList<>(samples.size());
+        for (LocationSample sample : samples) {
+            if (uploadPolicy.shouldUpload(sample)) {
+                fixes.add(new LocationFix(userId, sample.getLatitude(), sample.getLongitude(),
+                        sample.getTimestampMs()));
+            } else {
+                suppressedFixes.increment();
+            }
+        }
+        if (fixes.isEmpty()) {
+            return 0;
+        }
+        execute(() -> {
+            List<LocationFix> journaled = new ArrayList<>(fixes.size());
+            for (LocationFix fix : fixes) {
+                journaled.add(journal(fix));
+            }
+            uploadQueue.enqueueAll(journaled);
+            uploadQueue.flush();
+        });
+        return fixes.size();
+    }
+
+    /**
+     * Replaces the policy deciding which offered fixes are uploaded
+     * @param policy The new policy, {@link UploadPolicy#ALWAYS} to upload every fix
+     */
+    public void setUploadPolicy(UploadPolicy policy) {
+        this.uploadPolicy = policy;
+    }
+
+    public UploadPolicy getUploadPolicy() {
+        return uploadPolicy;
+    }
+
+    private void enqueue(LocationFix fix) {
+        execute(() -> uploadQueue.enqueue(journal(fix)));
+    }
+
+    /**
+     * Runs a task on the upload thread. Fixes still delivered after {@link #shutdown()},
+     * e.g. by a location thread that is winding down, are dropped.
+     */
+    private void execute(Runnable task) {
+        try {
+            uploadScheduler.execute(task);
+        } catch (RejectedExecutionException e) {
+            Log.d(TAG, "Repository shut down, dropping location work");
+        }
+    }
+
+    /**
+     * Writes the fix to the journal before it is queued for upload. Runs on the upload thread.
+     * @return The fix carrying its journal sequence, or the fix itself without a journal
+     */
+    private LocationFix journal(LocationFix fix) {
+        if (journal == null) {
+            return fix;
+        }
+        try {
+            return journal.append(fix);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to journal fix", e);
+            return fix;
+        }
+    }
+
+    /**
+     * Marks everything up to the fix uploaded with the JSON API as delivered. Earlier fixes
+     * are superseded because that API keeps only the current position.
+     */
+    private void acknowledge(LocationFix uploaded) {
+        if (journal == null || uploaded.getSequence() == LocationFix.NO_SEQUENCE) {
+            return;
+        }
+        try {
+            journal.acknowledge(uploaded.getSequence());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to acknowledge journaled fixes", e);
+        }
+    }
+
+    /**
+     * Posts queued batches as binary frames instead of one JSON update per batch.
+     * The JSON API is used again for good once the server rejects the format.
+     * @param httpClient Client performing the uploads
+     * @param frameUrl Endpoint accepting {@link com.omri.locationtrackerdemo.data.wire.LocationFrameCodec} frames
+     */
+    public void enableBinaryUploads(OkHttpClient httpClient, String frameUrl) {
+        binaryUploader = new BinaryLocationUploader(httpClient, frameUrl);
+    }
+
+    /**
+     * Provides the binary uploader, or null if binary uploads are not enabled
+     */
+    public BinaryLocationUploader getBinaryUploader() {
+        return binaryUploader;
+    }
+
+    /**
+     * Sets the listener notified about queued upload results
+     */
+    public void setUploadListener(LocationUploadQueue.Listener listener) {
+        uploadQueue.setListener(listener);
+    }
+
+    /**
+     * Sends all queued fixes now
+     */
+    public void flushLocations() {
+        execute(uploadQueue::flush);
+    }
+
+    /**
+     * Provides the upload queue, e.g. to read its enqueued/coalesced/sent counters
+     */
+    public LocationUploadQueue getUploadQueue() {
+        return uploadQueue;
+    }
+
+    /**
+     * Provides the upload journal, or null if journaling is disabled or not open yet
+     */
+    public LocationJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Flushes queued fixes and stops the upload scheduler. Unsent fixes stay in the
+     * journal and are replayed by the next repository using the same directory.
+     * Fixes offered afterwards are dropped.
+     */
+    public void shutdown() {
+        execute(() -> {
+            uploadQueue.flush();
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to close upload journal", e);
+                }
+            }
+        });
+        uploadScheduler.shutdown();
+    }
+
+    /**
+     * Uploads a batch of fixes: with binary uploads the journal's backlog, which includes
+     * the batch, or the batch itself without a journal; the newest fix otherwise
+     */
+    private void uploadBatch(List<LocationFix> fixes, LocationUploadQueue.SinkCallback callback) {
+        BinaryLocationUploader binary = binaryUploader;
+        if (binary == null || !binary.isSupported()) {
+            uploadLatestFix(fixes, callback);
+            return;
+        }
+        JournalReplayer journalReplayer = replayer;
+        if (journalReplayer != null && fixes.get(fixes.size() - 1).getSequence() != LocationFix.NO_SEQUENCE) {
+            replayJournal(journalReplayer, fixes, callback);
+        } else {
+            uploadFrame(binary, fixes, callback);
+        }
+    }
+
+    /**
+     * Uploads a batch of fixes with the JSON API. The backend only stores each user's
+     * current position, so the newest fix of the batch stands for the whole batch.
+     */
+    private void uploadLatestFix(List<LocationFix> fixes, LocationUploadQueue.SinkCallback callback) {
+        LocationFix replayed = replayedFix;
+        if (replayed != null && fixes.size() == 1 && fixes.get(0) == replayed && !isNewerThanUploaded(replayed)) {
+            // Superseded while it waited, e.g. by another repository's upload
+            acknowledgeLater(replayed);
+            callback.onSuccess();
+            return;
+        }
+        LocationFix latest = fixes.get(fixes.size() - 1);
+        final long startNanos = metrics.startTimer();
+        locationTracker.updateLocation(latest.getUserId(), latest.getLatitude(), latest.getLongitude(),
+                new LocationCallback() {
+                    @Override
+                    public void onSuccess(Location location) {
+                        updateLocationLatency.recordSince(startNanos);
+                        onUploaded(latest, callback);
+                    }
+
+                    @Override
+                    public void onError(String error) {
+                        updateLocationLatency.recordSince(startNanos);
+                        updateLocationErrors.increment();
+                        callback.onError(error);
+                    }
+                });
+    }
+
+    /**
+     * Sends everything pending in the journal, the given batch included, as binary frames.
+     * If the server rejects the format the batch goes to the JSON API instead.
+     */
+    private void replayJournal(JournalReplayer journalReplayer, List<LocationFix> fixes,
+                               LocationUploadQueue.SinkCallback callback) {
+        journalReplayer.replay(new LocationUploadQueue.SinkCallback() {
+            @Override
+            public void onSuccess() {
+                callback.onSuccess();
+            }
+
+            @Override
+            public void onError(String error) {
+                BinaryLocationUploader binary = binaryUploader;
+                if (binary != null && !binary.isSupported()) {
+                    uploadLatestFix(fixes, callback);
+                } else {
+                    callback.onError(error);
+                }
+            }
+        });
+    }
+
+    /**
+     * Uploads one batch read from the journal as a binary frame. The replayer
+     * acknowledges it once accepted.
+     */
+    private void uploadReplayBatch(List<LocationFix> batch, LocationUploadQueue.SinkCallback callback) {
+        final long startNanos = metrics.startTimer();
+        binaryUploader.upload(batch, new BinaryLocationUploader.Callback() {
+            @Override
+            public void onSuccess() {
+                uploadFrameLatency.recordSince(startNanos);
+                recordUploaded(batch.get(batch.size() - 1));
+                callback.onSuccess();
+            }
+
+            @Override
+            public void onUnsupported(int code) {
+                Log.w(TAG, "Server rejected binary uploads (HTTP " + code + "), using JSON");
+                callback.onError("Binary uploads rejected: HTTP " + code);
+            }
+
+            @Override
+            public void onError(String error) {
+                uploadFrameLatency.recordSince(startNanos);
+                uploadFrameErrors.increment();
+                callback.onError(error);
+            }
+        });
+    }
+
+    /**
+     * Uploads the whole batch as one binary frame, or with the JSON API if the server rejects it
+     */
+    private void uploadFrame(BinaryLocationUploader binary, List<LocationFix> fixes,
+                             LocationUploadQueue.SinkCallback callback) {
+        final long startNanos = metrics.startTimer();
+        binary.upload(fixes, new BinaryLocationUploader.Callback() {
+            @Override
+            public void onSuccess() {
+                uploadFrameLatency.recordSince(startNanos);
+                onUploaded(fixes.get(fixes.size() - 1), callback);
+            }
+
+            @Override
+            public void onUnsupported(int code) {
+                Log.w(TAG, "Server rejected binary uploads (HTTP " + code + "), using JSON");
+                uploadLatestFix(fixes, callback);
+            }
+
+            @Override
+            public void onError(String error) {
+                uploadFrameLatency.recordSince(startNanos);
+                uploadFrameErrors.increment();
+                callback.onError(error);
+            }
+        });
+    }
+
+    /**
+     * Records the upload delay and acknowledges the journaled fixes up to the uploaded one
+     */
+    private void onUploaded(LocationFix latest, LocationUploadQueue.SinkCallback callback) {
+        recordUploaded(latest);
+        acknowledgeLater(latest);
+        callback.onSuccess();
+    }
+
+    private void recordUploaded(LocationFix latest) {
+        fixToUploadDelay.recordMillis(System.currentTimeMillis() - latest.getTimestampMs());
+        NEWEST_UPLOADED_FIX_MS.accumulateAndGet(latest.getTimestampMs(), Math::max);
+    }
+
+    /**
+     * Acknowledges on the upload thread, or right away once it is shut down
+     */
+    private void acknowledgeLater(LocationFix fix) {
+        try {
+            uploadScheduler.execute(() -> acknowledge(fix));
+        } catch (RejectedExecutionException e) {
+            acknowledge(fix);
+        }
+    }
+
+    private static boolean isNewerThanUploaded(LocationFix fix) {
+        return fix.getTimestampMs() > NEWEST_UPLOADED_FIX_MS.get();
+    }
+
+    /**
+     * Wraps a location callback to time the call, or returns it as is while metrics are disabled
+     */
+    private LocationCallback timed(LocationCallback callback) {
+        final long startNanos = metrics.startTimer();
+        if (startNanos == 0) {
+            return callback;
+        }
+        return new LocationCallback() {
+            @Override
+            public void onSuccess(Location location) {
+                updateLocationLatency.recordSince(startNanos);
+                callback.onSuccess(location);
+            }
+
+            @Override
+            public void onError(String error) {
+                updateLocationLatency.recordSince(startNanos);
+                updateLocationErrors.increment();
+                callback.onError(error);
+            }
+        };
+    }
+
+    /**
+     * Wraps a user callback to time the call, or returns it as is while metrics are disabled
+     */
+    private UserCallback timed(UserCallback callback, LatencyHistogram latency, Counter errors) {
+        final long startNanos = metrics.startTimer();
+        if (startNanos == 0) {
+            return callback;
+        }
+        return new UserCallback() {
+            @Override
+            public void onSuccess(User user) {
+                latency.recordSince(startNanos);
+                callback.onSuccess(user);
+            }
+
+            @Override
+            public void onError(String error) {
+                latency.recordSince(startNanos);
+                errors.increment();
+                callback.onError(error);
+            }
+        };
     }
 
     /**
@@ -34,21 +536,133 @@ public class LocationRepository {
      * @param callback Callback for the operation result
      */
     public void updateUserStatus(String userId, boolean isActive, UserCallback callback) {
-        locationTracker.updateUserStatus(userId, isActive, callback);
+        // Lookups in flight during the write must not cache the old status
+        USER_STATUS_CACHE.invalidate(userId);
+        locationTracker.updateUserStatus(userId, isActive, new UserCallback() {
+            @Override
+            public void onSuccess(User user) {
+                if (user != null && user.isActive() == isActive) {
+                    USER_STATUS_CACHE.put(userId, user);
+                } else {
+                    USER_STATUS_CACHE.invalidate(userId);
+                }
+                callback.onSuccess(user);
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        });
     }
 
     /**
-     * Retrieves user's current status from the server
+     * Retrieves user's current status, from the cache while it is fresh
      */
     public void getUserStatus(String userId, UserCallback callback) {
-        locationTracker.getUserStatus(userId, callback);
+        getUserStatus(userId, false, callback);
     }
 
     /**
-     * Verifies user existence and authentication
+     * Retrieves user's current status
+     * @param revalidate true to ask the server even if the cached status is fresh,
+     *                   e.g. after a poll of the user failed
+     */
+    public void getUserStatus(String userId, boolean revalidate, UserCallback callback) {
+        if (revalidate) {
+            USER_STATUS_CACHE.refresh(userId, this::loadUserStatus, toCacheCallback(callback));
+        } else {
+            USER_STATUS_CACHE.get(userId, this::loadUserStatus, toCacheCallback(callback));
+        }
+    }
+
+    /**
+     * Looks up the user's status ahead of time, e.g. for the saved user while the login
+     * screen is shown. This opens the backend connection and fills the status and identity
+     * caches, so the login and the map screen's first status check skip the round trip.
+     */
+    public void prefetchUser(String userId) {
+        USER_STATUS_CACHE.get(userId, this::loadUserStatus, new LookupCache.Callback<User>() {
+            @Override
+            public void onSuccess(User user) {
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.d(TAG, "Prefetch of " + userId + " failed: " + error);
+            }
+        });
+    }
+
+    /**
+     * Verifies user existence and authentication, from the cache while it is fresh
      */
     public void verifyUser(String userId, UserCallback callback) {
-        locationTracker.verifyUser(userId, callback);
+        USER_IDENTITY_CACHE.get(userId, (key, cacheCallback) -> locationTracker.verifyUser(key,
+                timed(toUserCallback(cacheCallback), verifyUserLatency, verifyUserErrors)),
+                toCacheCallback(callback));
+    }
+
+    /**
+     * Provides the process-wide user status cache, e.g. to read its hit and miss counters
+     */
+    public static LookupCache<User> getUserStatusCache() {
+        return USER_STATUS_CACHE;
+    }
+
+    /**
+     * Provides the process-wide user verification cache
+     */
+    public static LookupCache<User> getUserIdentityCache() {
+        return USER_IDENTITY_CACHE;
+    }
+
+    /**
+     * Reads a status from the server. A user with a status exists, so it also counts as verified.
+     */
+    private void loadUserStatus(String userId, LookupCache.Callback<User> callback) {
+        locationTracker.getUserStatus(userId, timed(new UserCallback() {
+            @Override
+            public void onSuccess(User user) {
+                if (user != null) {
+                    USER_IDENTITY_CACHE.put(userId, user);
+                }
+                callback.onSuccess(user);
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        }, userStatusLatency, userStatusErrors));
+    }
+
+    private static LookupCache.Callback<User> toCacheCallback(UserCallback callback) {
+        return new LookupCache.Callback<User>() {
+            @Override
+            public void onSuccess(User user) {
+                callback.onSuccess(user);
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        };
+    }
+
+    private static UserCallback toUserCallback(LookupCache.Callback<User> callback) {
+        return new UserCallback() {
+            @Override
+            public void onSuccess(User user) {
+                callback.onSuccess(user);
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        };
     }
 
     /**
@@ -0,0 +1,250 @@
+package com.omri.locationtrackerdemo.data.repository;
+
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers outbound location fixes and uploads them in batches.
+ *
+ * A batch is flushed when {@code maxBatchSize} fixes are buffered or when the oldest
+ * buffered fix has waited {@code maxDelayMs}, whichever comes first. At most one upload
+ * is in flight: fixes arriving while a request is pending replace each other so that
+ * only the latest position is sent next ("latest wins"). A failed batch is not dropped,
+ * it is sent again with the next request, ahead of the fixes that arrived meanwhile.
+ */
+public class LocationUploadQueue {
+
+    /**
+     * Performs the upload of one batch
+     */
+    public interface Sink {
+        /**
+         * @param fixes Buffered fixes in arrival order, never empty
+         * @param callback Must be called exactly once with the result
+         */
+        void upload(List<LocationFix> fixes, SinkCallback callback);
+    }
+
+    public interface SinkCallback {
+        void onSuccess();
+
+        void onError(String error);
+    }
+
+    /**
+     * Notified about the result of every upload
+     */
+    public interface Listener {
+        void onUploaded(LocationFix latest);
+
+        void onUploadFailed(String error);
+    }
+
+    private final Sink sink;
+    private final int maxBatchSize;
+    private final long maxDelayMs;
+    private final ScheduledExecutorService scheduler;
+
+    private List<LocationFix> buffer = new ArrayList<>();
+    private ScheduledFuture<?> pendingFlush;
+    private boolean inFlight;
+    private Listener listener;
+
+    private long enqueuedCount;
+    private long coalescedCount;
+    private long sentCount;
+    private long requestCount;
+    private long failedCount;
+
+    /**
+     * Creates a new upload queue
+     * @param sink Performs the actual upload
+     * @param maxBatchSize Number of buffered fixes that triggers an immediate flush
+     * @param maxDelayMs Longest time a fix waits in the buffer before a flush
+     * @param scheduler Executor running delayed flushes
+     */
+    public LocationUploadQueue(Sink sink, int maxBatchSize, long maxDelayMs,
+                               ScheduledExecutorService scheduler) {
+        if (maxBatchSize < 1 || maxDelayMs < 0) {
+            throw new IllegalArgumentException("Invalid batch size or delay");
+        }
+        this.sink = sink;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMs = maxDelayMs;
+        this.scheduler = scheduler;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Adds a fix to the buffer
+     * @param fix The fix to upload
+     */
+    public void enqueue(LocationFix fix) {
+        enqueueAll(Collections.singletonList(fix));
+    }
+
+    /**
+     * Adds several fixes in arrival order, e.g. a backlog replayed from the journal
+     * @param fixes The fixes to upload
+     */
+    public void enqueueAll(List<LocationFix> fixes) {
+        if (fixes.isEmpty()) {
+            return;
+        }
+        boolean flushNow = false;
+        synchronized (this) {
+            enqueuedCount += fixes.size();
+            if (inFlight) {
+                // Link is busy, the newest fix supersedes everything still waiting
+                coalescedCount += buffer.size() + fixes.size() - 1;
+                buffer.clear();
+                buffer.add(fixes.get(fixes.size() - 1));
+                return;
+            }
+            buffer.addAll(fixes);
+            if (buffer.size() >= maxBatchSize) {
+                flushNow = true;
+            } else if (pendingFlush == null) {
+                scheduleFlush();
+            }
+        }
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    /**
+     * Uploads the buffered fixes now unless a request is already in flight,
+     * in which case they are sent as soon as it completes
+     */
+    public void flush() {
+        final List<LocationFix> batch;
+        synchronized (this) {
+            if (pendingFlush != null) {
+                pendingFlush.cancel(false);
+                pendingFlush = null;
+            }
+            if (inFlight || buffer.isEmpty()) {
+                return;
+            }
+            batch = buffer;
+            buffer = new ArrayList<>();
+            inFlight = true;
+            requestCount++;
+        }
+
+        sink.upload(Collections.unmodifiableList(batch), new SinkCallback() {
+            @Override
+            public void onSuccess() {
+                Listener currentListener;
+                synchronized (LocationUploadQueue.this) {
+                    inFlight = false;
+                    sentCount += batch.size();
+                    currentListener = listener;
+                }
+                if (currentListener != null) {
+                    currentListener.onUploaded(batch.get(batch.size() - 1));
+                }
+                flush();
+            }
+
+            @Override
+            public void onError(String error) {
+                Listener currentListener;
+                synchronized (LocationUploadQueue.this) {
+                    inFlight = false;
+                    failedCount += batch.size();
+                    currentListener = listener;
+                    // Retried in order on the next trigger, ahead of fixes that arrived meanwhile
+                    List<LocationFix> retry = new ArrayList<>(batch.size() + buffer.size());
+                    retry.addAll(batch);
+                    retry.addAll(buffer);
+                    buffer = retry;
+                }
+                if (currentListener != null) {
+                    currentListener.onUploadFailed(error);
+                }
+                scheduleRetry();
+            }
+        });
+    }
+
+    private synchronized void scheduleRetry() {
+        if (!inFlight && !buffer.isEmpty() && pendingFlush == null) {
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        try {
+            pendingFlush = scheduler.schedule(this::flush, maxDelayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Scheduler was shut down, fixes stay buffered until flush() is called
+            pendingFlush = null;
+        }
+    }
+
+    /**
+     * Drops all buffered fixes and cancels a pending flush
+     */
+    public synchronized void clear() {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        buffer.clear();
+    }
+
+    public synchronized boolean isInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getBufferedCount() {
+        return buffer.size();
+    }
+
+    /**
+     * Number of fixes handed to {@link #enqueue(LocationFix)}
+     */
+    public synchronized long getEnqueuedCount() {
+        return enqueuedCount;
+    }
+
+    /**
+     * Number of fixes dropped because a newer fix replaced them while a request was in flight
+     */
+    public synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * Number of fixes contained in successful uploads
+     */
+    public synchronized long getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * Number of upload requests issued
+     */
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * Number of fixes in failed uploads, each of which is kept for retry
+     */
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+}
@@ -0,0 +1,298 @@
+package com.omri.locationtrackerdemo.data.repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the results of asynchronous backend lookups by key, e.g. user status by user ID.
+ *
+ * - A value younger than {@code ttlMs} is returned without a backend call.
+ * - A value older than that but within {@code maxStaleMs} more is returned at once and
+ *   revalidated in the background, so the next lookup sees the server's current answer.
+ * - Older values are dropped and looked up again.
+ * - Concurrent lookups of the same key share one backend call ("single flight"): only the
+ *   first starts the load, the others wait for its result.
+ * - Errors are not cached; every waiting lookup receives the error.
+ * - {@link #invalidate(String)} and {@link #put(String, Object)} are meant for the app's own
+ *   writes. A load already in flight for the key still answers its waiters but no longer
+ *   updates the cache, so it cannot overwrite what the write established.
+ *
+ * Cached values are delivered on the calling thread, loaded values on the loader's thread.
+ *
+ * @param <V> Cached value
+ */
+public class LookupCache<V> {
+
+    /**
+     * Performs the backend call for a key
+     */
+    public interface Loader<V> {
+        /**
+         * @param callback Must be called exactly once with the result
+         */
+        void load(String key, Callback<V> callback);
+    }
+
+    public interface Callback<V> {
+        void onSuccess(V value);
+
+        void onError(String error);
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long loadedAtMs;
+
+        Entry(V value, long loadedAtMs) {
+            this.value = value;
+            this.loadedAtMs = loadedAtMs;
+        }
+    }
+
+    private static final class Flight<V> {
+        final List<Callback<V>> waiters = new ArrayList<>(1);
+        boolean superseded;
+    }
+
+    private final long ttlMs;
+    private final long maxStaleMs;
+    private final LongSupplier clock;
+    private final Map<String, Entry<V>> entries = new HashMap<>();
+    private final Map<String, Flight<V>> flights = new HashMap<>();
+
+    private long hitCount;
+    private long staleHitCount;
+    private long missCount;
+    private long joinedCount;
+    private long loadCount;
+
+    /**
+     * Creates a cache timed by the wall clock
+     * @param ttlMs How long a value is returned without a backend call
+     * @param maxStaleMs How long after that a value is still returned while it is revalidated
+     */
+    public LookupCache(long ttlMs, long maxStaleMs) {
+        this(ttlMs, maxStaleMs, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a cache
+     * @param clock Current time in milliseconds
+     */
+    public LookupCache(long ttlMs, long maxStaleMs, LongSupplier clock) {
+        if (ttlMs < 0 || maxStaleMs < 0) {
+            throw new IllegalArgumentException("Invalid TTL");
+        }
+        this.ttlMs = ttlMs;
+        this.maxStaleMs = maxStaleMs;
+        this.clock = clock;
+    }
+
+    /**
+     * Looks up a key, from the cache if possible
+     * @param key Key of the value, e.g. a user ID
+     * @param loader Performs the backend call on a miss or revalidation
+     * @param callback Receives the value or the error of the load
+     */
+    public void get(String key, Loader<V> loader, Callback<V> callback) {
+        V cached = null;
+        Flight<V> startedFlight = null;
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            long ageMs = entry == null ? Long.MAX_VALUE : clock.getAsLong() - entry.loadedAtMs;
+            if (ageMs < ttlMs) {
+                hitCount++;
+                cached = entry.value;
+            } else if (ageMs - ttlMs < maxStaleMs) {
+                staleHitCount++;
+                cached = entry.value;
+                if (!flights.containsKey(key)) {
+                    startedFlight = startFlight(key);
+                }
+            } else {
+                missCount++;
+                if (entry != null) {
+                    entries.remove(key);
+                }
+                startedFlight = join(key, callback);
+            }
+        }
+        if (cached != null) {
+            callback.onSuccess(cached);
+        }
+        if (startedFlight != null) {
+            load(key, loader, startedFlight);
+        }
+    }
+
+    /**
+     * Looks up a key from the backend, joining a load already in flight
+     * @param key Key of the value
+     * @param loader Performs the backend call
+     * @param callback Receives the value or the error of the load
+     */
+    public void refresh(String key, Loader<V> loader, Callback<V> callback) {
+        Flight<V> startedFlight;
+        synchronized (this) {
+            missCount++;
+            startedFlight = join(key, callback);
+        }
+        if (startedFlight != null) {
+            load(key, loader, startedFlight);
+        }
+    }
+
+    /**
+     * Replaces the cached value, e.g. with the answer to the app's own write
+     */
+    public synchronized void put(String key, V value) {
+        supersedeFlight(key);
+        entries.put(key, new Entry<>(value, clock.getAsLong()));
+    }
+
+    /**
+     * Drops the cached value, e.g. before the app's own write
+     */
+    public synchronized void invalidate(String key) {
+        supersedeFlight(key);
+        entries.remove(key);
+    }
+
+    /**
+     * Drops all cached values
+     */
+    public synchronized void clear() {
+        for (Flight<V> flight : flights.values()) {
+            flight.superseded = true;
+        }
+        entries.clear();
+    }
+
+    /**
+     * Returns the cached value without a backend call, or null if none is fresh or stale
+     */
+    public synchronized V peek(String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null || clock.getAsLong() - entry.loadedAtMs - ttlMs >= maxStaleMs) {
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Adds the callback to the key's load in flight, or starts one
+     * @return The started load, or null if one was already running
+     */
+    private Flight<V> join(String key, Callback<V> callback) {
+        Flight<V> flight = flights.get(key);
+        if (flight != null) {
+            joinedCount++;
+            flight.waiters.add(callback);
+            return null;
+        }
+        flight = startFlight(key);
+        flight.waiters.add(callback);
+        return flight;
+    }
+
+    private Flight<V> startFlight(String key) {
+        Flight<V> flight = new Flight<>();
+        flights.put(key, flight);
+        loadCount++;
+        return flight;
+    }
+
+    private void supersedeFlight(String key) {
+        Flight<V> flight = flights.get(key);
+        if (flight != null) {
+            flight.superseded = true;
+        }
+    }
+
+    private void load(String key, Loader<V> loader, Flight<V> flight) {
+        loader.load(key, new Callback<V>() {
+            @Override
+            public void onSuccess(V value) {
+                for (Callback<V> waiter : finish(key, flight, value)) {
+                    waiter.onSuccess(value);
+                }
+            }
+
+            @Override
+            public void onError(String error) {
+                for (Callback<V> waiter : finish(key, flight, null)) {
+                    waiter.onError(error);
+                }
+            }
+        });
+    }
+
+    /**
+     * Ends a load, caching its value unless a write superseded it
+     * @param value Loaded value, null on error
+     * @return The lookups waiting for the load
+     */
+    private synchronized List<Callback<V>> finish(String key, Flight<V> flight, V value) {
+        if (flights.get(key) == flight) {
+            flights.remove(key);
+        }
+        if (value != null && !flight.superseded) {
+            long now = clock.getAsLong();
+            entries.put(key, new Entry<>(value, now));
+            evictExpired(now);
+        }
+        return flight.waiters;
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().loadedAtMs - ttlMs >= maxStaleMs) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Number of lookups answered from a fresh value
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Number of lookups answered from a stale value while it was revalidated
+     */
+    public synchronized long getStaleHitCount() {
+        return staleHitCount;
+    }
+
+    /**
+     * Number of lookups that had to wait for the backend, including refreshes
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Number of missed lookups that joined a load already in flight
+     */
+    public synchronized long getJoinedCount() {
+        return joinedCount;
+    }
+
+    /**
+     * Number of backend calls started
+     */
+    public synchronized long getLoadCount() {
+        return loadCount;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
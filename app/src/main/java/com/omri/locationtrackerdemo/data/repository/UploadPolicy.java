@@ -0,0 +1,37 @@
+package com.omri.locationtrackerdemo.data.repository;
+
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+
+/**
+ * Decides whether a local fix is worth uploading on the location sharing path.
+ * Implementations may keep state about previously accepted fixes.
+ */
+public interface UploadPolicy {
+
+    /**
+     * Policy that uploads every fix
+     */
+    UploadPolicy ALWAYS = new UploadPolicy() {
+        @Override
+        public boolean shouldUpload(LocationSample sample) {
+            return true;
+        }
+
+        @Override
+        public void reset() {
+        }
+    };
+
+    /**
+     * Called for every new local fix
+     * @param sample The new fix
+     * @return true if the fix should be uploaded
+     */
+    boolean shouldUpload(LocationSample sample);
+
+    /**
+     * Forgets previously accepted fixes so the next fix is uploaded,
+     * e.g. when sharing is switched on
+     */
+    void reset();
+}
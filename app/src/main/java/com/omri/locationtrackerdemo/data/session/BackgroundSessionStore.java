@@ -0,0 +1,104 @@
+package com.omri.locationtrackerdemo.data.session;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide access to the app's {@link SessionStore} from a single background thread.
+ * Opening the store takes a keystore call and loading or saving a snapshot touches the
+ * disk, so neither runs on the main thread. The store is opened once, on the first task;
+ * tasks run in submission order, so a save followed by a clear leaves no snapshot.
+ */
+public final class BackgroundSessionStore {
+    private static final String TAG = "BackgroundSessionStore";
+
+    /**
+     * Receives the result of {@link #load(LoadCallback)} on the session thread
+     */
+    public interface LoadCallback {
+        /**
+         * @param snapshot The trusted snapshot, or null if there is none or the keystore
+         *                 is unavailable
+         */
+        void onLoaded(SessionSnapshot snapshot);
+    }
+
+    private static BackgroundSessionStore instance;
+
+    private final File filesDir;
+    private final ExecutorService executor;
+    // Only accessed on the session thread
+    private SessionStore store;
+    private boolean opened;
+
+    /**
+     * The process-wide store, created on first use
+     * @param filesDir The app's private files directory
+     */
+    public static synchronized BackgroundSessionStore get(File filesDir) {
+        if (instance == null) {
+            instance = new BackgroundSessionStore(filesDir);
+        }
+        return instance;
+    }
+
+    private BackgroundSessionStore(File filesDir) {
+        this.filesDir = filesDir;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SessionStore");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reads the stored snapshot in the background
+     */
+    public void load(LoadCallback callback) {
+        executor.execute(() -> {
+            SessionStore store = open();
+            callback.onLoaded(store != null ? store.load() : null);
+        });
+    }
+
+    /**
+     * Replaces the stored snapshot in the background
+     */
+    public void save(SessionSnapshot snapshot) {
+        executor.execute(() -> {
+            SessionStore store = open();
+            if (store == null) {
+                return;
+            }
+            try {
+                store.save(snapshot);
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot save session", e);
+            }
+        });
+    }
+
+    /**
+     * Deletes the stored snapshot in the background
+     */
+    public void clear() {
+        executor.execute(() -> {
+            SessionStore store = open();
+            if (store != null) {
+                store.clear();
+            }
+        });
+    }
+
+    private SessionStore open() {
+        if (!opened) {
+            store = SessionKeys.openStore(filesDir);
+            opened = true;
+        }
+        return store;
+    }
+}
@@ -0,0 +1,59 @@
+package com.omri.locationtrackerdemo.data.session;
+
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+/**
+ * Provides the key that signs session snapshots and the app's {@link SessionStore}.
+ * The key is kept in the Android keystore, so it never leaves the device and is lost
+ * together with the app's data.
+ */
+public final class SessionKeys {
+    // A week without opening the app goes through the login screen again
+    public static final long SESSION_MAX_AGE_MS = 7 * 24 * 60 * 60 * 1000L;
+    private static final String TAG = "SessionKeys";
+    private static final String SESSION_FILE = "session";
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String ALIAS = "session-snapshot";
+
+    private SessionKeys() {
+    }
+
+    /**
+     * Opens the app's session store
+     * @param filesDir The app's private files directory
+     * @return The store, or null if the keystore is unavailable and sessions are not restored
+     */
+    public static SessionStore openStore(File filesDir) {
+        try {
+            return new SessionStore(new File(filesDir, SESSION_FILE), getOrCreate(), SESSION_MAX_AGE_MS);
+        } catch (GeneralSecurityException | IOException e) {
+            Log.w(TAG, "Session key unavailable", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the session signing key, creating it on first use
+     */
+    public static synchronized SecretKey getOrCreate() throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+        keyStore.load(null);
+        KeyStore.Entry entry = keyStore.getEntry(ALIAS, null);
+        if (entry instanceof KeyStore.SecretKeyEntry) {
+            return ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+        }
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_HMAC_SHA256, KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(ALIAS, KeyProperties.PURPOSE_SIGN).build());
+        return generator.generateKey();
+    }
+}
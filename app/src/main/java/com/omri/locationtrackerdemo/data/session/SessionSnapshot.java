@@ -0,0 +1,61 @@
+package com.omri.locationtrackerdemo.data.session;
+
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+
+/**
+ * Immutable state of a logged in user as last confirmed by the server, enough to open
+ * the map screen before the server has been asked again.
+ */
+public final class SessionSnapshot {
+    private final String userId;
+    private final boolean active;
+    private final LocationFix lastFix;
+    private final long savedAtMs;
+
+    /**
+     * Creates a snapshot
+     * @param userId ID of the logged in user
+     * @param active Whether the user was sharing their location
+     * @param lastFix The user's last own fix, or null if none was taken yet
+     * @param savedAtMs Wall clock time of the snapshot in milliseconds since epoch
+     */
+    public SessionSnapshot(String userId, boolean active, LocationFix lastFix, long savedAtMs) {
+        if (userId == null) {
+            throw new IllegalArgumentException("User ID required");
+        }
+        this.userId = userId;
+        this.active = active;
+        this.lastFix = lastFix;
+        this.savedAtMs = savedAtMs;
+    }
+
+    /**
+     * Returns a copy with a new sharing state
+     */
+    public SessionSnapshot withActive(boolean active, long savedAtMs) {
+        return new SessionSnapshot(userId, active, lastFix, savedAtMs);
+    }
+
+    /**
+     * Returns a copy with a new last fix
+     */
+    public SessionSnapshot withLastFix(LocationFix lastFix, long savedAtMs) {
+        return new SessionSnapshot(userId, active, lastFix, savedAtMs);
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public LocationFix getLastFix() {
+        return lastFix;
+    }
+
+    public long getSavedAtMs() {
+        return savedAtMs;
+    }
+}
@@ -0,0 +1,157 @@
+package com.omri.locationtrackerdemo.data.session;
+
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+/**
+ * Keeps the last {@link SessionSnapshot} in a single file, signed with an HMAC so that a
+ * snapshot is only trusted if this installation wrote it.
+ *
+ * Layout:
+ * - byte version
+ * - long saved at, boolean active, UTF user ID
+ * - boolean has fix, then double latitude, double longitude, long fix time
+ * - HMAC of everything before it
+ *
+ * The file is replaced atomically via rename. {@link #load()} returns null, and deletes
+ * the file, for snapshots that are torn, signed with another key or older than
+ * {@code maxAgeMs}, so callers fall back to a regular login.
+ */
+public class SessionStore {
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final SecretKey key;
+    private final long maxAgeMs;
+    private final LongSupplier clock;
+
+    /**
+     * Creates a store timed by the wall clock
+     * @param file File holding the snapshot, its directory must exist
+     * @param key HMAC key, e.g. HmacSHA256 from the Android keystore
+     * @param maxAgeMs Age after which a snapshot is no longer trusted
+     */
+    public SessionStore(File file, SecretKey key, long maxAgeMs) {
+        this(file, key, maxAgeMs, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a store
+     * @param clock Current wall clock time in milliseconds
+     */
+    public SessionStore(File file, SecretKey key, long maxAgeMs, LongSupplier clock) {
+        this.file = file;
+        this.key = key;
+        this.maxAgeMs = maxAgeMs;
+        this.clock = clock;
+    }
+
+    /**
+     * Replaces the stored snapshot
+     */
+    public synchronized void save(SessionSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeLong(snapshot.getSavedAtMs());
+        out.writeBoolean(snapshot.isActive());
+        out.writeUTF(snapshot.getUserId());
+        LocationFix fix = snapshot.getLastFix();
+        out.writeBoolean(fix != null);
+        if (fix != null) {
+            out.writeDouble(fix.getLatitude());
+            out.writeDouble(fix.getLongitude());
+            out.writeLong(fix.getTimestampMs());
+        }
+        out.write(sign(bytes.toByteArray()));
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            bytes.writeTo(stream);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot replace session file");
+        }
+    }
+
+    /**
+     * Reads the stored snapshot
+     * @return The snapshot, or null if there is none that can be trusted
+     */
+    public synchronized SessionSnapshot load() {
+        if (!file.exists()) {
+            return null;
+        }
+        SessionSnapshot snapshot = null;
+        try {
+            snapshot = verify(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            // Torn or unreadable, treated like a forged snapshot
+        }
+        if (snapshot == null || clock.getAsLong() - snapshot.getSavedAtMs() >= maxAgeMs) {
+            clear();
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Deletes the stored snapshot, e.g. when the server no longer knows the user
+     */
+    public synchronized void clear() {
+        file.delete();
+    }
+
+    private SessionSnapshot verify(byte[] data) throws IOException {
+        Mac mac = newMac();
+        if (data.length <= mac.getMacLength()) {
+            return null;
+        }
+        byte[] signed = Arrays.copyOf(data, data.length - mac.getMacLength());
+        byte[] signature = Arrays.copyOfRange(data, signed.length, data.length);
+        if (!MessageDigest.isEqual(mac.doFinal(signed), signature)) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(signed));
+        if (in.readByte() != VERSION) {
+            return null;
+        }
+        long savedAtMs = in.readLong();
+        boolean active = in.readBoolean();
+        String userId = in.readUTF();
+        LocationFix fix = null;
+        if (in.readBoolean()) {
+            fix = new LocationFix(userId, in.readDouble(), in.readDouble(), in.readLong());
+        }
+        return new SessionSnapshot(userId, active, fix, savedAtMs);
+    }
+
+    private byte[] sign(byte[] data) throws IOException {
+        return newMac().doFinal(data);
+    }
+
+    private Mac newMac() throws IOException {
+        try {
+            Mac mac = Mac.getInstance(key.getAlgorithm());
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot sign session", e);
+        }
+    }
+}
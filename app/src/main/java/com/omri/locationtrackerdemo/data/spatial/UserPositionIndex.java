@@ -0,0 +1,361 @@
+package com.omri.locationtrackerdemo.data.spatial;
+
+import com.omri.locationtrackerdemo.utils.GeoUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Latest known position of each user, bucketed on a latitude/longitude grid for
+ * radius and nearest-neighbor queries.
+ *
+ * Positions are immutable {@link Entry} objects held in concurrent maps, so queries never
+ * lock and never see a half-written position. Writers for the same user are serialized
+ * by the user map; a user that changes cells is added to the new cell before it leaves
+ * the old one, and queries skip entries that are no longer the user's current one. A user
+ * that moves again while a query runs can still be met in two cells; the query then keeps
+ * the newer position, so a user is never reported twice. A query racing with a move may
+ * miss that user once.
+ */
+public class UserPositionIndex {
+    /** About 550 m of latitude, so a 500 m radius query touches at most 3 x 3 cells */
+    public static final double DEFAULT_CELL_DEGREES = 0.005;
+
+    /**
+     * A user's position at a point in time
+     */
+    public static final class Entry {
+        public final String userId;
+        public final double latitude;
+        public final double longitude;
+        public final long timeMs;
+        final long cellKey;
+
+        Entry(String userId, double latitude, double longitude, long timeMs, long cellKey) {
+            this.userId = userId;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.timeMs = timeMs;
+            this.cellKey = cellKey;
+        }
+    }
+
+    /**
+     * A query result
+     */
+    public static final class Neighbor {
+        public final Entry entry;
+        public final double distanceMeters;
+
+        Neighbor(Entry entry, double distanceMeters) {
+            this.entry = entry;
+            this.distanceMeters = distanceMeters;
+        }
+    }
+
+    private static final Comparator<Neighbor> BY_DISTANCE = new Comparator<Neighbor>() {
+        @Override
+        public int compare(Neighbor a, Neighbor b) {
+            return Double.compare(a.distanceMeters, b.distanceMeters);
+        }
+    };
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * GeoUtils.EARTH_RADIUS_METERS;
+
+    private final double cellDegrees;
+    private final int columns;
+    private final ConcurrentHashMap<String, Entry> users = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, ConcurrentHashMap<String, Entry>> cells = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an index with {@link #DEFAULT_CELL_DEGREES} cells
+     */
+    public UserPositionIndex() {
+        this(DEFAULT_CELL_DEGREES);
+    }
+
+    /**
+     * Creates an index
+     * @param cellDegrees Cell size in degrees of latitude and longitude; about the typical query radius
+     */
+    public UserPositionIndex(double cellDegrees) {
+        if (!(cellDegrees > 0) || cellDegrees > 90) {
+            throw new IllegalArgumentException("Invalid cell size");
+        }
+        this.cellDegrees = cellDegrees;
+        this.columns = (int) Math.ceil(360 / cellDegrees);
+    }
+
+    /**
+     * Stores the latest position of a user, replacing the previous one
+     * @param userId ID of the user
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @param timeMs Time of the fix, used by callers to filter out old positions
+     */
+    public void update(String userId, double latitude, double longitude, long timeMs) {
+        final Entry entry = new Entry(userId, latitude, longitude, timeMs, cellKey(latitude, longitude));
+        users.compute(userId, (id, previous) -> {
+            addToCell(entry);
+            if (previous != null && previous.cellKey != entry.cellKey) {
+                removeFromCell(previous);
+            }
+            return entry;
+        });
+    }
+
+    /**
+     * Forgets a user
+     * @param userId ID of the user
+     */
+    public void remove(String userId) {
+        users.computeIfPresent(userId, (id, previous) -> {
+            removeFromCell(previous);
+            return null;
+        });
+    }
+
+    public void clear() {
+        for (String userId : users.keySet()) {
+            remove(userId);
+        }
+    }
+
+    /**
+     * Returns the latest position of a user
+     * @return The entry, or null if the user is not indexed
+     */
+    public Entry get(String userId) {
+        return users.get(userId);
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    /**
+     * Finds all users within a radius
+     * @param latitude Latitude of the center in degrees
+     * @param longitude Longitude of the center in degrees
+     * @param radiusMeters Search radius
+     * @param filter Accepts entries to report, e.g. recent and not the querying user; null for all
+     * @return Matching users, nearest first
+     */
+    public List<Neighbor> findWithin(double latitude, double longitude, double radiusMeters,
+                                     Predicate<Entry> filter) {
+        Map<String, Neighbor> found = new HashMap<>();
+        int centerRow = row(latitude);
+        int centerColumn = column(longitude);
+        int rowSpan = (int) Math.min(columns, Math.ceil(radiusMeters / (METERS_PER_DEGREE * cellDegrees)));
+        int columnSpan = columnSpan(latitude, radiusMeters);
+        if ((2L * rowSpan + 1) * (2L * columnSpan + 1) > cells.size()) {
+            // Cheaper to visit every non-empty cell than to probe the empty ones
+            for (ConcurrentHashMap<String, Entry> cell : cells.values()) {
+                collectWithin(cell, latitude, longitude, radiusMeters, filter, found);
+            }
+        } else {
+            for (int row = centerRow - rowSpan; row <= centerRow + rowSpan; row++) {
+                for (int dc = -columnSpan; dc <= columnSpan; dc++) {
+                    ConcurrentHashMap<String, Entry> cell = cells.get(key(row, centerColumn + dc));
+                    if (cell != null) {
+                        collectWithin(cell, latitude, longitude, radiusMeters, filter, found);
+                    }
+                }
+            }
+        }
+        List<Neighbor> result = new ArrayList<>(found.values());
+        Collections.sort(result, BY_DISTANCE);
+        return result;
+    }
+
+    /**
+     * Finds the nearest users, searching rings of cells outwards until no closer user can exist
+     * @param latitude Latitude of the center in degrees
+     * @param longitude Longitude of the center in degrees
+     * @param count Maximum number of users to return
+     * @param maxDistanceMeters Users further away are not reported
+     * @param filter Accepts entries to report, e.g. active and not the querying user; null for all
+     * @return Up to count users, nearest first
+     */
+    public List<Neighbor> findNearest(double latitude, double longitude, int count, double maxDistanceMeters,
+                                      Predicate<Entry> filter) {
+        if (count <= 0) {
+            return new ArrayList<>();
+        }
+        // Farthest candidate on top, so it is the one replaced by a closer user
+        PriorityQueue<Neighbor> best = new PriorityQueue<>(count, Collections.reverseOrder(BY_DISTANCE));
+        Map<String, Neighbor> bestByUser = new HashMap<>();
+        int centerRow = row(latitude);
+        int centerColumn = column(longitude);
+        int maxColumnOffset = (columns - 1) / 2;
+        double cellMeters = minCellMeters(latitude, maxDistanceMeters);
+        long maxRing = Math.max((long) Math.ceil(maxDistanceMeters / cellMeters) + 1, 1);
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Every cell of this ring is at least ring - 1 whole cells away from the center
+            double ringMinDistance = (ring - 1) * cellMeters;
+            if (ringMinDistance > maxDistanceMeters
+                    || (best.size() == count && ringMinDistance > best.peek().distanceMeters)) {
+                break;
+            }
+            if ((2L * ring + 1) * (2L * ring + 1) > cells.size()) {
+                // The rings searched so far cost as much as visiting every cell, which bounds the rest
+                best.clear();
+                bestByUser.clear();
+                for (ConcurrentHashMap<String, Entry> cell : cells.values()) {
+                    collectNearest(cell, latitude, longitude, count, maxDistanceMeters, filter,
+                            best, bestByUser);
+                }
+                break;
+            }
+            int ringColumns = Math.min(ring, maxColumnOffset);
+            for (int row = centerRow - ring; row <= centerRow + ring; row++) {
+                if (row == centerRow - ring || row == centerRow + ring) {
+                    for (int dc = -ringColumns; dc <= ringColumns; dc++) {
+                        collectNearest(key(row, centerColumn + dc), latitude, longitude, count,
+                                maxDistanceMeters, filter, best, bestByUser);
+                    }
+                } else if (ring <= maxColumnOffset) {
+                    collectNearest(key(row, centerColumn - ring), latitude, longitude, count,
+                            maxDistanceMeters, filter, best, bestByUser);
+                    collectNearest(key(row, centerColumn + ring), latitude, longitude, count,
+                            maxDistanceMeters, filter, best, bestByUser);
+                }
+            }
+        }
+
+        List<Neighbor> result = new ArrayList<>(best);
+        Collections.sort(result, BY_DISTANCE);
+        return result;
+    }
+
+    private void collectWithin(ConcurrentHashMap<String, Entry> cell, double latitude, double longitude,
+                               double radiusMeters, Predicate<Entry> filter, Map<String, Neighbor> found) {
+        for (Entry entry : cell.values()) {
+            if (!isCurrent(entry) || (filter != null && !filter.test(entry))) {
+                continue;
+            }
+            double distance = GeoUtils.distanceMeters(latitude, longitude, entry.latitude, entry.longitude);
+            if (distance <= radiusMeters) {
+                Neighbor previous = found.get(entry.userId);
+                if (previous == null || isNewer(entry, previous.entry)) {
+                    found.put(entry.userId, new Neighbor(entry, distance));
+                }
+            }
+        }
+    }
+
+    private void collectNearest(long cellKey, double latitude, double longitude,
+                                int count, double maxDistanceMeters, Predicate<Entry> filter,
+                                PriorityQueue<Neighbor> best, Map<String, Neighbor> bestByUser) {
+        ConcurrentHashMap<String, Entry> cell = cells.get(cellKey);
+        if (cell != null) {
+            collectNearest(cell, latitude, longitude, count, maxDistanceMeters, filter, best, bestByUser);
+        }
+    }
+
+    private void collectNearest(ConcurrentHashMap<String, Entry> cell, double latitude, double longitude,
+                                int count, double maxDistanceMeters, Predicate<Entry> filter,
+                                PriorityQueue<Neighbor> best, Map<String, Neighbor> bestByUser) {
+        for (Entry entry : cell.values()) {
+            if (!isCurrent(entry) || (filter != null && !filter.test(entry))) {
+                continue;
+            }
+            double distance = GeoUtils.distanceMeters(latitude, longitude, entry.latitude, entry.longitude);
+            if (distance > maxDistanceMeters) {
+                continue;
+            }
+            Neighbor previous = bestByUser.get(entry.userId);
+            if (previous != null) {
+                if (!isNewer(entry, previous.entry)) {
+                    continue;
+                }
+                // Moved while the query ran, the newer position replaces the old one
+                best.remove(previous);
+                bestByUser.remove(entry.userId);
+            }
+            if (best.size() < count) {
+                add(new Neighbor(entry, distance), best, bestByUser);
+            } else if (distance < best.peek().distanceMeters) {
+                bestByUser.remove(best.poll().entry.userId);
+                add(new Neighbor(entry, distance), best, bestByUser);
+            }
+        }
+    }
+
+    private static void add(Neighbor neighbor, PriorityQueue<Neighbor> best, Map<String, Neighbor> bestByUser) {
+        best.add(neighbor);
+        bestByUser.put(neighbor.entry.userId, neighbor);
+    }
+
+    /**
+     * Decides which of two entries of the same user met by one query is kept:
+     * the later fix, or the one seen first on equal times
+     */
+    private static boolean isNewer(Entry entry, Entry other) {
+        return entry != other && entry.timeMs > other.timeMs;
+    }
+
+    private boolean isCurrent(Entry entry) {
+        return users.get(entry.userId) == entry;
+    }
+
+    private void addToCell(Entry entry) {
+        cells.compute(entry.cellKey, (key, cell) -> {
+            if (cell == null) {
+                cell = new ConcurrentHashMap<>();
+            }
+            cell.put(entry.userId, entry);
+            return cell;
+        });
+    }
+
+    private void removeFromCell(Entry entry) {
+        // Dropping the empty cell is atomic with respect to writers adding to it
+        cells.computeIfPresent(entry.cellKey, (key, cell) -> {
+            cell.remove(entry.userId, entry);
+            return cell.isEmpty() ? null : cell;
+        });
+    }
+
+    /**
+     * Number of cell columns covering a distance east and west at a latitude
+     */
+    private int columnSpan(double latitude, double meters) {
+        // Never more than once around the globe, which would visit cells twice
+        return (int) Math.min((columns - 1) / 2, Math.ceil(meters / minCellMeters(latitude, meters)));
+    }
+
+    /**
+     * Smallest cell side, in meters, within a distance of a latitude
+     */
+    private double minCellMeters(double latitude, double meters) {
+        double farthestLatitude = Math.min(89, Math.abs(latitude) + meters / METERS_PER_DEGREE + cellDegrees);
+        return METERS_PER_DEGREE * cellDegrees * Math.cos(Math.toRadians(farthestLatitude));
+    }
+
+    private int row(double latitude) {
+        return (int) Math.floor((latitude + 90) / cellDegrees);
+    }
+
+    private int column(double longitude) {
+        return (int) Math.floor((longitude + 180) / cellDegrees);
+    }
+
+    private long cellKey(double latitude, double longitude) {
+        return key(row(latitude), column(longitude));
+    }
+
+    private long key(int row, int column) {
+        // Wrap columns around the antimeridian
+        int wrapped = ((column % columns) + columns) % columns;
+        return ((long) row << 32) | (wrapped & 0xffffffffL);
+    }
+}
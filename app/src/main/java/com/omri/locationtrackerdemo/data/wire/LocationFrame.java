@@ -0,0 +1,41 @@
+package com.omri.locationtrackerdemo.data.wire;
+
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+
+import java.util.List;
+
+/**
+ * Decoded {@link LocationFrameCodec} frame: a batch of fixes of one or more users
+ */
+public final class LocationFrame {
+    private final long sequence;
+    private final long serverTimeMs;
+    private final List<LocationFix> fixes;
+
+    LocationFrame(long sequence, long serverTimeMs, List<LocationFix> fixes) {
+        this.sequence = sequence;
+        this.serverTimeMs = serverTimeMs;
+        this.fixes = fixes;
+    }
+
+    /**
+     * @return Stream sequence number of the last fix in the frame, 0 for uploads
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return Time the frame was sent by the server, 0 if unknown
+     */
+    public long getServerTimeMs() {
+        return serverTimeMs;
+    }
+
+    /**
+     * @return Fixes in the order they were encoded
+     */
+    public List<LocationFix> getFixes() {
+        return fixes;
+    }
+}
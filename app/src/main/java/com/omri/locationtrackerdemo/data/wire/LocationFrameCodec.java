@@ -0,0 +1,178 @@
+package com.omri.locationtrackerdemo.data.wire;
+
+import com.omri.locationtrackerdemo.data.history.VarInts;
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of location batches, the alternative to the JSON bodies of
+ * location uploads and stream frames.
+ *
+ * Coordinates are fixed-point microdegrees (about 0.1 m, the resolution of the history
+ * track format) and every fix is written as zig-zag varint deltas from the previous fix
+ * of the frame. User IDs are written once per frame and referenced by index. A single
+ * fix costs about 20 bytes plus the user ID where its JSON form takes about 70 plus the
+ * ID, and each further fix of a moving user a few seconds later about 6.
+ *
+ * Layout:
+ * - magic "LF", version byte
+ * - varint sequence (0 if none), varint server time in ms (0 if unknown)
+ * - varint user count, per user: varint length, UTF-8 ID
+ * - varint fix count, per fix: varint user index, zig-zag time, latitude and
+ *   longitude deltas from the previous fix (from 0 for the first)
+ */
+public final class LocationFrameCodec {
+    /** Media type of encoded frames in HTTP requests and responses */
+    public static final String CONTENT_TYPE = "application/x-location-frame";
+
+    static final byte[] MAGIC = {'L', 'F'};
+    static final byte VERSION = 1;
+    static final double MICRODEGREES = 1e6;
+    /** Smallest encoding of one fix, used to reject implausible counts before allocating */
+    private static final int MIN_FIX_BYTES = 4;
+
+    private LocationFrameCodec() {
+    }
+
+    /**
+     * Encodes an upload batch without sequence and server time
+     * @param fixes Fixes in the order they are to be applied
+     */
+    public static byte[] encode(List<LocationFix> fixes) {
+        return encode(fixes, 0, 0);
+    }
+
+    /**
+     * Encodes a batch of fixes
+     * @param fixes Fixes in the order they are to be applied
+     * @param sequence Stream sequence number of the last fix, 0 if none
+     * @param serverTimeMs Time the frame is sent, 0 if unknown
+     */
+    public static byte[] encode(List<LocationFix> fixes, long sequence, long serverTimeMs) {
+        // Batches rarely mix more than a few users, so a linear lookup beats hashing
+        List<String> users = new ArrayList<>(1);
+        int[] userIndexes = new int[fixes.size()];
+        int userBytes = 0;
+        byte[][] names = new byte[fixes.size()][];
+        for (int i = 0; i < fixes.size(); i++) {
+            String userId = fixes.get(i).getUserId();
+            int index = users.indexOf(userId);
+            if (index < 0) {
+                index = users.size();
+                users.add(userId);
+                names[index] = userId.getBytes(StandardCharsets.UTF_8);
+                userBytes += names[index].length;
+            }
+            userIndexes[i] = index;
+        }
+
+        byte[] out = new byte[MAGIC.length + 1 + (4 + users.size() + 4 * fixes.size()) * VarInts.MAX_BYTES
+                + userBytes];
+        System.arraycopy(MAGIC, 0, out, 0, MAGIC.length);
+        int offset = MAGIC.length;
+        out[offset++] = VERSION;
+        offset = VarInts.write(sequence, out, offset);
+        offset = VarInts.write(serverTimeMs, out, offset);
+        offset = VarInts.write(users.size(), out, offset);
+        for (int i = 0; i < users.size(); i++) {
+            offset = VarInts.write(names[i].length, out, offset);
+            System.arraycopy(names[i], 0, out, offset, names[i].length);
+            offset += names[i].length;
+        }
+        offset = VarInts.write(fixes.size(), out, offset);
+        long lastTime = 0;
+        long lastLat = 0;
+        long lastLon = 0;
+        for (int i = 0; i < fixes.size(); i++) {
+            LocationFix fix = fixes.get(i);
+            long lat = toFixedPoint(fix.getLatitude());
+            long lon = toFixedPoint(fix.getLongitude());
+            offset = VarInts.write(userIndexes[i], out, offset);
+            offset = VarInts.write(VarInts.zigZag(fix.getTimestampMs() - lastTime), out, offset);
+            offset = VarInts.write(VarInts.zigZag(lat - lastLat), out, offset);
+            offset = VarInts.write(VarInts.zigZag(lon - lastLon), out, offset);
+            lastTime = fix.getTimestampMs();
+            lastLat = lat;
+            lastLon = lon;
+        }
+        return Arrays.copyOf(out, offset);
+    }
+
+    /**
+     * Decodes a frame
+     * @param bytes One encoded frame
+     * @throws IOException if the bytes do not hold a valid frame
+     */
+    public static LocationFrame decode(byte[] bytes) throws IOException {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Decodes the frame between the buffer position and limit
+     * @param buffer Buffer holding one encoded frame, e.g. a WebSocket message
+     * @throws IOException if the buffer does not hold a valid frame
+     */
+    public static LocationFrame decode(ByteBuffer buffer) throws IOException {
+        ByteBuffer in = buffer.slice();
+        try {
+            for (byte b : MAGIC) {
+                if (in.get() != b) {
+                    throw new IOException("Not a location frame");
+                }
+            }
+            if (in.get() != VERSION) {
+                throw new IOException("Unsupported location frame version");
+            }
+            long sequence = VarInts.read(in);
+            long serverTimeMs = VarInts.read(in);
+            int userCount = readCount(in, 1);
+            String[] users = new String[userCount];
+            for (int i = 0; i < userCount; i++) {
+                // Copied out, WebSocket messages arrive as read-only buffers without an array
+                byte[] name = new byte[readCount(in, 1)];
+                in.get(name);
+                users[i] = new String(name, StandardCharsets.UTF_8);
+            }
+            int fixCount = readCount(in, MIN_FIX_BYTES);
+            List<LocationFix> fixes = new ArrayList<>(fixCount);
+            long time = 0;
+            long lat = 0;
+            long lon = 0;
+            for (int i = 0; i < fixCount; i++) {
+                long userIndex = VarInts.read(in);
+                if (userIndex >= userCount) {
+                    throw new IOException("Corrupt location frame");
+                }
+                time += VarInts.unZigZag(VarInts.read(in));
+                lat += VarInts.unZigZag(VarInts.read(in));
+                lon += VarInts.unZigZag(VarInts.read(in));
+                fixes.add(new LocationFix(users[(int) userIndex], lat / MICRODEGREES, lon / MICRODEGREES, time));
+            }
+            return new LocationFrame(sequence, serverTimeMs, fixes);
+        } catch (BufferUnderflowException | IllegalStateException e) {
+            throw new IOException("Truncated location frame", e);
+        }
+    }
+
+    /**
+     * Reads a count of items that take at least {@code minBytes} each
+     */
+    private static int readCount(ByteBuffer in, int minBytes) throws IOException {
+        long count = VarInts.read(in);
+        if (count > in.remaining() / minBytes) {
+            throw new IOException("Truncated location frame");
+        }
+        return (int) count;
+    }
+
+    private static long toFixedPoint(double degrees) {
+        return Math.round(degrees * MICRODEGREES);
+    }
+}
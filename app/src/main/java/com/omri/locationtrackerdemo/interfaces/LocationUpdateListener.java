@@ -2,10 +2,14 @@ package com.omri.locationtrackerdemo.interfaces;
 
 import android.location.Location;
 
+import java.util.List;
+
 /**
  * Interface for receiving updates when device location changes.
  * Implement this interface to be notified of local device location updates
- * from the LocationManager.
+ * from the LocationManager. Updates arrive on the location pipeline thread.
+ * Batched requests deliver several fixes at once through {@link #onLocationBatch(List)},
+ * which by default hands them to {@link #onLocationUpdated(Location)} one by one.
  */
 public interface LocationUpdateListener {
 
@@ -14,4 +18,14 @@ public interface LocationUpdateListener {
      * @param location The new location data from device GPS/network providers
      */
     void onLocationUpdated(Location location);
+
+    /**
+     * Called when one or more fixes are delivered together
+     * @param locations Fixes in the order they were taken, the newest last
+     */
+    default void onLocationBatch(List<Location> locations) {
+        for (Location location : locations) {
+            onLocationUpdated(location);
+        }
+    }
 }
\ No newline at end of file
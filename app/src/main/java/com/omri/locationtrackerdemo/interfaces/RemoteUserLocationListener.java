@@ -10,12 +10,17 @@ import com.omri.trackinglibrary.models.Location;
 public interface RemoteUserLocationListener {
 
     /**
-     * Called when a tracked user's location is updated
+     * Called when a tracked user's location is updated. Updates older than the one
+     * already delivered are dropped before reaching the listener.
      * @param userId The ID of the tracked user
      * @param remoteLocation The user's new location
      * @param isFirstUpdate Whether this is the first location update for this user
+     * @param stalenessMs Age of the fix at delivery in milliseconds
+     * @param fixTimeMs Time the fix was taken in the server clock, or 0 if the server did not
+     *                  report it; the same fix polled again carries the same time
      */
-    void onRemoteLocationUpdated(String userId, Location remoteLocation, boolean isFirstUpdate);
+    void onRemoteLocationUpdated(String userId, Location remoteLocation, boolean isFirstUpdate,
+                                 long stalenessMs, long fixTimeMs);
 
     /**
      * Called when a tracked user becomes inactive or stops sharing location
@@ -0,0 +1,178 @@
+package com.omri.locationtrackerdemo.managers;
+
+import com.omri.locationtrackerdemo.utils.GeoUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides how often each tracked user is polled based on observed movement.
+ * Users whose position has not changed are backed off geometrically up to a ceiling,
+ * moving users are polled so that roughly {@code targetDisplacementMeters} pass between
+ * polls (never faster than the minimum interval), and a reported status change resets
+ * the user to the base interval. All times are supplied by the caller in milliseconds
+ * of a monotonic clock so the policy can be driven by simulated time in tests.
+ */
+public class AdaptivePollPolicy {
+    public static final long DEFAULT_MIN_INTERVAL_MS = 1000;
+    public static final long DEFAULT_BASE_INTERVAL_MS = 3000;
+    public static final long DEFAULT_MAX_INTERVAL_MS = 30000;
+    public static final double DEFAULT_BACKOFF_FACTOR = 2.0;
+    public static final double DEFAULT_STATIONARY_THRESHOLD_METERS = 10;
+    public static final double DEFAULT_TARGET_DISPLACEMENT_METERS = 30;
+
+    private static class UserState {
+        boolean hasFix;
+        double latitude;
+        double longitude;
+        long fixTimeMs;
+        long intervalMs;
+        long nextDueMs;
+        Boolean active;
+    }
+
+    private final long minIntervalMs;
+    private final long baseIntervalMs;
+    private final long maxIntervalMs;
+    private final double backoffFactor;
+    private final double stationaryThresholdMeters;
+    private final double targetDisplacementMeters;
+    private final Map<String, UserState> states = new HashMap<>();
+
+    /**
+     * Creates a policy with the default 1s / 3s / 30s intervals
+     */
+    public AdaptivePollPolicy() {
+        this(DEFAULT_MIN_INTERVAL_MS, DEFAULT_BASE_INTERVAL_MS, DEFAULT_MAX_INTERVAL_MS,
+                DEFAULT_BACKOFF_FACTOR, DEFAULT_STATIONARY_THRESHOLD_METERS,
+                DEFAULT_TARGET_DISPLACEMENT_METERS);
+    }
+
+    /**
+     * Creates a policy with custom bounds
+     * @param minIntervalMs Fastest allowed interval, also the scheduler tick
+     * @param baseIntervalMs Interval for new users and after a status change
+     * @param maxIntervalMs Ceiling for stationary users
+     * @param backoffFactor Multiplier applied per poll without movement
+     * @param stationaryThresholdMeters Displacement below which the user counts as stationary
+     * @param targetDisplacementMeters Desired movement between two polls of a moving user
+     */
+    public AdaptivePollPolicy(long minIntervalMs, long baseIntervalMs, long maxIntervalMs,
+                              double backoffFactor, double stationaryThresholdMeters,
+                              double targetDisplacementMeters) {
+        if (minIntervalMs <= 0 || baseIntervalMs < minIntervalMs || maxIntervalMs < baseIntervalMs) {
+            throw new IllegalArgumentException("Intervals must satisfy 0 < min <= base <= max");
+        }
+        if (backoffFactor < 1) {
+            throw new IllegalArgumentException("Backoff factor must be at least 1");
+        }
+        this.minIntervalMs = minIntervalMs;
+        this.baseIntervalMs = baseIntervalMs;
+        this.maxIntervalMs = maxIntervalMs;
+        this.backoffFactor = backoffFactor;
+        this.stationaryThresholdMeters = stationaryThresholdMeters;
+        this.targetDisplacementMeters = targetDisplacementMeters;
+    }
+
+    public long getMinIntervalMs() {
+        return minIntervalMs;
+    }
+
+    /**
+     * Returns whether the user should be polled at the given time.
+     * Unknown users are always due.
+     */
+    public synchronized boolean isDue(String userId, long nowMs) {
+        UserState state = states.get(userId);
+        return state == null || nowMs >= state.nextDueMs;
+    }
+
+    /**
+     * Records a completed poll so the user is not polled again before its interval elapses.
+     * Call it when the response arrives rather than when the request is sent, so a slow
+     * response pushes the next poll back instead of letting requests overlap.
+     */
+    public synchronized void onPolled(String userId, long nowMs) {
+        UserState state = stateFor(userId);
+        state.nextDueMs = nowMs + state.intervalMs;
+    }
+
+    /**
+     * Feeds a received location and adapts the user's interval to the observed movement
+     */
+    public synchronized void onLocation(String userId, double latitude, double longitude, long nowMs) {
+        UserState state = stateFor(userId);
+        if (state.hasFix) {
+            double meters = GeoUtils.distanceMeters(state.latitude, state.longitude, latitude, longitude);
+            if (meters < stationaryThresholdMeters) {
+                state.intervalMs = Math.min(maxIntervalMs, (long) (state.intervalMs * backoffFactor));
+                // Keep the previous fix so slow drift accumulates until it crosses the threshold
+                state.nextDueMs = nowMs + state.intervalMs;
+                return;
+            }
+            long elapsedMs = Math.max(1, nowMs - state.fixTimeMs);
+            double speedMps = meters * 1000.0 / elapsedMs;
+            long wantedMs = (long) (targetDisplacementMeters / speedMps * 1000);
+            state.intervalMs = Math.max(minIntervalMs, Math.min(baseIntervalMs, wantedMs));
+        }
+        state.hasFix = true;
+        state.latitude = latitude;
+        state.longitude = longitude;
+        state.fixTimeMs = nowMs;
+        state.nextDueMs = nowMs + state.intervalMs;
+    }
+
+    /**
+     * Feeds the user's status reported by the server. A change of the active flag
+     * resets the user to the base interval and makes it due immediately.
+     */
+    public synchronized void onStatus(String userId, boolean active, long nowMs) {
+        UserState state = stateFor(userId);
+        if (state.active != null && state.active != active) {
+            state.intervalMs = baseIntervalMs;
+            state.nextDueMs = nowMs;
+        }
+        state.active = active;
+    }
+
+    /**
+     * Forgets the user's movement history and returns it to the base interval
+     */
+    public synchronized void reset(String userId) {
+        states.remove(userId);
+    }
+
+    public synchronized void clear() {
+        states.clear();
+    }
+
+    /**
+     * Returns the interval currently applied to the user
+     * @return Interval in milliseconds, the base interval for unknown users
+     */
+    public synchronized long getEffectiveIntervalMs(String userId) {
+        UserState state = states.get(userId);
+        return state == null ? baseIntervalMs : state.intervalMs;
+    }
+
+    /**
+     * Returns a snapshot of the effective interval of every known user
+     */
+    public synchronized Map<String, Long> getEffectiveIntervals() {
+        Map<String, Long> intervals = new HashMap<>();
+        for (Map.Entry<String, UserState> entry : states.entrySet()) {
+            intervals.put(entry.getKey(), entry.getValue().intervalMs);
+        }
+        return intervals;
+    }
+
+    private UserState stateFor(String userId) {
+        UserState state = states.get(userId);
+        if (state == null) {
+            state = new UserState();
+            state.intervalMs = baseIntervalMs;
+            states.put(userId, state);
+        }
+        return state;
+    }
+}
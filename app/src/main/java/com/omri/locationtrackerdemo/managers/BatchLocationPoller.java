@@ -0,0 +1,369 @@
+package com.omri.locationtrackerdemo.managers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Polls the latest location of a set of tracked users once per tick.
+ * When a batch source is available all tracked users are fetched with a single
+ * request per tick (split into chunks of {@code maxBatchSize}); otherwise the tick
+ * fans out one request per user while keeping at most {@code maxConcurrentRequests}
+ * of them in flight. The class has no Android dependencies so ticks are driven by
+ * the owner (RemoteTrackingManager posts them on its Handler).
+ *
+ * Each user has at most one outstanding request, whether queued, single or part of a
+ * batch. A tick that finds the user's previous request still outstanding skips the user
+ * instead of piling up another one, so responses for a user can not overtake each other.
+ * Removing a user cancels its outstanding request: the backend call itself can not be
+ * aborted, but its response is dropped when it arrives.
+ *
+ * @param <T> Location model returned by the backend
+ */
+public class BatchLocationPoller<T> {
+
+    /**
+     * Fetches the location of a single user
+     */
+    public interface Source<T> {
+        void fetch(String userId, Callback<T> callback);
+    }
+
+    /**
+     * Fetches the locations of several users with one request
+     */
+    public interface BatchSource<T> {
+        void fetchBatch(List<String> userIds, BatchCallback<T> callback);
+    }
+
+    public interface Callback<T> {
+        void onSuccess(T result);
+
+        void onError(String error);
+    }
+
+    public interface BatchCallback<T> {
+        /**
+         * @param results Locations keyed by user ID. Users missing from the map had no location.
+         */
+        void onSuccess(Map<String, T> results);
+
+        void onError(String error);
+    }
+
+    /**
+     * Selects which tracked users are fetched on a tick. Must not have side effects,
+     * it is also consulted for users that are skipped because a request is outstanding.
+     */
+    public interface DueFilter {
+        boolean isDue(String userId);
+    }
+
+    /**
+     * Receives per-user results of every tick
+     */
+    public interface Listener<T> {
+        void onLocation(String userId, T result);
+
+        void onError(String userId, String error);
+
+        /**
+         * Called after {@link #onLocation} or {@link #onError} once the user's request has
+         * completed, before the user can be polled again. Not called for cancelled requests.
+         */
+        void onFinished(String userId);
+    }
+
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 8;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+    private final Source<T> source;
+    private final BatchSource<T> batchSource;
+    private final int maxConcurrentRequests;
+    private final int maxBatchSize;
+    private final Listener<T> listener;
+
+    private final Set<String> trackedUserIds = new LinkedHashSet<>();
+    private final ArrayDeque<String> pendingUserIds = new ArrayDeque<>();
+    // Token of each user's outstanding request, queued or sent; responses with another token are stale
+    private final Map<String, Long> outstandingTokens = new HashMap<>();
+    private long nextToken;
+    private int inFlight;
+    private long requestCount;
+    private long tickCount;
+    private long skippedCount;
+    private long cancelledCount;
+
+    /**
+     * Creates a new poller
+     * @param source Per-user source used when no batch source is available
+     * @param batchSource Batch source, or null if the backend has no batch endpoint
+     * @param maxConcurrentRequests Upper bound of in-flight per-user requests during fan-out
+     * @param maxBatchSize Maximum number of users per batch request
+     * @param listener Receives results for each user
+     */
+    public BatchLocationPoller(Source<T> source, BatchSource<T> batchSource,
+                               int maxConcurrentRequests, int maxBatchSize, Listener<T> listener) {
+        if (maxConcurrentRequests < 1 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("Limits must be positive");
+        }
+        this.source = source;
+        this.batchSource = batchSource;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.maxBatchSize = maxBatchSize;
+        this.listener = listener;
+    }
+
+    /**
+     * Adds a user to the tracked set
+     * @return true if the user was not tracked yet
+     */
+    public synchronized boolean addUser(String userId) {
+        return trackedUserIds.add(userId);
+    }
+
+    /**
+     * Adds every user in the collection to the tracked set
+     */
+    public synchronized void addUsers(Collection<String> userIds) {
+        trackedUserIds.addAll(userIds);
+    }
+
+    /**
+     * Removes a user from the tracked set and cancels its outstanding request
+     */
+    public synchronized void removeUser(String userId) {
+        trackedUserIds.remove(userId);
+        pendingUserIds.remove(userId);
+        if (outstandingTokens.remove(userId) != null) {
+            cancelledCount++;
+        }
+    }
+
+    /**
+     * Removes all tracked users and cancels their outstanding requests
+     */
+    public synchronized void clear() {
+        trackedUserIds.clear();
+        pendingUserIds.clear();
+        cancelledCount += outstandingTokens.size();
+        outstandingTokens.clear();
+    }
+
+    public synchronized boolean isTracking(String userId) {
+        return trackedUserIds.contains(userId);
+    }
+
+    public synchronized boolean isEmpty() {
+        return trackedUserIds.isEmpty();
+    }
+
+    public synchronized int getTrackedCount() {
+        return trackedUserIds.size();
+    }
+
+    /**
+     * Returns a snapshot of the tracked user IDs
+     */
+    public synchronized Set<String> getTrackedUserIds() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(trackedUserIds));
+    }
+
+    /**
+     * Total number of backend requests issued so far (batch or single)
+     */
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    public synchronized long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Number of times a due user was not fetched because its previous request was outstanding
+     */
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Number of outstanding requests whose result was discarded because the user was removed
+     */
+    public synchronized long getCancelledCount() {
+        return cancelledCount;
+    }
+
+    /**
+     * Number of users with a queued or in-flight request
+     */
+    public synchronized int getOutstandingCount() {
+        return outstandingTokens.size();
+    }
+
+    /**
+     * Fetches the location of every tracked user once
+     */
+    public void pollTick() {
+        pollTick(null);
+    }
+
+    /**
+     * Fetches the location of every tracked user accepted by the filter
+     * @param dueFilter Filter selecting the users to fetch, or null to fetch all of them
+     */
+    public void pollTick(DueFilter dueFilter) {
+        List<List<String>> batches = null;
+        List<Long> batchTokens = null;
+        synchronized (this) {
+            tickCount++;
+            if (trackedUserIds.isEmpty()) {
+                return;
+            }
+            List<String> current = null;
+            if (batchSource != null) {
+                batches = new ArrayList<>();
+                batchTokens = new ArrayList<>();
+            }
+            for (String userId : trackedUserIds) {
+                boolean due = dueFilter == null || dueFilter.isDue(userId);
+                if (outstandingTokens.containsKey(userId)) {
+                    // The previous request has not come back, never stack a second one
+                    if (due) {
+                        skippedCount++;
+                    }
+                    continue;
+                }
+                if (!due) {
+                    continue;
+                }
+                if (batchSource == null) {
+                    outstandingTokens.put(userId, ++nextToken);
+                    pendingUserIds.add(userId);
+                    continue;
+                }
+                if (current == null) {
+                    current = new ArrayList<>(Math.min(maxBatchSize, trackedUserIds.size()));
+                    batches.add(current);
+                    batchTokens.add(++nextToken);
+                }
+                current.add(userId);
+                outstandingTokens.put(userId, nextToken);
+                if (current.size() == maxBatchSize) {
+                    current = null;
+                }
+            }
+            if (batches != null) {
+                requestCount += batches.size();
+            }
+        }
+
+        if (batches == null) {
+            dispatchPending();
+            return;
+        }
+        for (int i = 0; i < batches.size(); i++) {
+            fetchBatch(batches.get(i), batchTokens.get(i));
+        }
+    }
+
+    private void fetchBatch(final List<String> userIds, final long token) {
+        batchSource.fetchBatch(userIds, new BatchCallback<T>() {
+            @Override
+            public void onSuccess(Map<String, T> results) {
+                for (String userId : userIds) {
+                    if (!isCurrent(userId, token)) {
+                        continue;
+                    }
+                    T result = results.get(userId);
+                    if (result != null) {
+                        listener.onLocation(userId, result);
+                    }
+                    finish(userId, token);
+                }
+            }
+
+            @Override
+            public void onError(String error) {
+                for (String userId : userIds) {
+                    if (isCurrent(userId, token)) {
+                        listener.onError(userId, error);
+                        finish(userId, token);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts queued single-user requests until the concurrency limit is reached
+     */
+    private void dispatchPending() {
+        while (true) {
+            final String userId;
+            final long token;
+            synchronized (this) {
+                if (inFlight >= maxConcurrentRequests || pendingUserIds.isEmpty()) {
+                    return;
+                }
+                userId = pendingUserIds.poll();
+                token = outstandingTokens.get(userId);
+                inFlight++;
+                requestCount++;
+            }
+            source.fetch(userId, new Callback<T>() {
+                @Override
+                public void onSuccess(T result) {
+                    onSingleFetchReturned();
+                    if (isCurrent(userId, token)) {
+                        listener.onLocation(userId, result);
+                        finish(userId, token);
+                    }
+                    dispatchPending();
+                }
+
+                @Override
+                public void onError(String error) {
+                    onSingleFetchReturned();
+                    if (isCurrent(userId, token)) {
+                        listener.onError(userId, error);
+                        finish(userId, token);
+                    }
+                    dispatchPending();
+                }
+            });
+        }
+    }
+
+    /**
+     * Frees a concurrency slot. Cancelled requests hold theirs until the backend answers,
+     * so cancelling never pushes the number of open connections above the limit.
+     */
+    private synchronized void onSingleFetchReturned() {
+        inFlight--;
+    }
+
+    private synchronized boolean isCurrent(String userId, long token) {
+        Long current = outstandingTokens.get(userId);
+        return current != null && current == token;
+    }
+
+    /**
+     * Allows the user to be polled again and then notifies the listener, so a tick
+     * started from the callback already includes the user
+     */
+    private void finish(String userId, long token) {
+        synchronized (this) {
+            if (isCurrent(userId, token)) {
+                outstandingTokens.remove(userId);
+            }
+        }
+        listener.onFinished(userId);
+    }
+}
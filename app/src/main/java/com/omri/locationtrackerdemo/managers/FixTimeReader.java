@@ -0,0 +1,70 @@
+package com.omri.locationtrackerdemo.managers;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Reads the fix time a location model received from the server response, by
+ * serializing the model with Gson, so it works for models whose fields are not
+ * otherwise accessible.
+ *
+ * The time is taken from one field, by default {@code timestamp} like in the stream
+ * protocol, holding either milliseconds since epoch or an ISO-8601 instant. Models
+ * without the field, or with a value that cannot be read, yield
+ * {@link FreshnessTracker#UNKNOWN_TIME}, so their updates are timed by arrival.
+ */
+public class FixTimeReader {
+    public static final String DEFAULT_FIELD = "timestamp";
+
+    private final Gson gson = new Gson();
+    private final String field;
+
+    /**
+     * Creates a reader of the {@link #DEFAULT_FIELD} field
+     */
+    public FixTimeReader() {
+        this(DEFAULT_FIELD);
+    }
+
+    /**
+     * Creates a reader of a custom field
+     * @param field Name of the serialized field holding the fix time
+     */
+    public FixTimeReader(String field) {
+        this.field = field;
+    }
+
+    /**
+     * @param model Location model as received from the server
+     * @return Fix time in milliseconds since epoch, or {@link FreshnessTracker#UNKNOWN_TIME}
+     */
+    public long getFixTimeMs(Object model) {
+        if (model == null) {
+            return FreshnessTracker.UNKNOWN_TIME;
+        }
+        JsonElement tree = gson.toJsonTree(model);
+        if (!tree.isJsonObject()) {
+            return FreshnessTracker.UNKNOWN_TIME;
+        }
+        JsonElement value = tree.getAsJsonObject().get(field);
+        if (value == null || !value.isJsonPrimitive()) {
+            return FreshnessTracker.UNKNOWN_TIME;
+        }
+        JsonPrimitive primitive = value.getAsJsonPrimitive();
+        if (primitive.isNumber()) {
+            return Math.max(FreshnessTracker.UNKNOWN_TIME, primitive.getAsLong());
+        }
+        if (primitive.isString()) {
+            try {
+                return Instant.parse(primitive.getAsString()).toEpochMilli();
+            } catch (DateTimeParseException e) {
+                return FreshnessTracker.UNKNOWN_TIME;
+            }
+        }
+        return FreshnessTracker.UNKNOWN_TIME;
+    }
+}
@@ -0,0 +1,173 @@
+package com.omri.locationtrackerdemo.managers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks how old the displayed location of each remote user is and rejects updates
+ * that are older than the one already applied.
+ *
+ * Fix times come from the server or the sharing device, so they are expressed in a
+ * clock that may differ from the local one. Every update with a timestamp yields an
+ * offset sample {@code stamp - localReceiveTime}, which equals the true offset minus
+ * the delivery delay; the largest sample of the last {@code offsetWindow} updates is
+ * therefore the tightest estimate. The stamp is the server send time when available,
+ * otherwise the fix time, in which case the offset and so the staleness are
+ * underestimated by the age the fix already had when it was sent.
+ *
+ * Updates without a timestamp are stamped with their local receive time and are never
+ * rejected; their staleness is the time since they arrived.
+ */
+public class FreshnessTracker {
+    /** Timestamp value meaning "not provided", matching an absent JSON field */
+    public static final long UNKNOWN_TIME = 0;
+    /** Returned by {@link #onUpdate} for an update older than the last applied one */
+    public static final long REJECTED = -1;
+    public static final int DEFAULT_OFFSET_WINDOW = 16;
+
+    private static class UserState {
+        // Fix time of the last applied update, in the remote clock when hasRemoteTime
+        long lastFixTimeMs;
+        boolean hasRemoteTime;
+        final long[] offsetSamples;
+        int sampleCount;
+        int nextSample;
+        long offsetMs;
+
+        UserState(int offsetWindow) {
+            offsetSamples = new long[offsetWindow];
+        }
+
+        void addOffsetSample(long sampleMs) {
+            offsetSamples[nextSample] = sampleMs;
+            nextSample = (nextSample + 1) % offsetSamples.length;
+            sampleCount = Math.min(sampleCount + 1, offsetSamples.length);
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < sampleCount; i++) {
+                max = Math.max(max, offsetSamples[i]);
+            }
+            offsetMs = max;
+        }
+
+        long stalenessMs(long localNowMs) {
+            long remoteNowMs = hasRemoteTime ? localNowMs + offsetMs : localNowMs;
+            return Math.max(0, remoteNowMs - lastFixTimeMs);
+        }
+    }
+
+    private final int offsetWindow;
+    private final Map<String, UserState> states = new HashMap<>();
+    private long acceptedCount;
+    private long rejectedCount;
+    private long stalenessAtReceiptTotalMs;
+    private long maxStalenessAtReceiptMs;
+
+    /**
+     * Creates a tracker estimating clock offsets over {@link #DEFAULT_OFFSET_WINDOW} updates
+     */
+    public FreshnessTracker() {
+        this(DEFAULT_OFFSET_WINDOW);
+    }
+
+    /**
+     * Creates a tracker
+     * @param offsetWindow Number of recent updates per user used for the clock offset estimate
+     */
+    public FreshnessTracker(int offsetWindow) {
+        if (offsetWindow < 1) {
+            throw new IllegalArgumentException("Invalid offset window");
+        }
+        this.offsetWindow = offsetWindow;
+    }
+
+    /**
+     * Feeds an update received for a user
+     * @param userId ID of the remote user
+     * @param fixTimeMs Time the fix was taken in the remote clock, or {@link #UNKNOWN_TIME}
+     * @param serverTimeMs Time the server sent the update, or {@link #UNKNOWN_TIME}
+     * @param localNowMs Local wall clock time of receipt
+     * @return Staleness of the update in milliseconds, or {@link #REJECTED} if it is older
+     * than the last applied update and must not be displayed
+     */
+    public synchronized long onUpdate(String userId, long fixTimeMs, long serverTimeMs, long localNowMs) {
+        UserState state = states.get(userId);
+        if (state == null) {
+            state = new UserState(offsetWindow);
+            states.put(userId, state);
+        }
+
+        if (fixTimeMs == UNKNOWN_TIME) {
+            // Polls for one user never overlap, so arrival order is the best ordering available
+            state.lastFixTimeMs = localNowMs;
+            state.hasRemoteTime = false;
+        } else {
+            if (state.hasRemoteTime && fixTimeMs < state.lastFixTimeMs) {
+                rejectedCount++;
+                return REJECTED;
+            }
+            long stampMs = serverTimeMs != UNKNOWN_TIME ? serverTimeMs : fixTimeMs;
+            state.addOffsetSample(stampMs - localNowMs);
+            state.lastFixTimeMs = fixTimeMs;
+            state.hasRemoteTime = true;
+        }
+
+        long stalenessMs = state.stalenessMs(localNowMs);
+        acceptedCount++;
+        stalenessAtReceiptTotalMs += stalenessMs;
+        maxStalenessAtReceiptMs = Math.max(maxStalenessAtReceiptMs, stalenessMs);
+        return stalenessMs;
+    }
+
+    /**
+     * Returns how old the user's last applied update is now
+     * @param userId ID of the remote user
+     * @param localNowMs Local wall clock time
+     * @return Staleness in milliseconds, or -1 if no update was applied yet
+     */
+    public synchronized long getStalenessMs(String userId, long localNowMs) {
+        UserState state = states.get(userId);
+        return state == null ? -1 : state.stalenessMs(localNowMs);
+    }
+
+    /**
+     * Returns the estimated offset between the user's remote clock and the local clock
+     * @return Remote minus local time in milliseconds, 0 if unknown
+     */
+    public synchronized long getClockOffsetMs(String userId) {
+        UserState state = states.get(userId);
+        return state == null || state.sampleCount == 0 ? 0 : state.offsetMs;
+    }
+
+    public synchronized void remove(String userId) {
+        states.remove(userId);
+    }
+
+    public synchronized void clear() {
+        states.clear();
+    }
+
+    /**
+     * Number of updates applied so far
+     */
+    public synchronized long getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    /**
+     * Number of updates dropped because a newer one was already applied
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Mean age of applied updates at the moment they arrived
+     */
+    public synchronized double getMeanStalenessAtReceiptMs() {
+        return acceptedCount == 0 ? 0 : stalenessAtReceiptTotalMs / (double) acceptedCount;
+    }
+
+    public synchronized long getMaxStalenessAtReceiptMs() {
+        return maxStalenessAtReceiptMs;
+    }
+}
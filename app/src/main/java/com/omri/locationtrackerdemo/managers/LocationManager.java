@@ -1,10 +1,17 @@
 package com.omri.locationtrackerdemo.managers;
 
 import android.Manifest;
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.location.Location;
-import android.os.Looper;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
 import com.google.android.gms.location.FusedLocationProviderClient;
@@ -12,52 +19,118 @@ import com.google.android.gms.location.LocationCallback;
 import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
+import com.omri.locationtrackerdemo.data.model.LocationSample;
 import com.omri.locationtrackerdemo.interfaces.LocationUpdateListener;
+import com.omri.locationtrackerdemo.managers.LocationProfilePolicy.Profile;
+import com.omri.locationtrackerdemo.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Manages device location updates using FusedLocationProviderClient.
  * Handles location permissions, update intervals, and location change notifications.
+ * Fixes are delivered on a dedicated background thread so that filtering and upload
+ * work does not compete with map rendering; listeners hop to the main thread themselves
+ * for view updates.
+ * With {@link #setMaxWaitTime(long)} the fused provider collects fixes while the device
+ * sleeps and delivers them in batches, so the CPU and the radio wake once per batch
+ * instead of once per fix. Deliveries and fixes are counted for cost estimates.
+ * Interval and accuracy follow the {@link LocationProfilePolicy}, fed through a
+ * {@link LocationProfileSwitcher} with every fix, the battery broadcast and
+ * {@link #setWatched(boolean)}; a profile change re-requests updates.
  */
 public class LocationManager {
-    private static final long UPDATE_INTERVAL = 3000;  // 3 seconds
-    private static final long FASTEST_INTERVAL = 1500; // 1.5 seconds
+    // A delivery only filters and queues fixes, it never waits for the network
+    private static final long PIPELINE_JOIN_TIMEOUT_MS = 1000;
 
     private final Context context;
     private final FusedLocationProviderClient fusedLocationClient;
-    private final LocationRequest locationRequest;
+    private volatile LocationRequest locationRequest;
     private final LocationCallback locationCallback;
-    private LocationUpdateListener locationUpdateListener;
-    private Location lastLocation;
+    private final HandlerThread pipelineThread;
+    private volatile LocationUpdateListener locationUpdateListener;
+    private volatile Location lastLocation;
+    private final LocationProfileSwitcher profileSwitcher;
+    private final BroadcastReceiver batteryReceiver;
+    private long maxWaitMs;
+    private boolean updatesRequested;
+    private boolean batteryReceiverRegistered;
+    private long deliveryCount;
+    private long fixCount;
 
     /**
-     * Creates a new LocationManager instance configured for high-accuracy updates
+     * Creates a new LocationManager instance, starting in the {@link Profile#MOVING} profile
      * @param context Application context for location services
      */
     public LocationManager(Context context) {
         this.context = context;
         this.fusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
+        this.pipelineThread = new HandlerThread("LocationPipeline", Process.THREAD_PRIORITY_BACKGROUND);
+        pipelineThread.start();
 
-        locationRequest = LocationRequest.create()
-                .setInterval(UPDATE_INTERVAL)
-                .setFastestInterval(FASTEST_INTERVAL)
-                .setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
+        profileSwitcher = new LocationProfileSwitcher(new LocationProfilePolicy(), MetricsRegistry.getDefault(),
+                SystemClock.elapsedRealtime(), profile -> rebuildRequest());
+        locationRequest = buildRequest(profileSwitcher.getProfile(), 0);
 
         locationCallback = new LocationCallback() {
             @Override
             public void onLocationResult(@NonNull LocationResult locationResult) {
+                List<Location> locations = locationResult.getLocations();
                 Location location = locationResult.getLastLocation();
                 if (location != null) {
+                    countDelivery(locations.size());
+                    List<LocationSample> samples = new ArrayList<>(locations.size());
+                    for (Location fix : locations) {
+                        samples.add(toSample(fix));
+                    }
+                    profileSwitcher.onLocations(samples, SystemClock.elapsedRealtime());
                     lastLocation = location;
-                    if (locationUpdateListener != null) {
-                        locationUpdateListener.onLocationUpdated(location);
+                    LocationUpdateListener listener = locationUpdateListener;
+                    if (listener != null) {
+                        listener.onLocationBatch(locations);
                     }
                 }
             }
         };
+
+        batteryReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                onBatteryChanged(intent);
+            }
+        };
+    }
+
+    private static LocationRequest buildRequest(Profile profile, long maxWaitMs) {
+        return LocationRequest.create()
+                .setInterval(profile.getIntervalMs())
+                .setFastestInterval(profile.getFastestIntervalMs())
+                .setMaxWaitTime(maxWaitMs)
+                .setPriority(profile.isHighAccuracy()
+                        ? LocationRequest.PRIORITY_HIGH_ACCURACY
+                        : LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY);
     }
 
     /**
-     * Sets the listener for location updates
+     * Copies the fields used by the upload and profile policies out of an Android location.
+     *
+     * @param location The device location.
+     * @return Plain sample with NaN for values the provider did not report.
+     */
+    public static LocationSample toSample(Location location) {
+        return new LocationSample(
+                location.getLatitude(),
+                location.getLongitude(),
+                location.hasAccuracy() ? location.getAccuracy() : Float.NaN,
+                location.hasSpeed() ? location.getSpeed() : Float.NaN,
+                location.hasBearing() ? location.getBearing() : Float.NaN,
+                location.getTime());
+    }
+
+    /**
+     * Sets the listener for location updates. It is called on the location pipeline
+     * thread, not on the main thread.
      * @param listener Callback interface for location changes
      */
     public void setLocationUpdateListener(LocationUpdateListener listener) {
@@ -69,20 +142,96 @@ public class LocationManager {
      * @return true if location permission is granted
      */
     public boolean hasLocationPermission() {
+        return hasLocationPermission(context);
+    }
+
+    /**
+     * Checks if the app has location permissions, without creating a manager
+     * @return true if location permission is granted
+     */
+    public static boolean hasLocationPermission(Context context) {
         return ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
                 == PackageManager.PERMISSION_GRANTED;
     }
 
+    /**
+     * Sets how long fixes may be held back and delivered as a batch. Running updates
+     * are re-requested with the new value.
+     * @param maxWaitMs Longest delay of a fix, 0 to deliver every fix as soon as it is taken
+     */
+    public synchronized void setMaxWaitTime(long maxWaitMs) {
+        this.maxWaitMs = maxWaitMs;
+        rebuildRequest();
+    }
+
+    /**
+     * Sets whether anyone currently watches this user's location. Nobody watching lets a
+     * moving user drop to the {@link Profile#SAVER} profile.
+     */
+    public void setWatched(boolean watched) {
+        profileSwitcher.setWatched(watched, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Returns the profile the running location request was built from
+     */
+    public Profile getProfile() {
+        return profileSwitcher.getProfile();
+    }
+
+    /**
+     * Returns the time spent in a profile since the manager was created
+     * @return Milliseconds, including the current stay
+     */
+    public long getTimeInProfileMs(Profile profile) {
+        return profileSwitcher.getTimeInProfileMs(profile, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Formats the time spent in each profile, e.g. for the log
+     */
+    public String describeProfiles() {
+        return profileSwitcher.describe(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Builds the request for the current profile and wait time, re-requesting running updates
+     */
+    private synchronized void rebuildRequest() {
+        locationRequest = buildRequest(profileSwitcher.getProfile(), maxWaitMs);
+        if (updatesRequested) {
+            startLocationUpdates();
+        }
+    }
+
+    private void onBatteryChanged(Intent intent) {
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        if (level < 0 || scale <= 0) {
+            return;
+        }
+        boolean charging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        profileSwitcher.onBattery(level * 100 / scale, charging, SystemClock.elapsedRealtime());
+    }
+
     /**
      * Starts location updates if permissions are granted
      */
-    public void startLocationUpdates() {
+    public synchronized void startLocationUpdates() {
         if (hasLocationPermission()) {
+            updatesRequested = true;
+            if (!batteryReceiverRegistered) {
+                batteryReceiverRegistered = true;
+                profileSwitcher.start(SystemClock.elapsedRealtime());
+                // Sticky broadcast: the current level is delivered right away
+                context.registerReceiver(batteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED),
+                        null, new Handler(pipelineThread.getLooper()));
+            }
             try {
                 fusedLocationClient.requestLocationUpdates(
                         locationRequest,
                         locationCallback,
-                        Looper.getMainLooper()
+                        pipelineThread.getLooper()
                 );
             } catch (SecurityException e) {
                 e.printStackTrace();
@@ -93,8 +242,49 @@ public class LocationManager {
     /**
      * Stops location updates
      */
-    public void stopLocationUpdates() {
+    public synchronized void stopLocationUpdates() {
+        updatesRequested = false;
         fusedLocationClient.removeLocationUpdates(locationCallback);
+        if (batteryReceiverRegistered) {
+            batteryReceiverRegistered = false;
+            context.unregisterReceiver(batteryReceiver);
+        }
+    }
+
+    private synchronized void countDelivery(int fixes) {
+        deliveryCount++;
+        fixCount += fixes;
+    }
+
+    /**
+     * Number of location deliveries, each of which woke the device
+     */
+    public synchronized long getDeliveryCount() {
+        return deliveryCount;
+    }
+
+    /**
+     * Number of fixes delivered
+     */
+    public synchronized long getFixCount() {
+        return fixCount;
+    }
+
+    /**
+     * Stops location updates and the pipeline thread. Fixes still queued on the thread no
+     * longer reach the listener, and the call returns once the thread has finished the
+     * delivery it was running, so the listener's resources can be released right after.
+     * The manager cannot be restarted afterwards.
+     */
+    public void release() {
+        stopLocationUpdates();
+        locationUpdateListener = null;
+        pipelineThread.quitSafely();
+        try {
+            pipelineThread.join(PIPELINE_JOIN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -0,0 +1,277 @@
+package com.omri.locationtrackerdemo.managers;
+
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+import com.omri.locationtrackerdemo.utils.GeoUtils;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Chooses the location request profile of the device from its observed movement, the
+ * battery level and whether anyone watches the user.
+ *
+ * Rules, in order:
+ * - parked: no movement beyond {@link #STILL_RADIUS_METERS} for {@link #STILL_AFTER_MS}
+ * - saver: moving while the battery is low or nobody watches
+ * - fast: moving above {@link #FAST_ENTER_MPS} for {@link #FAST_ENTER_AFTER_MS}
+ * - moving: everything else, the previous fixed 3 s high accuracy request
+ *
+ * Every transition has hysteresis so that GPS jitter and stop-and-go traffic do not flap
+ * between profiles: parked is left only beyond the larger {@link #LEAVE_RADIUS_METERS}
+ * (plus the fix's accuracy) or at walking speed, fast is left only below
+ * {@link #FAST_EXIT_MPS} for {@link #FAST_EXIT_AFTER_MS}, and the battery saver is entered at
+ * {@link #LOW_BATTERY_PERCENT} but left at {@link #BATTERY_OK_PERCENT} or when charging.
+ * Movement is timed by the fix timestamps, profile stays by a monotonic clock supplied by
+ * the caller, so the policy can be driven by synthetic traces in tests. Time spent in each
+ * profile is accumulated.
+ */
+public class LocationProfilePolicy {
+    public static final double STILL_RADIUS_METERS = 25;
+    public static final double LEAVE_RADIUS_METERS = 50;
+    public static final long STILL_AFTER_MS = 120_000;
+    // Faster than this while parked is walking away, not jitter
+    public static final double LEAVE_STILL_MPS = 2;
+    public static final double FAST_ENTER_MPS = 14;
+    public static final double FAST_EXIT_MPS = 9;
+    public static final long FAST_ENTER_AFTER_MS = 10_000;
+    public static final long FAST_EXIT_AFTER_MS = 20_000;
+    public static final int LOW_BATTERY_PERCENT = 15;
+    public static final int BATTERY_OK_PERCENT = 20;
+
+    /**
+     * Parameters of a location request
+     */
+    public enum Profile {
+        PARKED(30_000, 15_000, false),
+        SAVER(10_000, 5_000, false),
+        MOVING(3_000, 1_500, true),
+        FAST(1_000, 500, true);
+
+        private final long intervalMs;
+        private final long fastestIntervalMs;
+        private final boolean highAccuracy;
+
+        Profile(long intervalMs, long fastestIntervalMs, boolean highAccuracy) {
+            this.intervalMs = intervalMs;
+            this.fastestIntervalMs = fastestIntervalMs;
+            this.highAccuracy = highAccuracy;
+        }
+
+        public long getIntervalMs() {
+            return intervalMs;
+        }
+
+        public long getFastestIntervalMs() {
+            return fastestIntervalMs;
+        }
+
+        /**
+         * @return true for GPS accuracy, false for balanced power (Wi-Fi and cell, about 100 m)
+         */
+        public boolean isHighAccuracy() {
+            return highAccuracy;
+        }
+    }
+
+    private final Map<Profile, Long> timeInProfileMs = new EnumMap<>(Profile.class);
+    private Profile profile = Profile.MOVING;
+    private long profileSinceMs;
+    private boolean started;
+    private int switchCount;
+
+    private boolean hasFix;
+    private double lastLatitude;
+    private double lastLongitude;
+    private long lastFixMs;
+    private double anchorLatitude;
+    private double anchorLongitude;
+    private long anchorSinceMs;
+    private boolean still;
+    private boolean fast;
+    // Start of the current run above the fast threshold, or below the slow one, -1 if none
+    private long fastRunSinceMs = -1;
+    private long slowRunSinceMs = -1;
+    private boolean lowBattery;
+    private boolean watched = true;
+
+    /**
+     * Starts timing the initial profile, {@link Profile#MOVING}
+     */
+    public synchronized void start(long nowMs) {
+        if (!started) {
+            started = true;
+            profileSinceMs = nowMs;
+        }
+    }
+
+    /**
+     * Feeds a device fix. Movement is judged by the fix times, so the fixes of a batch
+     * delivered at once count like fixes delivered one by one.
+     * @param sample The fix, its speed is derived from the previous fix if not reported
+     * @param nowMs Monotonic time the fix was received
+     * @return The profile to use from now on
+     */
+    public synchronized Profile onLocation(LocationSample sample, long nowMs) {
+        start(nowMs);
+        double latitude = sample.getLatitude();
+        double longitude = sample.getLongitude();
+        long fixMs = sample.getTimestampMs();
+        double speedMps = sample.getSpeedMps();
+        if (Float.isNaN(sample.getSpeedMps()) && hasFix && fixMs > lastFixMs) {
+            speedMps = GeoUtils.distanceMeters(lastLatitude, lastLongitude, latitude, longitude)
+                    * 1000.0 / (fixMs - lastFixMs);
+        }
+        if (!hasFix) {
+            resetAnchor(latitude, longitude, fixMs);
+        }
+        hasFix = true;
+        lastLatitude = latitude;
+        lastLongitude = longitude;
+        lastFixMs = fixMs;
+
+        // Derived speed is mostly jitter while parked, only a reported one may end the stay
+        updateStill(latitude, longitude, sample.getAccuracyMeters(), sample.getSpeedMps(), fixMs);
+        updateFast(speedMps, fixMs);
+        return evaluate(nowMs);
+    }
+
+    private void updateStill(double latitude, double longitude, float accuracyMeters,
+                             float speedMps, long fixMs) {
+        double meters = GeoUtils.distanceMeters(anchorLatitude, anchorLongitude, latitude, longitude);
+        if (still) {
+            double slack = Float.isNaN(accuracyMeters) ? 0 : accuracyMeters;
+            if (meters > LEAVE_RADIUS_METERS + slack || speedMps >= LEAVE_STILL_MPS) {
+                still = false;
+                resetAnchor(latitude, longitude, fixMs);
+            }
+        } else if (meters > STILL_RADIUS_METERS) {
+            resetAnchor(latitude, longitude, fixMs);
+        } else if (fixMs - anchorSinceMs >= STILL_AFTER_MS) {
+            still = true;
+            fast = false;
+        }
+    }
+
+    private void updateFast(double speedMps, long fixMs) {
+        if (Double.isNaN(speedMps)) {
+            return;
+        }
+        if (speedMps >= FAST_ENTER_MPS) {
+            if (fastRunSinceMs < 0) {
+                fastRunSinceMs = fixMs;
+            }
+        } else {
+            fastRunSinceMs = -1;
+        }
+        if (speedMps < FAST_EXIT_MPS) {
+            if (slowRunSinceMs < 0) {
+                slowRunSinceMs = fixMs;
+            }
+        } else {
+            slowRunSinceMs = -1;
+        }
+        if (!fast && fastRunSinceMs >= 0 && fixMs - fastRunSinceMs >= FAST_ENTER_AFTER_MS) {
+            fast = true;
+        } else if (fast && slowRunSinceMs >= 0 && fixMs - slowRunSinceMs >= FAST_EXIT_AFTER_MS) {
+            fast = false;
+        }
+    }
+
+    private void resetAnchor(double latitude, double longitude, long fixMs) {
+        anchorLatitude = latitude;
+        anchorLongitude = longitude;
+        anchorSinceMs = fixMs;
+    }
+
+    /**
+     * Feeds the battery state, e.g. from the sticky battery broadcast
+     * @param percent Charge level from 0 to 100
+     * @param charging Whether the device is plugged in
+     * @return The profile to use from now on
+     */
+    public synchronized Profile onBattery(int percent, boolean charging, long nowMs) {
+        start(nowMs);
+        if (charging || percent >= BATTERY_OK_PERCENT) {
+            lowBattery = false;
+        } else if (percent <= LOW_BATTERY_PERCENT) {
+            lowBattery = true;
+        }
+        return evaluate(nowMs);
+    }
+
+    /**
+     * Sets whether anyone currently watches the user's location
+     * @return The profile to use from now on
+     */
+    public synchronized Profile setWatched(boolean watched, long nowMs) {
+        start(nowMs);
+        this.watched = watched;
+        return evaluate(nowMs);
+    }
+
+    private Profile evaluate(long nowMs) {
+        Profile next;
+        if (still) {
+            next = Profile.PARKED;
+        } else if (lowBattery || !watched) {
+            next = Profile.SAVER;
+        } else if (fast) {
+            next = Profile.FAST;
+        } else {
+            next = Profile.MOVING;
+        }
+        if (next != profile) {
+            addTime(profile, nowMs - profileSinceMs);
+            profile = next;
+            profileSinceMs = nowMs;
+            switchCount++;
+        }
+        return profile;
+    }
+
+    private void addTime(Profile profile, long ms) {
+        Long total = timeInProfileMs.get(profile);
+        timeInProfileMs.put(profile, (total != null ? total : 0) + Math.max(0, ms));
+    }
+
+    public synchronized Profile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return Monotonic time the current profile was entered
+     */
+    public synchronized long getProfileSinceMs() {
+        return profileSinceMs;
+    }
+
+    /**
+     * @return Number of profile changes since the policy was created
+     */
+    public synchronized int getSwitchCount() {
+        return switchCount;
+    }
+
+    /**
+     * Returns the total time spent in a profile, including the running stay
+     */
+    public synchronized long getTimeInProfileMs(Profile profile, long nowMs) {
+        Long total = timeInProfileMs.get(profile);
+        long ms = total != null ? total : 0;
+        if (started && profile == this.profile) {
+            ms += Math.max(0, nowMs - profileSinceMs);
+        }
+        return ms;
+    }
+
+    /**
+     * Returns a snapshot of the time spent in every profile, including the running stay
+     */
+    public synchronized Map<Profile, Long> getTimeInProfiles(long nowMs) {
+        Map<Profile, Long> times = new EnumMap<>(Profile.class);
+        for (Profile each : Profile.values()) {
+            times.put(each, getTimeInProfileMs(each, nowMs));
+        }
+        return times;
+    }
+}
@@ -0,0 +1,136 @@
+package com.omri.locationtrackerdemo.managers;
+
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+import com.omri.locationtrackerdemo.managers.LocationProfilePolicy.Profile;
+import com.omri.locationtrackerdemo.metrics.Counter;
+import com.omri.locationtrackerdemo.metrics.Gauge;
+import com.omri.locationtrackerdemo.metrics.MetricsRegistry;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Feeds the inputs of a {@link LocationManager} (delivered fixes, battery broadcasts and
+ * whether the user is watched) into a {@link LocationProfilePolicy} and reports when the
+ * location request has to be rebuilt for another profile.
+ *
+ * The current profile is published as the gauge {@code location.profile} (its ordinal),
+ * switches are counted in {@code location.profileSwitches} and every finished stay is
+ * recorded in the histogram {@code location.profile.<name>}. Times are in milliseconds of
+ * a monotonic clock supplied by the caller. Thread safe; the listener is called outside
+ * the lock, on the thread whose input caused the switch.
+ */
+public class LocationProfileSwitcher {
+
+    /**
+     * Told when the policy picked another profile
+     */
+    public interface Listener {
+        void onProfileChanged(Profile profile);
+    }
+
+    private final LocationProfilePolicy policy;
+    private final Listener listener;
+    private final MetricsRegistry metrics;
+    private final Gauge profileGauge;
+    private final Counter profileSwitches;
+    private Profile profile;
+    private long profileSinceMs;
+
+    /**
+     * Creates a switcher starting in the policy's current profile
+     * @param policy Policy deciding the profile
+     * @param metrics Registry receiving the profile gauge, counter and stay histograms
+     * @param nowMs Monotonic time of creation, the start of the first stay
+     * @param listener Rebuilds the location request on a switch
+     */
+    public LocationProfileSwitcher(LocationProfilePolicy policy, MetricsRegistry metrics, long nowMs,
+                                   Listener listener) {
+        this.policy = policy;
+        this.listener = listener;
+        this.metrics = metrics;
+        this.profileGauge = metrics.gauge("location.profile");
+        this.profileSwitches = metrics.counter("location.profileSwitches");
+        this.profile = policy.getProfile();
+        this.profileSinceMs = nowMs;
+        profileGauge.set(profile.ordinal());
+    }
+
+    /**
+     * Starts timing the policy's profiles, e.g. when location updates are first requested
+     */
+    public void start(long nowMs) {
+        policy.start(nowMs);
+    }
+
+    /**
+     * Feeds a delivered batch of fixes
+     * @param samples The fixes in delivery order
+     * @param nowMs Monotonic time of the delivery
+     */
+    public void onLocations(List<LocationSample> samples, long nowMs) {
+        Profile next = null;
+        for (LocationSample sample : samples) {
+            next = policy.onLocation(sample, nowMs);
+        }
+        apply(next, nowMs);
+    }
+
+    /**
+     * Feeds a battery broadcast
+     * @param percent Battery level, 0 to 100
+     * @param charging Whether the device is plugged in
+     */
+    public void onBattery(int percent, boolean charging, long nowMs) {
+        apply(policy.onBattery(percent, charging, nowMs), nowMs);
+    }
+
+    /**
+     * Sets whether anyone currently watches the user's location
+     */
+    public void setWatched(boolean watched, long nowMs) {
+        apply(policy.setWatched(watched, nowMs), nowMs);
+    }
+
+    /**
+     * Returns the profile the location request should be built from
+     */
+    public synchronized Profile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Returns the time spent in a profile since the policy started
+     * @return Milliseconds, including the current stay
+     */
+    public long getTimeInProfileMs(Profile profile, long nowMs) {
+        return policy.getTimeInProfileMs(profile, nowMs);
+    }
+
+    /**
+     * Formats the current profile and the time spent in each, e.g. for the log
+     */
+    public String describe(long nowMs) {
+        StringBuilder text = new StringBuilder("profile ").append(getProfile().name().toLowerCase(Locale.US));
+        for (Profile each : Profile.values()) {
+            text.append(String.format(Locale.US, ", %s %d s", each.name().toLowerCase(Locale.US),
+                    policy.getTimeInProfileMs(each, nowMs) / 1000));
+        }
+        return text.toString();
+    }
+
+    private void apply(Profile next, long nowMs) {
+        synchronized (this) {
+            if (next == null || next == profile) {
+                return;
+            }
+            metrics.histogram("location.profile." + profile.name().toLowerCase(Locale.US))
+                    .recordMillis(nowMs - profileSinceMs);
+            profileSinceMs = nowMs;
+            profile = next;
+            profileGauge.set(next.ordinal());
+            profileSwitches.increment();
+        }
+        listener.onProfileChanged(next);
+    }
+}
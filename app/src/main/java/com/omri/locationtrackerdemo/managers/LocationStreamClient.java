@@ -0,0 +1,325 @@
+package com.omri.locationtrackerdemo.managers;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+import com.omri.locationtrackerdemo.data.wire.LocationFrame;
+import com.omri.locationtrackerdemo.data.wire.LocationFrameCodec;
+
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * WebSocket subscription to remote location updates.
+ *
+ * Protocol:
+ * - After connecting the client sends
+ *   {@code {"type":"subscribe","userIds":[...],"since":<lastSeq>}}
+ *   and sends it again whenever the tracked set changes.
+ * - The server pushes one frame per new fix:
+ *   {@code {"seq":<long>,"userId":"...","timestamp":<ms>,"serverTime":<ms>,"location":{...}}}
+ *   where {@code seq} increases monotonically per connection history, so a client
+ *   reconnecting with {@code since} only receives the fixes it missed. The optional
+ *   {@code timestamp} is the time the fix was taken and {@code serverTime} the time the
+ *   frame was sent, both in milliseconds since epoch of the server clock.
+ * - With {@link #setBinaryFrames(boolean)} the subscription also carries
+ *   {@code "encoding":"binary"}. A server supporting it pushes binary messages holding
+ *   {@link LocationFrameCodec} frames instead, whose sequence is that of their last fix;
+ *   servers that do not know the field keep sending JSON, which is still accepted.
+ *   Binary frames carry only the position, so the model is built from
+ *   {@code latitude} and {@code longitude}.
+ *
+ * On failure or close the listener is told the stream is unavailable (so the owner can
+ * fall back to polling) and the client reconnects with exponential backoff. Reconnects of
+ * all clients are scheduled on one shared daemon thread.
+ *
+ * The map screen only streams when the build sets {@code LOCATION_STREAM_URL}, which is
+ * empty by default, so remote users are polled unless a stream endpoint is configured.
+ *
+ * @param <T> Location model deserialized from the {@code location} field
+ */
+public class LocationStreamClient<T> {
+    private static final long INITIAL_RECONNECT_DELAY_MS = 1000;
+    private static final long MAX_RECONNECT_DELAY_MS = 30000;
+    private static final int NORMAL_CLOSURE = 1000;
+    // Shared so that clients need no shutdown; only holds pending reconnects
+    private static final ScheduledExecutorService RECONNECT_EXECUTOR =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "LocationStreamReconnect");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    public interface Listener<T> {
+        /**
+         * Called when the stream is connected and subscribed
+         */
+        void onStreamConnected();
+
+        /**
+         * Called for every new fix pushed by the server
+         * @param fixTimeMs Time the fix was taken, 0 if the server did not send it
+         * @param serverTimeMs Time the frame was sent, 0 if the server did not send it
+         */
+        void onStreamLocation(String userId, T location, long fixTimeMs, long serverTimeMs);
+
+        /**
+         * Called once when a connected or connecting stream fails; updates must be polled until
+         * {@link #onStreamConnected()} is called again
+         */
+        void onStreamUnavailable(String reason);
+    }
+
+    /**
+     * Frame pushed by the server
+     */
+    private static class StreamFrame {
+        long seq;
+        String userId;
+        long timestamp;
+        long serverTime;
+        JsonObject location;
+    }
+
+    /**
+     * Message sent by the client to select the streamed users
+     */
+    private static class SubscribeMessage {
+        final String type = "subscribe";
+        final List<String> userIds;
+        final long since;
+        // Left out of the JSON when null
+        final String encoding;
+
+        SubscribeMessage(List<String> userIds, long since, String encoding) {
+            this.userIds = userIds;
+            this.since = since;
+            this.encoding = encoding;
+        }
+    }
+
+    private final OkHttpClient httpClient;
+    private final String url;
+    private final Class<T> locationType;
+    private final Listener<T> listener;
+    private final Gson gson = new Gson();
+
+    private WebSocket webSocket;
+    private ScheduledFuture<?> pendingReconnect;
+    private List<String> userIds = new ArrayList<>();
+    private boolean running;
+    private boolean connected;
+    private boolean binaryFrames;
+    private boolean receivingBinary;
+    private long lastSequence;
+    private long reconnectDelayMs = INITIAL_RECONNECT_DELAY_MS;
+    private int connectAttempts;
+
+    /**
+     * Creates a new stream client
+     * @param httpClient Client used to open the WebSocket
+     * @param url Stream endpoint (ws, wss, http or https)
+     * @param locationType Class of the location model in the frames
+     * @param listener Receives stream events, called on OkHttp threads
+     */
+    public LocationStreamClient(OkHttpClient httpClient, String url, Class<T> locationType,
+                                Listener<T> listener) {
+        this.httpClient = httpClient;
+        this.url = url;
+        this.locationType = locationType;
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the streamed users, connecting when the first user is added
+     * and disconnecting when the set becomes empty
+     * @param userIds IDs of the users to receive updates for
+     */
+    public synchronized void updateSubscription(Collection<String> userIds) {
+        this.userIds = new ArrayList<>(userIds);
+        if (this.userIds.isEmpty()) {
+            stop();
+        } else if (!running) {
+            running = true;
+            connect();
+        } else if (connected) {
+            sendSubscription();
+        }
+    }
+
+    /**
+     * Closes the stream and cancels reconnection. The resume position is kept.
+     */
+    public synchronized void stop() {
+        running = false;
+        connected = false;
+        if (pendingReconnect != null) {
+            pendingReconnect.cancel(false);
+            pendingReconnect = null;
+        }
+        if (webSocket != null) {
+            webSocket.close(NORMAL_CLOSURE, null);
+            webSocket = null;
+        }
+        reconnectDelayMs = INITIAL_RECONNECT_DELAY_MS;
+    }
+
+    /**
+     * Sets whether binary frames are requested, taking effect with the next subscription
+     * @param binaryFrames true to ask the server for {@link LocationFrameCodec} frames
+     */
+    public synchronized void setBinaryFrames(boolean binaryFrames) {
+        this.binaryFrames = binaryFrames;
+    }
+
+    /**
+     * Whether the server has answered the current connection with binary frames
+     */
+    public synchronized boolean isReceivingBinary() {
+        return receivingBinary;
+    }
+
+    public synchronized boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Sequence number of the last delivered frame, sent as the resume position on reconnect
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Number of connection attempts including reconnects
+     */
+    public synchronized int getConnectAttempts() {
+        return connectAttempts;
+    }
+
+    private void connect() {
+        connectAttempts++;
+        Request request = new Request.Builder().url(url).build();
+        webSocket = httpClient.newWebSocket(request, new SocketListener());
+    }
+
+    private void sendSubscription() {
+        webSocket.send(gson.toJson(new SubscribeMessage(userIds, lastSequence, binaryFrames ? "binary" : null)));
+    }
+
+    private synchronized void scheduleReconnect() {
+        if (!running || pendingReconnect != null) {
+            return;
+        }
+        long delay = reconnectDelayMs;
+        reconnectDelayMs = Math.min(MAX_RECONNECT_DELAY_MS, reconnectDelayMs * 2);
+        pendingReconnect = RECONNECT_EXECUTOR.schedule(() -> {
+            synchronized (LocationStreamClient.this) {
+                pendingReconnect = null;
+                if (running) {
+                    connect();
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private class SocketListener extends WebSocketListener {
+        @Override
+        public void onOpen(WebSocket socket, Response response) {
+            synchronized (LocationStreamClient.this) {
+                if (socket != webSocket) {
+                    return;
+                }
+                connected = true;
+                receivingBinary = false;
+                reconnectDelayMs = INITIAL_RECONNECT_DELAY_MS;
+                sendSubscription();
+            }
+            listener.onStreamConnected();
+        }
+
+        @Override
+        public void onMessage(WebSocket socket, String text) {
+            StreamFrame frame;
+            try {
+                frame = gson.fromJson(text, StreamFrame.class);
+            } catch (JsonParseException e) {
+                return;
+            }
+            if (frame == null || frame.userId == null || frame.location == null) {
+                return;
+            }
+            synchronized (LocationStreamClient.this) {
+                // Frames replayed after a resume may overlap what was already delivered
+                if (socket != webSocket || frame.seq <= lastSequence) {
+                    return;
+                }
+                lastSequence = frame.seq;
+            }
+            listener.onStreamLocation(frame.userId, gson.fromJson(frame.location, locationType),
+                    frame.timestamp, frame.serverTime);
+        }
+
+        @Override
+        public void onMessage(WebSocket socket, ByteString bytes) {
+            LocationFrame frame;
+            try {
+                frame = LocationFrameCodec.decode(bytes.asByteBuffer());
+            } catch (IOException e) {
+                return;
+            }
+            synchronized (LocationStreamClient.this) {
+                if (socket != webSocket || frame.getSequence() <= lastSequence) {
+                    return;
+                }
+                lastSequence = frame.getSequence();
+                receivingBinary = true;
+            }
+            for (LocationFix fix : frame.getFixes()) {
+                JsonObject location = new JsonObject();
+                location.addProperty("latitude", fix.getLatitude());
+                location.addProperty("longitude", fix.getLongitude());
+                listener.onStreamLocation(fix.getUserId(), gson.fromJson(location, locationType),
+                        fix.getTimestampMs(), frame.getServerTimeMs());
+            }
+        }
+
+        @Override
+        public void onClosing(WebSocket socket, int code, String reason) {
+            socket.close(NORMAL_CLOSURE, null);
+            onDisconnected(socket, "Stream closed: " + reason);
+        }
+
+        @Override
+        public void onFailure(WebSocket socket, Throwable t, Response response) {
+            onDisconnected(socket, "Stream failed: " + t.getMessage());
+        }
+
+        private void onDisconnected(WebSocket socket, String reason) {
+            synchronized (LocationStreamClient.this) {
+                if (socket != webSocket) {
+                    return;
+                }
+                webSocket = null;
+                connected = false;
+            }
+            listener.onStreamUnavailable(reason);
+            scheduleReconnect();
+        }
+    }
+}
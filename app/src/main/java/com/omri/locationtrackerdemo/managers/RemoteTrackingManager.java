@@ -2,44 +2,168 @@ package com.omri.locationtrackerdemo.managers;
 
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import com.omri.trackinglibrary.LocationTrackerImpl;
 import com.omri.trackinglibrary.interfaces.LocationCallback;
 import com.omri.trackinglibrary.interfaces.UserCallback;
 import com.omri.trackinglibrary.models.Location;
 import com.omri.trackinglibrary.models.User;
+import com.omri.locationtrackerdemo.data.spatial.UserPositionIndex;
 import com.omri.locationtrackerdemo.interfaces.RemoteUserLocationListener;
+import com.omri.locationtrackerdemo.metrics.Counter;
+import com.omri.locationtrackerdemo.metrics.Gauge;
+import com.omri.locationtrackerdemo.metrics.LatencyHistogram;
+import com.omri.locationtrackerdemo.metrics.MetricsRegistry;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import okhttp3.OkHttpClient;
 
 /**
  * Manages tracking of remote users' locations through periodic polling.
  * Handles user status verification, location updates, and error scenarios.
+ * Any number of users can be tracked at once; each poll tick fetches all of them
+ * through a {@link BatchLocationPoller}, as a single batch request when a batch
+ * source is supplied or as a bounded fan-out of single-user requests otherwise.
+ * How often each user is actually fetched is decided by an {@link AdaptivePollPolicy}:
+ * parked users back off towards the ceiling and moving users are polled faster.
+ * When streaming is enabled updates are pushed over a {@link LocationStreamClient}
+ * and polling only runs while the stream is unavailable.
+ * Each user has at most one poll outstanding and its next poll is scheduled relative
+ * to the completion of the previous one, so a slow link never accumulates requests.
+ * Changing the tracked users or stopping cancels outstanding polls and status checks.
+ * Every update passes a {@link FreshnessTracker}: updates older than the one already
+ * delivered are dropped and the rest reach the listener with their staleness. Polled
+ * fixes are timed by a {@link FixTimeReader} from the server response.
+ * Delivered positions can also be kept in a {@link UserPositionIndex} for nearby queries.
+ * Status checks go through a {@link StatusSource}, by default straight to the tracking
+ * library; the map screen routes them through the repository's status cache.
+ * Polls and direct status checks are timed in the default {@link MetricsRegistry}, next to
+ * the staleness of delivered updates and the number of tracked users.
  */
 public class RemoteTrackingManager {
     private static final String TAG = "RemoteTrackingManager";
-    private static final long POLL_INTERVAL_MS = 3000; // 3 seconds
+
+    /**
+     * Reads the time a polled fix was taken, for backends whose location model carries one
+     */
+    public interface FixTimeExtractor {
+        /**
+         * @return Fix time in milliseconds since epoch, or {@link FreshnessTracker#UNKNOWN_TIME}
+         */
+        long getFixTimeMs(Location location);
+    }
+
+    /**
+     * Answers user status checks, e.g. from a cache
+     */
+    public interface StatusSource {
+        /**
+         * @param revalidate True to bypass cached answers, e.g. after a failed poll
+         */
+        void getUserStatus(String userId, boolean revalidate, UserCallback callback);
+    }
 
     private final LocationTrackerImpl locationTracker;
     private final Handler handler;
+    private final BatchLocationPoller<Location> poller;
+    private final AdaptivePollPolicy pollPolicy;
+    private final BatchLocationPoller.DueFilter dueFilter;
+    private final FreshnessTracker freshnessTracker = new FreshnessTracker();
+    private volatile FixTimeExtractor fixTimeExtractor = new FixTimeReader()::getFixTimeMs;
+    private volatile UserPositionIndex positionIndex;
+    private volatile StatusSource statusSource = this::fetchUserStatus;
     private String currentlyTrackedUserId;
     private RemoteUserLocationListener locationListener;
     private final Runnable pollRunnable;
-    private boolean isFirstUpdate = true;
+    private final Set<String> usersAwaitingFirstUpdate = Collections.synchronizedSet(new HashSet<>());
+    private final Set<String> statusChecksInFlight = Collections.synchronizedSet(new HashSet<>());
+    private LocationStreamClient<Location> streamClient;
+    private volatile boolean streamConnected;
+    // Incremented whenever the tracked set is replaced, so late status checks for old targets are ignored
+    private volatile int trackingGeneration;
+
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    private final LatencyHistogram userLocationLatency = metrics.histogram("api.getUserLocation");
+    private final Counter userLocationErrors = metrics.counter("api.getUserLocation.errors");
+    private final LatencyHistogram userStatusLatency = metrics.histogram("api.getUserStatus");
+    private final Counter userStatusErrors = metrics.counter("api.getUserStatus.errors");
+    private final LatencyHistogram remoteStaleness = metrics.histogram("remote.staleness");
+    private final Counter rejectedUpdates = metrics.counter("remote.rejected");
+    private final Gauge trackedUsers = metrics.gauge("remote.trackedUsers");
 
     /**
      * Creates a new RemoteTrackingManager instance
      * @param locationTracker The location tracking implementation to use
      */
     public RemoteTrackingManager(LocationTrackerImpl locationTracker) {
+        this(locationTracker, null);
+    }
+
+    /**
+     * Creates a new RemoteTrackingManager instance that fetches all tracked users
+     * with one request per tick
+     * @param locationTracker The location tracking implementation to use
+     * @param batchSource Batch location endpoint, or null to fan out single-user requests
+     */
+    public RemoteTrackingManager(LocationTrackerImpl locationTracker,
+                                 BatchLocationPoller.BatchSource<Location> batchSource) {
+        this(locationTracker, batchSource, new AdaptivePollPolicy());
+    }
+
+    /**
+     * Creates a new RemoteTrackingManager instance with a custom polling policy
+     * @param locationTracker The location tracking implementation to use
+     * @param batchSource Batch location endpoint, or null to fan out single-user requests
+     * @param pollPolicy Policy deciding the per-user poll interval
+     */
+    public RemoteTrackingManager(LocationTrackerImpl locationTracker,
+                                 BatchLocationPoller.BatchSource<Location> batchSource,
+                                 AdaptivePollPolicy pollPolicy) {
         this.locationTracker = locationTracker;
         this.handler = new Handler(Looper.getMainLooper());
+        this.pollPolicy = pollPolicy;
+        this.dueFilter = userId -> pollPolicy.isDue(userId, SystemClock.elapsedRealtime());
+        this.poller = new BatchLocationPoller<>(
+                this::fetchUserLocation,
+                batchSource,
+                BatchLocationPoller.DEFAULT_MAX_CONCURRENT_REQUESTS,
+                BatchLocationPoller.DEFAULT_MAX_BATCH_SIZE,
+                new BatchLocationPoller.Listener<Location>() {
+                    @Override
+                    public void onLocation(String userId, Location location) {
+                        dispatchLocation(userId, location,
+                                fixTimeExtractor.getFixTimeMs(location), FreshnessTracker.UNKNOWN_TIME);
+                    }
+
+                    @Override
+                    public void onError(String userId, String error) {
+                        Log.e(TAG, "Failed to get location of " + userId + ": " + error);
+                        if (locationListener != null) {
+                            locationListener.onTrackingError(error);
+                        }
+                        refreshUserStatus(userId);
+                    }
+
+                    @Override
+                    public void onFinished(String userId) {
+                        // The next poll is due one interval after this one completed
+                        pollPolicy.onPolled(userId, SystemClock.elapsedRealtime());
+                    }
+                });
 
         pollRunnable = new Runnable() {
             @Override
             public void run() {
-                if (currentlyTrackedUserId != null) {
-                    pollRemoteUserLocation();
+                if (!poller.isEmpty() && !streamConnected) {
+                    poller.pollTick(dueFilter);
                 }
-                handler.postDelayed(this, POLL_INTERVAL_MS);
+                handler.postDelayed(this, pollPolicy.getMinIntervalMs());
             }
         };
     }
@@ -53,17 +177,153 @@ public class RemoteTrackingManager {
     }
 
     /**
-     * Starts tracking a specific user's location
+     * Sets how the fix time of polled locations is read. By default a {@link FixTimeReader}
+     * takes it from the {@code timestamp} field of the server response; polled updates
+     * without one are timed by their arrival and their staleness counts from the response.
+     * @param extractor Reads the fix time from the backend location model
+     */
+    public void setFixTimeExtractor(FixTimeExtractor extractor) {
+        this.fixTimeExtractor = extractor;
+    }
+
+    /**
+     * Sets the index that receives the latest position of every tracked user.
+     * Users are removed from it when they stop being tracked.
+     * @param index Index shared with other position sources, or null to stop feeding one
+     */
+    public void setPositionIndex(UserPositionIndex index) {
+        this.positionIndex = index;
+    }
+
+    /**
+     * Sets where status checks are answered from
+     * @param source Status lookup, e.g. a cached one, or null to query the tracking library
+     */
+    public void setStatusSource(StatusSource source) {
+        this.statusSource = source != null ? source : this::fetchUserStatus;
+    }
+
+    /**
+     * Enables push updates over a WebSocket stream. Polling continues to run
+     * whenever the stream is not connected. Compact binary frames are requested,
+     * servers without them keep pushing JSON. Stream events are handled on the main
+     * thread, like the poll loop.
+     * @param httpClient Client used to open the stream
+     * @param streamUrl Stream endpoint URL
+     */
+    public void enableStreaming(OkHttpClient httpClient, String streamUrl) {
+        if (streamClient != null) {
+            streamClient.stop();
+        }
+        streamClient = new LocationStreamClient<>(httpClient, streamUrl, Location.class,
+                new LocationStreamClient.Listener<Location>() {
+                    @Override
+                    public void onStreamConnected() {
+                        handler.post(() -> {
+                            // Stopped or failed again before this ran
+                            if (streamClient != null && streamClient.isConnected()) {
+                                Log.d(TAG, "Location stream connected, polling paused");
+                                streamConnected = true;
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onStreamLocation(String userId, Location location,
+                                                 long fixTimeMs, long serverTimeMs) {
+                        handler.post(() -> {
+                            if (poller.isTracking(userId)) {
+                                dispatchLocation(userId, location, fixTimeMs, serverTimeMs);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onStreamUnavailable(String reason) {
+                        handler.post(() -> {
+                            Log.w(TAG, reason + ", falling back to polling");
+                            streamConnected = false;
+                        });
+                    }
+                });
+        streamClient.setBinaryFrames(true);
+        updateStreamSubscription();
+    }
+
+    /**
+     * Returns whether updates are currently pushed over the stream instead of polled
+     */
+    public boolean isStreaming() {
+        return streamConnected;
+    }
+
+    private void updateStreamSubscription() {
+        if (streamClient != null) {
+            streamClient.updateSubscription(poller.getTrackedUserIds());
+        }
+    }
+
+    /**
+     * Starts tracking a specific user's location, replacing any previously tracked users
      * Verifies user status before beginning periodic location updates
      * @param userId ID of the user to track
      */
     public void startTrackingUser(String userId) {
-        isFirstUpdate = true;
-        locationTracker.getUserStatus(userId, new UserCallback() {
+        resetTrackedUsers();
+        addTrackedUser(userId);
+    }
+
+    /**
+     * Starts tracking several users at once, replacing any previously tracked users
+     * @param userIds IDs of the users to track
+     */
+    public void startTrackingUsers(Collection<String> userIds) {
+        resetTrackedUsers();
+        for (String userId : userIds) {
+            addTrackedUser(userId);
+        }
+    }
+
+    /**
+     * Drops all tracked users and cancels their outstanding polls and status checks
+     */
+    private void resetTrackedUsers() {
+        trackingGeneration++;
+        UserPositionIndex index = positionIndex;
+        if (index != null) {
+            for (String userId : poller.getTrackedUserIds()) {
+                index.remove(userId);
+            }
+        }
+        poller.clear();
+        trackedUsers.set(0);
+        pollPolicy.clear();
+        freshnessTracker.clear();
+        usersAwaitingFirstUpdate.clear();
+    }
+
+    /**
+     * Adds a user to the tracked set without affecting users already tracked.
+     * The user is only polled once its status has been verified as active.
+     * @param userId ID of the user to track
+     */
+    public void addTrackedUser(String userId) {
+        final int generation = trackingGeneration;
+        statusSource.getUserStatus(userId, false, new UserCallback() {
             @Override
             public void onSuccess(User user) {
+                if (generation != trackingGeneration) {
+                    // Tracking was stopped or retargeted while the status check was pending
+                    return;
+                }
                 if (user.isActive()) {
+                    pollPolicy.reset(userId);
+                    pollPolicy.onStatus(userId, true, SystemClock.elapsedRealtime());
+                    usersAwaitingFirstUpdate.add(userId);
                     currentlyTrackedUserId = userId;
+                    poller.addUser(userId);
+                    trackedUsers.set(poller.getTrackedCount());
+                    updateStreamSubscription();
                     handler.removeCallbacks(pollRunnable);
                     handler.post(pollRunnable);
                 } else if (locationListener != null) {
@@ -73,7 +333,7 @@ public class RemoteTrackingManager {
 
             @Override
             public void onError(String error) {
-                if (locationListener != null) {
+                if (generation == trackingGeneration && locationListener != null) {
                     locationListener.onTrackingError(error);
                 }
             }
@@ -81,42 +341,206 @@ public class RemoteTrackingManager {
     }
 
     /**
-     * Polls for the tracked user's current location
+     * Stops tracking a single user; polling stops once no users are left
+     * @param userId ID of the user to stop tracking
      */
-    private void pollRemoteUserLocation() {
-        locationTracker.getUserLocation(currentlyTrackedUserId, new LocationCallback() {
+    public void removeTrackedUser(String userId) {
+        poller.removeUser(userId);
+        trackedUsers.set(poller.getTrackedCount());
+        pollPolicy.reset(userId);
+        freshnessTracker.remove(userId);
+        usersAwaitingFirstUpdate.remove(userId);
+        UserPositionIndex index = positionIndex;
+        if (index != null) {
+            index.remove(userId);
+        }
+        if (userId.equals(currentlyTrackedUserId)) {
+            currentlyTrackedUserId = null;
+        }
+        updateStreamSubscription();
+        if (poller.isEmpty()) {
+            handler.removeCallbacks(pollRunnable);
+        }
+    }
+
+    /**
+     * Fetches a single user's current location
+     */
+    private void fetchUserLocation(String userId, BatchLocationPoller.Callback<Location> callback) {
+        final long startNanos = metrics.startTimer();
+        locationTracker.getUserLocation(userId, new LocationCallback() {
             @Override
             public void onSuccess(Location location) {
-                if (locationListener != null) {
-                    locationListener.onRemoteLocationUpdated(currentlyTrackedUserId, location, isFirstUpdate);
-                    isFirstUpdate = false;
-                }
+                userLocationLatency.recordSince(startNanos);
+                callback.onSuccess(location);
             }
 
             @Override
             public void onError(String error) {
-                Log.e(TAG, "Failed to get remote user location: " + error);
-                if (locationListener != null) {
-                    locationListener.onTrackingError(error);
+                userLocationLatency.recordSince(startNanos);
+                userLocationErrors.increment();
+                callback.onError(error);
+            }
+        });
+    }
+
+    /**
+     * Re-reads the user's status after a failed poll. A status change resets the
+     * user's poll interval, and users that stopped sharing are no longer polled.
+     */
+    private void refreshUserStatus(String userId) {
+        if (!statusChecksInFlight.add(userId)) {
+            return;
+        }
+        final int generation = trackingGeneration;
+        statusSource.getUserStatus(userId, true, new UserCallback() {
+            @Override
+            public void onSuccess(User user) {
+                statusChecksInFlight.remove(userId);
+                if (generation != trackingGeneration) {
+                    // Tracking was stopped or retargeted while the status check was pending
+                    return;
+                }
+                pollPolicy.onStatus(userId, user.isActive(), SystemClock.elapsedRealtime());
+                if (!user.isActive() && poller.isTracking(userId)) {
+                    handler.post(() -> removeTrackedUser(userId));
+                    if (locationListener != null) {
+                        locationListener.onUserInactive(userId);
+                    }
                 }
             }
+
+            @Override
+            public void onError(String error) {
+                statusChecksInFlight.remove(userId);
+            }
+        });
+    }
+
+    /**
+     * Reads a user's status from the tracking library, the default {@link StatusSource}
+     */
+    private void fetchUserStatus(String userId, boolean revalidate, UserCallback callback) {
+        final long startNanos = metrics.startTimer();
+        locationTracker.getUserStatus(userId, new UserCallback() {
+            @Override
+            public void onSuccess(User user) {
+                userStatusLatency.recordSince(startNanos);
+                callback.onSuccess(user);
+            }
+
+            @Override
+            public void onError(String error) {
+                userStatusLatency.recordSince(startNanos);
+                userStatusErrors.increment();
+                callback.onError(error);
+            }
         });
     }
 
     /**
-     * Stops tracking the current user and cleans up resources
+     * Delivers a polled or streamed location to the listener with its staleness, flagging
+     * the first update per user. Updates older than the last delivered one are dropped.
+     */
+    private void dispatchLocation(String userId, Location location, long fixTimeMs, long serverTimeMs) {
+        long stalenessMs = freshnessTracker.onUpdate(userId, fixTimeMs, serverTimeMs,
+                System.currentTimeMillis());
+        if (stalenessMs == FreshnessTracker.REJECTED) {
+            Log.d(TAG, "Dropped out-of-order update for " + userId);
+            rejectedUpdates.increment();
+            return;
+        }
+        remoteStaleness.recordMillis(stalenessMs);
+        pollPolicy.onLocation(userId, location.getLatitude(), location.getLongitude(),
+                SystemClock.elapsedRealtime());
+        UserPositionIndex index = positionIndex;
+        if (index != null) {
+            // Timed in the local clock, like the device's own fixes
+            index.update(userId, location.getLatitude(), location.getLongitude(),
+                    System.currentTimeMillis() - stalenessMs);
+        }
+        if (locationListener != null) {
+            boolean isFirstUpdate = usersAwaitingFirstUpdate.remove(userId);
+            locationListener.onRemoteLocationUpdated(userId, location, isFirstUpdate, stalenessMs, fixTimeMs);
+        }
+    }
+
+    /**
+     * Stops tracking all users and cleans up resources
      */
     public void stopTracking() {
         currentlyTrackedUserId = null;
+        resetTrackedUsers();
         handler.removeCallbacks(pollRunnable);
-        isFirstUpdate = true;
+        if (streamClient != null) {
+            streamClient.stop();
+        }
+        streamConnected = false;
     }
 
     /**
-     * Returns the ID of the currently tracked user
+     * Returns the ID of the most recently added tracked user
      * @return User ID or null if not tracking anyone
      */
     public String getCurrentlyTrackedUserId() {
         return currentlyTrackedUserId;
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the IDs of all users currently being polled
+     * @return Snapshot of the tracked user IDs
+     */
+    public Set<String> getTrackedUserIds() {
+        return poller.getTrackedUserIds();
+    }
+
+    /**
+     * Returns the poll interval currently applied to a tracked user
+     * @param userId ID of the tracked user
+     * @return Interval in milliseconds
+     */
+    public long getEffectiveIntervalMs(String userId) {
+        return pollPolicy.getEffectiveIntervalMs(userId);
+    }
+
+    /**
+     * Returns the poll interval of every tracked user, e.g. for checking request savings
+     * @return Snapshot of intervals in milliseconds keyed by user ID
+     */
+    public Map<String, Long> getEffectiveIntervals() {
+        return pollPolicy.getEffectiveIntervals();
+    }
+
+    /**
+     * Returns how often a due poll was skipped because the user's previous poll was still outstanding
+     * @return Number of skipped polls
+     */
+    public long getSkippedPollCount() {
+        return poller.getSkippedCount();
+    }
+
+    /**
+     * Returns how many outstanding polls were cancelled by retargeting or stopping
+     * @return Number of cancelled polls
+     */
+    public long getCancelledPollCount() {
+        return poller.getCancelledCount();
+    }
+
+    /**
+     * Returns how old the last delivered location of a user is now, e.g. to grey out its marker
+     * @param userId ID of the tracked user
+     * @return Staleness in milliseconds, or -1 if no location was delivered yet
+     */
+    public long getStalenessMs(String userId) {
+        return freshnessTracker.getStalenessMs(userId, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the freshness statistics: age of data at receipt and dropped out-of-order updates
+     * @return The tracker shared by polling and streaming
+     */
+    public FreshnessTracker getFreshnessTracker() {
+        return freshnessTracker;
+    }
+}
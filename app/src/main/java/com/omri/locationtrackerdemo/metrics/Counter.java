@@ -0,0 +1,34 @@
+package com.omri.locationtrackerdemo.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic event count. Increments are striped across threads, so hot counters do not
+ * contend, and are ignored while the owning registry is disabled.
+ */
+public class Counter {
+    private final MetricsRegistry owner;
+    private final LongAdder count = new LongAdder();
+
+    Counter(MetricsRegistry owner) {
+        this.owner = owner;
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        if (owner.isEnabled()) {
+            count.add(delta);
+        }
+    }
+
+    public long get() {
+        return count.sum();
+    }
+
+    void reset() {
+        count.reset();
+    }
+}
@@ -0,0 +1,21 @@
+package com.omri.locationtrackerdemo.metrics;
+
+/**
+ * Latest value of a level, e.g. the number of tracked users or buffered fixes.
+ * Unlike counters, gauges are also set while the registry is disabled, so the first
+ * snapshot after enabling it shows the current level instead of 0.
+ */
+public class Gauge {
+    private volatile long value;
+
+    Gauge() {
+    }
+
+    public void set(long value) {
+        this.value = value;
+    }
+
+    public long get() {
+        return value;
+    }
+}
@@ -0,0 +1,134 @@
+package com.omri.locationtrackerdemo.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free HDR-style histogram of durations in microseconds with about 3% relative
+ * resolution. Values are bucketed by their power of two and 32 linear steps within it, so
+ * recording is a few arithmetic operations and atomic increments without allocation, cheap
+ * enough for every request of thousands of virtual devices.
+ *
+ * A histogram owned by a {@link MetricsRegistry} ignores values while the registry is disabled.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Larger values share the last bucket; 2^40 microseconds is about 12 days
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int OVERFLOW_BUCKET = bucket(MAX_VALUE);
+
+    private final AtomicLongArray counts = new AtomicLongArray(OVERFLOW_BUCKET + 1);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private final MetricsRegistry owner;
+
+    /**
+     * Creates a histogram that always records
+     */
+    public LatencyHistogram() {
+        this(null);
+    }
+
+    LatencyHistogram(MetricsRegistry owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * @param micros Duration in microseconds, negative values count as 0
+     */
+    public void record(long micros) {
+        if (owner != null && !owner.isEnabled()) {
+            return;
+        }
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(bucket(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Retry until the maximum is at least this value
+        }
+    }
+
+    public void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+
+    public void recordMillis(long millis) {
+        record(millis * 1000);
+    }
+
+    /**
+     * Records the time since a start taken with {@link MetricsRegistry#startTimer()}
+     * @param startNanos Start time, 0 if the registry was disabled when it was taken
+     */
+    public void recordSince(long startNanos) {
+        if (startNanos != 0) {
+            recordNanos(System.nanoTime() - startNanos);
+        }
+    }
+
+    public long getCount() {
+        return total.get();
+    }
+
+    public double getMeanMicros() {
+        long count = total.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    public long getMaxMicros() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile 0 to 100
+     * @return Upper bound of the bucket holding the percentile, 0 if nothing was recorded
+     */
+    public long getPercentileMicros(double percentile) {
+        long count = total.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                // Overflow bucket has no upper bound
+                return i == OVERFLOW_BUCKET ? max.get() : Math.min(max.get(), upperBound(i));
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    private static int bucket(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        long clamped = Math.min(value, MAX_VALUE);
+        int exponent = 63 - Long.numberOfLeadingZeros(clamped) - SUB_BUCKET_BITS;
+        int top = (int) (clamped >>> exponent);
+        return 2 * SUB_BUCKETS + (exponent - 1) * SUB_BUCKETS + top - SUB_BUCKETS;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - 2 * SUB_BUCKETS) / SUB_BUCKETS + 1;
+        int top = (bucket - 2 * SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((long) (top + 1) << exponent) - 1;
+    }
+}
@@ -0,0 +1,119 @@
+package com.omri.locationtrackerdemo.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named counters, gauges and latency histograms of the tracking pipeline.
+ *
+ * Metrics are looked up once, typically into fields of the instrumented class, and recording
+ * into them never allocates. While the registry is disabled, counters and histograms drop
+ * their values after a single volatile read and {@link #startTimer()} returns 0 without
+ * reading the clock, so instrumentation left in release builds costs close to nothing.
+ * Callers that would allocate for a measurement, e.g. to wrap a callback, check
+ * {@link #isEnabled()} first.
+ *
+ * Names are dot separated, e.g. {@code api.getUserLocation}; histograms of backend calls are
+ * named after the endpoint and their failures are counted in {@code <endpoint>.errors}.
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private volatile boolean enabled;
+    private volatile long resetTimeMs = System.currentTimeMillis();
+
+    /**
+     * The process-wide registry shared by all screens and components
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the counter with the given name, creating it on first use
+     */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter(this));
+    }
+
+    /**
+     * Returns the gauge with the given name, creating it on first use
+     */
+    public Gauge gauge(String name) {
+        return gauges.computeIfAbsent(name, key -> new Gauge());
+    }
+
+    /**
+     * Returns the histogram with the given name, creating it on first use
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram(this));
+    }
+
+    /**
+     * Starts timing an operation for {@link LatencyHistogram#recordSince(long)}
+     * @return Start time in nanoseconds, or 0 if disabled
+     */
+    public long startTimer() {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        return now == 0 ? 1 : now;
+    }
+
+    /**
+     * Clears counters and histograms; gauges keep their level
+     */
+    public void reset() {
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        resetTimeMs = System.currentTimeMillis();
+    }
+
+    /**
+     * Formats all metrics as text, e.g. for an overlay or a bug report
+     * @param nowMs Current wall clock time, shown as the length of the measurement window
+     */
+    public String snapshot(long nowMs) {
+        StringBuilder text = new StringBuilder(1024);
+        text.append(String.format(Locale.US, "Metrics over %.0f s%s%n", (nowMs - resetTimeMs) / 1000.0,
+                enabled ? "" : " (disabled)"));
+        Map<String, LatencyHistogram> sortedHistograms = new TreeMap<>(histograms);
+        if (!sortedHistograms.isEmpty()) {
+            text.append(String.format(Locale.US, "%-24s %6s %8s %8s %8s %8s%n",
+                    "latency ms", "n", "p50", "p90", "p99", "max"));
+            for (Map.Entry<String, LatencyHistogram> entry : sortedHistograms.entrySet()) {
+                LatencyHistogram histogram = entry.getValue();
+                text.append(String.format(Locale.US, "%-24s %6d %8.1f %8.1f %8.1f %8.1f%n", entry.getKey(),
+                        histogram.getCount(), histogram.getPercentileMicros(50) / 1000.0,
+                        histogram.getPercentileMicros(90) / 1000.0, histogram.getPercentileMicros(99) / 1000.0,
+                        histogram.getMaxMicros() / 1000.0));
+            }
+        }
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()) {
+            text.append(String.format(Locale.US, "%-24s %6d%n", entry.getKey(), entry.getValue().get()));
+        }
+        for (Map.Entry<String, Gauge> entry : new TreeMap<>(gauges).entrySet()) {
+            text.append(String.format(Locale.US, "%-24s %6d%n", entry.getKey(), entry.getValue().get()));
+        }
+        return text.toString();
+    }
+}
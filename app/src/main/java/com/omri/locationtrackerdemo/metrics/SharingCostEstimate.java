@@ -0,0 +1,90 @@
+package com.omri.locationtrackerdemo.metrics;
+
+import java.util.Locale;
+
+/**
+ * Rough battery and network cost of location sharing per hour, from the number of times
+ * the device woke up for fixes and the number of uploads it made.
+ *
+ * The model only counts what batching changes: the application processor staying awake
+ * for {@link #CPU_AWAKE_MS_PER_WAKEUP} after every delivery, and the cellular radio staying
+ * in its high power state for {@link #RADIO_ACTIVE_MS_PER_UPLOAD} after every upload
+ * (promotion, transfer and tail of a typical LTE link, overlapping uploads keep it up at
+ * most the whole time). GNSS power is the same for both delivery modes and left out.
+ * Currents are typical mid-range phone values, good for comparing modes, not for
+ * predicting a specific device.
+ */
+public final class SharingCostEstimate {
+    public static final long CPU_AWAKE_MS_PER_WAKEUP = 500;
+    public static final double CPU_AWAKE_MA = 80;
+    public static final long RADIO_ACTIVE_MS_PER_UPLOAD = 12_000;
+    public static final double RADIO_ACTIVE_MA = 250;
+    // Request line, headers, body and TLS framing of one JSON location update
+    public static final long JSON_UPLOAD_BYTES = 550;
+
+    private static final double MS_PER_HOUR = 3_600_000;
+
+    private final double wakeupsPerHour;
+    private final double uploadsPerHour;
+    private final double fixesPerUpload;
+    private final double bytesPerHour;
+    private final double milliampHoursPerHour;
+
+    private SharingCostEstimate(double wakeupsPerHour, double uploadsPerHour, double fixesPerUpload,
+                                double bytesPerHour, double milliampHoursPerHour) {
+        this.wakeupsPerHour = wakeupsPerHour;
+        this.uploadsPerHour = uploadsPerHour;
+        this.fixesPerUpload = fixesPerUpload;
+        this.bytesPerHour = bytesPerHour;
+        this.milliampHoursPerHour = milliampHoursPerHour;
+    }
+
+    /**
+     * Estimates the hourly cost of a sharing session
+     * @param elapsedMs Length of the session
+     * @param wakeups Location deliveries, each waking the device
+     * @param fixes Fixes delivered
+     * @param uploads Upload requests made
+     * @param bytesSent Bytes uploaded, e.g. {@code uploads * JSON_UPLOAD_BYTES} for the JSON API
+     */
+    public static SharingCostEstimate of(long elapsedMs, long wakeups, long fixes, long uploads, long bytesSent) {
+        if (elapsedMs <= 0) {
+            return new SharingCostEstimate(0, 0, 0, 0, 0);
+        }
+        double perHour = MS_PER_HOUR / elapsedMs;
+        double cpuAwakeMs = Math.min(elapsedMs, (double) wakeups * CPU_AWAKE_MS_PER_WAKEUP);
+        double radioActiveMs = Math.min(elapsedMs, (double) uploads * RADIO_ACTIVE_MS_PER_UPLOAD);
+        double milliampHours = (cpuAwakeMs * CPU_AWAKE_MA + radioActiveMs * RADIO_ACTIVE_MA) / MS_PER_HOUR;
+        return new SharingCostEstimate(wakeups * perHour, uploads * perHour,
+                uploads > 0 ? (double) fixes / uploads : 0, bytesSent * perHour, milliampHours * perHour);
+    }
+
+    public double getWakeupsPerHour() {
+        return wakeupsPerHour;
+    }
+
+    public double getUploadsPerHour() {
+        return uploadsPerHour;
+    }
+
+    public double getFixesPerUpload() {
+        return fixesPerUpload;
+    }
+
+    public double getBytesPerHour() {
+        return bytesPerHour;
+    }
+
+    /**
+     * Estimated charge drawn per hour, i.e. the average extra current in milliamperes
+     */
+    public double getMilliampHoursPerHour() {
+        return milliampHoursPerHour;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%.0f wakeups/h, %.0f uploads/h, %.1f fixes/upload, %.1f KB/h, ~%.0f mAh/h",
+                wakeupsPerHour, uploadsPerHour, fixesPerUpload, bytesPerHour / 1024, milliampHoursPerHour);
+    }
+}
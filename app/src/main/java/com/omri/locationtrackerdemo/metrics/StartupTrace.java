@@ -0,0 +1,106 @@
+package com.omri.locationtrackerdemo.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Times a cold start from process start to the phases the user notices, e.g. the first
+ * map frame and the first fix on the map.
+ *
+ * Each phase is recorded once per process, as milliseconds since process start, into the
+ * histogram {@code startup.<path>.<phase>}. The path tells how the map was reached:
+ * {@link #PATH_RESTORED} from a saved session, {@link #PATH_LOGIN} through the login screen,
+ * whose times include the user typing. Phases are also kept in the trace itself, so they
+ * can be logged while the registry is disabled.
+ */
+public class StartupTrace {
+    public static final String PATH_LOGIN = "login";
+    public static final String PATH_RESTORED = "restored";
+
+    public static final String PHASE_MAP_CREATED = "mapCreated";
+    public static final String PHASE_FIRST_MAP_FRAME = "firstMapFrame";
+    public static final String PHASE_FIRST_FIX = "firstFix";
+
+    private static StartupTrace processTrace;
+
+    private final MetricsRegistry registry;
+    private final long startMs;
+    private final LongSupplier clock;
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private String path = PATH_LOGIN;
+
+    /**
+     * Starts the trace of this process, unless an activity already did. Later calls, e.g.
+     * on a warm start of an activity, return the running trace.
+     * @param processStartMs Process start on the clock
+     * @param clock Monotonic time in milliseconds, e.g. elapsed realtime
+     */
+    public static synchronized StartupTrace startProcess(long processStartMs, LongSupplier clock) {
+        if (processTrace == null) {
+            processTrace = new StartupTrace(MetricsRegistry.getDefault(), processStartMs, clock);
+        }
+        return processTrace;
+    }
+
+    /**
+     * Creates a trace
+     * @param registry Registry receiving the phase histograms
+     * @param startMs Start on the clock
+     * @param clock Monotonic time in milliseconds
+     */
+    public StartupTrace(MetricsRegistry registry, long startMs, LongSupplier clock) {
+        this.registry = registry;
+        this.startMs = startMs;
+        this.clock = clock;
+    }
+
+    /**
+     * Sets how the map is reached. Ignored once a phase was recorded.
+     * @param path {@link #PATH_LOGIN} or {@link #PATH_RESTORED}
+     */
+    public synchronized void setPath(String path) {
+        if (phases.isEmpty()) {
+            this.path = path;
+        }
+    }
+
+    public synchronized String getPath() {
+        return path;
+    }
+
+    /**
+     * Records that a phase was reached, unless it already was in this process
+     * @return true if this was the first time
+     */
+    public synchronized boolean mark(String phase) {
+        if (phases.containsKey(phase)) {
+            return false;
+        }
+        long elapsedMs = clock.getAsLong() - startMs;
+        phases.put(phase, elapsedMs);
+        registry.histogram("startup." + path + "." + phase).recordMillis(elapsedMs);
+        return true;
+    }
+
+    /**
+     * @return Milliseconds from process start to the phase, or -1 if not reached
+     */
+    public synchronized long getPhaseMs(String phase) {
+        Long elapsedMs = phases.get(phase);
+        return elapsedMs != null ? elapsedMs : -1;
+    }
+
+    /**
+     * Formats the phases reached so far, e.g. for the log
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder text = new StringBuilder("startup ").append(path);
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            text.append(String.format(Locale.US, ", %s %d ms", phase.getKey(), phase.getValue()));
+        }
+        return text.toString();
+    }
+}
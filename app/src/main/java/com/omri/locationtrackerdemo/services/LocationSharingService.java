@@ -0,0 +1,231 @@
+package com.omri.locationtrackerdemo.services;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.location.Location;
+import android.os.Binder;
+import android.os.Build;
+import android.os.IBinder;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+
+import com.omri.locationtrackerdemo.BuildConfig;
+import com.omri.locationtrackerdemo.R;
+import com.omri.locationtrackerdemo.activities.MapActivity;
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+import com.omri.locationtrackerdemo.data.network.NetworkRuntime;
+import com.omri.locationtrackerdemo.data.preferences.UserPreferences;
+import com.omri.locationtrackerdemo.data.repository.BinaryLocationUploader;
+import com.omri.locationtrackerdemo.data.repository.LocationRepository;
+import com.omri.locationtrackerdemo.data.repository.LocationUploadQueue;
+import com.omri.locationtrackerdemo.interfaces.LocationUpdateListener;
+import com.omri.locationtrackerdemo.managers.LocationManager;
+import com.omri.locationtrackerdemo.metrics.Counter;
+import com.omri.locationtrackerdemo.metrics.MetricsRegistry;
+import com.omri.locationtrackerdemo.metrics.SharingCostEstimate;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Foreground service that shares the device location while sharing is switched on,
+ * also when the map screen is in the background or closed.
+ *
+ * The service owns the {@link LocationManager} and the repository that uploads and
+ * journals outbound fixes. While the map screen is visible it attaches itself and fixes
+ * are delivered one by one for the live display. Otherwise the location request is
+ * batched with {@link #BATCH_MAX_WAIT_MS}: the fused provider collects fixes while the
+ * device sleeps, and each batch is uploaded through
+ * {@link LocationRepository#offerLocations(String, List)} as a single request. Uploads use
+ * binary frames when the build sets {@code LOCATION_FRAME_URL}.
+ * The backend does not report who watches the user, so the user counts as watched while
+ * the map screen is attached. Detached, fixes are uploaded once per batch anyway, and a
+ * moving user drops to the saver location profile.
+ * Wakeups, fixes and uploads are counted, and the resulting {@link SharingCostEstimate}
+ * is logged when sharing stops.
+ */
+public class LocationSharingService extends Service implements LocationUpdateListener {
+    private static final String TAG = "LocationSharingService";
+    private static final String CHANNEL_ID = "location-sharing";
+    private static final int NOTIFICATION_ID = 1;
+    private static final String UPLOAD_JOURNAL_DIR = "location-journal";
+    // One wakeup and upload per minute in the background, 20 fixes at the moving profile's 3 s interval
+    public static final long BATCH_MAX_WAIT_MS = 60_000;
+
+    /**
+     * Gives the bound map screen access to the running service
+     */
+    public class LocalBinder extends Binder {
+        public LocationSharingService getService() {
+            return LocationSharingService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    private final Counter wakeups = metrics.counter("sharing.wakeups");
+    private final Counter batchedFixes = metrics.counter("sharing.fixes");
+    private LocationManager locationManager;
+    private LocationRepository locationRepository;
+    private String userId;
+    private long startedAtMs;
+    private volatile LocationUpdateListener attachedListener;
+
+    /**
+     * Starts sharing in the foreground service
+     * @param context Context of a visible activity, foreground services cannot be started from the background
+     */
+    public static void start(Context context) {
+        ContextCompat.startForegroundService(context, new Intent(context, LocationSharingService.class));
+    }
+
+    /**
+     * Stops sharing, uploading fixes that are still queued
+     */
+    public static void stop(Context context) {
+        context.stopService(new Intent(context, LocationSharingService.class));
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        locationRepository = new LocationRepository(new File(getFilesDir(), UPLOAD_JOURNAL_DIR));
+        if (!BuildConfig.LOCATION_FRAME_URL.isEmpty()) {
+            // Before the first fix, so the journal replay already uses frames
+            locationRepository.enableBinaryUploads(NetworkRuntime.getDefault().getHttpClient(),
+                    BuildConfig.LOCATION_FRAME_URL);
+        }
+        locationManager = new LocationManager(this);
+        locationManager.setMaxWaitTime(BATCH_MAX_WAIT_MS);
+        // Until the map screen attaches
+        locationManager.setWatched(false);
+        locationManager.setLocationUpdateListener(this);
+        startedAtMs = SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        userId = new UserPreferences(this).getUserId();
+        if (userId == null || !LocationManager.hasLocationPermission(this)) {
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                startForeground(NOTIFICATION_ID, buildNotification(), ServiceInfo.FOREGROUND_SERVICE_TYPE_LOCATION);
+            } else {
+                startForeground(NOTIFICATION_ID, buildNotification());
+            }
+        } catch (IllegalStateException e) {
+            // Restarted by the system while the app may not start foreground services
+            Log.w(TAG, "Cannot share in the foreground", e);
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        locationManager.startLocationUpdates();
+        return START_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    /**
+     * Delivers fixes and upload results to the visible map screen, one fix at a time
+     * @param locationListener Receives every fix on the location pipeline thread
+     * @param uploadListener Receives upload results on the upload thread
+     */
+    public void attach(LocationUpdateListener locationListener, LocationUploadQueue.Listener uploadListener) {
+        attachedListener = locationListener;
+        locationRepository.setUploadListener(uploadListener);
+        locationManager.setMaxWaitTime(0);
+        locationManager.setWatched(true);
+    }
+
+    /**
+     * Stops delivering to the map screen and batches fixes again
+     */
+    public void detach() {
+        attachedListener = null;
+        locationRepository.setUploadListener(null);
+        locationManager.setMaxWaitTime(BATCH_MAX_WAIT_MS);
+        locationManager.setWatched(false);
+    }
+
+    /**
+     * Estimates the battery and network cost of sharing since the service started
+     */
+    public SharingCostEstimate getCostEstimate() {
+        long uploads = locationRepository.getUploadQueue().getRequestCount();
+        BinaryLocationUploader binary = locationRepository.getBinaryUploader();
+        long bytesSent = binary != null && binary.isSupported()
+                ? binary.getBytesSent() : uploads * SharingCostEstimate.JSON_UPLOAD_BYTES;
+        return SharingCostEstimate.of(SystemClock.elapsedRealtime() - startedAtMs,
+                locationManager.getDeliveryCount(), locationManager.getFixCount(), uploads, bytesSent);
+    }
+
+    @Override
+    public void onLocationUpdated(Location location) {
+        onLocationBatch(Collections.singletonList(location));
+    }
+
+    /**
+     * Uploads a delivered batch in one request, or while the map is attached, queues the fix
+     * like before and shows it. Runs on the location pipeline thread.
+     */
+    @Override
+    public void onLocationBatch(List<Location> locations) {
+        wakeups.increment();
+        batchedFixes.add(locations.size());
+        LocationUpdateListener listener = attachedListener;
+        if (listener != null) {
+            for (Location location : locations) {
+                locationRepository.offerLocation(userId, LocationManager.toSample(location));
+            }
+            listener.onLocationUpdated(locations.get(locations.size() - 1));
+            return;
+        }
+        List<LocationSample> samples = new ArrayList<>(locations.size());
+        for (Location location : locations) {
+            samples.add(LocationManager.toSample(location));
+        }
+        locationRepository.offerLocations(userId, samples);
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        Log.i(TAG, "Sharing stopped: " + getCostEstimate() + ", " + locationManager.describeProfiles());
+        attachedListener = null;
+        // Waits for a delivery in progress, so no fix reaches the repository after its shutdown
+        locationManager.release();
+        locationRepository.shutdown();
+    }
+
+    private Notification buildNotification() {
+        NotificationManager notificationManager = getSystemService(NotificationManager.class);
+        notificationManager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                "Location sharing", NotificationManager.IMPORTANCE_LOW));
+        PendingIntent openMap = PendingIntent.getActivity(this, 0,
+                new Intent(this, MapActivity.class), PendingIntent.FLAG_IMMUTABLE);
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_my_location)
+                .setContentTitle("Sharing Location")
+                .setContentText("Your location is shared while this is shown")
+                .setContentIntent(openMap)
+                .setOngoing(true)
+                .build();
+    }
+}
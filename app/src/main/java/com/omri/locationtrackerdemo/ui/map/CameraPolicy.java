@@ -0,0 +1,345 @@
+package com.omri.locationtrackerdemo.ui.map;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides when and where the map camera moves, instead of animating it on every fix.
+ *
+ * In {@link Mode#FOLLOW} the camera recenters on the local user, and in
+ * {@link Mode#FIT_ALL} it frames all tracked users. In both modes it only moves once a
+ * target leaves the inner safe region of the viewport, and keeps the zoom the user
+ * chose. A gesture switches to {@link Mode#FREE}, where the camera is left alone until a
+ * mode is chosen again. Inputs mark a move pending; it is evaluated once, with the
+ * latest targets, after a debounce window and no sooner than a minimum interval after
+ * the previous move, so bursts of updates merge into a single animation.
+ *
+ * Times are in milliseconds of any monotonic clock. Not thread safe, used on the main
+ * thread only.
+ */
+public class CameraPolicy {
+    public static final float DEFAULT_ZOOM = 15f;
+    public static final long DEFAULT_DEBOUNCE_MS = 300;
+    public static final long DEFAULT_MIN_MOVE_INTERVAL_MS = 1_000;
+    /** Fraction of the viewport on each side outside the safe region */
+    public static final double DEFAULT_SAFE_INSET = 0.2;
+    /** Returned by {@link #getMoveDueTimeMs()} when no move is pending */
+    public static final long NONE = -1;
+    /** Zoomed out further than this below {@link #DEFAULT_ZOOM}, a forced move zooms back in */
+    private static final float MAX_ZOOM_OUT_FOR_FORCED_MOVE = 3f;
+
+    public enum Mode {
+        FOLLOW,
+        FREE,
+        FIT_ALL
+    }
+
+    /**
+     * A camera move to perform: either centering, optionally with a zoom, or fitting bounds
+     */
+    public static final class Move {
+        public final boolean fitBounds;
+        public final double latitude;
+        public final double longitude;
+        /** Zoom to center at, NaN to keep the current zoom */
+        public final double zoom;
+        public final double south;
+        public final double west;
+        public final double north;
+        public final double east;
+
+        private Move(boolean fitBounds, double latitude, double longitude, double zoom,
+                     double south, double west, double north, double east) {
+            this.fitBounds = fitBounds;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.zoom = zoom;
+            this.south = south;
+            this.west = west;
+            this.north = north;
+            this.east = east;
+        }
+
+        static Move center(double latitude, double longitude, double zoom) {
+            return new Move(false, latitude, longitude, zoom, 0, 0, 0, 0);
+        }
+
+        static Move bounds(double south, double west, double north, double east) {
+            return new Move(true, (south + north) / 2, (west + east) / 2, Double.NaN,
+                    south, west, north, east);
+        }
+    }
+
+    private final long debounceMs;
+    private final long minMoveIntervalMs;
+    private final double safeInset;
+
+    private Mode mode = Mode.FOLLOW;
+    private boolean forceMove;
+
+    private boolean hasViewport;
+    private double viewMinX;
+    private double viewMinY;
+    private double viewMaxX;
+    private double viewMaxY;
+    private double zoom;
+
+    private boolean hasLocal;
+    private double localLat;
+    private double localLon;
+    private final Map<String, double[]> remotePositions = new HashMap<>();
+
+    private long pendingSinceMs = NONE;
+    private long lastMoveMs = NONE;
+    private long moveCount;
+    private long suppressedCount;
+    private long mergedCount;
+
+    /**
+     * Creates a policy with the default debounce, move interval and safe region
+     */
+    public CameraPolicy() {
+        this(DEFAULT_DEBOUNCE_MS, DEFAULT_MIN_MOVE_INTERVAL_MS, DEFAULT_SAFE_INSET);
+    }
+
+    /**
+     * Creates a policy
+     * @param debounceMs Time inputs are collected before a move is evaluated
+     * @param minMoveIntervalMs Shortest time between two moves, at least the animation length
+     * @param safeInset Fraction of the viewport on each side that triggers a move, below 0.5
+     */
+    public CameraPolicy(long debounceMs, long minMoveIntervalMs, double safeInset) {
+        if (safeInset < 0 || safeInset >= 0.5) {
+            throw new IllegalArgumentException("Invalid safe inset");
+        }
+        this.debounceMs = debounceMs;
+        this.minMoveIntervalMs = minMoveIntervalMs;
+        this.safeInset = safeInset;
+    }
+
+    /**
+     * Selects a mode; following or fitting again moves the camera once regardless of the
+     * safe region
+     * @param newMode Mode to use
+     * @param nowMs Current time
+     */
+    public void setMode(Mode newMode, long nowMs) {
+        mode = newMode;
+        if (newMode == Mode.FREE) {
+            forceMove = false;
+            pendingSinceMs = NONE;
+        } else {
+            forceMove = true;
+            markPending(nowMs);
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * The user panned, zoomed or rotated the map: stop moving the camera on their behalf
+     */
+    public void onUserGesture(long nowMs) {
+        setMode(Mode.FREE, nowMs);
+    }
+
+    /**
+     * Reports where the camera settled
+     * @param west Western longitude
+     * @param south Southern latitude
+     * @param east Eastern longitude, smaller than west when crossing the antimeridian
+     * @param north Northern latitude
+     * @param cameraZoom Camera zoom
+     */
+    public void onViewport(double west, double south, double east, double north, double cameraZoom) {
+        viewMinX = WebMercator.x(west);
+        viewMaxX = WebMercator.x(east);
+        if (viewMaxX < viewMinX) {
+            viewMaxX += 1;
+        }
+        viewMinY = WebMercator.y(north);
+        viewMaxY = WebMercator.y(south);
+        zoom = cameraZoom;
+        hasViewport = true;
+    }
+
+    public void onLocalLocation(double latitude, double longitude, long nowMs) {
+        hasLocal = true;
+        localLat = latitude;
+        localLon = longitude;
+        if (mode == Mode.FOLLOW) {
+            markPending(nowMs);
+        }
+    }
+
+    public boolean hasLocalLocation() {
+        return hasLocal;
+    }
+
+    /**
+     * Reports a tracked user's position. The first position of a user switches to
+     * {@link Mode#FIT_ALL}, since the user just asked to see them.
+     * @param userId ID of the remote user
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @param isFirstUpdate Whether this is the first position received for the user
+     * @param nowMs Current time
+     */
+    public void onRemoteLocation(String userId, double latitude, double longitude,
+                                 boolean isFirstUpdate, long nowMs) {
+        double[] position = remotePositions.get(userId);
+        if (position == null) {
+            position = new double[2];
+            remotePositions.put(userId, position);
+        }
+        position[0] = latitude;
+        position[1] = longitude;
+        if (isFirstUpdate) {
+            setMode(Mode.FIT_ALL, nowMs);
+        } else if (mode == Mode.FIT_ALL) {
+            markPending(nowMs);
+        }
+    }
+
+    public void removeRemote(String userId) {
+        remotePositions.remove(userId);
+        if (mode == Mode.FIT_ALL && remotePositions.isEmpty()) {
+            mode = Mode.FOLLOW;
+        }
+    }
+
+    /**
+     * Forgets all tracked users; fitting falls back to following the local user
+     */
+    public void clearRemote() {
+        remotePositions.clear();
+        if (mode == Mode.FIT_ALL) {
+            mode = Mode.FOLLOW;
+        }
+    }
+
+    private void markPending(long nowMs) {
+        if (pendingSinceMs == NONE) {
+            pendingSinceMs = nowMs;
+        } else {
+            mergedCount++;
+        }
+    }
+
+    /**
+     * Returns when the pending move should be evaluated with {@link #takeMove(long)}
+     * @return Time in the policy's clock, or {@link #NONE}
+     */
+    public long getMoveDueTimeMs() {
+        if (pendingSinceMs == NONE) {
+            return NONE;
+        }
+        long dueMs = pendingSinceMs + debounceMs;
+        return lastMoveMs == NONE ? dueMs : Math.max(dueMs, lastMoveMs + minMoveIntervalMs);
+    }
+
+    /**
+     * Evaluates the pending move
+     * @param nowMs Current time
+     * @return The move to animate, or null if none is due or the targets are in the safe region
+     */
+    public Move takeMove(long nowMs) {
+        long dueMs = getMoveDueTimeMs();
+        if (dueMs == NONE || nowMs < dueMs) {
+            return null;
+        }
+        pendingSinceMs = NONE;
+        boolean force = forceMove;
+        forceMove = false;
+
+        Move move = null;
+        if (mode == Mode.FOLLOW && hasLocal) {
+            move = follow(force);
+        } else if (mode == Mode.FIT_ALL && !remotePositions.isEmpty()) {
+            move = fitAll(force);
+        }
+        if (move == null) {
+            suppressedCount++;
+            return null;
+        }
+        lastMoveMs = nowMs;
+        moveCount++;
+        return move;
+    }
+
+    private Move follow(boolean force) {
+        if (!force && isInSafeRegion(localLat, localLon)) {
+            return null;
+        }
+        return Move.center(localLat, localLon, force ? forcedZoom() : keptZoom());
+    }
+
+    private Move fitAll(boolean force) {
+        double south = Double.MAX_VALUE;
+        double north = -Double.MAX_VALUE;
+        double west = Double.MAX_VALUE;
+        double east = -Double.MAX_VALUE;
+        boolean allSafe = true;
+        for (double[] position : remotePositions.values()) {
+            south = Math.min(south, position[0]);
+            north = Math.max(north, position[0]);
+            west = Math.min(west, position[1]);
+            east = Math.max(east, position[1]);
+            allSafe &= isInSafeRegion(position[0], position[1]);
+        }
+        if (!force && allSafe) {
+            return null;
+        }
+        if (remotePositions.size() == 1) {
+            return Move.center(south, west, force ? forcedZoom() : keptZoom());
+        }
+        return Move.bounds(south, west, north, east);
+    }
+
+    private double keptZoom() {
+        return hasViewport ? Double.NaN : DEFAULT_ZOOM;
+    }
+
+    private double forcedZoom() {
+        return !hasViewport || zoom < DEFAULT_ZOOM - MAX_ZOOM_OUT_FOR_FORCED_MOVE ? DEFAULT_ZOOM : Double.NaN;
+    }
+
+    private boolean isInSafeRegion(double latitude, double longitude) {
+        if (!hasViewport) {
+            return false;
+        }
+        double x = WebMercator.x(longitude);
+        if (x < viewMinX) {
+            // Viewport crossing the antimeridian was unwrapped past 1
+            x += 1;
+        }
+        double y = WebMercator.y(latitude);
+        double insetX = (viewMaxX - viewMinX) * safeInset;
+        double insetY = (viewMaxY - viewMinY) * safeInset;
+        return x >= viewMinX + insetX && x <= viewMaxX - insetX
+                && y >= viewMinY + insetY && y <= viewMaxY - insetY;
+    }
+
+    /**
+     * Number of camera moves issued
+     */
+    public long getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Number of evaluations that left the camera where it was
+     */
+    public long getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    /**
+     * Number of inputs folded into an already pending move
+     */
+    public long getMergedCount() {
+        return mergedCount;
+    }
+}
@@ -1,18 +1,30 @@
 package com.omri.locationtrackerdemo.ui.map;
 
 import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.google.android.gms.maps.CameraUpdate;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
 
 /**
  * Controls the Google Maps visualization including camera movements,
  * marker management, and location display settings.
+ * Camera moves are decided by a {@link CameraPolicy}; location updates only feed it.
  */
 public class MapViewController {
-    private static final float DEFAULT_ZOOM = 15f;
+    private static final int CAMERA_ANIMATION_MS = 600;
+    private static final int FIT_BOUNDS_PADDING_PX = 160;
     private final GoogleMap googleMap;
     private final MarkerManager markerManager;
+    private final CameraPolicy cameraPolicy = new CameraPolicy();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable cameraMove = this::performCameraMove;
+    private boolean cameraMoveScheduled;
 
     /**
      * Creates a new MapViewController instance
@@ -21,6 +33,59 @@ public class MapViewController {
     public MapViewController(GoogleMap googleMap) {
         this.googleMap = googleMap;
         this.markerManager = new MarkerManager(googleMap);
+        googleMap.setOnCameraIdleListener(this::onCameraIdle);
+        googleMap.setOnCameraMoveStartedListener(reason -> {
+            if (reason == GoogleMap.OnCameraMoveStartedListener.REASON_GESTURE) {
+                cameraPolicy.onUserGesture(SystemClock.uptimeMillis());
+            }
+        });
+    }
+
+    /**
+     * Hands the settled viewport to the marker layer, which clusters and culls against it,
+     * and to the camera policy, which checks its safe region against it
+     */
+    private void onCameraIdle() {
+        LatLngBounds bounds = googleMap.getProjection().getVisibleRegion().latLngBounds;
+        float zoom = googleMap.getCameraPosition().zoom;
+        markerManager.setViewport(bounds.southwest.longitude, bounds.southwest.latitude,
+                bounds.northeast.longitude, bounds.northeast.latitude, zoom);
+        cameraPolicy.onViewport(bounds.southwest.longitude, bounds.southwest.latitude,
+                bounds.northeast.longitude, bounds.northeast.latitude, zoom);
+    }
+
+    /**
+     * Posts the evaluation of the pending camera move for when the policy wants it
+     */
+    private void scheduleCameraMove() {
+        long dueMs = cameraPolicy.getMoveDueTimeMs();
+        if (!cameraMoveScheduled && dueMs != CameraPolicy.NONE) {
+            cameraMoveScheduled = true;
+            // The policy runs on the uptime clock, like postAtTime
+            mainHandler.postAtTime(cameraMove, dueMs);
+        }
+    }
+
+    private void performCameraMove() {
+        cameraMoveScheduled = false;
+        CameraPolicy.Move move = cameraPolicy.takeMove(SystemClock.uptimeMillis());
+        if (move != null) {
+            googleMap.animateCamera(toCameraUpdate(move), CAMERA_ANIMATION_MS, null);
+        }
+        // Inputs that arrived after the due time are evaluated in a later move
+        scheduleCameraMove();
+    }
+
+    private static CameraUpdate toCameraUpdate(CameraPolicy.Move move) {
+        if (move.fitBounds) {
+            LatLngBounds bounds = new LatLngBounds(
+                    new LatLng(move.south, move.west), new LatLng(move.north, move.east));
+            return CameraUpdateFactory.newLatLngBounds(bounds, FIT_BOUNDS_PADDING_PX);
+        }
+        LatLng target = new LatLng(move.latitude, move.longitude);
+        return Double.isNaN(move.zoom)
+                ? CameraUpdateFactory.newLatLng(target)
+                : CameraUpdateFactory.newLatLngZoom(target, (float) move.zoom);
     }
 
     /**
@@ -38,52 +103,116 @@ public class MapViewController {
     }
 
     /**
-     * Updates the local user's location and centers the camera
+     * Updates the local user's location; the camera follows it when the policy says so
      * @param location The new location to display
      */
     public void updateLocalLocation(Location location) {
         if (location != null) {
-            LatLng latLng = new LatLng(location.getLatitude(), location.getLongitude());
-            googleMap.animateCamera(CameraUpdateFactory.newLatLngZoom(latLng, DEFAULT_ZOOM));
+            cameraPolicy.onLocalLocation(location.getLatitude(), location.getLongitude(),
+                    SystemClock.uptimeMillis());
+            scheduleCameraMove();
         }
     }
 
     /**
-     * Updates remote user's location with camera focus
+     * Updates remote user's location on its first update, bringing all tracked users into view
      * @param userId ID of the remote user
      * @param remoteLocation The user's new location
+     * @param stalenessMs Age of the location in milliseconds
      */
-    public void updateRemoteUserLocation(String userId, com.omri.trackinglibrary.models.Location remoteLocation) {
-        LatLng remoteLatLng = new LatLng(remoteLocation.getLatitude(), remoteLocation.getLongitude());
-        markerManager.updateRemoteUserMarker(userId, remoteLatLng);
-        googleMap.animateCamera(CameraUpdateFactory.newLatLngZoom(remoteLatLng, DEFAULT_ZOOM));
+    public void updateRemoteUserLocation(String userId, com.omri.trackinglibrary.models.Location remoteLocation,
+                                         long stalenessMs) {
+        updateRemoteUser(userId, remoteLocation.getLatitude(), remoteLocation.getLongitude(), stalenessMs, true);
     }
 
     /**
-     * Updates remote user's marker without moving the camera
+     * Updates remote user's marker; the camera only moves if it is framing all tracked users
      * @param userId ID of the remote user
      * @param remoteLocation The user's new location
+     * @param stalenessMs Age of the location in milliseconds
+     */
+    public void updateRemoteUserMarker(String userId, com.omri.trackinglibrary.models.Location remoteLocation,
+                                       long stalenessMs) {
+        updateRemoteUser(userId, remoteLocation.getLatitude(), remoteLocation.getLongitude(), stalenessMs, false);
+    }
+
+    /**
+     * Updates a remote user's marker from plain coordinates, e.g. a fix replayed from history
+     * @param userId ID of the remote user
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @param stalenessMs Age of the location in milliseconds
+     * @param isFirstUpdate Whether to bring all tracked users into view, as on a first update
+     */
+    public void updateRemoteUser(String userId, double latitude, double longitude, long stalenessMs,
+                                 boolean isFirstUpdate) {
+        markerManager.updateRemoteUserMarker(userId, new LatLng(latitude, longitude), stalenessMs);
+        cameraPolicy.onRemoteLocation(userId, latitude, longitude, isFirstUpdate, SystemClock.uptimeMillis());
+        scheduleCameraMove();
+    }
+
+    /**
+     * Stops moving remote markers between updates, e.g. while the map is not visible
+     */
+    public void pauseMarkerAnimation() {
+        markerManager.pauseAnimation();
+    }
+
+    /**
+     * Resumes moving remote markers between updates
      */
-    public void updateRemoteUserMarker(String userId, com.omri.trackinglibrary.models.Location remoteLocation) {
-        LatLng remoteLatLng = new LatLng(remoteLocation.getLatitude(), remoteLocation.getLongitude());
-        markerManager.updateRemoteUserMarker(userId, remoteLatLng);
+    public void resumeMarkerAnimation() {
+        markerManager.resumeAnimation();
     }
 
     /**
-     * Removes the remote user's marker from the map
+     * Marks a remote user's marker as showing an outdated location
+     * @param userId ID of the remote user
+     * @param stale Whether the displayed location is stale
+     */
+    public void setRemoteUserStale(String userId, boolean stale) {
+        markerManager.setRemoteUserMarkerStale(userId, stale);
+    }
+
+    /**
+     * Removes a single remote user's marker from the map
+     * @param userId ID of the remote user
+     */
+    public void clearRemoteUserMarker(String userId) {
+        markerManager.clearRemoteUserMarker(userId);
+        cameraPolicy.removeRemote(userId);
+    }
+
+    /**
+     * Removes all remote user markers from the map
      */
     public void clearRemoteUserMarker() {
         markerManager.clearRemoteUserMarker();
+        cameraPolicy.clearRemote();
     }
 
     /**
-     * Centers the camera on a specific location
+     * Centers the camera on a specific location and keeps following the local user from there
      * @param location The location to focus on
      */
     public void focusOnLocation(Location location) {
+        long nowMs = SystemClock.uptimeMillis();
         if (location != null) {
-            LatLng latLng = new LatLng(location.getLatitude(), location.getLongitude());
-            googleMap.animateCamera(CameraUpdateFactory.newLatLngZoom(latLng, DEFAULT_ZOOM));
+            cameraPolicy.onLocalLocation(location.getLatitude(), location.getLongitude(), nowMs);
         }
+        cameraPolicy.setMode(CameraPolicy.Mode.FOLLOW, nowMs);
+        scheduleCameraMove();
+    }
+
+    /**
+     * Stops pending camera moves, e.g. when the map is no longer visible
+     */
+    public void release() {
+        mainHandler.removeCallbacks(cameraMove);
+        cameraMoveScheduled = false;
+    }
+
+    public CameraPolicy getCameraPolicy() {
+        return cameraPolicy;
     }
 }
\ No newline at end of file
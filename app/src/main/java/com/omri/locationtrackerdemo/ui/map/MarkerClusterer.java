@@ -0,0 +1,301 @@
+package com.omri.locationtrackerdemo.ui.map;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups points into clusters on a grid laid over the Web Mercator world.
+ *
+ * A grid cell is {@code cellSizePx} map pixels wide at the current integer zoom level,
+ * and every non-empty cell is one cluster. Moving a point only touches its old and new
+ * cell, so clusters stay current as positions change without re-clustering; only a
+ * change of integer zoom level rebuilds the grid. Visible clusters are found by
+ * scanning the cells of the viewport, or all cells when there are fewer of them.
+ *
+ * Not thread safe, used on the main thread only.
+ */
+public class MarkerClusterer {
+    public static final int DEFAULT_CELL_SIZE_PX = 64;
+    /** Deeper than any map zoom, keeps cell indices within an int */
+    private static final int MAX_ZOOM_LEVEL = 24;
+
+    /**
+     * A non-empty grid cell. Instances are owned by the clusterer and only valid until
+     * the next change.
+     */
+    public static final class Cluster {
+        final long key;
+        final List<Point> points = new ArrayList<>(1);
+        double sumX;
+        double sumY;
+
+        Cluster(long key) {
+            this.key = key;
+        }
+
+        /**
+         * Identifies the cell, stable while the zoom level does not change
+         */
+        public long getKey() {
+            return key;
+        }
+
+        public int size() {
+            return points.size();
+        }
+
+        /**
+         * Returns the ID of the only point, or null for a cluster of several
+         */
+        public String getSingleId() {
+            return points.size() == 1 ? points.get(0).id : null;
+        }
+
+        /**
+         * Normalized world x of the centroid
+         */
+        public double getX() {
+            return sumX / points.size();
+        }
+
+        /**
+         * Normalized world y of the centroid
+         */
+        public double getY() {
+            return sumY / points.size();
+        }
+
+        public double getLatitude() {
+            return WebMercator.latitude(getY());
+        }
+
+        public double getLongitude() {
+            return WebMercator.longitude(getX());
+        }
+    }
+
+    private static final class Point {
+        final String id;
+        double x;
+        double y;
+        Cluster cluster;
+        int indexInCluster;
+
+        Point(String id) {
+            this.id = id;
+        }
+    }
+
+    private final int cellSizePx;
+    private final Map<String, Point> points = new HashMap<>();
+    private final Map<Long, Cluster> cells = new HashMap<>();
+    private int zoomLevel = -1;
+    private double cellsPerAxis;
+    private long cellMoveCount;
+
+    /**
+     * Creates a clusterer merging points within {@link #DEFAULT_CELL_SIZE_PX} cells
+     */
+    public MarkerClusterer() {
+        this(DEFAULT_CELL_SIZE_PX);
+    }
+
+    /**
+     * Creates a clusterer
+     * @param cellSizePx Width of a grid cell in map pixels
+     */
+    public MarkerClusterer(int cellSizePx) {
+        if (cellSizePx <= 0) {
+            throw new IllegalArgumentException("Invalid cell size");
+        }
+        this.cellSizePx = cellSizePx;
+        setZoom(0);
+    }
+
+    /**
+     * Sets the map zoom; the grid is rebuilt when the integer zoom level changes
+     * @param zoom Camera zoom
+     * @return Whether the clusters changed
+     */
+    public boolean setZoom(double zoom) {
+        int level = Math.max(0, Math.min(MAX_ZOOM_LEVEL, (int) Math.floor(zoom)));
+        if (level == zoomLevel) {
+            return false;
+        }
+        zoomLevel = level;
+        cellsPerAxis = WebMercator.worldSize(level) / cellSizePx;
+        cells.clear();
+        for (Point point : points.values()) {
+            point.cluster = null;
+            addToCell(point);
+        }
+        return true;
+    }
+
+    public int getZoomLevel() {
+        return zoomLevel;
+    }
+
+    /**
+     * Adds a point or moves it to a new position
+     * @param id ID of the point
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     */
+    public void update(String id, double latitude, double longitude) {
+        Point point = points.get(id);
+        if (point == null) {
+            point = new Point(id);
+            points.put(id, point);
+        }
+        double x = WebMercator.x(longitude);
+        double y = WebMercator.y(latitude);
+        if (point.cluster != null && point.cluster.key == cellKey(x, y)) {
+            // Same cell, only the centroid moves
+            point.cluster.sumX += x - point.x;
+            point.cluster.sumY += y - point.y;
+            point.x = x;
+            point.y = y;
+            return;
+        }
+        if (point.cluster != null) {
+            removeFromCell(point);
+            cellMoveCount++;
+        }
+        point.x = x;
+        point.y = y;
+        addToCell(point);
+    }
+
+    public void remove(String id) {
+        Point point = points.remove(id);
+        if (point != null && point.cluster != null) {
+            removeFromCell(point);
+        }
+    }
+
+    public void clear() {
+        points.clear();
+        cells.clear();
+    }
+
+    public int size() {
+        return points.size();
+    }
+
+    public int getClusterCount() {
+        return cells.size();
+    }
+
+    /**
+     * Number of times a point changed cells, each of which changed two clusters
+     */
+    public long getCellMoveCount() {
+        return cellMoveCount;
+    }
+
+    /**
+     * Collects the clusters whose cell intersects a viewport. A viewport with west greater
+     * than east crosses the antimeridian.
+     * @param west Western longitude
+     * @param south Southern latitude
+     * @param east Eastern longitude
+     * @param north Northern latitude
+     * @param out Receives the clusters, not cleared first
+     */
+    public void collect(double west, double south, double east, double north, List<Cluster> out) {
+        double minY = WebMercator.y(north);
+        double maxY = WebMercator.y(south);
+        if (west <= east) {
+            collectCells(WebMercator.x(west), minY, WebMercator.x(east), maxY, out);
+        } else {
+            collectCells(WebMercator.x(west), minY, 1, maxY, out);
+            collectCells(0, minY, WebMercator.x(east), maxY, out);
+        }
+    }
+
+    /**
+     * Collects every cluster
+     * @param out Receives the clusters, not cleared first
+     */
+    public void collectAll(List<Cluster> out) {
+        out.addAll(cells.values());
+    }
+
+    private void collectCells(double minX, double minY, double maxX, double maxY, List<Cluster> out) {
+        int firstColumn = cellIndex(minX);
+        int lastColumn = cellIndex(maxX);
+        int firstRow = cellIndex(minY);
+        int lastRow = cellIndex(maxY);
+        long viewportCells = (long) (lastColumn - firstColumn + 1) * (lastRow - firstRow + 1);
+        if (viewportCells > cells.size()) {
+            for (Cluster cluster : cells.values()) {
+                int column = (int) (cluster.key >>> 32);
+                int row = (int) cluster.key;
+                if (column >= firstColumn && column <= lastColumn && row >= firstRow && row <= lastRow) {
+                    out.add(cluster);
+                }
+            }
+        } else {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                for (int row = firstRow; row <= lastRow; row++) {
+                    Cluster cluster = cells.get(key(column, row));
+                    if (cluster != null) {
+                        out.add(cluster);
+                    }
+                }
+            }
+        }
+    }
+
+    private void addToCell(Point point) {
+        long key = cellKey(point.x, point.y);
+        Cluster cluster = cells.get(key);
+        if (cluster == null) {
+            cluster = new Cluster(key);
+            cells.put(key, cluster);
+        }
+        point.cluster = cluster;
+        point.indexInCluster = cluster.points.size();
+        cluster.points.add(point);
+        cluster.sumX += point.x;
+        cluster.sumY += point.y;
+    }
+
+    private void removeFromCell(Point point) {
+        Cluster cluster = point.cluster;
+        // Swap with the last point so removal does not shift the list
+        Point last = cluster.points.remove(cluster.points.size() - 1);
+        if (last != point) {
+            cluster.points.set(point.indexInCluster, last);
+            last.indexInCluster = point.indexInCluster;
+        }
+        point.cluster = null;
+        if (cluster.points.isEmpty()) {
+            cells.remove(cluster.key);
+        } else if (cluster.points.size() == 1) {
+            // Drop rounding error accumulated by centroid updates
+            Point remaining = cluster.points.get(0);
+            cluster.sumX = remaining.x;
+            cluster.sumY = remaining.y;
+        } else {
+            cluster.sumX -= point.x;
+            cluster.sumY -= point.y;
+        }
+    }
+
+    private int cellIndex(double coordinate) {
+        int index = (int) (coordinate * cellsPerAxis);
+        return Math.max(0, Math.min((int) cellsPerAxis - 1, index));
+    }
+
+    private long cellKey(double x, double y) {
+        return key(cellIndex(x), cellIndex(y));
+    }
+
+    private static long key(int column, int row) {
+        return ((long) column << 32) | (row & 0xffffffffL);
+    }
+}
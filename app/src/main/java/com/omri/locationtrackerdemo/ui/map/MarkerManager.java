@@ -1,17 +1,77 @@
 package com.omri.locationtrackerdemo.ui.map;
 
+import android.os.SystemClock;
+import android.view.Choreographer;
+
 import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Manages markers on the Google Map for displaying remote user locations.
  * Handles marker creation, updates, and removal.
+ *
+ * User positions are kept in a {@link MarkerClusterer}; a Marker object only exists for
+ * clusters and single users inside the viewport, so the number of markers is bounded by
+ * the screen rather than by the number of tracked users. Updates only mark the layer
+ * dirty and are rendered together on the next display frame. Between polls single
+ * markers are dead-reckoned by a {@link MotionPredictor}, and {@code setPosition} is
+ * skipped while a marker moves less than {@link #MIN_MOVE_PX} on screen. Frames are only
+ * requested while the layer is dirty or a visible marker is still moving.
+ * Must be used on the main thread.
  */
-public class MarkerManager {
+public class MarkerManager implements Choreographer.FrameCallback {
+    private static final float STALE_MARKER_ALPHA = 0.4f;
+    /** Smallest on-screen movement worth a setPosition call, in map pixels */
+    static final double MIN_MOVE_PX = 0.5;
+    /** Fraction of the viewport added on each side so markers exist before they scroll in */
+    private static final double VIEWPORT_MARGIN = 0.25;
+
+    private static final class RenderedMarker {
+        final Marker marker;
+        double x;
+        double y;
+        int size;
+        int generation;
+
+        RenderedMarker(Marker marker, double x, double y, int size) {
+            this.marker = marker;
+            this.x = x;
+            this.y = y;
+            this.size = size;
+        }
+    }
+
     private final GoogleMap googleMap;
-    private Marker remoteUserMarker;
+    private final MarkerClusterer clusterer = new MarkerClusterer();
+    private final Map<String, MotionPredictor> predictors = new HashMap<>();
+    private final Set<String> staleUsers = new HashSet<>();
+    private final Map<String, RenderedMarker> userMarkers = new HashMap<>();
+    private final Map<Long, RenderedMarker> clusterMarkers = new HashMap<>();
+    private final List<MarkerClusterer.Cluster> visibleClusters = new ArrayList<>();
+    private final double[] predicted = new double[2];
+
+    private boolean hasViewport;
+    private double west;
+    private double south;
+    private double east;
+    private double north;
+    private double worldSizePx = WebMercator.worldSize(0);
+
+    private boolean layerDirty;
+    private int renderGeneration;
+    private boolean frameScheduled;
+    private boolean animationPaused;
 
     /**
      * Creates a new MarkerManager instance
@@ -22,29 +82,261 @@ public class MarkerManager {
     }
 
     /**
-     * Updates or creates a marker for the remote user
+     * Updates or creates the position of a remote user
      * @param userId ID of the remote user
-     * @param position The user's current position
+     * @param position The user's reported position
+     * @param stalenessMs Age of the reported position, used to place it on the display clock
+     */
+    public void updateRemoteUserMarker(String userId, LatLng position, long stalenessMs) {
+        // Same time base as Choreographer frame times
+        long nowMs = SystemClock.uptimeMillis();
+        MotionPredictor predictor = predictors.get(userId);
+        if (predictor == null) {
+            predictor = new MotionPredictor();
+            predictors.put(userId, predictor);
+        }
+        predictor.addFix(position.latitude, position.longitude, nowMs - Math.max(0, stalenessMs), nowMs);
+        clusterer.update(userId, position.latitude, position.longitude);
+        invalidate();
+    }
+
+    /**
+     * Sets the visible part of the map; markers are only kept for what is inside it
+     * @param west Western longitude
+     * @param south Southern latitude
+     * @param east Eastern longitude, smaller than west when crossing the antimeridian
+     * @param north Northern latitude
+     * @param zoom Camera zoom
+     */
+    public void setViewport(double west, double south, double east, double north, double zoom) {
+        double width = east >= west ? east - west : east + 360 - west;
+        double marginLon = Math.min(width * VIEWPORT_MARGIN, (360 - width) / 2);
+        double marginLat = (north - south) * VIEWPORT_MARGIN;
+        this.west = wrapLongitude(west - marginLon);
+        this.east = wrapLongitude(east + marginLon);
+        this.south = Math.max(-90, south - marginLat);
+        this.north = Math.min(90, north + marginLat);
+        hasViewport = width + 2 * marginLon < 360;
+        worldSizePx = WebMercator.worldSize(zoom);
+        clusterer.setZoom(zoom);
+        invalidate();
+    }
+
+    private static double wrapLongitude(double longitude) {
+        if (longitude < -180) {
+            return longitude + 360;
+        }
+        return longitude > 180 ? longitude - 360 : longitude;
+    }
+
+    /**
+     * Renders the layer if it changed, otherwise only moves animating markers
+     * @param frameTimeNanos Vsync time of the frame
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        long nowMs = frameTimeNanos / 1_000_000;
+        boolean animating = layerDirty ? render(nowMs) : animateUserMarkers(nowMs);
+        if (animating) {
+            scheduleFrame();
+        }
+    }
+
+    private void invalidate() {
+        layerDirty = true;
+        scheduleFrame();
+    }
+
+    private void scheduleFrame() {
+        if (!frameScheduled && !animationPaused) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Brings markers in line with the visible clusters: creates, moves and removes
+     * @return Whether any visible single marker is still moving
      */
-    public void updateRemoteUserMarker(String userId, LatLng position) {
-        if (remoteUserMarker == null) {
-            remoteUserMarker = googleMap.addMarker(
+    private boolean render(long nowMs) {
+        layerDirty = false;
+        renderGeneration++;
+        visibleClusters.clear();
+        if (hasViewport) {
+            clusterer.collect(west, south, east, north, visibleClusters);
+        } else {
+            clusterer.collectAll(visibleClusters);
+        }
+
+        boolean animating = false;
+        for (int i = 0; i < visibleClusters.size(); i++) {
+            MarkerClusterer.Cluster cluster = visibleClusters.get(i);
+            String userId = cluster.getSingleId();
+            if (userId != null) {
+                animating |= renderUserMarker(userId, nowMs);
+            } else {
+                renderClusterMarker(cluster);
+            }
+        }
+        visibleClusters.clear();
+
+        removeUnrendered(userMarkers.values().iterator());
+        removeUnrendered(clusterMarkers.values().iterator());
+        return animating;
+    }
+
+    private boolean renderUserMarker(String userId, long nowMs) {
+        MotionPredictor predictor = predictors.get(userId);
+        predictor.predict(nowMs, predicted);
+        RenderedMarker rendered = userMarkers.get(userId);
+        if (rendered == null) {
+            Marker marker = googleMap.addMarker(
                     new MarkerOptions()
-                            .position(position)
+                            .position(new LatLng(predicted[0], predicted[1]))
                             .title("User " + userId)
+                            .alpha(staleUsers.contains(userId) ? STALE_MARKER_ALPHA : 1f)
             );
+            if (marker == null) {
+                return false;
+            }
+            rendered = new RenderedMarker(marker, WebMercator.x(predicted[1]), WebMercator.y(predicted[0]), 1);
+            userMarkers.put(userId, rendered);
         } else {
-            remoteUserMarker.setPosition(position);
+            moveIfVisible(rendered, predicted[0], predicted[1]);
+        }
+        rendered.generation = renderGeneration;
+        return predictor.isAnimating(nowMs);
+    }
+
+    private void renderClusterMarker(MarkerClusterer.Cluster cluster) {
+        RenderedMarker rendered = clusterMarkers.get(cluster.getKey());
+        if (rendered == null) {
+            Marker marker = googleMap.addMarker(
+                    new MarkerOptions()
+                            .position(new LatLng(cluster.getLatitude(), cluster.getLongitude()))
+                            .title(cluster.size() + " users")
+                            .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_AZURE))
+            );
+            if (marker == null) {
+                return;
+            }
+            rendered = new RenderedMarker(marker, cluster.getX(), cluster.getY(), cluster.size());
+            clusterMarkers.put(cluster.getKey(), rendered);
+        } else {
+            if (rendered.size != cluster.size()) {
+                rendered.size = cluster.size();
+                rendered.marker.setTitle(cluster.size() + " users");
+            }
+            moveIfVisible(rendered, cluster.getLatitude(), cluster.getLongitude());
+        }
+        rendered.generation = renderGeneration;
+    }
+
+    private boolean animateUserMarkers(long nowMs) {
+        boolean animating = false;
+        for (Map.Entry<String, RenderedMarker> entry : userMarkers.entrySet()) {
+            MotionPredictor predictor = predictors.get(entry.getKey());
+            if (predictor == null || !predictor.isAnimating(nowMs)) {
+                continue;
+            }
+            predictor.predict(nowMs, predicted);
+            moveIfVisible(entry.getValue(), predicted[0], predicted[1]);
+            animating = true;
+        }
+        return animating;
+    }
+
+    private void moveIfVisible(RenderedMarker rendered, double latitude, double longitude) {
+        double x = WebMercator.x(longitude);
+        double y = WebMercator.y(latitude);
+        double movePx = Math.max(Math.abs(x - rendered.x), Math.abs(y - rendered.y)) * worldSizePx;
+        if (movePx >= MIN_MOVE_PX) {
+            rendered.marker.setPosition(new LatLng(latitude, longitude));
+            rendered.x = x;
+            rendered.y = y;
+        }
+    }
+
+    private void removeUnrendered(Iterator<RenderedMarker> markers) {
+        while (markers.hasNext()) {
+            RenderedMarker rendered = markers.next();
+            if (rendered.generation != renderGeneration) {
+                rendered.marker.remove();
+                markers.remove();
+            }
+        }
+    }
+
+    /**
+     * Stops marker rendering while the map is not visible; updates are kept and drawn on resume
+     */
+    public void pauseAnimation() {
+        animationPaused = true;
+        if (frameScheduled) {
+            frameScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(this);
         }
     }
 
     /**
-     * Removes the remote user's marker from the map
+     * Resumes marker rendering after {@link #pauseAnimation()}
+     */
+    public void resumeAnimation() {
+        animationPaused = false;
+        invalidate();
+    }
+
+    /**
+     * Greys out the marker of a user whose location is outdated, or restores it
+     * @param userId ID of the remote user
+     * @param stale Whether the displayed location is stale
+     */
+    public void setRemoteUserMarkerStale(String userId, boolean stale) {
+        boolean changed = stale ? staleUsers.add(userId) : staleUsers.remove(userId);
+        RenderedMarker rendered = userMarkers.get(userId);
+        if (changed && rendered != null) {
+            rendered.marker.setAlpha(stale ? STALE_MARKER_ALPHA : 1f);
+        }
+    }
+
+    /**
+     * Removes a single remote user's marker from the map
+     * @param userId ID of the remote user
+     */
+    public void clearRemoteUserMarker(String userId) {
+        predictors.remove(userId);
+        staleUsers.remove(userId);
+        clusterer.remove(userId);
+        RenderedMarker rendered = userMarkers.remove(userId);
+        if (rendered != null) {
+            rendered.marker.remove();
+        }
+        // The user may have been part of a cluster
+        invalidate();
+    }
+
+    /**
+     * Removes all remote user markers from the map
      */
     public void clearRemoteUserMarker() {
-        if (remoteUserMarker != null) {
-            remoteUserMarker.remove();
-            remoteUserMarker = null;
+        for (RenderedMarker rendered : userMarkers.values()) {
+            rendered.marker.remove();
+        }
+        for (RenderedMarker rendered : clusterMarkers.values()) {
+            rendered.marker.remove();
         }
+        userMarkers.clear();
+        clusterMarkers.clear();
+        predictors.clear();
+        staleUsers.clear();
+        clusterer.clear();
+    }
+
+    /**
+     * Number of Marker objects currently on the map
+     */
+    public int getRenderedMarkerCount() {
+        return userMarkers.size() + clusterMarkers.size();
     }
-}
\ No newline at end of file
+}
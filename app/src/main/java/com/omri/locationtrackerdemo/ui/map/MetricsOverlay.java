@@ -0,0 +1,107 @@
+package com.omri.locationtrackerdemo.ui.map;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+
+import com.omri.locationtrackerdemo.metrics.MetricsRegistry;
+
+/**
+ * Debug overlay showing a {@link MetricsRegistry} snapshot on top of the map, refreshed
+ * every {@link #REFRESH_INTERVAL_MS} while visible. Showing the overlay enables the registry
+ * and hiding it restores the previous state, so release builds only pay for metrics while
+ * someone looks at them. Must be used on the main thread.
+ */
+public class MetricsOverlay implements Runnable {
+    private static final String TAG = "MetricsOverlay";
+    public static final long REFRESH_INTERVAL_MS = 1000;
+
+    private final TextView view;
+    private final MetricsRegistry registry;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean shown;
+    private boolean resumed;
+    private boolean enabledBeforeShown;
+
+    /**
+     * Creates a hidden overlay
+     * @param view Text view the snapshot is shown in, ideally with a monospace font
+     * @param registry Registry to show
+     */
+    public MetricsOverlay(TextView view, MetricsRegistry registry) {
+        this.view = view;
+        this.registry = registry;
+        view.setVisibility(View.GONE);
+    }
+
+    public void toggle() {
+        setShown(!shown);
+    }
+
+    public void setShown(boolean shown) {
+        if (this.shown == shown) {
+            return;
+        }
+        this.shown = shown;
+        if (shown) {
+            enabledBeforeShown = registry.isEnabled();
+            registry.setEnabled(true);
+            view.setVisibility(View.VISIBLE);
+        } else {
+            registry.setEnabled(enabledBeforeShown);
+            view.setVisibility(View.GONE);
+        }
+        updateRefresh();
+    }
+
+    public boolean isShown() {
+        return shown;
+    }
+
+    /**
+     * Starts refreshing again if the overlay is shown
+     */
+    public void resume() {
+        resumed = true;
+        updateRefresh();
+    }
+
+    /**
+     * Stops refreshing while the screen is not visible
+     */
+    public void pause() {
+        resumed = false;
+        updateRefresh();
+    }
+
+    private void updateRefresh() {
+        handler.removeCallbacks(this);
+        if (shown && resumed) {
+            handler.post(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        view.setText(registry.snapshot(System.currentTimeMillis()));
+        handler.postDelayed(this, REFRESH_INTERVAL_MS);
+    }
+
+    /**
+     * Logs the current snapshot and offers it to other apps as text, e.g. for a bug report
+     * @param context Context starting the share sheet
+     */
+    public void share(Context context) {
+        String snapshot = registry.snapshot(System.currentTimeMillis());
+        Log.i(TAG, snapshot);
+        Intent send = new Intent(Intent.ACTION_SEND)
+                .setType("text/plain")
+                .putExtra(Intent.EXTRA_SUBJECT, "Location tracker metrics")
+                .putExtra(Intent.EXTRA_TEXT, snapshot);
+        context.startActivity(Intent.createChooser(send, "Share metrics"));
+    }
+}
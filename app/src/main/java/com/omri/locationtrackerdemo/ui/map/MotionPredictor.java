@@ -0,0 +1,216 @@
+package com.omri.locationtrackerdemo.ui.map;
+
+import com.omri.locationtrackerdemo.utils.GeoUtils;
+
+/**
+ * Dead-reckoning predictor for one remote marker.
+ *
+ * The velocity is the least-squares slope of latitude and longitude over the last
+ * {@link #HISTORY_SIZE} fixes, which smooths GPS jitter better than the last two fixes
+ * alone. Between fixes the position is extrapolated along that velocity for at most
+ * {@code maxExtrapolationMs}, after which the marker holds still rather than drifting
+ * away from a user who stopped. When a new fix arrives the jump between what was
+ * displayed and the new prediction is not applied at once but decays over
+ * {@code correctionMs} with an ease-out curve.
+ *
+ * All times are in milliseconds of the caller's display clock; fix times must already
+ * be expressed in that clock (receive time minus staleness). Not thread safe, the
+ * predictor is used on the main thread only.
+ */
+public class MotionPredictor {
+    public static final long DEFAULT_MAX_EXTRAPOLATION_MS = 10_000;
+    public static final long DEFAULT_CORRECTION_MS = 1_000;
+
+    static final int HISTORY_SIZE = 4;
+    /** Fixes further apart than this do not describe one continuous movement */
+    private static final long MAX_HISTORY_GAP_MS = 60_000;
+    /** Below this speed the velocity is GPS noise and the marker stays put */
+    private static final double MIN_SPEED_MPS = 0.5;
+
+    private final long maxExtrapolationMs;
+    private final long correctionMs;
+
+    private final double[] lats = new double[HISTORY_SIZE];
+    private final double[] lons = new double[HISTORY_SIZE];
+    private final long[] times = new long[HISTORY_SIZE];
+    private int count;
+    private int next;
+
+    private double lastLat;
+    private double lastLon;
+    private long lastTimeMs;
+    // Degrees per millisecond
+    private double latVelocity;
+    private double lonVelocity;
+
+    private double correctionLat;
+    private double correctionLon;
+    private long correctionStartMs;
+
+    private final double[] scratch = new double[2];
+
+    /**
+     * Creates a predictor with the default 10 s horizon and 1 s correction
+     */
+    public MotionPredictor() {
+        this(DEFAULT_MAX_EXTRAPOLATION_MS, DEFAULT_CORRECTION_MS);
+    }
+
+    /**
+     * Creates a predictor
+     * @param maxExtrapolationMs Longest time the position is extrapolated past the last fix
+     * @param correctionMs Time over which the jump caused by a new fix is blended in
+     */
+    public MotionPredictor(long maxExtrapolationMs, long correctionMs) {
+        this.maxExtrapolationMs = maxExtrapolationMs;
+        this.correctionMs = correctionMs;
+    }
+
+    /**
+     * Feeds a real fix
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @param fixTimeMs Time the fix was taken, in the display clock
+     * @param nowMs Current display time, used to start the correction from what is shown now
+     */
+    public void addFix(double latitude, double longitude, long fixTimeMs, long nowMs) {
+        boolean hadFix = count > 0;
+        if (hadFix) {
+            predict(nowMs, scratch);
+        }
+        if (hadFix && fixTimeMs <= lastTimeMs) {
+            // Same fix polled again or an older one, nothing new to learn
+            return;
+        }
+        if (hadFix && fixTimeMs - lastTimeMs > MAX_HISTORY_GAP_MS) {
+            count = 0;
+        }
+
+        lats[next] = latitude;
+        lons[next] = longitude;
+        times[next] = fixTimeMs;
+        next = (next + 1) % HISTORY_SIZE;
+        count = Math.min(count + 1, HISTORY_SIZE);
+        lastLat = latitude;
+        lastLon = longitude;
+        lastTimeMs = fixTimeMs;
+        estimateVelocity();
+
+        if (hadFix && correctionMs > 0) {
+            // Offset between what is displayed and where the new prediction puts the marker
+            double displayedLat = scratch[0];
+            double displayedLon = scratch[1];
+            correctionLat = 0;
+            correctionLon = 0;
+            predict(nowMs, scratch);
+            correctionLat = displayedLat - scratch[0];
+            correctionLon = displayedLon - scratch[1];
+            correctionStartMs = nowMs;
+        } else {
+            correctionLat = 0;
+            correctionLon = 0;
+        }
+    }
+
+    private void estimateVelocity() {
+        latVelocity = 0;
+        lonVelocity = 0;
+        if (count < 2) {
+            return;
+        }
+        // Least-squares slope over the history, times relative to the newest fix
+        double meanT = 0;
+        double meanLat = 0;
+        double meanLon = 0;
+        for (int i = 0; i < count; i++) {
+            meanT += times[i] - lastTimeMs;
+            meanLat += lats[i];
+            meanLon += lons[i];
+        }
+        meanT /= count;
+        meanLat /= count;
+        meanLon /= count;
+        double varT = 0;
+        double covLat = 0;
+        double covLon = 0;
+        for (int i = 0; i < count; i++) {
+            double dt = times[i] - lastTimeMs - meanT;
+            varT += dt * dt;
+            covLat += dt * (lats[i] - meanLat);
+            covLon += dt * (lons[i] - meanLon);
+        }
+        if (varT == 0) {
+            return;
+        }
+        latVelocity = covLat / varT;
+        lonVelocity = covLon / varT;
+        if (getSpeedMps() < MIN_SPEED_MPS) {
+            latVelocity = 0;
+            lonVelocity = 0;
+        }
+    }
+
+    /**
+     * Computes the position to display
+     * @param nowMs Current display time
+     * @param out Receives latitude and longitude, must have length 2
+     */
+    public void predict(long nowMs, double[] out) {
+        long elapsedMs = Math.max(0, Math.min(nowMs - lastTimeMs, maxExtrapolationMs));
+        double lat = lastLat + latVelocity * elapsedMs;
+        double lon = lastLon + lonVelocity * elapsedMs;
+        if (correctionMs > 0 && (correctionLat != 0 || correctionLon != 0)) {
+            double progress = (nowMs - correctionStartMs) / (double) correctionMs;
+            if (progress >= 1) {
+                correctionLat = 0;
+                correctionLon = 0;
+            } else {
+                // Ease out: fast at first, settling gently onto the predicted track
+                double remaining = 1 - Math.max(0, progress);
+                double weight = remaining * remaining;
+                lat += correctionLat * weight;
+                lon += correctionLon * weight;
+            }
+        }
+        out[0] = lat;
+        out[1] = lon;
+    }
+
+    /**
+     * Returns whether the displayed position still changes over time, so the owner can
+     * stop per-frame updates once every marker has come to rest
+     */
+    public boolean isAnimating(long nowMs) {
+        if (count == 0) {
+            return false;
+        }
+        boolean moving = (latVelocity != 0 || lonVelocity != 0) && nowMs - lastTimeMs < maxExtrapolationMs;
+        boolean correcting = (correctionLat != 0 || correctionLon != 0) && nowMs - correctionStartMs < correctionMs;
+        return moving || correcting;
+    }
+
+    /**
+     * Estimated ground speed from the fix history
+     */
+    public double getSpeedMps() {
+        // Distance covered in one second at the estimated velocity
+        return GeoUtils.distanceMeters(lastLat, lastLon,
+                lastLat + latVelocity * 1000, lastLon + lonVelocity * 1000);
+    }
+
+    public boolean hasFix() {
+        return count > 0;
+    }
+
+    /**
+     * Forgets all fixes, e.g. when the user is tracked again after a pause
+     */
+    public void reset() {
+        count = 0;
+        next = 0;
+        latVelocity = 0;
+        lonVelocity = 0;
+        correctionLat = 0;
+        correctionLon = 0;
+    }
+}
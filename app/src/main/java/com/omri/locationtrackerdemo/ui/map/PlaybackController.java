@@ -0,0 +1,147 @@
+package com.omri.locationtrackerdemo.ui.map;
+
+import android.view.Choreographer;
+
+import com.omri.locationtrackerdemo.data.history.TrackPlayback;
+
+/**
+ * Drives a {@link TrackPlayback} from display frames and shows the replayed fixes as
+ * remote user markers through the {@link MapViewController}. Frames are only requested
+ * while the playback is playing or reading, and every frame moves each marker at most once.
+ * Must be used on the main thread.
+ */
+public class PlaybackController implements Choreographer.FrameCallback, TrackPlayback.Sink {
+
+    /**
+     * Notified when the playback ends or fails
+     */
+    public interface Listener {
+        void onPlaybackFinished();
+
+        void onPlaybackError(String error);
+    }
+
+    private final MapViewController mapViewController;
+    private TrackPlayback playback;
+    private Listener listener;
+    private boolean frameScheduled;
+
+    /**
+     * Creates a controller showing replayed fixes on a map
+     * @param mapViewController Map the remote user markers are drawn on
+     */
+    public PlaybackController(MapViewController mapViewController) {
+        this.mapViewController = mapViewController;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Replaces the current playback, clearing the remote markers, and starts playing
+     * @param playback Playback whose sink is this controller
+     */
+    public void start(TrackPlayback playback) {
+        stop();
+        this.playback = playback;
+        mapViewController.clearRemoteUserMarker();
+        play();
+    }
+
+    public void play() {
+        if (playback != null) {
+            playback.play();
+            scheduleFrame();
+        }
+    }
+
+    /**
+     * Stops the clock; the markers stay where they are
+     */
+    public void pause() {
+        if (playback != null) {
+            playback.pause();
+        }
+    }
+
+    /**
+     * Jumps to a track time and shows it on the next frame, also while paused
+     * @param timeMs Track time in milliseconds since epoch
+     */
+    public void seek(long timeMs) {
+        if (playback != null) {
+            playback.seek(timeMs);
+            scheduleFrame();
+        }
+    }
+
+    /**
+     * @param speed Multiplier of real time, 1 to 500
+     */
+    public void setSpeed(double speed) {
+        if (playback != null) {
+            playback.setSpeed(speed);
+        }
+    }
+
+    /**
+     * Ends the playback and stops requesting frames
+     */
+    public void stop() {
+        if (playback != null) {
+            // Stops the clock, so a window still loading does not resume it
+            playback.pause();
+            playback = null;
+        }
+        frameScheduled = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    /**
+     * @return The current playback, or null if none is running
+     */
+    public TrackPlayback getPlayback() {
+        return playback;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        TrackPlayback current = playback;
+        if (current == null) {
+            return;
+        }
+        current.onFrame(frameTimeNanos);
+        if (current == playback && (current.isPlaying() || current.isLoading())) {
+            scheduleFrame();
+        }
+    }
+
+    private void scheduleFrame() {
+        if (!frameScheduled) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void onPlaybackFix(String userId, long timeMs, double latitude, double longitude, boolean isFirst) {
+        // Replayed fixes are shown as current, so they are never greyed out as stale
+        mapViewController.updateRemoteUser(userId, latitude, longitude, 0, isFirst);
+    }
+
+    @Override
+    public void onPlaybackError(String error) {
+        if (listener != null) {
+            listener.onPlaybackError(error);
+        }
+    }
+
+    @Override
+    public void onPlaybackFinished() {
+        if (listener != null) {
+            listener.onPlaybackFinished();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.omri.locationtrackerdemo.ui.map;
+
+import com.omri.locationtrackerdemo.data.history.TrackReader;
+import com.omri.locationtrackerdemo.utils.GeoUtils;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Measures how far the dead-reckoned marker is from where the user really was, by
+ * replaying a recorded track as if it were polled.
+ *
+ * The track is taken as ground truth, linearly interpolated between its points. Every
+ * {@code pollIntervalMs} a poll delivers the newest point that is at least
+ * {@code latencyMs} old, and the displayed position is sampled every {@code frameMs}.
+ * The same samples are taken for a marker that only jumps to each polled fix, which is
+ * what the map showed before prediction.
+ */
+public final class PredictionReplay {
+
+    /**
+     * Error statistics of one replay, in meters
+     */
+    public static final class Result {
+        public final int frameCount;
+        public final double meanErrorMeters;
+        public final double p95ErrorMeters;
+        public final double maxErrorMeters;
+        public final double holdMeanErrorMeters;
+        public final double holdP95ErrorMeters;
+
+        Result(double[] errors, double[] holdErrors, int count) {
+            frameCount = count;
+            meanErrorMeters = mean(errors, count);
+            holdMeanErrorMeters = mean(holdErrors, count);
+            Arrays.sort(errors, 0, count);
+            Arrays.sort(holdErrors, 0, count);
+            p95ErrorMeters = percentile(errors, count, 0.95);
+            holdP95ErrorMeters = percentile(holdErrors, count, 0.95);
+            maxErrorMeters = count == 0 ? 0 : errors[count - 1];
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "frames=%d predicted mean=%.1fm p95=%.1fm max=%.1fm, hold mean=%.1fm p95=%.1fm",
+                    frameCount, meanErrorMeters, p95ErrorMeters, maxErrorMeters,
+                    holdMeanErrorMeters, holdP95ErrorMeters);
+        }
+    }
+
+    private PredictionReplay() {
+    }
+
+    /**
+     * Replays a track through a predictor
+     * @param track Recorded track, read from its first point
+     * @param predictor Fresh predictor to evaluate
+     * @param pollIntervalMs Time between polls
+     * @param latencyMs Age of a fix when its poll returns
+     * @param frameMs Time between sampled frames
+     * @return Error statistics, empty if the track has fewer than two points
+     */
+    public static Result replay(TrackReader track, MotionPredictor predictor,
+                                long pollIntervalMs, long latencyMs, long frameMs) {
+        if (pollIntervalMs <= 0 || frameMs <= 0 || latencyMs < 0) {
+            throw new IllegalArgumentException("Invalid replay timing");
+        }
+        int size = track.size();
+        long[] times = new long[size];
+        double[] lats = new double[size];
+        double[] lons = new double[size];
+        track.seek(0);
+        for (int i = 0; track.next(); i++) {
+            times[i] = track.getTimeMs();
+            lats[i] = track.getLatitude();
+            lons[i] = track.getLongitude();
+        }
+        if (size < 2) {
+            return new Result(new double[0], new double[0], 0);
+        }
+
+        int frameCapacity = (int) ((times[size - 1] - times[0]) / frameMs) + 1;
+        double[] errors = new double[frameCapacity];
+        double[] holdErrors = new double[frameCapacity];
+        int frames = 0;
+
+        double[] predicted = new double[2];
+        int truthIndex = 0;
+        int delivered = -1;
+        long nextPollMs = times[0] + latencyMs;
+        for (long nowMs = times[0]; nowMs <= times[size - 1] && frames < frameCapacity; nowMs += frameMs) {
+            while (nowMs >= nextPollMs) {
+                int newest = indexAtOrBefore(times, nextPollMs - latencyMs);
+                if (newest > delivered) {
+                    delivered = newest;
+                    predictor.addFix(lats[newest], lons[newest], times[newest], nextPollMs);
+                }
+                nextPollMs += pollIntervalMs;
+            }
+            if (delivered < 0) {
+                continue;
+            }
+
+            while (truthIndex + 1 < size && times[truthIndex + 1] <= nowMs) {
+                truthIndex++;
+            }
+            double truthLat = lats[truthIndex];
+            double truthLon = lons[truthIndex];
+            if (truthIndex + 1 < size) {
+                double fraction = (nowMs - times[truthIndex])
+                        / (double) (times[truthIndex + 1] - times[truthIndex]);
+                truthLat += (lats[truthIndex + 1] - truthLat) * fraction;
+                truthLon += (lons[truthIndex + 1] - truthLon) * fraction;
+            }
+
+            predictor.predict(nowMs, predicted);
+            errors[frames] = GeoUtils.distanceMeters(predicted[0], predicted[1], truthLat, truthLon);
+            holdErrors[frames] = GeoUtils.distanceMeters(lats[delivered], lons[delivered], truthLat, truthLon);
+            frames++;
+        }
+        return new Result(errors, holdErrors, frames);
+    }
+
+    private static int indexAtOrBefore(long[] times, long timeMs) {
+        int index = Arrays.binarySearch(times, timeMs);
+        if (index < 0) {
+            return -index - 2;
+        }
+        // Equal times: take the last of them
+        while (index + 1 < times.length && times[index + 1] == timeMs) {
+            index++;
+        }
+        return index;
+    }
+
+    private static double mean(double[] values, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += values[i];
+        }
+        return sum / count;
+    }
+
+    private static double percentile(double[] sorted, int count, double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+}
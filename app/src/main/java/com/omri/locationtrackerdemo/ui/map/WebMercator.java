@@ -0,0 +1,41 @@
+package com.omri.locationtrackerdemo.ui.map;
+
+/**
+ * Web Mercator projection as used by Google Maps, in normalized world coordinates:
+ * x grows east and y grows south, both from 0 to 1. Multiply by
+ * {@link #worldSize(double)} to get map pixels at a zoom level.
+ */
+public final class WebMercator {
+    /** Latitude at which the projected world becomes square */
+    public static final double MAX_LATITUDE = 85.05112878;
+    /** Size of a map tile, the world at zoom 0 */
+    public static final int TILE_SIZE = 256;
+
+    private WebMercator() {
+    }
+
+    public static double x(double longitude) {
+        return (longitude + 180) / 360;
+    }
+
+    public static double y(double latitude) {
+        double clamped = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude));
+        double sin = Math.sin(Math.toRadians(clamped));
+        return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+    }
+
+    public static double longitude(double x) {
+        return x * 360 - 180;
+    }
+
+    public static double latitude(double y) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y))));
+    }
+
+    /**
+     * Width of the whole world in pixels at a zoom level
+     */
+    public static double worldSize(double zoom) {
+        return TILE_SIZE * Math.pow(2, zoom);
+    }
+}
@@ -0,0 +1,114 @@
+package com.omri.locationtrackerdemo.utils;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Fixed-bucket histogram of durations with a jank counter. Recording does not
+ * allocate, so it is safe to call once per frame on the main thread.
+ * Durations are bucketed per tenth of a millisecond up to {@link #MAX_TRACKED_MS};
+ * longer ones land in the last bucket but still count towards max and jank.
+ */
+public class FrameStats {
+    public static final int MAX_TRACKED_MS = 1000;
+    private static final int BUCKETS_PER_MS = 10;
+    private static final long NANOS_PER_BUCKET = 1_000_000 / BUCKETS_PER_MS;
+
+    private final long jankThresholdNanos;
+    private final long[] buckets = new long[MAX_TRACKED_MS * BUCKETS_PER_MS + 1];
+    private long count;
+    private long jankCount;
+    private long totalNanos;
+    private long maxNanos;
+
+    /**
+     * Creates a histogram
+     * @param jankThresholdNanos Durations above this count as jank
+     */
+    public FrameStats(long jankThresholdNanos) {
+        this.jankThresholdNanos = jankThresholdNanos;
+    }
+
+    /**
+     * Records one duration
+     * @param nanos Duration in nanoseconds
+     */
+    public synchronized void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        int bucket = (int) Math.min(nanos / NANOS_PER_BUCKET, buckets.length - 1);
+        buckets[bucket]++;
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        if (nanos > jankThresholdNanos) {
+            jankCount++;
+        }
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getJankCount() {
+        return jankCount;
+    }
+
+    /**
+     * Share of recorded durations above the jank threshold, 0 when empty
+     */
+    public synchronized double getJankRatio() {
+        return count == 0 ? 0 : jankCount / (double) count;
+    }
+
+    public synchronized double getMeanMs() {
+        return count == 0 ? 0 : totalNanos / 1e6 / count;
+    }
+
+    public synchronized double getMaxMs() {
+        return maxNanos / 1e6;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile
+     * @param percentile Value between 0 and 100
+     * @return Duration in milliseconds, 0 when empty
+     */
+    public synchronized double getPercentileMs(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * count);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= Math.max(rank, 1)) {
+                if (i == buckets.length - 1) {
+                    // Overflow bucket has no upper bound
+                    return getMaxMs();
+                }
+                return Math.min((i + 1) / (double) BUCKETS_PER_MS, getMaxMs());
+            }
+        }
+        return getMaxMs();
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(buckets, 0);
+        count = 0;
+        jankCount = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+
+    /**
+     * One line summary for logs
+     */
+    public synchronized String toSummary() {
+        return String.format(Locale.US,
+                "n=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms jank=%d (%.1f%%)",
+                count, getMeanMs(), getPercentileMs(50), getPercentileMs(90), getPercentileMs(99),
+                getMaxMs(), jankCount, getJankRatio() * 100);
+    }
+}
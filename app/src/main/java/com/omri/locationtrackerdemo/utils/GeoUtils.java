@@ -0,0 +1,31 @@
+package com.omri.locationtrackerdemo.utils;
+
+/**
+ * Utility class for geographic calculations on plain latitude/longitude values,
+ * usable outside Android (unit tests, benchmarks).
+ */
+public class GeoUtils {
+    /** Mean Earth radius in meters */
+    public static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    private GeoUtils() {
+    }
+
+    /**
+     * Calculates the great-circle distance between two points using the haversine formula
+     * @param lat1 Latitude of the first point in degrees
+     * @param lon1 Longitude of the first point in degrees
+     * @param lat2 Latitude of the second point in degrees
+     * @param lon2 Longitude of the second point in degrees
+     * @return Distance in meters
+     */
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double sinLat = Math.sin(dLat / 2);
+        double sinLon = Math.sin(dLon / 2);
+        double a = sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLon * sinLon;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
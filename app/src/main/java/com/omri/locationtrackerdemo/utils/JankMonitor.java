@@ -0,0 +1,92 @@
+package com.omri.locationtrackerdemo.utils;
+
+import android.util.Log;
+import android.view.Choreographer;
+
+/**
+ * Measures main thread responsiveness while a screen is visible.
+ *
+ * Frame intervals come from a Choreographer callback re-posted every vsync: when the
+ * main thread is busy the callback runs late and the interval grows, so intervals above
+ * 1.5 refresh periods are counted as jank. Separately, callers report how long their
+ * own main thread work took via {@link #recordMainThreadWork(long)}.
+ * Must be used from the main thread.
+ */
+public class JankMonitor implements Choreographer.FrameCallback {
+    private static final String TAG = "JankMonitor";
+
+    private final long frameNanos;
+    private final FrameStats frameStats;
+    private final FrameStats workStats;
+    private long lastFrameTimeNanos;
+    private boolean running;
+
+    /**
+     * Creates a monitor for a display
+     * @param refreshRate Display refresh rate in Hz
+     */
+    public JankMonitor(float refreshRate) {
+        this.frameNanos = (long) (1_000_000_000L / (refreshRate > 0 ? refreshRate : 60f));
+        this.frameStats = new FrameStats(frameNanos * 3 / 2);
+        // Work longer than half a frame leaves too little time for rendering
+        this.workStats = new FrameStats(frameNanos / 2);
+    }
+
+    /**
+     * Starts sampling frame intervals
+     */
+    public void start() {
+        if (!running) {
+            running = true;
+            lastFrameTimeNanos = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Stops sampling, keeping the collected statistics
+     */
+    public void stop() {
+        running = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running) {
+            return;
+        }
+        if (lastFrameTimeNanos != 0) {
+            frameStats.record(frameTimeNanos - lastFrameTimeNanos);
+        }
+        lastFrameTimeNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Records the duration of a unit of work that ran on the main thread
+     * @param nanos Duration in nanoseconds
+     */
+    public void recordMainThreadWork(long nanos) {
+        workStats.record(nanos);
+    }
+
+    public FrameStats getFrameStats() {
+        return frameStats;
+    }
+
+    public FrameStats getWorkStats() {
+        return workStats;
+    }
+
+    /**
+     * Writes both histograms to logcat and starts a new measurement window
+     * @param label Name of the measured screen or phase
+     */
+    public void logAndReset(String label) {
+        Log.i(TAG, label + " frames: " + frameStats.toSummary());
+        Log.i(TAG, label + " main thread work: " + workStats.toSummary());
+        frameStats.reset();
+        workStats.reset();
+    }
+}
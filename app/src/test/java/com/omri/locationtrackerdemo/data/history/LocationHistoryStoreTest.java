@@ -0,0 +1,163 @@
+package com.omri.locationtrackerdemo.data.history;
+
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LocationHistoryStoreTest {
+    private static final long START = 1_700_000_000_000L;
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * One fix every 2 seconds, a few meters apart
+     */
+    private static void record(LocationHistoryStore store, String userId, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            store.append(userId, START + i * 2000L, 32 + i * 1e-5, 34 - i * 1e-5, 5);
+        }
+    }
+
+    @Test
+    public void rangeQueryReturnsExactlyTheRange() throws Exception {
+        LocationHistoryStore store = new LocationHistoryStore(folder.getRoot(), HOUR, 100);
+        record(store, "driver-x", 10_000);
+        record(store, "driver-y", 500);
+
+        long from = START + 3 * HOUR + 1000;
+        long to = from + HOUR;
+        List<LocationSample> samples = store.query("driver-x", from, to);
+        assertEquals(1800, samples.size());
+        long expected = START + 3 * HOUR + 2000;
+        for (LocationSample sample : samples) {
+            assertEquals(expected, sample.getTimestampMs());
+            expected += 2000;
+        }
+        assertEquals(5, samples.get(0).getAccuracyMeters(), 0.05f);
+        assertEquals(500, store.query("driver-y", 0, Long.MAX_VALUE).size());
+        assertTrue(store.query("nobody", 0, Long.MAX_VALUE).isEmpty());
+        assertTrue(store.query("driver-x", to, from).isEmpty());
+    }
+
+    @Test
+    public void reopenReadsFlushedSegmentsAndIgnoresTornBlock() throws Exception {
+        LocationHistoryStore store = new LocationHistoryStore(folder.getRoot(), HOUR, 64);
+        record(store, "user/with:odd chars", 1000);
+        store.close();
+
+        // Simulate a process killed while writing the last block
+        File userDirectory = folder.getRoot().listFiles()[0];
+        File[] segments = userDirectory.listFiles();
+        assertNotNull(segments);
+        File last = segments[0];
+        for (File segment : segments) {
+            if (segment.getName().compareTo(last.getName()) > 0) {
+                last = segment;
+            }
+        }
+        long intact = last.length();
+        try (RandomAccessFile file = new RandomAccessFile(last, "rw")) {
+            file.seek(intact);
+            file.writeInt(400);
+            file.writeLong(START);
+            file.writeLong(START + 1);
+            file.write(new byte[10]);
+        }
+
+        LocationHistoryStore reopened = new LocationHistoryStore(folder.getRoot(), HOUR, 64);
+        assertEquals(1, reopened.getUserIds().size());
+        assertEquals("user/with:odd chars", reopened.getUserIds().get(0));
+        assertEquals(1000, reopened.query("user/with:odd chars", 0, Long.MAX_VALUE).size());
+        assertEquals(intact, last.length());
+
+        // Appending after recovery continues the truncated segment
+        reopened.append("user/with:odd chars", START + 1000 * 2000L, 32, 34, Float.NaN);
+        reopened.flush();
+        assertEquals(1001, reopened.query("user/with:odd chars", 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void outOfOrderFixesAndBufferedPointsAreQueried() throws Exception {
+        LocationHistoryStore store = new LocationHistoryStore(folder.getRoot(), HOUR, 1000);
+        store.append("u", START + 5000, 32, 34, 3);
+        store.append("u", START + 6000, 32, 34, 3);
+        store.append("u", START + 1000, 32, 34, 3);
+
+        List<LocationSample> samples = store.query("u", START, START + 10_000);
+        assertEquals(3, samples.size());
+        assertEquals(START + 1000, samples.get(2).getTimestampMs());
+        assertEquals(1, store.query("u", START + 5500, START + 10_000).size());
+    }
+
+    @Test
+    public void repeatedFixTimeIsRecordedOnce() throws Exception {
+        LocationHistoryStore store = new LocationHistoryStore(folder.getRoot(), HOUR, 2);
+        assertTrue(store.append("u", START, 32, 34, 3));
+        assertFalse("same fix polled again", store.append("u", START, 32, 34, 3));
+        assertTrue(store.append("u", START + 1000, 32, 34, 3));
+        assertTrue("other users are independent", store.append("v", START + 1000, 31, 35, 3));
+        store.close();
+
+        LocationHistoryStore reopened = new LocationHistoryStore(folder.getRoot(), HOUR, 2);
+        assertFalse("latest fix is known after a restart", reopened.append("u", START + 1000, 32, 34, 3));
+        assertTrue(reopened.append("u", START + 2000, 32, 34, 3));
+        assertEquals(3, reopened.query("u", 0, Long.MAX_VALUE).size());
+        assertEquals(1, reopened.getAppendedCount());
+    }
+
+    @Test
+    public void visitorStopsAndOldSegmentsAreDeleted() throws Exception {
+        LocationHistoryStore store = new LocationHistoryStore(folder.getRoot(), HOUR, 100);
+        record(store, "u", 5400);
+        store.flush();
+
+        int[] visited = new int[1];
+        store.query("u", 0, Long.MAX_VALUE, reader -> ++visited[0] < 10);
+        assertEquals(10, visited[0]);
+
+        long before = store.getDiskBytes();
+        int deleted = store.deleteBefore(START + 2 * HOUR);
+        assertTrue(deleted >= 1);
+        assertTrue(store.getDiskBytes() < before);
+        List<LocationSample> left = store.query("u", 0, Long.MAX_VALUE);
+        assertFalse(left.isEmpty());
+        assertTrue(left.get(0).getTimestampMs() >= START + HOUR);
+    }
+
+    @Test
+    public void interleavedUsersStayCompactAndQueryable() throws Exception {
+        LocationHistoryStore store = new LocationHistoryStore(folder.getRoot());
+        Random random = new Random(3);
+        final int users = 10;
+        final int perUser = 3 * 3600;
+        double lat = 32;
+        double lon = 34;
+        for (int i = 0; i < perUser; i++) {
+            lat += random.nextGaussian() * 3e-5;
+            lon += random.nextGaussian() * 3e-5;
+            for (int u = 0; u < users; u++) {
+                store.append("driver-" + u, START + i * 1000L, lat + u * 0.01, lon, 4);
+            }
+        }
+        store.flush();
+
+        assertEquals(users * perUser, store.getAppendedCount());
+        assertTrue("bytes per fix: " + store.getDiskBytes() / (double) (users * perUser),
+                store.getDiskBytes() <= 8L * users * perUser);
+        // An hour of one driver, spanning two partitions
+        List<LocationSample> hour = store.query("driver-3", START + HOUR / 2, START + HOUR / 2 + HOUR);
+        assertEquals(3600, hour.size());
+        assertEquals(START + HOUR / 2, hour.get(0).getTimestampMs());
+    }
+}
@@ -0,0 +1,182 @@
+package com.omri.locationtrackerdemo.data.history;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TrackCodecTest {
+
+    /**
+     * What a naive history would persist per fix
+     */
+    private static class JsonFix {
+        long time;
+        double latitude;
+        double longitude;
+        float accuracy;
+    }
+
+    /**
+     * Walk with a fix every 1-5 seconds, a few meters apart, accuracy between 3 and 20 m
+     */
+    private static List<JsonFix> walk(int count, long seed) {
+        Random random = new Random(seed);
+        List<JsonFix> fixes = new ArrayList<>(count);
+        long time = 1_700_000_000_000L;
+        double lat = 32.0853;
+        double lon = 34.7818;
+        for (int i = 0; i < count; i++) {
+            JsonFix fix = new JsonFix();
+            time += 1000 + random.nextInt(4000);
+            lat += random.nextGaussian() * 3e-5;
+            lon += random.nextGaussian() * 3e-5;
+            fix.time = time;
+            fix.latitude = lat;
+            fix.longitude = lon;
+            fix.accuracy = 3 + random.nextFloat() * 17;
+            fixes.add(fix);
+        }
+        return fixes;
+    }
+
+    private static byte[] encode(List<JsonFix> fixes, int indexInterval) {
+        TrackEncoder encoder = new TrackEncoder(indexInterval);
+        for (JsonFix fix : fixes) {
+            encoder.append(fix.time, fix.latitude, fix.longitude, fix.accuracy);
+        }
+        return encoder.toByteArray();
+    }
+
+    @Test
+    public void roundTrip_withinQuantization() throws Exception {
+        List<JsonFix> fixes = walk(1000, 1);
+        TrackReader reader = TrackReader.open(encode(fixes, 16));
+        assertEquals(1000, reader.size());
+
+        for (JsonFix fix : fixes) {
+            assertTrue(reader.next());
+            assertEquals(fix.time, reader.getTimeMs());
+            assertEquals(fix.latitude, reader.getLatitude(), 0.5e-6);
+            assertEquals(fix.longitude, reader.getLongitude(), 0.5e-6);
+            assertEquals(fix.accuracy, reader.getAccuracyMeters(), 0.05f);
+        }
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void unknownAccuracyAndNegativeCoordinates() throws Exception {
+        TrackEncoder encoder = new TrackEncoder(2);
+        encoder.append(1000, -33.8688, 151.2093, Float.NaN);
+        encoder.append(2000, -33.8689, -179.9999, 0);
+        encoder.append(1500, 89.9999, 179.9999, Float.NaN);
+        TrackReader reader = TrackReader.open(encoder.toByteArray());
+
+        assertTrue(reader.next());
+        assertTrue(Float.isNaN(reader.getAccuracyMeters()));
+        assertEquals(151.2093, reader.getLongitude(), 1e-9);
+        assertTrue(reader.next());
+        assertEquals(0, reader.getAccuracyMeters(), 0);
+        assertEquals(-179.9999, reader.getLongitude(), 1e-9);
+        assertTrue(reader.next());
+        assertEquals(1500, reader.getTimeMs());
+        assertTrue(Float.isNaN(reader.toSample().getSpeedMps()));
+    }
+
+    @Test
+    public void seek_decodesFromNearestKeyPoint() throws Exception {
+        List<JsonFix> fixes = walk(1000, 2);
+        TrackReader reader = TrackReader.open(encode(fixes, 64));
+
+        for (int index : new int[]{0, 1, 63, 64, 65, 500, 999}) {
+            reader.seek(index);
+            assertTrue(reader.next());
+            assertEquals(index, reader.getPosition());
+            assertEquals(fixes.get(index).time, reader.getTimeMs());
+            assertEquals(fixes.get(index).latitude, reader.getLatitude(), 0.5e-6);
+        }
+        reader.seek(1000);
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void seekToTime_findsFirstPointAtOrAfter() throws Exception {
+        List<JsonFix> fixes = walk(1000, 3);
+        TrackReader reader = TrackReader.open(encode(fixes, 64));
+        assertEquals(fixes.get(0).time, reader.getFirstTimeMs());
+        assertEquals(fixes.get(999).time, reader.getLastTimeMs());
+
+        for (int index : new int[]{0, 64, 321, 999}) {
+            long time = fixes.get(index).time;
+            reader.seekToTime(time);
+            assertEquals(index - 1, reader.getPosition());
+            assertTrue(reader.next());
+            assertEquals(time, reader.getTimeMs());
+
+            reader.seekToTime(time - 1);
+            assertTrue(reader.next());
+            assertEquals(index, reader.getPosition());
+        }
+        reader.seekToTime(0);
+        assertTrue(reader.next());
+        assertEquals(0, reader.getPosition());
+        reader.seekToTime(Long.MAX_VALUE);
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void emptyTrack() throws Exception {
+        TrackReader reader = TrackReader.open(new TrackEncoder().toByteArray());
+        assertEquals(0, reader.size());
+        assertFalse(reader.next());
+        reader.seekToTime(0);
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void corruptInput_isRejected() {
+        byte[] bytes = encode(walk(100, 4), 16);
+        try {
+            TrackReader.open(Arrays.copyOf(bytes, 40));
+            fail("truncated track accepted");
+        } catch (IOException expected) {
+        }
+        bytes[0] = 'X';
+        try {
+            TrackReader.open(bytes);
+            fail("bad magic accepted");
+        } catch (IOException expected) {
+        }
+    }
+
+    /**
+     * Bytes per fix against a Gson JSON array of the same fixes
+     */
+    @Test
+    public void compactAgainstGsonJson() throws Exception {
+        final int count = 10_000;
+        List<JsonFix> fixes = walk(count, 5);
+        byte[] track = encode(fixes, TrackEncoder.DEFAULT_INDEX_INTERVAL);
+        byte[] json = new Gson().toJson(fixes).getBytes(StandardCharsets.UTF_8);
+
+        assertTrue("track should be at most 8 bytes per fix", track.length <= 8 * count);
+        assertTrue(track.length * 8 < json.length);
+        List<JsonFix> decoded = new Gson().fromJson(new String(json, StandardCharsets.UTF_8),
+                new TypeToken<List<JsonFix>>() {}.getType());
+        TrackReader reader = TrackReader.open(track);
+        for (JsonFix fix : decoded) {
+            assertTrue(reader.next());
+            assertEquals(fix.latitude, reader.getLatitude(), 1e-6);
+        }
+        assertFalse(reader.next());
+    }
+}
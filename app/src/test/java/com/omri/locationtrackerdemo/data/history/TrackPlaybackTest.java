@@ -0,0 +1,197 @@
+package com.omri.locationtrackerdemo.data.history;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TrackPlaybackTest {
+    private static final long START = 1_700_000_000_000L;
+    private static final long FRAME_NANOS = 16_666_667L;
+    private static final Executor DIRECT = Runnable::run;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static class RecordingSink implements TrackPlayback.Sink {
+        final Map<String, List<Long>> times = new HashMap<>();
+        final List<String> firsts = new ArrayList<>();
+        int frameFixes;
+        int maxFixesPerFrame;
+        boolean finished;
+        String error;
+
+        @Override
+        public void onPlaybackFix(String userId, long timeMs, double latitude, double longitude, boolean isFirst) {
+            times.computeIfAbsent(userId, k -> new ArrayList<>()).add(timeMs);
+            if (isFirst) {
+                firsts.add(userId);
+            }
+            frameFixes++;
+        }
+
+        @Override
+        public void onPlaybackError(String error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onPlaybackFinished() {
+            finished = true;
+        }
+
+        void endFrame() {
+            maxFixesPerFrame = Math.max(maxFixesPerFrame, frameFixes);
+            frameFixes = 0;
+        }
+    }
+
+    /**
+     * Two users with a fix every second for an hour
+     */
+    private LocationHistoryStore recordHour() throws Exception {
+        LocationHistoryStore store = new LocationHistoryStore(folder.getRoot());
+        for (int i = 0; i < 3600; i++) {
+            store.append("a", START + i * 1000L, 32 + i * 1e-5, 34, 5);
+            store.append("b", START + i * 1000L, 31, 35 + i * 1e-5, 5);
+        }
+        store.flush();
+        return store;
+    }
+
+    /**
+     * Runs frames at 60 Hz until the playback finishes
+     * @return Number of frames
+     */
+    private static int runToEnd(TrackPlayback playback, RecordingSink sink, long frameNanos) {
+        int frames = 0;
+        while (!sink.finished && frames < 1_000_000) {
+            playback.onFrame(++frames * frameNanos);
+            sink.endFrame();
+        }
+        return frames;
+    }
+
+    @Test
+    public void realTimePlaybackDeliversEveryFixInOrder() throws Exception {
+        LocationHistoryStore store = recordHour();
+        RecordingSink sink = new RecordingSink();
+        TrackPlayback playback = new TrackPlayback(store::query, Arrays.asList("a", "b"),
+                START, START + 60_000, DIRECT, sink);
+        playback.play();
+        runToEnd(playback, sink, FRAME_NANOS);
+
+        assertNull(sink.error);
+        assertEquals(60, sink.times.get("a").size());
+        for (int i = 0; i < 60; i++) {
+            assertEquals(START + i * 1000L, (long) sink.times.get("a").get(i));
+        }
+        assertEquals(Arrays.asList("a", "b"), sink.firsts);
+        assertEquals(0, playback.getSkippedCount());
+        assertFalse(playback.isPlaying());
+    }
+
+    @Test
+    public void fastPlaybackCoalescesToOneFixPerUserPerFrame() throws Exception {
+        LocationHistoryStore store = recordHour();
+        RecordingSink sink = new RecordingSink();
+        TrackPlayback playback = new TrackPlayback(store::query, Arrays.asList("a", "b"),
+                START, START + 3_600_000, DIRECT, sink);
+        playback.setSpeed(1000);
+        assertEquals(TrackPlayback.MAX_SPEED, playback.getSpeed(), 0);
+        playback.play();
+        int frames = runToEnd(playback, sink, FRAME_NANOS);
+
+        // An hour at 500x is 7.2 s of frames
+        assertEquals(432, frames, 2);
+        assertEquals(2, sink.maxFixesPerFrame);
+        assertEquals(3600 * 2, playback.getDeliveredCount() + playback.getSkippedCount());
+        List<Long> times = sink.times.get("b");
+        for (int i = 1; i < times.size(); i++) {
+            assertTrue(times.get(i) > times.get(i - 1));
+        }
+        assertEquals(START + 3_599_000, (long) times.get(times.size() - 1));
+    }
+
+    @Test
+    public void seekShowsLastFixBeforeTargetAndPauseHoldsClock() throws Exception {
+        LocationHistoryStore store = recordHour();
+        RecordingSink sink = new RecordingSink();
+        TrackPlayback playback = new TrackPlayback(store::query, Arrays.asList("a", "b"),
+                START, START + 3_600_000, DIRECT, sink);
+        playback.play();
+        playback.onFrame(FRAME_NANOS);
+        playback.pause();
+        sink.times.clear();
+        sink.firsts.clear();
+
+        playback.seek(START + 1_800_500);
+        playback.onFrame(2 * FRAME_NANOS);
+        playback.onFrame(60 * FRAME_NANOS);
+        assertEquals(START + 1_800_500, playback.getPositionMs());
+        assertEquals(Arrays.asList(START + 1_800_000), sink.times.get("a"));
+        assertEquals(Arrays.asList("a", "b"), sink.firsts);
+
+        playback.play();
+        for (int frame = 61; frame <= 121; frame++) {
+            playback.onFrame(frame * FRAME_NANOS);
+        }
+        assertEquals(START + 1_801_500, playback.getPositionMs(), 1);
+        assertEquals(Arrays.asList(START + 1_800_000, START + 1_801_000), sink.times.get("a"));
+    }
+
+    @Test
+    public void readsIncrementallyOnTheLoader() throws Exception {
+        LocationHistoryStore store = recordHour();
+        AtomicInteger reads = new AtomicInteger();
+        List<Runnable> queued = new ArrayList<>();
+        RecordingSink sink = new RecordingSink();
+        TrackPlayback playback = new TrackPlayback((userId, from, to, visitor) -> {
+            reads.incrementAndGet();
+            assertTrue(to - from <= TrackPlayback.MIN_WINDOW_MS);
+            store.query(userId, from, to, visitor);
+        }, Arrays.asList("a"), START, START + 3_600_000, queued::add, sink);
+        playback.play();
+
+        // Nothing is shown until the loader has run
+        playback.onFrame(FRAME_NANOS);
+        assertTrue(sink.times.isEmpty());
+        assertTrue(playback.isLoading());
+        assertEquals(1, queued.size());
+        queued.remove(0).run();
+        playback.onFrame(2 * FRAME_NANOS);
+        assertEquals(1, sink.times.get("a").size());
+
+        for (int frame = 3; frame < 600; frame++) {
+            while (!queued.isEmpty()) {
+                queued.remove(0).run();
+            }
+            playback.onFrame(frame * FRAME_NANOS);
+        }
+        // Ten seconds of playback read about two windows ahead, not the whole hour
+        assertTrue(reads.get() <= 4);
+        assertEquals(10, sink.times.get("a").size(), 1);
+    }
+
+    @Test
+    public void readErrorPausesPlayback() {
+        RecordingSink sink = new RecordingSink();
+        TrackPlayback playback = new TrackPlayback((userId, from, to, visitor) -> {
+            throw new IOException("disk gone");
+        }, Arrays.asList("a"), START, START + 60_000, DIRECT, sink);
+        playback.play();
+        playback.onFrame(FRAME_NANOS);
+        assertFalse(playback.isPlaying());
+        assertTrue(sink.error.contains("disk gone"));
+    }
+}
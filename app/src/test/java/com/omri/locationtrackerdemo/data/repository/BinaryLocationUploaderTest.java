@@ -0,0 +1,97 @@
+package com.omri.locationtrackerdemo.data.repository;
+
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+import com.omri.locationtrackerdemo.data.wire.LocationFrame;
+import com.omri.locationtrackerdemo.data.wire.LocationFrameCodec;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+public class BinaryLocationUploaderTest {
+    private static final List<LocationFix> BATCH = Arrays.asList(
+            new LocationFix("driver", 32.0853, 34.7818, 1_700_000_000_000L),
+            new LocationFix("driver", 32.0854, 34.7819, 1_700_000_003_000L));
+
+    private final MockWebServer server = new MockWebServer();
+    private final BlockingQueue<String> results = new LinkedBlockingQueue<>();
+    private BinaryLocationUploader uploader;
+
+    private final BinaryLocationUploader.Callback callback = new BinaryLocationUploader.Callback() {
+        @Override
+        public void onSuccess() {
+            results.add("success");
+        }
+
+        @Override
+        public void onUnsupported(int code) {
+            results.add("unsupported " + code);
+        }
+
+        @Override
+        public void onError(String error) {
+            results.add("error");
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+        uploader = new BinaryLocationUploader(new OkHttpClient(), server.url("/locations/frame").toString());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void postsTheBatchAsOneFrame() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(204));
+        uploader.upload(BATCH, callback);
+
+        assertEquals("success", results.poll(5, TimeUnit.SECONDS));
+        RecordedRequest request = server.takeRequest();
+        assertEquals("POST", request.getMethod());
+        assertEquals(LocationFrameCodec.CONTENT_TYPE, request.getHeader("Content-Type"));
+        byte[] body = request.getBody().readByteArray();
+        LocationFrame frame = LocationFrameCodec.decode(body);
+        assertEquals(2, frame.getFixes().size());
+        assertEquals(34.7819, frame.getFixes().get(1).getLongitude(), 1e-6);
+        assertEquals(body.length, uploader.getBytesSent());
+        assertEquals(2, uploader.getFixesSent());
+        assertTrue(uploader.isSupported());
+    }
+
+    @Test
+    public void rejectionMarksFormatUnsupported() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(415));
+        uploader.upload(BATCH, callback);
+
+        assertEquals("unsupported 415", results.poll(5, TimeUnit.SECONDS));
+        assertFalse(uploader.isSupported());
+        assertEquals(0, uploader.getBytesSent());
+    }
+
+    @Test
+    public void serverErrorKeepsFormat() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        uploader.upload(BATCH, callback);
+
+        assertEquals("error", results.poll(5, TimeUnit.SECONDS));
+        assertTrue(uploader.isSupported());
+    }
+}
@@ -0,0 +1,151 @@
+package com.omri.locationtrackerdemo.data.repository;
+
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DeltaUploadPolicyTest {
+    private static final double LAT = 32.0853;
+    private static final double LON = 34.7818;
+    private static final double METERS_PER_DEGREE_LAT = 111_320;
+    private static final long FIX_INTERVAL_MS = 3000;
+
+    /**
+     * Builds a synthetic trace in the shape of a delivery shift: parked with GPS jitter,
+     * a drive with two turns, parked again. One fix every 3 seconds. Parked jitter drifts
+     * slowly around the true position like real GPS error does, instead of jumping per fix.
+     */
+    private static List<LocationSample> deliveryShiftTrace(long parkedMinutes, long drivingMinutes) {
+        Random random = new Random(42);
+        List<LocationSample> trace = new ArrayList<>();
+        long time = 0;
+        double north = 0;
+        double east = 0;
+        double jitterNorth = 0;
+        double jitterEast = 0;
+        long parkedFixes = parkedMinutes * 60_000 / FIX_INTERVAL_MS;
+        long drivingFixes = drivingMinutes * 60_000 / FIX_INTERVAL_MS;
+
+        for (int phase = 0; phase < 3; phase++) {
+            boolean driving = phase == 1;
+            long fixes = driving ? drivingFixes : parkedFixes;
+            for (long i = 0; i < fixes; i++) {
+                float accuracy = 8 + random.nextFloat() * 6;
+                float speed;
+                float bearing;
+                if (driving) {
+                    // East, then north after a third, then west after two thirds
+                    bearing = i < fixes / 3 ? 90 : (i < 2 * fixes / 3 ? 0 : 270);
+                    speed = 12 + (float) random.nextGaussian();
+                    double meters = speed * FIX_INTERVAL_MS / 1000.0;
+                    north += meters * Math.cos(Math.toRadians(bearing));
+                    east += meters * Math.sin(Math.toRadians(bearing));
+                    jitterNorth = 0;
+                    jitterEast = 0;
+                } else {
+                    speed = (float) Math.abs(random.nextGaussian() * 0.3);
+                    bearing = random.nextFloat() * 360;
+                    jitterNorth = 0.9 * jitterNorth + random.nextGaussian() * 1.5;
+                    jitterEast = 0.9 * jitterEast + random.nextGaussian() * 1.5;
+                }
+                trace.add(sample(north + jitterNorth, east + jitterEast, accuracy, speed, bearing, time));
+                time += FIX_INTERVAL_MS;
+            }
+        }
+        return trace;
+    }
+
+    private static LocationSample sample(double northMeters, double eastMeters, float accuracy,
+                                         float speed, float bearing, long time) {
+        double lat = LAT + northMeters / METERS_PER_DEGREE_LAT;
+        double lon = LON + eastMeters / (METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(LAT)));
+        return new LocationSample(lat, lon, accuracy, speed, bearing, time);
+    }
+
+    private static int countUploads(UploadPolicy policy, List<LocationSample> trace) {
+        int uploads = 0;
+        for (LocationSample sample : trace) {
+            if (policy.shouldUpload(sample)) {
+                uploads++;
+            }
+        }
+        return uploads;
+    }
+
+    @Test
+    public void parkedUser_uploadsOnlyHeartbeats() {
+        List<LocationSample> trace = deliveryShiftTrace(30, 0);
+        DeltaUploadPolicy policy = new DeltaUploadPolicy();
+
+        int uploads = countUploads(policy, trace);
+        // 1200 fixes over 60 min: roughly one heartbeat per minute
+        assertTrue("reduction below 10x: " + uploads, uploads * 10 <= trace.size());
+        assertTrue(policy.getHeartbeatTriggers() >= 55);
+    }
+
+    @Test
+    public void deliveryShift_measurableReduction() {
+        List<LocationSample> trace = deliveryShiftTrace(45, 10);
+        DeltaUploadPolicy policy = new DeltaUploadPolicy();
+
+        int baseline = countUploads(UploadPolicy.ALWAYS, trace);
+        int uploads = countUploads(policy, trace);
+        assertEquals(trace.size(), policy.getEvaluatedCount());
+        assertEquals(uploads, policy.getUploadedCount());
+        assertTrue("reduction below 5x: " + uploads + " of " + baseline, uploads * 5 < baseline);
+    }
+
+    @Test
+    public void movingBeyondAccuracy_uploads() {
+        DeltaUploadPolicy policy = new DeltaUploadPolicy();
+        assertTrue(policy.shouldUpload(sample(0, 0, 10, 0, 0, 0)));
+        assertFalse(policy.shouldUpload(sample(8, 0, 10, 0, 0, 3000)));
+        assertTrue(policy.shouldUpload(sample(15, 0, 10, 0, 0, 6000)));
+    }
+
+    @Test
+    public void headingChangeWhileMoving_uploads() {
+        DeltaUploadPolicy policy = new DeltaUploadPolicy();
+        assertTrue(policy.shouldUpload(sample(0, 0, 20, 5, 90, 0)));
+        assertFalse(policy.shouldUpload(sample(0, 2, 20, 5, 100, 1000)));
+        assertTrue(policy.shouldUpload(sample(0, 4, 20, 5, 140, 2000)));
+        assertEquals(1, policy.getHeadingTriggers());
+    }
+
+    @Test
+    public void headingIgnoredWhenStanding() {
+        DeltaUploadPolicy policy = new DeltaUploadPolicy();
+        assertTrue(policy.shouldUpload(sample(0, 0, 20, 0.2f, 0, 0)));
+        assertFalse(policy.shouldUpload(sample(0, 0, 20, 0.2f, 180, 1000)));
+    }
+
+    @Test
+    public void speedChange_uploads() {
+        DeltaUploadPolicy policy = new DeltaUploadPolicy();
+        assertTrue(policy.shouldUpload(sample(0, 0, 50, 2, 90, 0)));
+        assertTrue(policy.shouldUpload(sample(0, 10, 50, 8, 90, 1000)));
+        assertEquals(1, policy.getSpeedTriggers());
+    }
+
+    @Test
+    public void reset_uploadsNextFix() {
+        DeltaUploadPolicy policy = new DeltaUploadPolicy();
+        assertTrue(policy.shouldUpload(sample(0, 0, 10, 0, 0, 0)));
+        assertFalse(policy.shouldUpload(sample(0, 0, 10, 0, 0, 1000)));
+        policy.reset();
+        assertTrue(policy.shouldUpload(sample(0, 0, 10, 0, 0, 2000)));
+    }
+
+    @Test
+    public void headingDifference_wrapsAround() {
+        assertEquals(20, DeltaUploadPolicy.headingDifference(350, 10), 1e-9);
+        assertEquals(180, DeltaUploadPolicy.headingDifference(0, 180), 1e-9);
+        assertEquals(90, DeltaUploadPolicy.headingDifference(45, 315), 1e-9);
+    }
+}
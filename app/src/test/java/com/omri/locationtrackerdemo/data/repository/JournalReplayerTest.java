@@ -0,0 +1,123 @@
+package com.omri.locationtrackerdemo.data.repository;
+
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JournalReplayerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Sink accepting every batch right away until it is told to fail
+     */
+    private static class RecordingSink implements LocationUploadQueue.Sink {
+        final List<List<LocationFix>> batches = new ArrayList<>();
+        int failAfter = Integer.MAX_VALUE;
+
+        @Override
+        public void upload(List<LocationFix> fixes, LocationUploadQueue.SinkCallback callback) {
+            batches.add(new ArrayList<>(fixes));
+            if (batches.size() > failAfter) {
+                callback.onError("offline");
+            } else {
+                callback.onSuccess();
+            }
+        }
+    }
+
+    /**
+     * Records the single result of a replay
+     */
+    private static class Result implements LocationUploadQueue.SinkCallback {
+        int successes;
+        final List<String> errors = new ArrayList<>();
+
+        @Override
+        public void onSuccess() {
+            successes++;
+        }
+
+        @Override
+        public void onError(String error) {
+            errors.add(error);
+        }
+    }
+
+    private LocationJournal journalWith(int count) throws Exception {
+        LocationJournal journal = new LocationJournal(folder.getRoot(), 4 * 1024, 1 << 20);
+        for (int i = 1; i <= count; i++) {
+            journal.append(new LocationFix("user-1", 32 + i * 1e-5, 34, 1_700_000_000_000L + i * 1000L));
+        }
+        return journal;
+    }
+
+    @Test
+    public void replaysWholeBacklogInBoundedBatches() throws Exception {
+        LocationJournal journal = journalWith(1234);
+        RecordingSink sink = new RecordingSink();
+        JournalReplayer replayer = new JournalReplayer(journal, 500, sink);
+        Result result = new Result();
+
+        replayer.replay(result);
+
+        assertEquals(1, result.successes);
+        assertTrue(result.errors.isEmpty());
+        assertEquals(3, sink.batches.size());
+        assertEquals(500, sink.batches.get(0).size());
+        assertEquals(234, sink.batches.get(2).size());
+        long expected = 1;
+        for (List<LocationFix> batch : sink.batches) {
+            for (LocationFix fix : batch) {
+                assertEquals(expected++, fix.getSequence());
+            }
+        }
+        assertEquals(1234, replayer.getReplayedCount());
+        assertEquals(3, replayer.getBatchCount());
+        assertEquals(0, journal.getPendingCount());
+    }
+
+    @Test
+    public void failedBatchStaysPendingForNextReplay() throws Exception {
+        LocationJournal journal = journalWith(1200);
+        RecordingSink sink = new RecordingSink();
+        sink.failAfter = 1;
+        JournalReplayer replayer = new JournalReplayer(journal, 500, sink);
+        Result result = new Result();
+
+        replayer.replay(result);
+        assertEquals(0, result.successes);
+        assertEquals(1, result.errors.size());
+        assertEquals(700, journal.getPendingCount());
+
+        // Survives a restart: the next process resumes with the failed batch
+        journal.close();
+        journal = new LocationJournal(folder.getRoot(), 4 * 1024, 1 << 20);
+        sink.failAfter = Integer.MAX_VALUE;
+        replayer = new JournalReplayer(journal, 500, sink);
+        replayer.replay(result);
+
+        assertEquals(1, result.successes);
+        assertEquals(501, sink.batches.get(2).get(0).getSequence());
+        assertEquals(0, journal.getPendingCount());
+    }
+
+    @Test
+    public void emptyJournalSucceedsWithoutUpload() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        Result result = new Result();
+
+        new JournalReplayer(journalWith(0), 500, sink).replay(result);
+
+        assertEquals(1, result.successes);
+        assertTrue(sink.batches.isEmpty());
+    }
+}
@@ -0,0 +1,142 @@
+package com.omri.locationtrackerdemo.data.repository;
+
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LocationJournalTest {
+    private static final long SEGMENT_BYTES = 4 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static LocationFix fix(int i) {
+        return new LocationFix("user-1", 32 + i * 1e-5, 34 + i * 1e-5, 1_700_000_000_000L + i * 1000L);
+    }
+
+    @Test
+    public void appendAssignsSequencesAndReadsBackInOrder() throws Exception {
+        LocationJournal journal = new LocationJournal(folder.getRoot(), SEGMENT_BYTES, 1 << 20);
+        for (int i = 1; i <= 300; i++) {
+            assertEquals(i, journal.append(fix(i)).getSequence());
+        }
+
+        List<LocationFix> pending = journal.readPending(0, 1000);
+        assertEquals(300, pending.size());
+        for (int i = 0; i < pending.size(); i++) {
+            LocationFix expected = fix(i + 1);
+            assertEquals(i + 1, pending.get(i).getSequence());
+            assertEquals(expected.getLatitude(), pending.get(i).getLatitude(), 0);
+            assertEquals(expected.getTimestampMs(), pending.get(i).getTimestampMs());
+            assertEquals("user-1", pending.get(i).getUserId());
+        }
+    }
+
+    @Test
+    public void acknowledgeTruncatesCompletedSegments() throws Exception {
+        LocationJournal journal = new LocationJournal(folder.getRoot(), SEGMENT_BYTES, 1 << 20);
+        for (int i = 1; i <= 500; i++) {
+            journal.append(fix(i));
+        }
+        long before = journal.getDiskBytes();
+
+        journal.acknowledge(400);
+        assertEquals(100, journal.getPendingCount());
+        assertTrue(journal.getDiskBytes() < before);
+        assertEquals(401, journal.readPending(0, 1).get(0).getSequence());
+
+        journal.acknowledge(500);
+        assertEquals(0, journal.getPendingCount());
+        assertEquals(0, journal.getDiskBytes());
+    }
+
+    @Test
+    public void survivesProcessDeathWithoutClose() throws Exception {
+        LocationJournal journal = new LocationJournal(folder.getRoot(), SEGMENT_BYTES, 1 << 20);
+        for (int i = 1; i <= 200; i++) {
+            journal.append(fix(i));
+        }
+        journal.acknowledge(50);
+        // No close(): the next instance must recover from what reached the files
+
+        LocationJournal recovered = new LocationJournal(folder.getRoot(), SEGMENT_BYTES, 1 << 20);
+        assertEquals(50, recovered.getAcknowledgedSequence());
+        assertEquals(150, recovered.getPendingCount());
+        assertEquals(201, recovered.append(fix(201)).getSequence());
+        assertEquals(51, recovered.readPending(0, 1).get(0).getSequence());
+    }
+
+    @Test
+    public void tornTailRecordIsTruncatedOnRecovery() throws Exception {
+        LocationJournal journal = new LocationJournal(folder.getRoot(), 1 << 20, 1 << 20);
+        for (int i = 1; i <= 10; i++) {
+            journal.append(fix(i));
+        }
+        journal.close();
+
+        File segment = folder.getRoot().listFiles((dir, name) -> name.startsWith("segment-"))[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            // Simulate a write cut short in the middle of the last record
+            file.setLength(file.length() - 7);
+        }
+
+        LocationJournal recovered = new LocationJournal(folder.getRoot(), 1 << 20, 1 << 20);
+        assertEquals(9, recovered.getPendingCount());
+        assertEquals(10, recovered.append(fix(10)).getSequence());
+        assertEquals(10, recovered.readPending(0, 100).size());
+    }
+
+    @Test
+    public void diskUsageIsBounded() throws Exception {
+        LocationJournal journal = new LocationJournal(folder.getRoot(), SEGMENT_BYTES, 4 * SEGMENT_BYTES);
+        for (int i = 1; i <= 5000; i++) {
+            journal.append(fix(i));
+        }
+        assertTrue(journal.getDiskBytes() <= 4 * SEGMENT_BYTES);
+        assertTrue(journal.getDroppedCount() > 0);
+        assertEquals(5000, journal.getPendingCount() + journal.getDroppedCount());
+        List<LocationFix> pending = journal.readPending(0, 10_000);
+        assertEquals(5000, pending.get(pending.size() - 1).getSequence());
+    }
+
+    /**
+     * A killed process leaves its backlog behind. The next journal recovers all of it, and
+     * acknowledging the newest fix, as the repository does once it has replayed that fix,
+     * releases the whole backlog.
+     */
+    @Test
+    public void recoveredBacklogIsReleasedByAcknowledgingNewest() throws Exception {
+        final int count = 10_000;
+        LocationJournal writer = new LocationJournal(folder.getRoot(),
+                LocationJournal.DEFAULT_SEGMENT_BYTES, LocationJournal.DEFAULT_MAX_BYTES);
+        for (int i = 1; i <= count; i++) {
+            writer.append(fix(i));
+        }
+
+        LocationJournal journal = new LocationJournal(folder.getRoot(),
+                LocationJournal.DEFAULT_SEGMENT_BYTES, LocationJournal.DEFAULT_MAX_BYTES);
+        assertEquals(count, journal.getPendingCount());
+        LocationFix newest = null;
+        long after = 0;
+        List<LocationFix> batch;
+        while (!(batch = journal.readPending(after, 500)).isEmpty()) {
+            newest = batch.get(batch.size() - 1);
+            after = newest.getSequence();
+        }
+        assertNotNull(newest);
+        assertEquals(count, newest.getSequence());
+        assertEquals(fix(count).getTimestampMs(), newest.getTimestampMs());
+
+        journal.acknowledge(newest.getSequence());
+        assertEquals(0, journal.getPendingCount());
+        assertEquals(0, journal.getDiskBytes());
+    }
+}
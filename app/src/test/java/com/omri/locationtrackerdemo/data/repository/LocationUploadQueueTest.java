@@ -0,0 +1,132 @@
+package com.omri.locationtrackerdemo.data.repository;
+
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LocationUploadQueueTest {
+
+    /**
+     * Sink that holds every request until the test completes it
+     */
+    private static class HeldSink implements LocationUploadQueue.Sink {
+        final List<List<LocationFix>> batches = new ArrayList<>();
+        final List<LocationUploadQueue.SinkCallback> callbacks = new ArrayList<>();
+        volatile CountDownLatch uploaded = new CountDownLatch(1);
+
+        @Override
+        public synchronized void upload(List<LocationFix> fixes, LocationUploadQueue.SinkCallback callback) {
+            batches.add(new ArrayList<>(fixes));
+            callbacks.add(callback);
+            uploaded.countDown();
+        }
+
+        synchronized LocationUploadQueue.SinkCallback callback(int index) {
+            return callbacks.get(index);
+        }
+    }
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final HeldSink sink = new HeldSink();
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private static LocationFix fix(int i) {
+        return new LocationFix("me", i, i, i);
+    }
+
+    @Test
+    public void sizeTrigger_flushesFullBatchImmediately() {
+        LocationUploadQueue queue = new LocationUploadQueue(sink, 3, 60_000, scheduler);
+        queue.enqueue(fix(1));
+        queue.enqueue(fix(2));
+        assertEquals(0, sink.batches.size());
+
+        queue.enqueue(fix(3));
+        assertEquals(1, sink.batches.size());
+        assertEquals(3, sink.batches.get(0).size());
+    }
+
+    @Test
+    public void timeTrigger_flushesPartialBatch() throws Exception {
+        LocationUploadQueue queue = new LocationUploadQueue(sink, 10, 50, scheduler);
+        queue.enqueue(fix(1));
+        queue.enqueue(fix(2));
+
+        assertTrue(sink.uploaded.await(2, TimeUnit.SECONDS));
+        assertEquals(2, sink.batches.get(0).size());
+    }
+
+    @Test
+    public void congestedLink_keepsOnlyLatestAndOneRequestInFlight() {
+        LocationUploadQueue queue = new LocationUploadQueue(sink, 1, 60_000, scheduler);
+        queue.enqueue(fix(1));
+        assertTrue(queue.isInFlight());
+
+        for (int i = 2; i <= 50; i++) {
+            queue.enqueue(fix(i));
+        }
+        assertEquals("no request while one is in flight", 1, sink.batches.size());
+        assertEquals(1, queue.getBufferedCount());
+
+        sink.callback(0).onSuccess();
+        assertEquals(2, sink.batches.size());
+        assertEquals(1, sink.batches.get(1).size());
+        assertEquals(50, sink.batches.get(1).get(0).getLatitude(), 0);
+
+        sink.callback(1).onSuccess();
+        assertEquals(50, queue.getEnqueuedCount());
+        assertEquals(48, queue.getCoalescedCount());
+        assertEquals(2, queue.getSentCount());
+        assertEquals(2, queue.getRequestCount());
+        assertEquals(queue.getEnqueuedCount(), queue.getCoalescedCount() + queue.getSentCount());
+    }
+
+    @Test
+    public void failedUpload_retriesWholeBatch() throws Exception {
+        LocationUploadQueue queue = new LocationUploadQueue(sink, 2, 50, scheduler);
+        queue.enqueue(fix(1));
+        queue.enqueue(fix(2));
+        assertEquals(1, sink.batches.size());
+
+        sink.uploaded = new CountDownLatch(1);
+        sink.callback(0).onError("offline");
+        assertTrue(sink.uploaded.await(2, TimeUnit.SECONDS));
+
+        assertEquals(sink.batches.get(0), sink.batches.get(1));
+        assertEquals(2, queue.getFailedCount());
+    }
+
+    @Test
+    public void failedUpload_isRetriedAheadOfNewerFixes() throws Exception {
+        LocationUploadQueue queue = new LocationUploadQueue(sink, 2, 50, scheduler);
+        queue.enqueue(fix(1));
+        queue.enqueue(fix(2));
+        // Arrive while the first batch is in flight, only the latest is kept
+        queue.enqueue(fix(3));
+        queue.enqueue(fix(4));
+
+        sink.uploaded = new CountDownLatch(1);
+        sink.callback(0).onError("offline");
+        assertTrue(sink.uploaded.await(2, TimeUnit.SECONDS));
+
+        List<LocationFix> retried = sink.batches.get(1);
+        assertEquals(3, retried.size());
+        assertEquals(1, retried.get(0).getLatitude(), 0);
+        assertEquals(2, retried.get(1).getLatitude(), 0);
+        assertEquals(4, retried.get(2).getLatitude(), 0);
+    }
+}
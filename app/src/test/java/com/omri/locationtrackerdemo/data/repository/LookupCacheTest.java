@@ -0,0 +1,158 @@
+package com.omri.locationtrackerdemo.data.repository;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LookupCacheTest {
+    private static final long TTL_MS = 30_000;
+    private static final long MAX_STALE_MS = 120_000;
+
+    private long now = 1_000_000;
+    private final LookupCache<String> cache = new LookupCache<>(TTL_MS, MAX_STALE_MS, () -> now);
+
+    /**
+     * Loader whose calls complete when the test says so
+     */
+    private static class PendingLoader implements LookupCache.Loader<String> {
+        final List<LookupCache.Callback<String>> pending = new ArrayList<>();
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public synchronized void load(String key, LookupCache.Callback<String> callback) {
+            calls.incrementAndGet();
+            pending.add(callback);
+        }
+
+        synchronized void complete(String value) {
+            for (LookupCache.Callback<String> callback : pending) {
+                callback.onSuccess(value);
+            }
+            pending.clear();
+        }
+
+        synchronized void fail(String error) {
+            for (LookupCache.Callback<String> callback : pending) {
+                callback.onError(error);
+            }
+            pending.clear();
+        }
+    }
+
+    private static class Recorder implements LookupCache.Callback<String> {
+        final List<String> values = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+
+        @Override
+        public synchronized void onSuccess(String value) {
+            values.add(value);
+        }
+
+        @Override
+        public synchronized void onError(String error) {
+            errors.add(error);
+        }
+    }
+
+    @Test
+    public void concurrentLookupsShareOneBackendCall() throws Exception {
+        final int lookups = 32;
+        PendingLoader loader = new PendingLoader();
+        Recorder recorder = new Recorder();
+        CyclicBarrier start = new CyclicBarrier(lookups);
+        CountDownLatch issued = new CountDownLatch(lookups);
+        for (int i = 0; i < lookups; i++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                } catch (Exception e) {
+                    return;
+                }
+                cache.get("user", loader, recorder);
+                issued.countDown();
+            }).start();
+        }
+        assertTrue(issued.await(5, TimeUnit.SECONDS));
+        assertEquals(1, loader.calls.get());
+        assertTrue(recorder.values.isEmpty());
+
+        loader.complete("active");
+        assertEquals(lookups, recorder.values.size());
+        assertEquals(1, cache.getLoadCount());
+        assertEquals(lookups, cache.getMissCount());
+        assertEquals(lookups - 1, cache.getJoinedCount());
+
+        cache.get("user", loader, recorder);
+        assertEquals(1, loader.calls.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(lookups + 1, recorder.values.size());
+    }
+
+    @Test
+    public void staleValueIsServedWhileRevalidating() {
+        PendingLoader loader = new PendingLoader();
+        Recorder recorder = new Recorder();
+        cache.get("user", loader, recorder);
+        loader.complete("active");
+
+        now += TTL_MS;
+        cache.get("user", loader, recorder);
+        cache.get("user", loader, recorder);
+        // Answered at once from the stale value, one revalidation for both
+        assertEquals(3, recorder.values.size());
+        assertEquals(2, loader.calls.get());
+        assertEquals(2, cache.getStaleHitCount());
+
+        loader.complete("inactive");
+        cache.get("user", loader, recorder);
+        assertEquals("inactive", recorder.values.get(3));
+        assertEquals(2, loader.calls.get());
+
+        now += TTL_MS + MAX_STALE_MS;
+        assertNull(cache.peek("user"));
+        cache.get("user", loader, recorder);
+        assertEquals(4, recorder.values.size());
+        assertEquals(3, loader.calls.get());
+    }
+
+    @Test
+    public void ownWriteSupersedesLoadInFlight() {
+        PendingLoader loader = new PendingLoader();
+        Recorder recorder = new Recorder();
+        cache.get("user", loader, recorder);
+
+        cache.put("user", "active");
+        loader.complete("inactive");
+        // The waiting lookup gets the server's answer, the cache keeps the write
+        assertEquals("inactive", recorder.values.get(0));
+        assertEquals("active", cache.peek("user"));
+
+        cache.invalidate("user");
+        assertNull(cache.peek("user"));
+        cache.get("user", loader, recorder);
+        assertEquals(2, loader.calls.get());
+    }
+
+    @Test
+    public void errorsReachEveryWaiterAndAreNotCached() {
+        PendingLoader loader = new PendingLoader();
+        Recorder recorder = new Recorder();
+        cache.get("user", loader, recorder);
+        cache.get("user", loader, recorder);
+        loader.fail("timeout");
+        assertEquals(2, recorder.errors.size());
+        assertEquals(0, cache.size());
+
+        cache.refresh("user", loader, recorder);
+        assertEquals(2, loader.calls.get());
+        loader.complete("active");
+        assertEquals("active", cache.peek("user"));
+    }
+}
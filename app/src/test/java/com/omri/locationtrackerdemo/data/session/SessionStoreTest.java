@@ -0,0 +1,93 @@
+package com.omri.locationtrackerdemo.data.session;
+
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.*;
+
+public class SessionStoreTest {
+    private static final long MAX_AGE_MS = 7 * 24 * 60 * 60 * 1000L;
+    private static final String USER_ID = "5f1c2a9e-41f6-4f0e-9a52-d3c1b1f7e6a0";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private long now = 1_700_000_000_000L;
+
+    private static SecretKey key(String secret) {
+        return new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    }
+
+    private SessionStore store(File file, SecretKey key) {
+        return new SessionStore(file, key, MAX_AGE_MS, () -> now);
+    }
+
+    @Test
+    public void roundTripsSnapshotWithAndWithoutFix() throws Exception {
+        File file = new File(folder.getRoot(), "session");
+        SessionStore store = store(file, key("install-1"));
+        assertNull(store.load());
+
+        LocationFix fix = new LocationFix(USER_ID, 32.0853123, 34.7818456, now - 5000);
+        store.save(new SessionSnapshot(USER_ID, true, fix, now));
+        SessionSnapshot loaded = store.load();
+        assertEquals(USER_ID, loaded.getUserId());
+        assertTrue(loaded.isActive());
+        assertEquals(now, loaded.getSavedAtMs());
+        assertEquals(fix.getLatitude(), loaded.getLastFix().getLatitude(), 0);
+        assertEquals(fix.getLongitude(), loaded.getLastFix().getLongitude(), 0);
+        assertEquals(fix.getTimestampMs(), loaded.getLastFix().getTimestampMs());
+        assertEquals(USER_ID, loaded.getLastFix().getUserId());
+
+        store.save(loaded.withActive(false, now).withLastFix(null, now));
+        loaded = store.load();
+        assertFalse(loaded.isActive());
+        assertNull(loaded.getLastFix());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void rejectsTamperedForeignAndTornSnapshots() throws Exception {
+        File file = new File(folder.getRoot(), "session");
+        store(file, key("install-1")).save(new SessionSnapshot(USER_ID, false, null, now));
+
+        // Flip the active flag, right after version and saved time
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(9);
+            raw.write(1);
+        }
+        assertNull(store(file, key("install-1")).load());
+        assertFalse("Untrusted snapshot is deleted", file.exists());
+
+        store(file, key("install-1")).save(new SessionSnapshot(USER_ID, false, null, now));
+        assertNull(store(file, key("install-2")).load());
+
+        store(file, key("install-1")).save(new SessionSnapshot(USER_ID, false, null, now));
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(raw.length() - 1);
+        }
+        assertNull(store(file, key("install-1")).load());
+    }
+
+    @Test
+    public void expiresAfterMaxAge() throws Exception {
+        File file = new File(folder.getRoot(), "session");
+        SessionStore store = store(file, key("install-1"));
+        store.save(new SessionSnapshot(USER_ID, true, null, now));
+        now += MAX_AGE_MS - 1;
+        assertNotNull(store.load());
+        now += 1;
+        assertNull(store.load());
+        assertFalse(file.exists());
+    }
+}
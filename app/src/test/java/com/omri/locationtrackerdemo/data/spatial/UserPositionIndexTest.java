@@ -0,0 +1,169 @@
+package com.omri.locationtrackerdemo.data.spatial;
+
+import com.omri.locationtrackerdemo.utils.GeoUtils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class UserPositionIndexTest {
+    private static final double LAT = 32.0853;
+    private static final double LON = 34.7818;
+
+    /**
+     * Users spread over a metro area of about 40 x 40 km
+     */
+    private static void fill(UserPositionIndex index, int count, Random random, double[] lats, double[] lons) {
+        for (int i = 0; i < count; i++) {
+            lats[i] = LAT + (random.nextDouble() - 0.5) * 0.36;
+            lons[i] = LON + (random.nextDouble() - 0.5) * 0.42;
+            index.update("user-" + i, lats[i], lons[i], i);
+        }
+    }
+
+    private static double[] sortedDistances(double lat, double lon, double[] lats, double[] lons) {
+        double[] distances = new double[lats.length];
+        for (int i = 0; i < lats.length; i++) {
+            distances[i] = GeoUtils.distanceMeters(lat, lon, lats[i], lons[i]);
+        }
+        Arrays.sort(distances);
+        return distances;
+    }
+
+    @Test
+    public void queriesMatchBruteForce() {
+        Random random = new Random(21);
+        final int count = 5_000;
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        UserPositionIndex index = new UserPositionIndex();
+        fill(index, count, random, lats, lons);
+
+        for (int q = 0; q < 50; q++) {
+            double lat = LAT + (random.nextDouble() - 0.5) * 0.4;
+            double lon = LON + (random.nextDouble() - 0.5) * 0.4;
+            double[] expected = sortedDistances(lat, lon, lats, lons);
+
+            List<UserPositionIndex.Neighbor> within = index.findWithin(lat, lon, 500, null);
+            int expectedWithin = 0;
+            while (expectedWithin < count && expected[expectedWithin] <= 500) {
+                expectedWithin++;
+            }
+            assertEquals(expectedWithin, within.size());
+
+            List<UserPositionIndex.Neighbor> nearest = index.findNearest(lat, lon, 10, 50_000, null);
+            assertEquals(10, nearest.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(expected[i], nearest.get(i).distanceMeters, 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void updatesMoveUsersAndFiltersApply() {
+        UserPositionIndex index = new UserPositionIndex();
+        index.update("me", LAT, LON, 100);
+        index.update("near", LAT + 0.001, LON, 100);
+        index.update("old", LAT, LON + 0.001, 1);
+        index.update("far", LAT + 1, LON, 100);
+
+        List<UserPositionIndex.Neighbor> found = index.findWithin(LAT, LON, 500,
+                entry -> !entry.userId.equals("me") && entry.timeMs >= 50);
+        assertEquals(1, found.size());
+        assertEquals("near", found.get(0).entry.userId);
+
+        index.update("far", LAT - 0.002, LON, 200);
+        List<UserPositionIndex.Neighbor> nearest = index.findNearest(LAT, LON, 10, 10_000, null);
+        assertEquals(4, nearest.size());
+        assertEquals("me", nearest.get(0).entry.userId);
+        assertEquals(200, index.get("far").timeMs);
+
+        index.remove("near");
+        assertEquals(3, index.findNearest(LAT, LON, 10, 10_000, null).size());
+        assertTrue(index.findNearest(LAT + 5, LON, 3, 1_000, null).isEmpty());
+        index.clear();
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void sparseIndexAndAntimeridian() {
+        UserPositionIndex index = new UserPositionIndex();
+        index.update("east", 0, 179.999, 0);
+        index.update("west", 0, -179.999, 0);
+        assertEquals(2, index.findWithin(0, 180, 1_000, null).size());
+        List<UserPositionIndex.Neighbor> nearest = index.findNearest(50, 10, 5, Double.MAX_VALUE, null);
+        assertEquals(2, nearest.size());
+    }
+
+    @Test
+    public void readersRunWhileWritersUpdate() throws InterruptedException {
+        Random random = new Random(4);
+        final int count = 20_000;
+        final double[] lats = new double[count];
+        final double[] lons = new double[count];
+        final UserPositionIndex index = new UserPositionIndex();
+        fill(index, count, random, lats, lons);
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicLong queries = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < 2; w++) {
+            final int writer = w;
+            threads.add(new Thread(() -> {
+                Random moves = new Random(writer);
+                while (running.get()) {
+                    // Each writer owns half the users, moving them by up to ~1 km
+                    int i = moves.nextInt(count / 2) * 2 + writer;
+                    index.update("user-" + i, lats[i] + (moves.nextDouble() - 0.5) * 0.02,
+                            lons[i] + (moves.nextDouble() - 0.5) * 0.02, System.nanoTime());
+                }
+            }));
+        }
+        for (int r = 0; r < 2; r++) {
+            final int reader = r;
+            threads.add(new Thread(() -> {
+                Random where = new Random(100 + reader);
+                try {
+                    while (running.get()) {
+                        double lat = LAT + (where.nextDouble() - 0.5) * 0.3;
+                        double lon = LON + (where.nextDouble() - 0.5) * 0.3;
+                        Set<String> seen = new HashSet<>();
+                        for (UserPositionIndex.Neighbor neighbor : index.findWithin(lat, lon, 800, null)) {
+                            assertTrue("reported once", seen.add(neighbor.entry.userId));
+                            assertTrue(neighbor.distanceMeters <= 800);
+                        }
+                        List<UserPositionIndex.Neighbor> nearest = index.findNearest(lat, lon, 10, 20_000, null);
+                        assertEquals(10, nearest.size());
+                        queries.incrementAndGet();
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(500);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(count, index.size());
+        assertTrue(queries.get() > 0);
+    }
+}
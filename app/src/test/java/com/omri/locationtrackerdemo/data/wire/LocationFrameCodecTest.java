@@ -0,0 +1,178 @@
+package com.omri.locationtrackerdemo.data.wire;
+
+import com.google.gson.Gson;
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LocationFrameCodecTest {
+    private static final String USER = "5f1c2a9e-41f6-4f0e-9a52-d3c1b1f7e6a0";
+
+    /**
+     * Body of one location update as the tracking library posts it
+     */
+    private static class JsonUpload {
+        String userId;
+        double latitude;
+        double longitude;
+    }
+
+    /**
+     * Stream frame as pushed in JSON
+     */
+    private static class JsonStreamFrame {
+        long seq;
+        String userId;
+        long timestamp;
+        long serverTime;
+        JsonLocation location;
+    }
+
+    private static class JsonLocation {
+        double latitude;
+        double longitude;
+    }
+
+    /**
+     * Drive with a fix every 3 seconds, a few meters apart
+     */
+    private static List<LocationFix> drive(String userId, int count, long seed) {
+        Random random = new Random(seed);
+        List<LocationFix> fixes = new ArrayList<>(count);
+        long time = 1_700_000_000_000L;
+        double lat = 32.0853123;
+        double lon = 34.7818456;
+        for (int i = 0; i < count; i++) {
+            time += 3000 + random.nextInt(100);
+            lat += random.nextGaussian() * 1e-4;
+            lon += random.nextGaussian() * 1e-4;
+            fixes.add(new LocationFix(userId, lat, lon, time));
+        }
+        return fixes;
+    }
+
+    private static void assertSameFixes(List<LocationFix> expected, List<LocationFix> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getUserId(), actual.get(i).getUserId());
+            assertEquals(expected.get(i).getTimestampMs(), actual.get(i).getTimestampMs());
+            assertEquals(expected.get(i).getLatitude(), actual.get(i).getLatitude(), 5e-7);
+            assertEquals(expected.get(i).getLongitude(), actual.get(i).getLongitude(), 5e-7);
+        }
+    }
+
+    @Test
+    public void roundTripsMixedUsersAndHeader() throws Exception {
+        List<LocationFix> fixes = new ArrayList<>();
+        fixes.add(new LocationFix("a", 32.1, 34.8, 1_700_000_000_000L));
+        fixes.add(new LocationFix("בן", -33.8688, 151.2093, 1_700_000_001_000L));
+        fixes.add(new LocationFix("a", 32.1001, 34.8001, 1_699_999_999_000L));
+        fixes.add(new LocationFix("c", 89.999999, -179.999999, 0));
+
+        LocationFrame frame = LocationFrameCodec.decode(
+                LocationFrameCodec.encode(fixes, 12345, 1_700_000_002_000L));
+        assertEquals(12345, frame.getSequence());
+        assertEquals(1_700_000_002_000L, frame.getServerTimeMs());
+        assertSameFixes(fixes, frame.getFixes());
+
+        LocationFrame empty = LocationFrameCodec.decode(LocationFrameCodec.encode(Collections.emptyList()));
+        assertEquals(0, empty.getSequence());
+        assertTrue(empty.getFixes().isEmpty());
+    }
+
+    @Test
+    public void decodesFromBufferPosition() throws Exception {
+        List<LocationFix> fixes = drive(USER, 10, 1);
+        byte[] frame = LocationFrameCodec.encode(fixes, 7, 0);
+        ByteBuffer buffer = ByteBuffer.allocate(frame.length + 3);
+        buffer.position(3);
+        buffer.put(frame);
+        buffer.position(3);
+
+        assertSameFixes(fixes, LocationFrameCodec.decode(buffer.asReadOnlyBuffer()).getFixes());
+    }
+
+    @Test
+    public void rejectsMalformedFrames() {
+        byte[] frame = LocationFrameCodec.encode(drive(USER, 3, 2), 1, 0);
+        for (int length = 0; length < frame.length; length++) {
+            try {
+                LocationFrameCodec.decode(Arrays.copyOf(frame, length));
+                fail("truncated frame accepted at " + length);
+            } catch (IOException expected) {
+            }
+        }
+        byte[] corrupt = frame.clone();
+        corrupt[2] = 99;
+        try {
+            LocationFrameCodec.decode(corrupt);
+            fail("unknown version accepted");
+        } catch (IOException expected) {
+        }
+        try {
+            LocationFrameCodec.decode("{\"seq\":1}".getBytes(StandardCharsets.UTF_8));
+            fail("JSON accepted");
+        } catch (IOException expected) {
+        }
+        // Huge user count in a short frame
+        try {
+            LocationFrameCodec.decode(new byte[]{'L', 'F', 1, 0, 0, (byte) 0xFF, (byte) 0xFF, 0x7F});
+            fail("implausible count accepted");
+        } catch (IOException expected) {
+        }
+    }
+
+    /**
+     * Bytes of a single upload, a 10 fix upload batch and a stream frame against the JSON
+     * the same data takes today
+     */
+    @Test
+    public void smallerThanGsonJson() throws Exception {
+        Gson gson = new Gson();
+        List<LocationFix> batch = drive(USER, 10, 3);
+        List<LocationFix> single = batch.subList(9, 10);
+        LocationFix last = single.get(0);
+
+        JsonUpload upload = new JsonUpload();
+        upload.userId = last.getUserId();
+        upload.latitude = last.getLatitude();
+        upload.longitude = last.getLongitude();
+        JsonStreamFrame streamFrame = new JsonStreamFrame();
+        streamFrame.seq = 48213;
+        streamFrame.userId = last.getUserId();
+        streamFrame.timestamp = last.getTimestampMs();
+        streamFrame.serverTime = last.getTimestampMs() + 150;
+        streamFrame.location = new JsonLocation();
+        streamFrame.location.latitude = last.getLatitude();
+        streamFrame.location.longitude = last.getLongitude();
+
+        int jsonSingle = gson.toJson(upload).getBytes(StandardCharsets.UTF_8).length;
+        int jsonBatch = 0;
+        for (LocationFix fix : batch) {
+            upload.latitude = fix.getLatitude();
+            upload.longitude = fix.getLongitude();
+            // One update per fix, each its own request
+            jsonBatch += gson.toJson(upload).getBytes(StandardCharsets.UTF_8).length;
+        }
+        String jsonStream = gson.toJson(streamFrame);
+        int binarySingle = LocationFrameCodec.encode(single).length;
+        int binaryBatch = LocationFrameCodec.encode(batch).length;
+        byte[] binaryStream = LocationFrameCodec.encode(single, streamFrame.seq, streamFrame.serverTime);
+
+        // A lone fix is dominated by the user ID both ways, batches and stream frames are not
+        assertTrue(binarySingle * 3 < jsonSingle * 2);
+        assertTrue(binaryBatch * 5 < jsonBatch);
+        assertTrue(binaryStream.length * 2 < jsonStream.length());
+    }
+}
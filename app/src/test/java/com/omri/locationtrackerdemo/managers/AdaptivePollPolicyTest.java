@@ -0,0 +1,149 @@
+package com.omri.locationtrackerdemo.managers;
+
+import com.omri.locationtrackerdemo.utils.GeoUtils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives AdaptivePollPolicy with a simulated trajectory and compares it with fixed 3s polling.
+ */
+public class AdaptivePollPolicyTest {
+    private static final String USER = "driver";
+    private static final double START_LAT = 32.0853;
+    private static final double START_LON = 34.7818;
+    private static final double METERS_PER_DEGREE = 111_320;
+
+    /**
+     * Parked 10 min, city driving 5 min, parked 10 min, highway 5 min, parked 10 min
+     */
+    private static final double[][] SEGMENTS = {
+            // duration seconds, speed m/s
+            {600, 0}, {300, 12}, {600, 0}, {300, 30}, {600, 0}
+    };
+
+    private static class SimulationResult {
+        int requests;
+        double meanErrorMeters;
+        double movingMeanErrorMeters;
+    }
+
+    /**
+     * Position (lat, lon) of the simulated driver after the given number of seconds
+     */
+    private static double[] positionAt(long seconds) {
+        double meters = 0;
+        long remaining = seconds;
+        for (double[] segment : SEGMENTS) {
+            long inSegment = Math.min(remaining, (long) segment[0]);
+            meters += inSegment * segment[1];
+            remaining -= inSegment;
+        }
+        return new double[]{START_LAT, START_LON + meters / (METERS_PER_DEGREE * Math.cos(Math.toRadians(START_LAT)))};
+    }
+
+    private static boolean isMoving(long seconds) {
+        long start = 0;
+        for (double[] segment : SEGMENTS) {
+            if (seconds < start + segment[0]) {
+                return segment[1] > 0;
+            }
+            start += (long) segment[0];
+        }
+        return false;
+    }
+
+    private static long totalSeconds() {
+        long total = 0;
+        for (double[] segment : SEGMENTS) {
+            total += (long) segment[0];
+        }
+        return total;
+    }
+
+    /**
+     * Runs the trajectory with a 1s scheduler tick. A null policy means fixed 3s polling.
+     */
+    private static SimulationResult simulate(AdaptivePollPolicy policy) {
+        SimulationResult result = new SimulationResult();
+        double[] shown = null;
+        double errorSum = 0;
+        double movingErrorSum = 0;
+        int movingSamples = 0;
+        long total = totalSeconds();
+
+        for (long second = 0; second < total; second++) {
+            long nowMs = second * 1000;
+            boolean poll = policy == null ? second % 3 == 0 : policy.isDue(USER, nowMs);
+            if (poll) {
+                result.requests++;
+                shown = positionAt(second);
+                if (policy != null) {
+                    policy.onPolled(USER, nowMs);
+                    policy.onLocation(USER, shown[0], shown[1], nowMs);
+                }
+            }
+            double[] actual = positionAt(second);
+            double error = GeoUtils.distanceMeters(shown[0], shown[1], actual[0], actual[1]);
+            errorSum += error;
+            if (isMoving(second)) {
+                movingErrorSum += error;
+                movingSamples++;
+            }
+        }
+        result.meanErrorMeters = errorSum / total;
+        result.movingMeanErrorMeters = movingErrorSum / movingSamples;
+        return result;
+    }
+
+    @Test
+    public void simulatedTrajectory_fewerRequestsAtEqualFreshness() {
+        SimulationResult fixed = simulate(null);
+        SimulationResult adaptive = simulate(new AdaptivePollPolicy(1000, 3000, 15000, 2.0, 10, 30));
+
+        assertTrue("adaptive should need less than half the requests",
+                adaptive.requests * 2 < fixed.requests);
+        // Faster polling on the highway compensates for the backoff delay when driving starts
+        assertTrue("adaptive mean error should match fixed polling",
+                adaptive.meanErrorMeters <= fixed.meanErrorMeters * 1.1);
+    }
+
+    @Test
+    public void stationaryUser_backsOffToCeiling() {
+        AdaptivePollPolicy policy = new AdaptivePollPolicy(1000, 3000, 30000, 2.0, 10, 30);
+        long now = 0;
+        for (int i = 0; i < 10; i++) {
+            policy.onLocation(USER, START_LAT, START_LON, now);
+            now += policy.getEffectiveIntervalMs(USER);
+        }
+        assertEquals(30000, policy.getEffectiveIntervalMs(USER));
+    }
+
+    @Test
+    public void fastUser_isPolledAtMinimumInterval() {
+        AdaptivePollPolicy policy = new AdaptivePollPolicy();
+        policy.onLocation(USER, START_LAT, START_LON, 0);
+        // ~100 m in 3 s
+        policy.onLocation(USER, START_LAT + 0.0009, START_LON, 3000);
+        assertEquals(AdaptivePollPolicy.DEFAULT_MIN_INTERVAL_MS, policy.getEffectiveIntervalMs(USER));
+    }
+
+    @Test
+    public void statusChange_resetsToBaseIntervalAndIsDueImmediately() {
+        AdaptivePollPolicy policy = new AdaptivePollPolicy();
+        policy.onStatus(USER, true, 0);
+        for (int i = 0; i < 5; i++) {
+            policy.onLocation(USER, START_LAT, START_LON, i * 1000L);
+        }
+        assertTrue(policy.getEffectiveIntervalMs(USER) > AdaptivePollPolicy.DEFAULT_BASE_INTERVAL_MS);
+        assertFalse(policy.isDue(USER, 5000));
+
+        policy.onStatus(USER, true, 5000);
+        assertFalse("unchanged status keeps the backoff", policy.isDue(USER, 5000));
+
+        policy.onStatus(USER, false, 5000);
+        assertEquals(AdaptivePollPolicy.DEFAULT_BASE_INTERVAL_MS, policy.getEffectiveIntervalMs(USER));
+        assertTrue(policy.isDue(USER, 5000));
+    }
+}
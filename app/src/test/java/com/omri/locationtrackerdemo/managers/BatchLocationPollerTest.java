@@ -0,0 +1,383 @@
+package com.omri.locationtrackerdemo.managers;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs BatchLocationPoller against an in-process fake backend that counts requests per tick.
+ */
+public class BatchLocationPollerTest {
+    private static final int USER_COUNT = 250;
+
+    /**
+     * Fake tracking backend answering asynchronously on a thread pool
+     */
+    private static class FakeBackend implements BatchLocationPoller.Source<String>,
+            BatchLocationPoller.BatchSource<String> {
+        final ExecutorService executor = Executors.newFixedThreadPool(16);
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        public void fetch(String userId, BatchLocationPoller.Callback<String> callback) {
+            requests.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            executor.execute(() -> {
+                sleepQuietly(1);
+                inFlight.decrementAndGet();
+                callback.onSuccess("loc-" + userId);
+            });
+        }
+
+        @Override
+        public void fetchBatch(List<String> userIds, BatchLocationPoller.BatchCallback<String> callback) {
+            requests.incrementAndGet();
+            executor.execute(() -> {
+                Map<String, String> results = new HashMap<>();
+                for (String userId : userIds) {
+                    results.put(userId, "loc-" + userId);
+                }
+                callback.onSuccess(results);
+            });
+        }
+    }
+
+    private static class CountingListener implements BatchLocationPoller.Listener<String> {
+        final Map<String, AtomicInteger> updates = new ConcurrentHashMap<>();
+        volatile CountDownLatch latch;
+
+        @Override
+        public void onLocation(String userId, String result) {
+            assertEquals("loc-" + userId, result);
+            updates.computeIfAbsent(userId, k -> new AtomicInteger()).incrementAndGet();
+        }
+
+        @Override
+        public void onError(String userId, String error) {
+            fail("Unexpected error for " + userId + ": " + error);
+        }
+
+        @Override
+        public void onFinished(String userId) {
+            if (latch != null) {
+                latch.countDown();
+            }
+        }
+    }
+
+    /**
+     * Backend answering after a random latency in simulated time. Each response carries
+     * the time its request was sent, so out-of-order delivery is visible to the listener.
+     */
+    private static class LatencyBackend implements BatchLocationPoller.Source<Long>,
+            BatchLocationPoller.BatchSource<Long> {
+        private static class Response {
+            final long dueMs;
+            final long order;
+            final Runnable complete;
+
+            Response(long dueMs, long order, Runnable complete) {
+                this.dueMs = dueMs;
+                this.order = order;
+                this.complete = complete;
+            }
+        }
+
+        final Random random = new Random(7);
+        final PriorityQueue<Response> responses = new PriorityQueue<>(
+                (a, b) -> a.dueMs != b.dueMs ? Long.compare(a.dueMs, b.dueMs) : Long.compare(a.order, b.order));
+        final Map<String, Integer> inFlightPerUser = new HashMap<>();
+        final Map<String, Long> lastCompletionMs = new HashMap<>();
+        final long minLatencyMs;
+        final long maxLatencyMs;
+        long nowMs;
+        long order;
+        int requests;
+        int maxInFlightPerUser;
+        long minGapAfterCompletionMs = Long.MAX_VALUE;
+
+        LatencyBackend(long minLatencyMs, long maxLatencyMs) {
+            this.minLatencyMs = minLatencyMs;
+            this.maxLatencyMs = maxLatencyMs;
+        }
+
+        @Override
+        public void fetch(String userId, BatchLocationPoller.Callback<Long> callback) {
+            final long sentMs = send(userId);
+            respondLater(() -> {
+                complete(userId);
+                callback.onSuccess(sentMs);
+            });
+        }
+
+        @Override
+        public void fetchBatch(List<String> userIds, BatchLocationPoller.BatchCallback<Long> callback) {
+            Map<String, Long> results = new HashMap<>();
+            for (String userId : userIds) {
+                results.put(userId, send(userId));
+            }
+            requests -= userIds.size() - 1;
+            respondLater(() -> {
+                for (String userId : userIds) {
+                    complete(userId);
+                }
+                callback.onSuccess(results);
+            });
+        }
+
+        private long send(String userId) {
+            requests++;
+            int inFlight = inFlightPerUser.merge(userId, 1, Integer::sum);
+            maxInFlightPerUser = Math.max(maxInFlightPerUser, inFlight);
+            Long completed = lastCompletionMs.get(userId);
+            if (completed != null) {
+                minGapAfterCompletionMs = Math.min(minGapAfterCompletionMs, nowMs - completed);
+            }
+            return nowMs;
+        }
+
+        private void complete(String userId) {
+            inFlightPerUser.merge(userId, -1, Integer::sum);
+            lastCompletionMs.put(userId, nowMs);
+        }
+
+        private void respondLater(Runnable complete) {
+            long latency = minLatencyMs + (long) (random.nextDouble() * (maxLatencyMs - minLatencyMs));
+            responses.add(new Response(nowMs + latency, order++, complete));
+        }
+
+        /**
+         * Delivers every response due up to the given time
+         */
+        void advanceTo(long timeMs) {
+            while (!responses.isEmpty() && responses.peek().dueMs <= timeMs) {
+                Response response = responses.poll();
+                nowMs = response.dueMs;
+                response.complete.run();
+            }
+            nowMs = timeMs;
+        }
+    }
+
+    /**
+     * Records the send time of every delivered response per user
+     */
+    private static class OrderListener implements BatchLocationPoller.Listener<Long> {
+        final AdaptivePollPolicy policy;
+        final LatencyBackend backend;
+        final Map<String, Long> lastSentMs = new HashMap<>();
+        int delivered;
+        int outOfOrder;
+
+        OrderListener(AdaptivePollPolicy policy, LatencyBackend backend) {
+            this.policy = policy;
+            this.backend = backend;
+        }
+
+        @Override
+        public void onLocation(String userId, Long sentMs) {
+            delivered++;
+            Long previous = lastSentMs.put(userId, sentMs);
+            if (previous != null && previous > sentMs) {
+                outOfOrder++;
+            }
+        }
+
+        @Override
+        public void onError(String userId, String error) {
+            fail(error);
+        }
+
+        @Override
+        public void onFinished(String userId) {
+            policy.onPolled(userId, backend.nowMs);
+        }
+    }
+
+    private final FakeBackend backend = new FakeBackend();
+
+    @After
+    public void tearDown() {
+        backend.executor.shutdownNow();
+    }
+
+    @Test
+    public void batchSource_issuesOneRequestPerTick() throws Exception {
+        CountingListener listener = new CountingListener();
+        BatchLocationPoller<String> poller = new BatchLocationPoller<>(backend, backend,
+                BatchLocationPoller.DEFAULT_MAX_CONCURRENT_REQUESTS,
+                BatchLocationPoller.DEFAULT_MAX_BATCH_SIZE, listener);
+        poller.addUsers(userIds(USER_COUNT));
+
+        for (int tick = 1; tick <= 3; tick++) {
+            listener.latch = new CountDownLatch(USER_COUNT);
+            poller.pollTick();
+            assertTrue(listener.latch.await(5, TimeUnit.SECONDS));
+            assertEquals(tick, backend.requests.get());
+        }
+        assertEquals(USER_COUNT, listener.updates.size());
+        for (AtomicInteger count : listener.updates.values()) {
+            assertEquals(3, count.get());
+        }
+    }
+
+    @Test
+    public void batchSource_splitsLargeSetsIntoChunks() throws Exception {
+        CountingListener listener = new CountingListener();
+        BatchLocationPoller<String> poller = new BatchLocationPoller<>(backend, backend, 8, 100, listener);
+        poller.addUsers(userIds(USER_COUNT));
+
+        listener.latch = new CountDownLatch(USER_COUNT);
+        poller.pollTick();
+        assertTrue(listener.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(3, backend.requests.get());
+    }
+
+    @Test
+    public void fanOut_boundsConcurrentRequests() throws Exception {
+        CountingListener listener = new CountingListener();
+        BatchLocationPoller<String> poller = new BatchLocationPoller<>(backend, null, 4, 100, listener);
+        poller.addUsers(userIds(USER_COUNT));
+
+        listener.latch = new CountDownLatch(USER_COUNT);
+        poller.pollTick();
+        assertTrue(listener.latch.await(10, TimeUnit.SECONDS));
+        assertEquals(USER_COUNT, backend.requests.get());
+        assertEquals(USER_COUNT, listener.updates.size());
+        assertTrue("max in flight " + backend.maxInFlight.get(), backend.maxInFlight.get() <= 4);
+    }
+
+    @Test
+    public void fanOut_doesNotQueueUserTwiceWhileStillPending() {
+        List<BatchLocationPoller.Callback<String>> held = new ArrayList<>();
+        BatchLocationPoller<String> poller = new BatchLocationPoller<>(
+                (userId, callback) -> held.add(callback), null, 1, 100, new CountingListener());
+        poller.addUsers(userIds(3));
+
+        poller.pollTick();
+        poller.pollTick();
+        assertEquals(1, poller.getRequestCount());
+        assertEquals(3, poller.getSkippedCount());
+        assertEquals(3, poller.getOutstandingCount());
+    }
+
+    @Test
+    public void slowLink_fanOut_neverOverlapsOrReorders() {
+        runSlowLink(false);
+    }
+
+    @Test
+    public void slowLink_batch_neverOverlapsOrReorders() {
+        runSlowLink(true);
+    }
+
+    /**
+     * Ticks every second for ten simulated minutes against responses taking 0.2 to 9 seconds
+     */
+    private void runSlowLink(boolean batched) {
+        LatencyBackend latencyBackend = new LatencyBackend(200, 9000);
+        AdaptivePollPolicy policy = new AdaptivePollPolicy();
+        OrderListener listener = new OrderListener(policy, latencyBackend);
+        BatchLocationPoller<Long> poller = new BatchLocationPoller<>(latencyBackend,
+                batched ? latencyBackend : null, 4, 100, listener);
+        poller.addUsers(userIds(20));
+
+        int ticks = 600;
+        for (int tick = 0; tick < ticks; tick++) {
+            long nowMs = tick * 1000L;
+            latencyBackend.advanceTo(nowMs);
+            poller.pollTick(userId -> policy.isDue(userId, nowMs));
+        }
+        latencyBackend.advanceTo(Long.MAX_VALUE);
+
+        assertEquals(1, latencyBackend.maxInFlightPerUser);
+        assertEquals(0, listener.outOfOrder);
+        assertTrue(poller.getSkippedCount() > 0);
+        assertTrue(latencyBackend.minGapAfterCompletionMs >= policy.getMinIntervalMs());
+        assertEquals(0, poller.getOutstandingCount());
+    }
+
+    @Test
+    public void clear_cancelsOutstandingRequestsAndDropsLateResponses() {
+        LatencyBackend latencyBackend = new LatencyBackend(5000, 5000);
+        OrderListener listener = new OrderListener(new AdaptivePollPolicy(), latencyBackend);
+        BatchLocationPoller<Long> poller = new BatchLocationPoller<>(latencyBackend, null, 8, 100, listener);
+        poller.addUsers(userIds(3));
+        poller.pollTick();
+        assertEquals(3, poller.getOutstandingCount());
+
+        // Retarget to one of the same users before the responses arrive
+        latencyBackend.advanceTo(1000);
+        poller.clear();
+        assertEquals(3, poller.getCancelledCount());
+        poller.addUser("user-0");
+        poller.pollTick();
+        assertEquals(4, latencyBackend.requests);
+
+        latencyBackend.advanceTo(5500);
+        assertEquals("responses sent before the retarget are dropped", 0, listener.delivered);
+        latencyBackend.advanceTo(6000);
+        assertEquals(1, listener.delivered);
+        assertEquals(1000, (long) listener.lastSentMs.get("user-0"));
+    }
+
+    @Test
+    public void removeUser_cancelsOnlyThatUser() {
+        LatencyBackend latencyBackend = new LatencyBackend(1000, 1000);
+        OrderListener listener = new OrderListener(new AdaptivePollPolicy(), latencyBackend);
+        BatchLocationPoller<Long> poller = new BatchLocationPoller<>(latencyBackend, latencyBackend, 8, 100, listener);
+        poller.addUsers(userIds(3));
+        poller.pollTick();
+
+        poller.removeUser("user-1");
+        latencyBackend.advanceTo(1000);
+        assertEquals(1, poller.getCancelledCount());
+        assertEquals(2, listener.delivered);
+        assertFalse(listener.lastSentMs.containsKey("user-1"));
+    }
+
+    @Test
+    public void removedUser_receivesNoCallbacks() throws Exception {
+        CountingListener listener = new CountingListener();
+        BatchLocationPoller<String> poller = new BatchLocationPoller<>(backend, backend, 8, 100, listener);
+        poller.addUsers(userIds(10));
+        poller.removeUser("user-3");
+
+        listener.latch = new CountDownLatch(9);
+        poller.pollTick();
+        assertTrue(listener.latch.await(5, TimeUnit.SECONDS));
+        assertFalse(listener.updates.containsKey("user-3"));
+    }
+
+    private static List<String> userIds(int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add("user-" + i);
+        }
+        return ids;
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.omri.locationtrackerdemo.managers;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FixTimeReaderTest {
+    private static class TimedLocation {
+        double latitude = 32.08;
+        double longitude = 34.78;
+        Object timestamp;
+
+        TimedLocation(Object timestamp) {
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static class UntimedLocation {
+        double latitude = 32.08;
+        double longitude = 34.78;
+    }
+
+    @Test
+    public void readsMillisecondTimestamp() {
+        assertEquals(1_700_000_000_123L,
+                new FixTimeReader().getFixTimeMs(new TimedLocation(1_700_000_000_123L)));
+    }
+
+    @Test
+    public void readsIsoTimestamp() {
+        assertEquals(1_700_000_000_123L,
+                new FixTimeReader().getFixTimeMs(new TimedLocation("2023-11-14T22:13:20.123Z")));
+    }
+
+    @Test
+    public void missingOrUnreadableTimestampIsUnknown() {
+        FixTimeReader reader = new FixTimeReader();
+        assertEquals(FreshnessTracker.UNKNOWN_TIME, reader.getFixTimeMs(new UntimedLocation()));
+        assertEquals(FreshnessTracker.UNKNOWN_TIME, reader.getFixTimeMs(new TimedLocation(null)));
+        assertEquals(FreshnessTracker.UNKNOWN_TIME, reader.getFixTimeMs(new TimedLocation("yesterday")));
+        assertEquals(FreshnessTracker.UNKNOWN_TIME, reader.getFixTimeMs(null));
+    }
+
+    @Test
+    public void readsCustomField() {
+        assertEquals(FreshnessTracker.UNKNOWN_TIME,
+                new FixTimeReader("updatedAt").getFixTimeMs(new TimedLocation(5_000L)));
+    }
+}
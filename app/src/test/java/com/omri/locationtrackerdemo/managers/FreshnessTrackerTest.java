@@ -0,0 +1,73 @@
+package com.omri.locationtrackerdemo.managers;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FreshnessTrackerTest {
+    private static final String USER = "user-1";
+    private static final long LOCAL_START_MS = 1_700_000_000_000L;
+
+    @Test
+    public void olderUpdatesAreRejected() {
+        FreshnessTracker tracker = new FreshnessTracker();
+        assertTrue(tracker.onUpdate(USER, 10_000, 0, 10_500) >= 0);
+        assertTrue(tracker.onUpdate(USER, 13_000, 0, 13_200) >= 0);
+
+        assertEquals(FreshnessTracker.REJECTED, tracker.onUpdate(USER, 12_000, 0, 14_000));
+        assertNotEquals("same fix polled again is kept", FreshnessTracker.REJECTED,
+                tracker.onUpdate(USER, 13_000, 0, 16_000));
+        assertEquals(1, tracker.getRejectedCount());
+        assertEquals(3, tracker.getAcceptedCount());
+    }
+
+    @Test
+    public void usersAreIndependent() {
+        FreshnessTracker tracker = new FreshnessTracker();
+        tracker.onUpdate("a", 20_000, 0, 20_000);
+        assertTrue(tracker.onUpdate("b", 10_000, 0, 20_000) >= 0);
+    }
+
+    @Test
+    public void estimatesSkewedServerClockFromServerTime() {
+        // Server clock runs 42 s ahead of the device, delivery takes 50-800 ms
+        final long skewMs = 42_000;
+        Random random = new Random(3);
+        FreshnessTracker tracker = new FreshnessTracker();
+        long localMs = LOCAL_START_MS;
+        for (int i = 0; i < 50; i++) {
+            long sentServerMs = localMs + skewMs;
+            long fixServerMs = sentServerMs - 2_000;
+            long receivedLocalMs = localMs + 50 + random.nextInt(750);
+            long staleness = tracker.onUpdate(USER, fixServerMs, sentServerMs, receivedLocalMs);
+            assertTrue("staleness " + staleness, staleness >= 2_000 && staleness <= 2_800);
+            localMs += 3_000;
+        }
+        assertEquals(skewMs, tracker.getClockOffsetMs(USER), 100);
+
+        // Without further updates the displayed fix keeps ageing
+        long later = tracker.getStalenessMs(USER, localMs + 60_000);
+        assertTrue(later > 60_000);
+    }
+
+    @Test
+    public void withoutTimestampsStalenessCountsFromArrival() {
+        FreshnessTracker tracker = new FreshnessTracker();
+        assertEquals(-1, tracker.getStalenessMs(USER, 0));
+        assertEquals(0, tracker.onUpdate(USER, FreshnessTracker.UNKNOWN_TIME,
+                FreshnessTracker.UNKNOWN_TIME, 5_000));
+        assertEquals(7_000, tracker.getStalenessMs(USER, 12_000));
+        assertEquals(0, tracker.getClockOffsetMs(USER));
+    }
+
+    @Test
+    public void removeForgetsOrdering() {
+        FreshnessTracker tracker = new FreshnessTracker();
+        tracker.onUpdate(USER, 20_000, 0, 20_000);
+        tracker.remove(USER);
+        assertTrue(tracker.onUpdate(USER, 10_000, 0, 20_000) >= 0);
+        assertEquals(0, tracker.getRejectedCount());
+    }
+}
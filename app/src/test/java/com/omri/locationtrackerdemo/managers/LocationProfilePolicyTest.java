@@ -0,0 +1,195 @@
+package com.omri.locationtrackerdemo.managers;
+
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+import com.omri.locationtrackerdemo.managers.LocationProfilePolicy.Profile;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives LocationProfilePolicy with synthetic traces, sampled at the interval of the
+ * profile it picks, like the fused provider would.
+ */
+public class LocationProfilePolicyTest {
+    private static final double START_LAT = 32.0853;
+    private static final double START_LON = 34.7818;
+    private static final double METERS_PER_DEGREE = 111_320;
+
+    private final LocationProfilePolicy policy = new LocationProfilePolicy();
+    private final Random random = new Random(42);
+    private long nowMs;
+    private double eastMeters;
+
+    private static LocationSample sample(double eastMeters, double northMeters, float accuracy,
+                                         float speed, long timeMs) {
+        double lat = START_LAT + northMeters / METERS_PER_DEGREE;
+        double lon = START_LON + eastMeters / (METERS_PER_DEGREE * Math.cos(Math.toRadians(START_LAT)));
+        return new LocationSample(lat, lon, accuracy, speed, Float.NaN, timeMs);
+    }
+
+    /**
+     * Feeds fixes at the current profile's interval while moving east at a constant speed
+     * @param jitterMeters Random position error added to each fix
+     * @param reportSpeed Whether fixes carry the speed or it has to be derived
+     */
+    private void drive(long durationMs, double speedMps, double jitterMeters, boolean reportSpeed) {
+        long endMs = nowMs + durationMs;
+        while (nowMs < endMs) {
+            long stepMs = policy.getProfile().getIntervalMs();
+            nowMs += stepMs;
+            eastMeters += speedMps * stepMs / 1000.0;
+            double jitterEast = (random.nextDouble() * 2 - 1) * jitterMeters;
+            double jitterNorth = (random.nextDouble() * 2 - 1) * jitterMeters;
+            float speed = reportSpeed ? (float) (speedMps + random.nextDouble() * 0.5) : Float.NaN;
+            policy.onLocation(sample(eastMeters + jitterEast, jitterNorth, 15, speed, nowMs), nowMs);
+        }
+    }
+
+    @Test
+    public void parkedAfterTwoMinutesDespiteJitter() {
+        policy.start(nowMs);
+        drive(100_000, 0, 15, true);
+        assertEquals(Profile.MOVING, policy.getProfile());
+
+        drive(30_000, 0, 15, true);
+        assertEquals(Profile.PARKED, policy.getProfile());
+
+        // Balanced accuracy fixes wander further, without leaving the parked profile
+        drive(20 * 60_000, 0, 40, true);
+        assertEquals(Profile.PARKED, policy.getProfile());
+        assertEquals(1, policy.getSwitchCount());
+    }
+
+    @Test
+    public void leavesParkedWhenDrivingOff() {
+        drive(3 * 60_000, 0, 5, true);
+        assertEquals(Profile.PARKED, policy.getProfile());
+
+        drive(60_000, 8, 5, true);
+        assertEquals(Profile.MOVING, policy.getProfile());
+    }
+
+    @Test
+    public void leavesParkedWithoutReportedSpeed() {
+        drive(3 * 60_000, 0, 5, false);
+        assertEquals(Profile.PARKED, policy.getProfile());
+
+        // Two parked fixes at 30 s, then the displacement gives it away
+        drive(60_000, 4, 0, false);
+        assertEquals(Profile.MOVING, policy.getProfile());
+    }
+
+    @Test
+    public void fastOnlyAfterSustainedSpeed() {
+        drive(60_000, 8, 3, true);
+        assertEquals(Profile.MOVING, policy.getProfile());
+
+        drive(6_000, 25, 3, true);
+        assertEquals(Profile.MOVING, policy.getProfile());
+        drive(9_000, 25, 3, true);
+        assertEquals(Profile.FAST, policy.getProfile());
+    }
+
+    @Test
+    public void fastFromDerivedSpeed() {
+        drive(30_000, 25, 0, false);
+        assertEquals(Profile.FAST, policy.getProfile());
+    }
+
+    @Test
+    public void stopAndGoDoesNotFlap() {
+        drive(20_000, 25, 3, true);
+        assertEquals(Profile.FAST, policy.getProfile());
+        int switches = policy.getSwitchCount();
+
+        // 15 s braking for every 15 s at speed, shorter than the exit delay
+        for (int i = 0; i < 20; i++) {
+            drive(15_000, 3, 3, true);
+            drive(15_000, 20, 3, true);
+        }
+        assertEquals(Profile.FAST, policy.getProfile());
+        assertEquals(switches, policy.getSwitchCount());
+
+        drive(25_000, 4, 3, true);
+        assertEquals(Profile.MOVING, policy.getProfile());
+    }
+
+    @Test
+    public void lowBatteryHasHysteresis() {
+        drive(10_000, 8, 3, true);
+        assertEquals(Profile.MOVING, policy.onBattery(16, false, nowMs));
+        assertEquals(Profile.SAVER, policy.onBattery(15, false, nowMs));
+        assertEquals(Profile.SAVER, policy.onBattery(18, false, nowMs));
+        assertEquals(Profile.MOVING, policy.onBattery(20, false, nowMs));
+        policy.onBattery(10, false, nowMs);
+        assertEquals(Profile.MOVING, policy.onBattery(10, true, nowMs));
+
+        // Parked wins over the saver
+        policy.onBattery(10, false, nowMs);
+        drive(3 * 60_000, 0, 3, true);
+        assertEquals(Profile.PARKED, policy.getProfile());
+    }
+
+    @Test
+    public void unwatchedMovingUserUsesSaver() {
+        drive(30_000, 25, 3, true);
+        assertEquals(Profile.FAST, policy.getProfile());
+
+        assertEquals(Profile.SAVER, policy.setWatched(false, nowMs));
+        drive(60_000, 25, 3, true);
+        assertEquals(Profile.SAVER, policy.getProfile());
+
+        assertEquals(Profile.FAST, policy.setWatched(true, nowMs));
+    }
+
+    @Test
+    public void timeInProfilesAddsUpToTheTrace() {
+        policy.start(nowMs);
+        drive(10 * 60_000, 0, 5, true);
+        drive(5 * 60_000, 12, 5, true);
+        drive(5 * 60_000, 30, 5, true);
+
+        Map<Profile, Long> times = policy.getTimeInProfiles(nowMs);
+        long total = 0;
+        for (long ms : times.values()) {
+            total += ms;
+        }
+        assertEquals(nowMs, total);
+        assertTrue(times.get(Profile.PARKED) >= 7 * 60_000);
+        assertTrue(times.get(Profile.FAST) >= 4 * 60_000);
+        assertEquals(Profile.FAST, policy.getProfile());
+        assertEquals(nowMs - policy.getProfileSinceMs(), policy.getTimeInProfileMs(Profile.FAST, nowMs)
+                - (policy.getTimeInProfileMs(Profile.FAST, policy.getProfileSinceMs())));
+    }
+
+    @Test
+    public void dayTraceNeedsFewerFixesThanFixedRequest() {
+        // Parked 10 min, city 5 min, parked 10 min, highway 5 min, parked 10 min
+        double[][] segments = {{600, 0}, {300, 12}, {600, 0}, {300, 30}, {600, 0}};
+        policy.start(nowMs);
+        long highAccuracyMs = 0;
+        int fixes = 0;
+        for (double[] segment : segments) {
+            long endMs = nowMs + (long) (segment[0] * 1000);
+            while (nowMs < endMs) {
+                Profile profile = policy.getProfile();
+                if (profile.isHighAccuracy()) {
+                    highAccuracyMs += profile.getIntervalMs();
+                }
+                drive(profile.getIntervalMs(), segment[1], 5, true);
+                fixes++;
+            }
+        }
+        int fixedFixes = (int) (nowMs / 3_000);
+
+        assertEquals(Profile.PARKED, policy.getProfile());
+        assertTrue(fixes + " of " + fixedFixes, fixes * 4 < fixedFixes * 3);
+        assertTrue(highAccuracyMs < nowMs / 2);
+        // Two stays in each profile at most: no flapping on the way
+        assertTrue(policy.getSwitchCount() <= 8);
+    }
+}
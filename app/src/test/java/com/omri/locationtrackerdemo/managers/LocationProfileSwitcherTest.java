@@ -0,0 +1,99 @@
+package com.omri.locationtrackerdemo.managers;
+
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+import com.omri.locationtrackerdemo.managers.LocationProfilePolicy.Profile;
+import com.omri.locationtrackerdemo.metrics.MetricsRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives LocationProfileSwitcher with the inputs LocationManager receives: fix batches,
+ * battery levels and the watched state the sharing service sets on attach and detach.
+ */
+public class LocationProfileSwitcherTest {
+    private static final double START_LAT = 32.0853;
+    private static final double START_LON = 34.7818;
+    private static final double METERS_PER_DEGREE = 111_320;
+
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final List<Profile> switches = new ArrayList<>();
+    private LocationProfileSwitcher switcher;
+    private long nowMs;
+    private double northMeters;
+
+    @Before
+    public void setUp() {
+        metrics.setEnabled(true);
+        switcher = new LocationProfileSwitcher(new LocationProfilePolicy(), metrics, nowMs, switches::add);
+        switcher.start(nowMs);
+    }
+
+    /**
+     * Delivers one batch of fixes taken at the current profile's interval while driving north
+     */
+    private void deliver(long durationMs, double speedMps) {
+        List<LocationSample> batch = new ArrayList<>();
+        long endMs = nowMs + durationMs;
+        long intervalMs = switcher.getProfile().getIntervalMs();
+        while (nowMs < endMs) {
+            nowMs += intervalMs;
+            northMeters += speedMps * intervalMs / 1000.0;
+            batch.add(new LocationSample(START_LAT + northMeters / METERS_PER_DEGREE, START_LON, 10,
+                    (float) speedMps, Float.NaN, nowMs));
+        }
+        switcher.onLocations(batch, nowMs);
+    }
+
+    @Test
+    public void detachedMovingUserSwitchesToSaverAndBack() {
+        deliver(15_000, 8);
+        assertEquals(Profile.MOVING, switcher.getProfile());
+        assertTrue(switches.isEmpty());
+
+        // The map screen goes to the background
+        switcher.setWatched(false, nowMs);
+        assertEquals(Collections.singletonList(Profile.SAVER), switches);
+        deliver(60_000, 8);
+        assertEquals(Profile.SAVER, switcher.getProfile());
+
+        // And is attached again
+        switcher.setWatched(true, nowMs);
+        assertEquals(Profile.MOVING, switcher.getProfile());
+        assertEquals(2, switches.size());
+        assertEquals(2, metrics.counter("location.profileSwitches").get());
+        assertEquals(Profile.MOVING.ordinal(), metrics.gauge("location.profile").get());
+        assertEquals(1, metrics.histogram("location.profile.saver").getCount());
+    }
+
+    @Test
+    public void watchedStateDoesNotMatterWhileParked() {
+        switcher.setWatched(false, nowMs);
+        switches.clear();
+        deliver(3 * 60_000, 0);
+        assertEquals(Profile.PARKED, switcher.getProfile());
+
+        switcher.setWatched(true, nowMs);
+        switcher.setWatched(false, nowMs);
+        assertEquals(Collections.singletonList(Profile.PARKED), switches);
+    }
+
+    @Test
+    public void lowBatteryKeepsSaverAfterAttach() {
+        deliver(15_000, 8);
+        switcher.onBattery(10, false, nowMs);
+        assertEquals(Profile.SAVER, switcher.getProfile());
+
+        switcher.setWatched(true, nowMs);
+        assertEquals(Profile.SAVER, switcher.getProfile());
+        switcher.onBattery(10, true, nowMs);
+        assertEquals(Profile.MOVING, switcher.getProfile());
+        assertTrue(switcher.describe(nowMs).startsWith("profile moving, parked 0 s"));
+    }
+}
@@ -0,0 +1,311 @@
+package com.omri.locationtrackerdemo.managers;
+
+import com.google.gson.Gson;
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+import com.omri.locationtrackerdemo.data.wire.LocationFrameCodec;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.ByteString;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs LocationStreamClient against an in-process stream server, and compares its request
+ * count and delivery delay with polling the same server.
+ */
+public class LocationStreamClientTest {
+    private static final String USER = "driver";
+
+    /**
+     * Minimal location model, deserialized the same way as the tracking library's Location
+     */
+    static class TestLocation {
+        double latitude;
+        double longitude;
+    }
+
+    /**
+     * In-process server publishing fixes over WebSocket and serving the latest fix over HTTP
+     */
+    private static class FakeStreamServer extends Dispatcher {
+        final MockWebServer server = new MockWebServer();
+        final AtomicInteger streamConnections = new AtomicInteger();
+        final AtomicInteger pollRequests = new AtomicInteger();
+        final BlockingQueue<String> subscribeMessages = new LinkedBlockingQueue<>();
+        final List<WebSocket> sockets = new CopyOnWriteArrayList<>();
+        volatile boolean streamAvailable = true;
+        volatile String latestFix;
+        long seq;
+
+        FakeStreamServer() throws Exception {
+            server.setDispatcher(this);
+            server.start();
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            if (request.getPath().startsWith("/stream")) {
+                if (!streamAvailable) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                streamConnections.incrementAndGet();
+                return new MockResponse().withWebSocketUpgrade(new WebSocketListener() {
+                    @Override
+                    public void onOpen(WebSocket webSocket, Response response) {
+                        sockets.add(webSocket);
+                    }
+
+                    @Override
+                    public void onMessage(WebSocket webSocket, String text) {
+                        subscribeMessages.add(text);
+                    }
+
+                    @Override
+                    public void onClosing(WebSocket webSocket, int code, String reason) {
+                        webSocket.close(1000, null);
+                    }
+                });
+            }
+            pollRequests.incrementAndGet();
+            String body = latestFix;
+            return body == null ? new MockResponse().setResponseCode(404) : new MockResponse().setBody(body);
+        }
+
+        synchronized void publish(double lat, double lon) {
+            seq++;
+            String location = "{\"latitude\":" + lat + ",\"longitude\":" + lon + "}";
+            latestFix = location;
+            long now = System.currentTimeMillis();
+            String frame = "{\"seq\":" + seq + ",\"userId\":\"" + USER + "\",\"timestamp\":" + (now - 1000)
+                    + ",\"serverTime\":" + now + ",\"location\":" + location + "}";
+            for (WebSocket socket : sockets) {
+                socket.send(frame);
+            }
+        }
+
+        /**
+         * Pushes a fix as a binary frame, as servers do for subscriptions asking for them
+         */
+        synchronized void publishBinary(double lat, double lon) {
+            seq++;
+            long now = System.currentTimeMillis();
+            byte[] frame = LocationFrameCodec.encode(
+                    Collections.singletonList(new LocationFix(USER, lat, lon, now - 1000)), seq, now);
+            for (WebSocket socket : sockets) {
+                socket.send(ByteString.of(frame));
+            }
+        }
+
+        void dropConnections() {
+            for (WebSocket socket : sockets) {
+                socket.close(1001, "going away");
+            }
+            sockets.clear();
+        }
+
+        String url(String path) {
+            return server.url(path).toString();
+        }
+    }
+
+    private static class RecordingListener implements LocationStreamClient.Listener<TestLocation> {
+        final BlockingQueue<TestLocation> locations = new LinkedBlockingQueue<>();
+        volatile CountDownLatch connected = new CountDownLatch(1);
+        volatile CountDownLatch unavailable = new CountDownLatch(1);
+        volatile long lastFixTimeMs;
+        volatile long lastServerTimeMs;
+
+        @Override
+        public void onStreamConnected() {
+            connected.countDown();
+        }
+
+        @Override
+        public void onStreamLocation(String userId, TestLocation location, long fixTimeMs, long serverTimeMs) {
+            assertEquals(USER, userId);
+            lastFixTimeMs = fixTimeMs;
+            lastServerTimeMs = serverTimeMs;
+            locations.add(location);
+        }
+
+        @Override
+        public void onStreamUnavailable(String reason) {
+            unavailable.countDown();
+        }
+    }
+
+    private FakeStreamServer server;
+    private final OkHttpClient httpClient = new OkHttpClient();
+    private final RecordingListener listener = new RecordingListener();
+    private LocationStreamClient<TestLocation> client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeStreamServer();
+        client = new LocationStreamClient<>(httpClient, server.url("/stream"), TestLocation.class, listener);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.stop();
+        server.dropConnections();
+        server.server.shutdown();
+    }
+
+    @Test
+    public void pushesFixesAsSoonAsPublished() throws Exception {
+        client.updateSubscription(Collections.singletonList(USER));
+        assertTrue(listener.connected.await(5, TimeUnit.SECONDS));
+        String subscribe = server.subscribeMessages.poll(5, TimeUnit.SECONDS);
+        assertTrue(subscribe, subscribe.contains("\"userIds\":[\"" + USER + "\"]"));
+        assertFalse(subscribe, subscribe.contains("encoding"));
+
+        for (int i = 1; i <= 20; i++) {
+            server.publish(i, i);
+            TestLocation location = listener.locations.poll(5, TimeUnit.SECONDS);
+            assertNotNull(location);
+            assertEquals(i, location.latitude, 0);
+        }
+        assertEquals(20, client.getLastSequence());
+        assertEquals(1, server.streamConnections.get());
+        assertEquals(1000, listener.lastServerTimeMs - listener.lastFixTimeMs);
+    }
+
+    @Test
+    public void acceptsBinaryFramesAfterAskingForThem() throws Exception {
+        client.setBinaryFrames(true);
+        client.updateSubscription(Collections.singletonList(USER));
+        assertTrue(listener.connected.await(5, TimeUnit.SECONDS));
+        String subscribe = server.subscribeMessages.poll(5, TimeUnit.SECONDS);
+        assertTrue(subscribe, subscribe.contains("\"encoding\":\"binary\""));
+
+        // A server may still answer in JSON; both are delivered in sequence order
+        server.publish(1, 1);
+        server.publishBinary(32.085312, 34.781845);
+        assertEquals(1, listener.locations.poll(5, TimeUnit.SECONDS).latitude, 0);
+        TestLocation location = listener.locations.poll(5, TimeUnit.SECONDS);
+        assertNotNull(location);
+        assertEquals(32.085312, location.latitude, 1e-9);
+        assertEquals(34.781845, location.longitude, 1e-9);
+        assertEquals(1000, listener.lastServerTimeMs - listener.lastFixTimeMs);
+        assertEquals(2, client.getLastSequence());
+        assertTrue(client.isReceivingBinary());
+    }
+
+    @Test
+    public void reconnectsAndResumesFromLastSequence() throws Exception {
+        client.updateSubscription(Collections.singletonList(USER));
+        assertTrue(listener.connected.await(5, TimeUnit.SECONDS));
+        server.subscribeMessages.poll(5, TimeUnit.SECONDS);
+        server.publish(1, 1);
+        server.publish(2, 2);
+        assertNotNull(listener.locations.poll(5, TimeUnit.SECONDS));
+        assertNotNull(listener.locations.poll(5, TimeUnit.SECONDS));
+
+        listener.connected = new CountDownLatch(1);
+        server.dropConnections();
+        assertTrue(listener.unavailable.await(5, TimeUnit.SECONDS));
+        assertTrue(listener.connected.await(5, TimeUnit.SECONDS));
+
+        String resume = server.subscribeMessages.poll(5, TimeUnit.SECONDS);
+        assertTrue(resume, resume.contains("\"since\":2"));
+        assertEquals(2, server.streamConnections.get());
+    }
+
+    @Test
+    public void reportsUnavailableWhenServerRefusesStream() throws Exception {
+        server.streamAvailable = false;
+        client.updateSubscription(Collections.singletonList(USER));
+        assertTrue(listener.unavailable.await(5, TimeUnit.SECONDS));
+        assertFalse(client.isConnected());
+    }
+
+    @Test
+    public void streamingNeedsOneRequestAndNoPollWait() throws Exception {
+        // A driver at about 5 m/s publishing a fix every second, at 400 ms past each second
+        final int fixes = 30;
+        final long publishIntervalMs = 1000;
+        final long publishOffsetMs = 400;
+        final double stepDegrees = 4.5e-5;
+
+        // Streaming: every fix arrives before the next one is published
+        client.updateSubscription(Collections.singletonList(USER));
+        assertTrue(listener.connected.await(5, TimeUnit.SECONDS));
+        server.subscribeMessages.poll(5, TimeUnit.SECONDS);
+        for (int i = 1; i <= fixes; i++) {
+            server.publish(32 + i * stepDegrees, 34);
+            TestLocation location = listener.locations.poll(5, TimeUnit.SECONDS);
+            assertNotNull(location);
+            assertEquals(32 + i * stepDegrees, location.latitude, 0);
+        }
+        int streamRequests = server.streamConnections.get() + server.pollRequests.get();
+        client.stop();
+
+        // Polling the same fixes on a simulated clock, at the intervals RemoteTrackingManager uses
+        AdaptivePollPolicy policy = new AdaptivePollPolicy();
+        Gson gson = new Gson();
+        Map<Double, Long> publishedAtMs = new HashMap<>();
+        Map<Double, Long> seenAfterMs = new HashMap<>();
+        server.latestFix = null;
+        int published = 0;
+        for (long nowMs = 0; nowMs <= fixes * publishIntervalMs + publishOffsetMs; nowMs += 100) {
+            if (published < fixes && nowMs == (published + 1) * publishIntervalMs + publishOffsetMs) {
+                published++;
+                double lat = 32 + published * stepDegrees;
+                server.publish(lat, 34);
+                publishedAtMs.put(lat, nowMs);
+            }
+            if (!policy.isDue(USER, nowMs)) {
+                continue;
+            }
+            Request request = new Request.Builder().url(server.url("/location")).build();
+            try (Response response = httpClient.newCall(request).execute()) {
+                policy.onPolled(USER, nowMs);
+                if (response.isSuccessful()) {
+                    TestLocation location = gson.fromJson(response.body().string(), TestLocation.class);
+                    policy.onLocation(USER, location.latitude, location.longitude, nowMs);
+                    if (!seenAfterMs.containsKey(location.latitude)) {
+                        seenAfterMs.put(location.latitude, nowMs - publishedAtMs.get(location.latitude));
+                    }
+                }
+            }
+        }
+        int pollRequests = server.pollRequests.get();
+        long totalWaitMs = 0;
+        for (long waitMs : seenAfterMs.values()) {
+            totalWaitMs += waitMs;
+        }
+        String result = "stream: " + fixes + " fixes, " + streamRequests + " request(s); polling: "
+                + seenAfterMs.size() + " fixes, " + pollRequests + " requests, "
+                + totalWaitMs / Math.max(1, seenAfterMs.size()) + " ms mean wait";
+
+        assertEquals(result, 1, streamRequests);
+        assertEquals(result, AdaptivePollPolicy.DEFAULT_BASE_INTERVAL_MS, policy.getEffectiveIntervalMs(USER));
+        assertTrue(result, pollRequests >= fixes * publishIntervalMs / AdaptivePollPolicy.DEFAULT_BASE_INTERVAL_MS);
+        assertTrue(result, seenAfterMs.size() < fixes / 2);
+        assertTrue(result, totalWaitMs >= 500L * seenAfterMs.size());
+    }
+}
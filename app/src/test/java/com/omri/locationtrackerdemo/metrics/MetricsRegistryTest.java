@@ -0,0 +1,64 @@
+package com.omri.locationtrackerdemo.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void disabledRegistryDropsValuesButKeepsGauges() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter errors = registry.counter("api.getUserLocation.errors");
+        LatencyHistogram latency = registry.histogram("api.getUserLocation");
+        Gauge tracked = registry.gauge("remote.trackedUsers");
+
+        assertEquals(0, registry.startTimer());
+        errors.increment();
+        latency.record(1000);
+        latency.recordSince(registry.startTimer());
+        tracked.set(3);
+        assertEquals(0, errors.get());
+        assertEquals(0, latency.getCount());
+        assertEquals(3, tracked.get());
+
+        registry.setEnabled(true);
+        long start = registry.startTimer();
+        assertNotEquals(0, start);
+        errors.increment();
+        latency.recordSince(start);
+        assertEquals(1, errors.get());
+        assertEquals(1, latency.getCount());
+    }
+
+    @Test
+    public void metricsAreSharedByName() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.setEnabled(true);
+        assertSame(registry.histogram("api.getUserStatus"), registry.histogram("api.getUserStatus"));
+        registry.counter("upload.suppressed").add(2);
+        registry.counter("upload.suppressed").increment();
+        assertEquals(3, registry.counter("upload.suppressed").get());
+
+        registry.reset();
+        assertEquals(0, registry.counter("upload.suppressed").get());
+    }
+
+    @Test
+    public void snapshotListsEveryMetric() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.setEnabled(true);
+        LatencyHistogram latency = registry.histogram("api.updateLocation");
+        for (int i = 1; i <= 100; i++) {
+            latency.recordMillis(i);
+        }
+        registry.counter("api.updateLocation.errors").increment();
+        registry.gauge("remote.trackedUsers").set(4);
+
+        String snapshot = registry.snapshot(System.currentTimeMillis());
+        assertTrue(snapshot, snapshot.contains("api.updateLocation"));
+        assertTrue(snapshot, snapshot.matches("(?s).*api\\.updateLocation\\s+100\\s+50\\.\\d.*"));
+        assertTrue(snapshot, snapshot.matches("(?s).*api\\.updateLocation\\.errors\\s+1\\n.*"));
+        assertTrue(snapshot, snapshot.matches("(?s).*remote\\.trackedUsers\\s+4\\n.*"));
+    }
+}
@@ -0,0 +1,55 @@
+package com.omri.locationtrackerdemo.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SharingCostEstimateTest {
+    private static final long HOUR_MS = 3_600_000;
+
+    @Test
+    public void ratesAreScaledToAnHour() {
+        SharingCostEstimate estimate = SharingCostEstimate.of(HOUR_MS / 2, 30, 600, 30, 30 * 550);
+
+        assertEquals(60, estimate.getWakeupsPerHour(), 1e-9);
+        assertEquals(60, estimate.getUploadsPerHour(), 1e-9);
+        assertEquals(20, estimate.getFixesPerUpload(), 1e-9);
+        assertEquals(60 * 550, estimate.getBytesPerHour(), 1e-9);
+        // 15 s of CPU at 80 mA and 360 s of radio at 250 mA in half an hour
+        assertEquals((15_000 * 80 + 360_000 * 250) * 2 / (double) HOUR_MS,
+                estimate.getMilliampHoursPerHour(), 1e-9);
+    }
+
+    @Test
+    public void radioTimeIsCappedAtTheSessionLength() {
+        // Uploads every 3 s keep the radio up the whole time, more uploads cannot cost more
+        SharingCostEstimate estimate = SharingCostEstimate.of(HOUR_MS, 0, 0, 1_200, 0);
+        SharingCostEstimate twice = SharingCostEstimate.of(HOUR_MS, 0, 0, 2_400, 0);
+
+        assertEquals(SharingCostEstimate.RADIO_ACTIVE_MA, estimate.getMilliampHoursPerHour(), 1e-9);
+        assertEquals(estimate.getMilliampHoursPerHour(), twice.getMilliampHoursPerHour(), 1e-9);
+    }
+
+    @Test
+    public void emptySessionCostsNothing() {
+        SharingCostEstimate estimate = SharingCostEstimate.of(0, 5, 5, 5, 500);
+
+        assertEquals(0, estimate.getMilliampHoursPerHour(), 0);
+        assertEquals(0, estimate.getFixesPerUpload(), 0);
+    }
+
+    @Test
+    public void batchedDeliveryCostsFarLessThanPerFix() {
+        // One hour at the 3 s interval: every fix wakes the device and is uploaded,
+        // against batches of one minute uploaded in one request each
+        SharingCostEstimate perFix = SharingCostEstimate.of(HOUR_MS, 1_200, 1_200, 1_200,
+                1_200 * SharingCostEstimate.JSON_UPLOAD_BYTES);
+        SharingCostEstimate batched = SharingCostEstimate.of(HOUR_MS, 60, 1_200, 60,
+                60 * SharingCostEstimate.JSON_UPLOAD_BYTES);
+
+        assertEquals(20, batched.getFixesPerUpload(), 1e-9);
+        // The model's numbers, not a measurement; the bound only catches a broken model
+        assertTrue(batched.getMilliampHoursPerHour() < perFix.getMilliampHoursPerHour() / 4);
+        assertTrue(batched.getBytesPerHour() < perFix.getBytesPerHour() / 10);
+    }
+}
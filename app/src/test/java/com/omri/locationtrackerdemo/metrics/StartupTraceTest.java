@@ -0,0 +1,42 @@
+package com.omri.locationtrackerdemo.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StartupTraceTest {
+    private long now = 10_000;
+
+    @Test
+    public void phasesAreRecordedOncePerPath() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.setEnabled(true);
+        StartupTrace trace = new StartupTrace(registry, 9_500, () -> now);
+        trace.setPath(StartupTrace.PATH_RESTORED);
+
+        assertEquals(-1, trace.getPhaseMs(StartupTrace.PHASE_FIRST_MAP_FRAME));
+        now = 10_300;
+        assertTrue(trace.mark(StartupTrace.PHASE_FIRST_MAP_FRAME));
+        now = 11_000;
+        assertFalse(trace.mark(StartupTrace.PHASE_FIRST_MAP_FRAME));
+        assertTrue(trace.mark(StartupTrace.PHASE_FIRST_FIX));
+
+        assertEquals(800, trace.getPhaseMs(StartupTrace.PHASE_FIRST_MAP_FRAME));
+        assertEquals(1_500, trace.getPhaseMs(StartupTrace.PHASE_FIRST_FIX));
+        LatencyHistogram firstFrame = registry.histogram("startup.restored.firstMapFrame");
+        assertEquals(1, firstFrame.getCount());
+        assertEquals(800_000, firstFrame.getMaxMicros(), 800_000 * 0.04);
+        assertEquals(0, registry.histogram("startup.login.firstMapFrame").getCount());
+        assertEquals("startup restored, firstMapFrame 800 ms, firstFix 1500 ms", trace.toString());
+
+        // Too late to change the path once a phase is recorded
+        trace.setPath(StartupTrace.PATH_LOGIN);
+        assertEquals(StartupTrace.PATH_RESTORED, trace.getPath());
+    }
+
+    @Test
+    public void processTraceIsStartedOnce() {
+        StartupTrace first = StartupTrace.startProcess(0, () -> now);
+        assertSame(first, StartupTrace.startProcess(5_000, () -> now));
+    }
+}
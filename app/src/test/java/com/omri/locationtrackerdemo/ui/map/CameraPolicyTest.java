@@ -0,0 +1,122 @@
+package com.omri.locationtrackerdemo.ui.map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CameraPolicyTest {
+    private static final double LAT = 32.0853;
+    private static final double LON = 34.7818;
+    private static final int SCREEN_WIDTH_PX = 400;
+    private static final int SCREEN_HEIGHT_PX = 700;
+
+    /**
+     * Settles the camera like the map would: centered on the move target at the given zoom
+     */
+    private static void settle(CameraPolicy policy, double latitude, double longitude, double zoom) {
+        double worldPx = WebMercator.worldSize(zoom);
+        double x = WebMercator.x(longitude);
+        double y = WebMercator.y(latitude);
+        double halfWidth = SCREEN_WIDTH_PX / 2.0 / worldPx;
+        double halfHeight = SCREEN_HEIGHT_PX / 2.0 / worldPx;
+        policy.onViewport(WebMercator.longitude(x - halfWidth), WebMercator.latitude(y + halfHeight),
+                WebMercator.longitude(x + halfWidth), WebMercator.latitude(y - halfHeight), zoom);
+    }
+
+    /**
+     * Runs the policy until now, applying any move, and returns whether the camera moved
+     */
+    private static boolean run(CameraPolicy policy, long nowMs, double zoom) {
+        CameraPolicy.Move move = policy.takeMove(nowMs);
+        if (move == null) {
+            return false;
+        }
+        settle(policy, move.latitude, move.longitude, Double.isNaN(move.zoom) ? zoom : move.zoom);
+        return true;
+    }
+
+    @Test
+    public void followMovesOnlyWhenLeavingSafeRegion() {
+        CameraPolicy policy = new CameraPolicy();
+        long nowMs = 0;
+        policy.onLocalLocation(LAT, LON, nowMs);
+        CameraPolicy.Move first = policy.takeMove(CameraPolicy.DEFAULT_DEBOUNCE_MS);
+        assertNotNull(first);
+        assertEquals("no viewport yet, street zoom", CameraPolicy.DEFAULT_ZOOM, first.zoom, 0);
+        settle(policy, LAT, LON, 15);
+
+        // Walk north at 1.5 m/s with a fix every 3 s for 20 minutes
+        int fixes = 0;
+        int moves = 1;
+        for (nowMs = 3_000; nowMs <= 1_200_000; nowMs += 3_000) {
+            double north = 1.5 * nowMs / 1000;
+            policy.onLocalLocation(LAT + north / 111_195, LON, nowMs);
+            fixes++;
+            if (run(policy, nowMs + CameraPolicy.DEFAULT_DEBOUNCE_MS, 15)) {
+                moves++;
+            }
+        }
+        // The safe region at zoom 15 is a few hundred meters tall
+        assertTrue(moves + " camera moves for " + fixes + " fixes", moves * 20 < fixes);
+        assertEquals(moves, policy.getMoveCount());
+    }
+
+    @Test
+    public void gestureStopsFollowingUntilModeIsChosenAgain() {
+        CameraPolicy policy = new CameraPolicy();
+        settle(policy, LAT, LON, 15);
+        policy.onUserGesture(0);
+        assertEquals(CameraPolicy.Mode.FREE, policy.getMode());
+        policy.onLocalLocation(LAT + 1, LON, 0);
+        assertEquals(CameraPolicy.NONE, policy.getMoveDueTimeMs());
+        assertNull(policy.takeMove(10_000));
+
+        settle(policy, LAT, LON, 17);
+        policy.setMode(CameraPolicy.Mode.FOLLOW, 20_000);
+        CameraPolicy.Move move = policy.takeMove(20_000 + CameraPolicy.DEFAULT_DEBOUNCE_MS);
+        assertNotNull(move);
+        assertEquals(LAT + 1, move.latitude, 1e-9);
+        assertTrue("user zoom is kept", Double.isNaN(move.zoom));
+    }
+
+    @Test
+    public void burstOfFirstUpdatesMergesIntoOneFit() {
+        CameraPolicy policy = new CameraPolicy();
+        settle(policy, LAT, LON, 15);
+        policy.onRemoteLocation("a", LAT + 0.1, LON, true, 0);
+        policy.onRemoteLocation("b", LAT, LON + 0.1, true, 40);
+        policy.onRemoteLocation("c", LAT - 0.1, LON - 0.1, true, 80);
+        policy.onLocalLocation(LAT, LON, 90);
+        assertEquals(CameraPolicy.Mode.FIT_ALL, policy.getMode());
+        assertNull("still debouncing", policy.takeMove(CameraPolicy.DEFAULT_DEBOUNCE_MS - 1));
+
+        CameraPolicy.Move move = policy.takeMove(CameraPolicy.DEFAULT_DEBOUNCE_MS);
+        assertNotNull(move);
+        assertTrue(move.fitBounds);
+        assertEquals(LAT - 0.1, move.south, 1e-9);
+        assertEquals(LAT + 0.1, move.north, 1e-9);
+        assertEquals(LON - 0.1, move.west, 1e-9);
+        assertEquals(LON + 0.1, move.east, 1e-9);
+        assertEquals("local fixes do not count while fitting", 2, policy.getMergedCount());
+        assertNull(policy.takeMove(10_000));
+    }
+
+    @Test
+    public void movesAreSpacedByMinimumInterval() {
+        CameraPolicy policy = new CameraPolicy(0, 1_000, 0.2);
+        policy.onLocalLocation(LAT, LON, 0);
+        assertNotNull(policy.takeMove(0));
+        policy.onLocalLocation(LAT + 1, LON, 100);
+        assertEquals(1_000, policy.getMoveDueTimeMs());
+        assertNull(policy.takeMove(500));
+        assertNotNull(policy.takeMove(1_000));
+    }
+
+    @Test
+    public void clearingTrackedUsersFallsBackToFollow() {
+        CameraPolicy policy = new CameraPolicy();
+        policy.onRemoteLocation("a", LAT, LON, true, 0);
+        policy.clearRemote();
+        assertEquals(CameraPolicy.Mode.FOLLOW, policy.getMode());
+    }
+}
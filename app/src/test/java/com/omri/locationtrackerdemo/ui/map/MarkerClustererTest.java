@@ -0,0 +1,134 @@
+package com.omri.locationtrackerdemo.ui.map;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MarkerClustererTest {
+    private static final double LAT = 32.0853;
+    private static final double LON = 34.7818;
+
+    private static int totalSize(List<MarkerClusterer.Cluster> clusters) {
+        int total = 0;
+        for (MarkerClusterer.Cluster cluster : clusters) {
+            total += cluster.size();
+        }
+        return total;
+    }
+
+    @Test
+    public void projectionRoundTrips() {
+        assertEquals(0.5, WebMercator.x(0), 1e-12);
+        assertEquals(0.5, WebMercator.y(0), 1e-12);
+        assertEquals(LAT, WebMercator.latitude(WebMercator.y(LAT)), 1e-9);
+        assertEquals(LON, WebMercator.longitude(WebMercator.x(LON)), 1e-9);
+        assertEquals(0, WebMercator.y(90), 1e-9);
+    }
+
+    @Test
+    public void nearbyPointsMergeUntilZoomedIn() {
+        MarkerClusterer clusterer = new MarkerClusterer();
+        clusterer.setZoom(10);
+        // About 100 m apart
+        clusterer.update("a", LAT, LON);
+        clusterer.update("b", LAT + 0.0009, LON);
+        clusterer.update("far", LAT + 1, LON + 1);
+        assertEquals(2, clusterer.getClusterCount());
+
+        List<MarkerClusterer.Cluster> clusters = new ArrayList<>();
+        clusterer.collectAll(clusters);
+        for (MarkerClusterer.Cluster cluster : clusters) {
+            if (cluster.size() == 2) {
+                assertNull(cluster.getSingleId());
+                assertEquals(LAT + 0.00045, cluster.getLatitude(), 1e-6);
+            } else {
+                assertEquals("far", cluster.getSingleId());
+            }
+        }
+
+        assertTrue(clusterer.setZoom(18.5));
+        assertFalse(clusterer.setZoom(18.9));
+        assertEquals(3, clusterer.getClusterCount());
+    }
+
+    @Test
+    public void movingPointsUpdatesClustersIncrementally() {
+        MarkerClusterer clusterer = new MarkerClusterer();
+        clusterer.setZoom(12);
+        clusterer.update("a", LAT, LON);
+        clusterer.update("b", LAT, LON);
+        assertEquals(1, clusterer.getClusterCount());
+
+        clusterer.update("b", LAT + 0.5, LON);
+        assertEquals(2, clusterer.getClusterCount());
+        assertEquals(1, clusterer.getCellMoveCount());
+
+        clusterer.update("b", LAT, LON);
+        clusterer.remove("a");
+        List<MarkerClusterer.Cluster> clusters = new ArrayList<>();
+        clusterer.collectAll(clusters);
+        assertEquals(1, clusters.size());
+        assertEquals("b", clusters.get(0).getSingleId());
+        assertEquals(LON, clusters.get(0).getLongitude(), 1e-9);
+    }
+
+    @Test
+    public void collectReturnsOnlyViewport() {
+        MarkerClusterer clusterer = new MarkerClusterer();
+        clusterer.setZoom(14);
+        clusterer.update("inside", LAT, LON);
+        clusterer.update("outside", LAT + 0.2, LON);
+        clusterer.update("east", 0, 179.99);
+        clusterer.update("west", 0, -179.99);
+
+        List<MarkerClusterer.Cluster> clusters = new ArrayList<>();
+        clusterer.collect(LON - 0.01, LAT - 0.01, LON + 0.01, LAT + 0.01, clusters);
+        assertEquals(1, clusters.size());
+        assertEquals("inside", clusters.get(0).getSingleId());
+
+        clusters.clear();
+        clusterer.collect(179.9, -0.1, -179.9, 0.1, clusters);
+        assertEquals("viewport across the antimeridian", 2, clusters.size());
+    }
+
+    @Test
+    public void reclusterTenThousandPoints() {
+        final int count = 10_000;
+        Random random = new Random(17);
+        String[] ids = new String[count];
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = "user-" + i;
+            // Spread over a metro area of about 40 x 40 km
+            lats[i] = LAT + (random.nextDouble() - 0.5) * 0.36;
+            lons[i] = LON + (random.nextDouble() - 0.5) * 0.42;
+        }
+        MarkerClusterer clusterer = new MarkerClusterer();
+        clusterer.setZoom(13);
+        List<MarkerClusterer.Cluster> visible = new ArrayList<>();
+
+        // Poll ticks moving every user ~10 m, each followed by a zoom change and a viewport query
+        for (int round = 0; round < 30; round++) {
+            for (int i = 0; i < count; i++) {
+                lats[i] += (random.nextDouble() - 0.5) * 0.0002;
+                lons[i] += (random.nextDouble() - 0.5) * 0.0002;
+                clusterer.update(ids[i], lats[i], lons[i]);
+            }
+            clusterer.setZoom(round % 2 == 0 ? 14 : 13);
+            visible.clear();
+            clusterer.collect(LON - 0.02, LAT - 0.035, LON + 0.02, LAT + 0.035, visible);
+        }
+
+        assertEquals(count, clusterer.size());
+        List<MarkerClusterer.Cluster> all = new ArrayList<>();
+        clusterer.collectAll(all);
+        assertEquals(count, totalSize(all));
+        assertTrue("visible clusters are bounded by the screen", visible.size() < 200);
+        assertTrue("small moves mostly stay in their cell", clusterer.getCellMoveCount() < 30L * count / 2);
+    }
+}
@@ -0,0 +1,132 @@
+package com.omri.locationtrackerdemo.ui.map;
+
+import com.omri.locationtrackerdemo.data.history.TrackEncoder;
+import com.omri.locationtrackerdemo.data.history.TrackReader;
+import com.omri.locationtrackerdemo.utils.GeoUtils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MotionPredictorTest {
+    private static final double METERS_PER_DEGREE = 111_195;
+    private static final double LAT = 32.0853;
+    private static final double LON = 34.7818;
+
+    /**
+     * Drive at 8-14 m/s with gentle turns and a stop, one fix per second with a few
+     * meters of noise, the way a phone sharing from a car would record it
+     */
+    private static byte[] drive(int seconds, long seed) {
+        Random random = new Random(seed);
+        TrackEncoder encoder = new TrackEncoder();
+        double north = 0;
+        double east = 0;
+        double heading = 0;
+        double speed = 10;
+        long time = 1_700_000_000_000L;
+        for (int i = 0; i < seconds; i++) {
+            boolean stopped = i > seconds / 2 && i < seconds / 2 + 60;
+            double target = stopped ? 0 : 8 + 6 * (0.5 + 0.5 * Math.sin(i / 40.0));
+            speed += (target - speed) * 0.3;
+            heading += Math.toRadians(3) * Math.sin(i / 25.0) + random.nextGaussian() * 0.02;
+            north += speed * Math.cos(heading);
+            east += speed * Math.sin(heading);
+            double lat = LAT + (north + random.nextGaussian() * 1.5) / METERS_PER_DEGREE;
+            double lon = LON + (east + random.nextGaussian() * 1.5)
+                    / (METERS_PER_DEGREE * Math.cos(Math.toRadians(LAT)));
+            encoder.append(time, lat, lon, 5);
+            time += 1000;
+        }
+        return encoder.toByteArray();
+    }
+
+    private static double offsetLat(double meters) {
+        return LAT + meters / METERS_PER_DEGREE;
+    }
+
+    @Test
+    public void extrapolatesAlongVelocityUpToHorizon() {
+        MotionPredictor predictor = new MotionPredictor(5_000, 0);
+        // 10 m/s due north
+        for (int i = 0; i < 4; i++) {
+            predictor.addFix(offsetLat(i * 30), LON, i * 3_000, i * 3_000);
+        }
+        assertEquals(10, predictor.getSpeedMps(), 0.1);
+
+        double[] out = new double[2];
+        predictor.predict(11_000, out);
+        assertEquals(110, (out[0] - LAT) * METERS_PER_DEGREE, 0.5);
+        assertTrue(predictor.isAnimating(11_000));
+
+        predictor.predict(60_000, out);
+        assertEquals("holds at the horizon", 140, (out[0] - LAT) * METERS_PER_DEGREE, 0.5);
+        assertFalse(predictor.isAnimating(60_000));
+    }
+
+    @Test
+    public void newFixIsBlendedInWithoutJump() {
+        MotionPredictor predictor = new MotionPredictor();
+        for (int i = 0; i < 3; i++) {
+            predictor.addFix(offsetLat(i * 30), LON, i * 3_000, i * 3_000);
+        }
+        double[] before = new double[2];
+        predictor.predict(9_000, before);
+
+        // The user actually stopped short
+        predictor.addFix(offsetLat(65), LON, 9_000, 9_000);
+        double[] after = new double[2];
+        predictor.predict(9_000, after);
+        assertEquals(0, GeoUtils.distanceMeters(before[0], before[1], after[0], after[1]), 0.01);
+        assertTrue(predictor.isAnimating(9_500));
+
+        double[] settled = new double[2];
+        predictor.predict(9_000 + MotionPredictor.DEFAULT_CORRECTION_MS, settled);
+        MotionPredictor uncorrected = new MotionPredictor(MotionPredictor.DEFAULT_MAX_EXTRAPOLATION_MS, 0);
+        for (int i = 0; i < 3; i++) {
+            uncorrected.addFix(offsetLat(i * 30), LON, i * 3_000, i * 3_000);
+        }
+        uncorrected.addFix(offsetLat(65), LON, 9_000, 9_000);
+        double[] expected = new double[2];
+        uncorrected.predict(9_000 + MotionPredictor.DEFAULT_CORRECTION_MS, expected);
+        assertArrayEquals(expected, settled, 1e-9);
+    }
+
+    @Test
+    public void jitterWhileParkedDoesNotMoveMarker() {
+        Random random = new Random(5);
+        MotionPredictor predictor = new MotionPredictor();
+        for (int i = 0; i < 10; i++) {
+            predictor.addFix(offsetLat(random.nextGaussian()), LON, i * 3_000, i * 3_000);
+        }
+        assertEquals(0, predictor.getSpeedMps(), 0);
+        assertFalse(predictor.isAnimating(30_000 + MotionPredictor.DEFAULT_CORRECTION_MS));
+    }
+
+    @Test
+    public void repeatedFixIsIgnored() {
+        MotionPredictor predictor = new MotionPredictor(10_000, 0);
+        predictor.addFix(offsetLat(0), LON, 0, 0);
+        predictor.addFix(offsetLat(30), LON, 3_000, 3_000);
+        predictor.addFix(offsetLat(30), LON, 3_000, 6_000);
+        assertEquals(10, predictor.getSpeedMps(), 0.1);
+    }
+
+    @Test
+    public void predictionBeatsTeleportOnRecordedDrive() throws IOException {
+        TrackReader track = TrackReader.open(drive(900, 11));
+        PredictionReplay.Result result = PredictionReplay.replay(track, new MotionPredictor(), 3_000, 500, 16);
+        assertTrue(result.frameCount > 40_000);
+        assertTrue(result.toString(), result.meanErrorMeters < result.holdMeanErrorMeters / 2);
+        assertTrue(result.toString(), result.p95ErrorMeters < result.holdP95ErrorMeters);
+    }
+
+    @Test
+    public void emptyTrackReplaysToNothing() throws IOException {
+        TrackReader track = TrackReader.open(new TrackEncoder().toByteArray());
+        assertEquals(0, PredictionReplay.replay(track, new MotionPredictor(), 3_000, 0, 16).frameCount);
+    }
+}
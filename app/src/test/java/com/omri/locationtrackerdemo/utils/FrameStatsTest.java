@@ -0,0 +1,61 @@
+package com.omri.locationtrackerdemo.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameStatsTest {
+    private static final long FRAME_NANOS = 16_666_667;
+
+    @Test
+    public void countsJankAboveThreshold() {
+        FrameStats stats = new FrameStats(FRAME_NANOS * 3 / 2);
+        for (int i = 0; i < 95; i++) {
+            stats.record(FRAME_NANOS);
+        }
+        for (int i = 0; i < 5; i++) {
+            stats.record(4 * FRAME_NANOS);
+        }
+
+        assertEquals(100, stats.getCount());
+        assertEquals(5, stats.getJankCount());
+        assertEquals(0.05, stats.getJankRatio(), 1e-9);
+        assertEquals(66.7, stats.getMaxMs(), 0.1);
+    }
+
+    @Test
+    public void percentilesResolveTenthsOfMilliseconds() {
+        FrameStats stats = new FrameStats(Long.MAX_VALUE);
+        for (int i = 1; i <= 100; i++) {
+            stats.record(i * 1_000_000L);
+        }
+
+        assertEquals(50, stats.getPercentileMs(50), 0.15);
+        assertEquals(90, stats.getPercentileMs(90), 0.15);
+        assertEquals(99, stats.getPercentileMs(99), 0.15);
+        assertEquals(100, stats.getPercentileMs(100), 0.15);
+        assertEquals(50.5, stats.getMeanMs(), 1e-9);
+    }
+
+    @Test
+    public void longDurationsAreClampedButKeepMax() {
+        FrameStats stats = new FrameStats(FRAME_NANOS);
+        stats.record(5_000_000_000L);
+
+        assertEquals(5000, stats.getMaxMs(), 1e-9);
+        assertEquals(5000, stats.getPercentileMs(99), 1e-9);
+        assertEquals(1, stats.getJankCount());
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        FrameStats stats = new FrameStats(FRAME_NANOS);
+        stats.record(2 * FRAME_NANOS);
+        stats.reset();
+
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getJankCount());
+        assertEquals(0, stats.getPercentileMs(50), 0);
+        assertTrue(stats.toSummary().startsWith("n=0 "));
+    }
+}
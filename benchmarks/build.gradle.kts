@@ -0,0 +1,77 @@
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+// Plain JVM module: compiles the Android-free classes of :app and benchmarks them with JMH.
+// Run with ./gradlew :benchmarks:jmh, results land in build/results/jmh/results.json
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include(
+                "com/omri/locationtrackerdemo/data/history/**",
+                "com/omri/locationtrackerdemo/data/model/**",
+                "com/omri/locationtrackerdemo/data/spatial/**",
+                "com/omri/locationtrackerdemo/data/wire/**",
+                "com/omri/locationtrackerdemo/data/repository/DeltaUploadPolicy.java",
+                "com/omri/locationtrackerdemo/data/repository/JournalReplayer.java",
+                "com/omri/locationtrackerdemo/data/repository/LocationJournal.java",
+                "com/omri/locationtrackerdemo/data/repository/LocationUploadQueue.java",
+                "com/omri/locationtrackerdemo/data/repository/UploadPolicy.java",
+                "com/omri/locationtrackerdemo/data/session/SessionSnapshot.java",
+                "com/omri/locationtrackerdemo/data/session/SessionStore.java",
+                "com/omri/locationtrackerdemo/managers/AdaptivePollPolicy.java",
+                "com/omri/locationtrackerdemo/managers/BatchLocationPoller.java",
+                "com/omri/locationtrackerdemo/managers/FreshnessTracker.java",
+                "com/omri/locationtrackerdemo/metrics/**",
+                "com/omri/locationtrackerdemo/ui/map/MarkerClusterer.java",
+                "com/omri/locationtrackerdemo/ui/map/MotionPredictor.java",
+                "com/omri/locationtrackerdemo/ui/map/WebMercator.java",
+                "com/omri/locationtrackerdemo/utils/GeoUtils.java"
+            )
+            // Uses android.util.Log
+            exclude("com/omri/locationtrackerdemo/data/history/LocationHistory.java")
+        }
+    }
+}
+
+// Headless fleet load simulator driving the client classes against an in-process backend
+val simulator by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+tasks.register<JavaExec>("simulateFleet") {
+    group = "verification"
+    description = "Runs the fleet load simulator, e.g. -Pfleet.args=\"--sharers 5000 --watchers 1000 --batch\""
+    classpath = simulator.runtimeClasspath
+    mainClass.set("com.omri.locationtrackerdemo.simulator.FleetSimulator")
+    maxHeapSize = "2g"
+    providers.gradleProperty("fleet.args").orNull?.let { args(it.trim().split(Regex("\\s+"))) }
+}
+
+dependencies {
+    jmh(libs.gson)
+    jmh(libs.jmh.core)
+    jmh(libs.jmh.generator.annprocess)
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    warmupIterations.set(3)
+    warmup.set("1s")
+    iterations.set(5)
+    timeOnIteration.set("1s")
+    fork.set(2)
+    // Allocation rate per operation next to the throughput
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    // e.g. ./gradlew :benchmarks:jmh -Pjmh.includes=SpatialIndex
+    providers.gradleProperty("jmh.includes").orNull?.let { includes.add(it) }
+}
@@ -0,0 +1,74 @@
+package com.omri.locationtrackerdemo.benchmarks;
+
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+import com.omri.locationtrackerdemo.data.repository.DeltaUploadPolicy;
+import com.omri.locationtrackerdemo.ui.map.MotionPredictor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-fix filtering before upload and per-frame marker prediction
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FilterBenchmark {
+    private static final int TRACK = 1024;
+
+    private final LocationSample[] walk = new LocationSample[TRACK];
+    private final double[] predicted = new double[2];
+    private DeltaUploadPolicy policy;
+    private MotionPredictor predictor;
+    private int next;
+    private long nowMs;
+
+    @Setup
+    public void setUp() {
+        // A walk at 1.4 m/s with a fix per second and a turn every minute
+        double latitude = 32;
+        double longitude = 34;
+        for (int i = 0; i < TRACK; i++) {
+            boolean north = (i / 60) % 2 == 0;
+            latitude += north ? 1.26e-5 : 0;
+            longitude += north ? 0 : 1.49e-5;
+            walk[i] = new LocationSample(latitude, longitude, 5, 1.4f, north ? 0 : 90,
+                    1_700_000_000_000L + i * 1000L);
+        }
+        policy = new DeltaUploadPolicy();
+        predictor = new MotionPredictor();
+        nowMs = 1_700_000_000_000L;
+        predictor.addFix(32, 34, nowMs, nowMs);
+        predictor.addFix(32.00001, 34, nowMs + 1000, nowMs + 1000);
+    }
+
+    @Benchmark
+    public boolean shouldUpload() {
+        LocationSample sample = walk[next];
+        next = (next + 1) % TRACK;
+        if (next == 0) {
+            policy.reset();
+        }
+        return policy.shouldUpload(sample);
+    }
+
+    /**
+     * One animation frame of a remote marker between fixes
+     */
+    @Benchmark
+    public double[] predict() {
+        nowMs += 16;
+        if (nowMs > 1_700_000_005_000L) {
+            nowMs = 1_700_000_001_000L;
+        }
+        predictor.predict(nowMs, predicted);
+        return predicted;
+    }
+}
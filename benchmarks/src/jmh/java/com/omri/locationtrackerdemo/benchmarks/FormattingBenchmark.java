@@ -0,0 +1,54 @@
+package com.omri.locationtrackerdemo.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text formatting done for every device fix and every upload.
+ * TimeFormatter itself references an Android annotation, so its formatter is rebuilt here
+ * with the same pattern and prefix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FormattingBenchmark {
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss", Locale.US);
+    private double latitude;
+    private double longitude;
+    private Date date;
+
+    @Setup
+    public void setUp() {
+        latitude = 32.0853123;
+        longitude = 34.7818456;
+        date = new Date(1_700_000_000_000L);
+    }
+
+    /**
+     * MapActivity.updateLocationDisplay
+     */
+    @Benchmark
+    public void coordinates(Blackhole blackhole) {
+        blackhole.consume(String.format(Locale.US, "%.6f", latitude));
+        blackhole.consume(String.format(Locale.US, "%.6f", longitude));
+    }
+
+    /**
+     * TimeFormatter.formatTime, called from the upload listener
+     */
+    @Benchmark
+    public String updateTime() {
+        return "Updated: " + timeFormat.format(date);
+    }
+}
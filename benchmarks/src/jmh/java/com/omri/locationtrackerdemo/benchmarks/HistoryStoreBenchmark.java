@@ -0,0 +1,104 @@
+package com.omri.locationtrackerdemo.benchmarks;
+
+import com.omri.locationtrackerdemo.data.history.LocationHistoryStore;
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording fixes into the on-device history and reading back an hour of one user, over
+ * a store holding a day of ten drivers with a fix per second
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HistoryStoreBenchmark {
+    private static final long START = 1_700_000_000_000L;
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final int USERS = 10;
+    private static final int SECONDS = 24 * 3600;
+
+    private final Random random = new Random(3);
+    private File appendDirectory;
+    private File queryDirectory;
+    private LocationHistoryStore appendStore;
+    private LocationHistoryStore queryStore;
+    private long appendTimeMs = START;
+    private double latitude = 32;
+    private double longitude = 34;
+    private int hour;
+
+    @Setup
+    public void setUp() throws IOException {
+        appendDirectory = Files.createTempDirectory("history-append").toFile();
+        queryDirectory = Files.createTempDirectory("history-query").toFile();
+        appendStore = new LocationHistoryStore(appendDirectory);
+        queryStore = new LocationHistoryStore(queryDirectory);
+        double lat = 32;
+        double lon = 34;
+        for (int i = 0; i < SECONDS; i++) {
+            lat += random.nextGaussian() * 3e-5;
+            lon += random.nextGaussian() * 3e-5;
+            for (int u = 0; u < USERS; u++) {
+                queryStore.append("driver-" + u, START + i * 1000L, lat + u * 0.01, lon, 4);
+            }
+        }
+        queryStore.flush();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        appendStore.close();
+        queryStore.close();
+        delete(appendDirectory);
+        delete(queryDirectory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * One remote fix a second later than the last, old partitions are dropped hourly
+     */
+    @Benchmark
+    public long append() throws IOException {
+        latitude += random.nextGaussian() * 3e-5;
+        longitude += random.nextGaussian() * 3e-5;
+        appendTimeMs += 1000;
+        appendStore.append("driver-1", appendTimeMs, latitude, longitude, 4);
+        if ((appendTimeMs - START) % HOUR == 0) {
+            appendStore.deleteBefore(appendTimeMs - HOUR);
+        }
+        return appendTimeMs;
+    }
+
+    /**
+     * An hour of one driver, e.g. for playback
+     */
+    @Benchmark
+    public List<LocationSample> queryHour() throws IOException {
+        long from = START + (hour++ % 23) * HOUR;
+        return queryStore.query("driver-3", from, from + HOUR);
+    }
+}
@@ -0,0 +1,147 @@
+package com.omri.locationtrackerdemo.benchmarks;
+
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+import com.omri.locationtrackerdemo.data.repository.JournalReplayer;
+import com.omri.locationtrackerdemo.data.repository.LocationJournal;
+import com.omri.locationtrackerdemo.data.repository.LocationUploadQueue;
+import com.omri.locationtrackerdemo.data.wire.LocationFrameCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Journaling an outbound fix, and replaying the 100k fix backlog a killed process left
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JournalBenchmark {
+    private static final int BACKLOG = 100_000;
+    // Batch size of LocationRepository's replay
+    private static final int FRAME_FIXES = 500;
+
+    private File appendDirectory;
+    private LocationJournal journal;
+    private int next;
+
+    /**
+     * The backlog left by a killed process. Every replay consumes it, so each one starts
+     * from a fresh copy.
+     */
+    @State(Scope.Thread)
+    public static class Backlog {
+        File template;
+        File directory;
+
+        @Setup
+        public void setUp() throws IOException {
+            template = Files.createTempDirectory("journal-backlog").toFile();
+            directory = Files.createTempDirectory("journal-replay").toFile();
+            LocationJournal writer = new LocationJournal(template,
+                    LocationJournal.DEFAULT_SEGMENT_BYTES, LocationJournal.DEFAULT_MAX_BYTES);
+            for (int i = 1; i <= BACKLOG; i++) {
+                writer.append(fix(i));
+            }
+            writer.close();
+        }
+
+        @Setup(Level.Invocation)
+        public void copy() throws IOException {
+            delete(directory);
+            Files.createDirectories(directory.toPath());
+            File[] files = template.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    Files.copy(file.toPath(), new File(directory, file.getName()).toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            delete(template);
+            delete(directory);
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        appendDirectory = Files.createTempDirectory("journal-append").toFile();
+        journal = new LocationJournal(appendDirectory,
+                LocationJournal.DEFAULT_SEGMENT_BYTES, LocationJournal.DEFAULT_MAX_BYTES);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.close();
+        delete(appendDirectory);
+    }
+
+    private static LocationFix fix(int i) {
+        return new LocationFix("user-1", 32 + i * 1e-5, 34 + i * 1e-5, 1_700_000_000_000L + i * 1000L);
+    }
+
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Old segments are dropped at the disk bound, so the journal stays at its steady size
+     */
+    @Benchmark
+    public LocationFix append() throws IOException {
+        return journal.append(fix(next++));
+    }
+
+    /**
+     * Opening the journal after a restart, including the scan for torn records, and replaying
+     * the backlog as binary frames of the repository's batch size against a server that
+     * accepts every frame, acknowledging each one
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long recover(Backlog backlog) throws IOException {
+        LocationJournal recovered = new LocationJournal(backlog.directory,
+                LocationJournal.DEFAULT_SEGMENT_BYTES, LocationJournal.DEFAULT_MAX_BYTES);
+        long[] frameBytes = new long[1];
+        JournalReplayer replayer = new JournalReplayer(recovered, FRAME_FIXES, (fixes, callback) -> {
+            frameBytes[0] += LocationFrameCodec.encode(fixes).length;
+            callback.onSuccess();
+        });
+        replayer.replay(new LocationUploadQueue.SinkCallback() {
+            @Override
+            public void onSuccess() {
+            }
+
+            @Override
+            public void onError(String error) {
+                throw new IllegalStateException(error);
+            }
+        });
+        recovered.close();
+        if (replayer.getReplayedCount() != BACKLOG) {
+            throw new IllegalStateException("Replayed " + replayer.getReplayedCount());
+        }
+        return frameBytes[0];
+    }
+}
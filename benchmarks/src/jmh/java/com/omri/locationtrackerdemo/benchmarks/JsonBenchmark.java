@@ -0,0 +1,76 @@
+package com.omri.locationtrackerdemo.benchmarks;
+
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gson (de)serialization of the user and location models exchanged with the backend on
+ * every poll, status check and upload. The library's models are Android-only, so stand-ins
+ * with the fields the app reads are used; Gson's cost is driven by the field count and types.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonBenchmark {
+
+    static class User {
+        String id;
+        String username;
+        boolean isActive;
+    }
+
+    static class Location {
+        String userId;
+        double latitude;
+        double longitude;
+    }
+
+    private final Gson gson = new Gson();
+    private User user;
+    private Location location;
+    private String userJson;
+    private String locationJson;
+
+    @Setup
+    public void setUp() {
+        user = new User();
+        user.id = "5f1c2a9e-41f6-4f0e-9a52-d3c1b1f7e6a0";
+        user.username = "driver-17";
+        user.isActive = true;
+        location = new Location();
+        location.userId = user.id;
+        location.latitude = 32.0853123;
+        location.longitude = 34.7818456;
+        userJson = gson.toJson(user);
+        locationJson = gson.toJson(location);
+    }
+
+    @Benchmark
+    public Location parseLocation() {
+        return gson.fromJson(locationJson, Location.class);
+    }
+
+    @Benchmark
+    public String writeLocation() {
+        return gson.toJson(location);
+    }
+
+    @Benchmark
+    public User parseUser() {
+        return gson.fromJson(userJson, User.class);
+    }
+
+    @Benchmark
+    public String writeUser() {
+        return gson.toJson(user);
+    }
+}
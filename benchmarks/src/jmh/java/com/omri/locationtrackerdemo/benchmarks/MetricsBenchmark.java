@@ -0,0 +1,50 @@
+package com.omri.locationtrackerdemo.benchmarks;
+
+import com.omri.locationtrackerdemo.metrics.Counter;
+import com.omri.locationtrackerdemo.metrics.LatencyHistogram;
+import com.omri.locationtrackerdemo.metrics.MetricsRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost a timed backend call pays for its metrics, with the registry off (release builds)
+ * and on (debug builds)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricsBenchmark {
+    @Param({"false", "true"})
+    public boolean enabled;
+
+    private MetricsRegistry registry;
+    private LatencyHistogram latency;
+    private Counter errors;
+
+    @Setup
+    public void setUp() {
+        registry = new MetricsRegistry();
+        registry.setEnabled(enabled);
+        latency = registry.histogram("api.getUserLocation");
+        errors = registry.counter("api.getUserLocation.errors");
+    }
+
+    /**
+     * Timer start, histogram record and an error count, as in LocationRepository
+     */
+    @Benchmark
+    public long timedCall() {
+        latency.recordSince(registry.startTimer());
+        errors.increment();
+        return errors.get();
+    }
+}
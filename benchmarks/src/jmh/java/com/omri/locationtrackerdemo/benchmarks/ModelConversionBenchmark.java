@@ -0,0 +1,78 @@
+package com.omri.locationtrackerdemo.benchmarks;
+
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-fix model conversions on the way from a provider or backend fix to the map.
+ * The tracking library and Maps SDK are Android artifacts, so their Location and LatLng
+ * are replaced by stand-ins with the same shape: two doubles behind getters and a final
+ * two-double value object.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ModelConversionBenchmark {
+
+    static final class RemoteLocation {
+        private final double latitude;
+        private final double longitude;
+
+        RemoteLocation(double latitude, double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        double getLatitude() {
+            return latitude;
+        }
+
+        double getLongitude() {
+            return longitude;
+        }
+    }
+
+    static final class LatLng {
+        final double latitude;
+        final double longitude;
+
+        LatLng(double latitude, double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    private RemoteLocation location;
+    private long timeMs;
+
+    @Setup
+    public void setUp() {
+        location = new RemoteLocation(32.0853, 34.7818);
+        timeMs = 1_700_000_000_000L;
+    }
+
+    /**
+     * MapViewController.updateRemoteUserLocation before the marker update
+     */
+    @Benchmark
+    public LatLng remoteLocationToLatLng() {
+        return new LatLng(location.getLatitude(), location.getLongitude());
+    }
+
+    /**
+     * MapActivity.toSample for every device fix offered to the upload policy
+     */
+    @Benchmark
+    public LocationSample deviceFixToSample() {
+        return new LocationSample(location.getLatitude(), location.getLongitude(), 4.5f, 1.2f, 90f, timeMs);
+    }
+}
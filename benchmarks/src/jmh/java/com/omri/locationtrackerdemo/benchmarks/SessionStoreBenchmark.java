@@ -0,0 +1,77 @@
+package com.omri.locationtrackerdemo.benchmarks;
+
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+import com.omri.locationtrackerdemo.data.session.SessionSnapshot;
+import com.omri.locationtrackerdemo.data.session.SessionStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+/**
+ * Restoring the saved session on the cold start path, and saving it when the activity stops
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SessionStoreBenchmark {
+    private static final String USER_ID = "5f1c2a9e-41f6-4f0e-9a52-d3c1b1f7e6a0";
+    private static final long MAX_AGE_MS = 7 * 24 * 60 * 60 * 1000L;
+
+    private File directory;
+    private SessionStore loadStore;
+    private SessionStore saveStore;
+    private SessionSnapshot snapshot;
+
+    @Setup
+    public void setUp() throws IOException, GeneralSecurityException {
+        directory = Files.createTempDirectory("session").toFile();
+        SecretKey key = KeyGenerator.getInstance("HmacSHA256").generateKey();
+        long now = System.currentTimeMillis();
+        snapshot = new SessionSnapshot(USER_ID, true, new LocationFix(USER_ID, 32.08, 34.78, now), now);
+        loadStore = new SessionStore(new File(directory, "load"), key, MAX_AGE_MS);
+        loadStore.save(snapshot);
+        saveStore = new SessionStore(new File(directory, "save"), key, MAX_AGE_MS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Read and MAC check of the snapshot
+     */
+    @Benchmark
+    public SessionSnapshot load() {
+        return loadStore.load();
+    }
+
+    /**
+     * Write to a temporary file and rename over the snapshot
+     */
+    @Benchmark
+    public void save() throws IOException {
+        saveStore.save(snapshot);
+    }
+}
@@ -0,0 +1,106 @@
+package com.omri.locationtrackerdemo.benchmarks;
+
+import com.omri.locationtrackerdemo.data.spatial.UserPositionIndex;
+import com.omri.locationtrackerdemo.ui.map.MarkerClusterer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Proximity queries and marker clustering over a city-sized population of users
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpatialIndexBenchmark {
+    private static final double CENTER_LAT = 32.08;
+    private static final double CENTER_LON = 34.78;
+
+    @Param({"1000", "50000"})
+    public int users;
+
+    private UserPositionIndex index;
+    private MarkerClusterer clusterer;
+    private final List<MarkerClusterer.Cluster> clusters = new ArrayList<>();
+    private final Random random = new Random(7);
+    private String[] userIds;
+    private long timeMs;
+
+    @Setup
+    public void setUp() {
+        index = new UserPositionIndex();
+        clusterer = new MarkerClusterer();
+        clusterer.setZoom(13);
+        userIds = new String[users];
+        for (int i = 0; i < users; i++) {
+            userIds[i] = "user-" + i;
+            double latitude = CENTER_LAT + random.nextGaussian() * 0.1;
+            double longitude = CENTER_LON + random.nextGaussian() * 0.1;
+            index.update(userIds[i], latitude, longitude, timeMs);
+            clusterer.update(userIds[i], latitude, longitude);
+        }
+    }
+
+    /**
+     * One remote fix moving a user by a few meters
+     */
+    @Benchmark
+    public void update() {
+        int i = random.nextInt(users);
+        UserPositionIndex.Entry entry = index.get(userIds[i]);
+        index.update(userIds[i], entry.latitude + random.nextGaussian() * 5e-5,
+                entry.longitude + random.nextGaussian() * 5e-5, ++timeMs);
+    }
+
+    @Benchmark
+    public List<UserPositionIndex.Neighbor> findWithin500m() {
+        return index.findWithin(CENTER_LAT, CENTER_LON, 500, null);
+    }
+
+    @Benchmark
+    public List<UserPositionIndex.Neighbor> findNearest10() {
+        return index.findNearest(CENTER_LAT, CENTER_LON, 10, 5_000, null);
+    }
+
+    /**
+     * One remote fix moving a marker by a few meters, re-binned if it leaves its cell
+     */
+    @Benchmark
+    public int updateMarker() {
+        int i = random.nextInt(users);
+        UserPositionIndex.Entry entry = index.get(userIds[i]);
+        clusterer.update(userIds[i], entry.latitude + random.nextGaussian() * 5e-5,
+                entry.longitude + random.nextGaussian() * 5e-5);
+        return clusterer.getClusterCount();
+    }
+
+    /**
+     * Rebuilding all clusters for a zoom change
+     */
+    @Benchmark
+    public int rezoom() {
+        clusterer.setZoom(clusterer.getZoomLevel() == 13 ? 14 : 13);
+        return clusterer.getClusterCount();
+    }
+
+    /**
+     * Clusters in the viewport of a phone at zoom 13
+     */
+    @Benchmark
+    public List<MarkerClusterer.Cluster> collectViewport() {
+        clusters.clear();
+        clusterer.collect(CENTER_LON - 0.05, CENTER_LAT - 0.08, CENTER_LON + 0.05, CENTER_LAT + 0.08, clusters);
+        return clusters;
+    }
+}
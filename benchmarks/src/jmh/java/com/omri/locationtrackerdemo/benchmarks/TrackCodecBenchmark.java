@@ -0,0 +1,105 @@
+package com.omri.locationtrackerdemo.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.omri.locationtrackerdemo.data.history.TrackEncoder;
+import com.omri.locationtrackerdemo.data.history.TrackReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of one history block of 256 fixes, a second apart, against a Gson
+ * JSON array of the same fixes as a naive history would persist them
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrackCodecBenchmark {
+    private static final int POINTS = 256;
+    private static final Type JSON_FIXES = new TypeToken<List<JsonFix>>() {}.getType();
+
+    static class JsonFix {
+        long time;
+        double latitude;
+        double longitude;
+        float accuracy;
+    }
+
+    private final long[] times = new long[POINTS];
+    private final double[] latitudes = new double[POINTS];
+    private final double[] longitudes = new double[POINTS];
+    private final TrackEncoder encoder = new TrackEncoder();
+    private final List<JsonFix> jsonFixes = new ArrayList<>(POINTS);
+    private final Gson gson = new Gson();
+    private byte[] block;
+    private String json;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(3);
+        double latitude = 32;
+        double longitude = 34;
+        for (int i = 0; i < POINTS; i++) {
+            latitude += random.nextGaussian() * 3e-5;
+            longitude += random.nextGaussian() * 3e-5;
+            times[i] = 1_700_000_000_000L + i * 1000L;
+            latitudes[i] = latitude;
+            longitudes[i] = longitude;
+            JsonFix fix = new JsonFix();
+            fix.time = times[i];
+            fix.latitude = latitude;
+            fix.longitude = longitude;
+            fix.accuracy = 4;
+            jsonFixes.add(fix);
+        }
+        block = encode();
+        json = encodeJson();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        encoder.clear();
+        for (int i = 0; i < POINTS; i++) {
+            encoder.append(times[i], latitudes[i], longitudes[i], 4);
+        }
+        return encoder.toByteArray();
+    }
+
+    @Benchmark
+    public double decode() throws IOException {
+        TrackReader reader = TrackReader.open(block);
+        double sum = 0;
+        while (reader.next()) {
+            sum += reader.getLatitude() + reader.getLongitude();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public String encodeJson() {
+        return gson.toJson(jsonFixes);
+    }
+
+    @Benchmark
+    public double decodeJson() {
+        List<JsonFix> decoded = gson.fromJson(json, JSON_FIXES);
+        double sum = 0;
+        for (JsonFix fix : decoded) {
+            sum += fix.latitude + fix.longitude;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,126 @@
+package com.omri.locationtrackerdemo.benchmarks;
+
+import com.google.gson.Gson;
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+import com.omri.locationtrackerdemo.data.wire.LocationFrame;
+import com.omri.locationtrackerdemo.data.wire.LocationFrameCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binary location frames against the JSON the same fixes take today: one upload body per
+ * fix, and stream frames of one fix each. Sizes are printed by LocationFrameCodecTest.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WireCodecBenchmark {
+
+    static class Upload {
+        String userId;
+        double latitude;
+        double longitude;
+    }
+
+    static class StreamFrame {
+        long seq;
+        String userId;
+        long timestamp;
+        long serverTime;
+        Location location;
+    }
+
+    static class Location {
+        double latitude;
+        double longitude;
+    }
+
+    /** Fixes per batch: a lone fix, and a full upload batch */
+    @Param({"1", "10"})
+    public int fixes;
+
+    private final Gson gson = new Gson();
+    private final List<LocationFix> batch = new ArrayList<>();
+    private final List<Upload> uploads = new ArrayList<>();
+    private byte[] frame;
+    private String[] jsonFrames;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(5);
+        String userId = "5f1c2a9e-41f6-4f0e-9a52-d3c1b1f7e6a0";
+        double latitude = 32.0853123;
+        double longitude = 34.7818456;
+        jsonFrames = new String[fixes];
+        for (int i = 0; i < fixes; i++) {
+            latitude += random.nextGaussian() * 1e-4;
+            longitude += random.nextGaussian() * 1e-4;
+            long time = 1_700_000_000_000L + i * 3000L;
+            batch.add(new LocationFix(userId, latitude, longitude, time));
+
+            Upload upload = new Upload();
+            upload.userId = userId;
+            upload.latitude = latitude;
+            upload.longitude = longitude;
+            uploads.add(upload);
+
+            StreamFrame streamFrame = new StreamFrame();
+            streamFrame.seq = 48_000 + i;
+            streamFrame.userId = userId;
+            streamFrame.timestamp = time;
+            streamFrame.serverTime = time + 150;
+            streamFrame.location = new Location();
+            streamFrame.location.latitude = latitude;
+            streamFrame.location.longitude = longitude;
+            jsonFrames[i] = gson.toJson(streamFrame);
+        }
+        frame = LocationFrameCodec.encode(batch, 48_000 + fixes, 1_700_000_000_150L);
+    }
+
+    @Benchmark
+    public byte[] encodeFrame() {
+        return LocationFrameCodec.encode(batch);
+    }
+
+    @Benchmark
+    public int encodeJson() {
+        int length = 0;
+        for (Upload upload : uploads) {
+            length += gson.toJson(upload).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public double decodeFrame() throws IOException {
+        LocationFrame decoded = LocationFrameCodec.decode(frame);
+        double sum = 0;
+        for (LocationFix fix : decoded.getFixes()) {
+            sum += fix.getLatitude() + fix.getLongitude();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double decodeJson() {
+        double sum = 0;
+        for (String json : jsonFrames) {
+            StreamFrame decoded = gson.fromJson(json, StreamFrame.class);
+            sum += decoded.location.latitude + decoded.location.longitude;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,229 @@
+package com.omri.locationtrackerdemo.simulator;
+
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+import com.omri.locationtrackerdemo.managers.BatchLocationPoller;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the tracking backend, with the endpoints the app uses:
+ * location upload, single and batch location reads and the user status check.
+ * Like the real backend it keeps only the current position of each user.
+ *
+ * Every request waits half a round trip before it is handled on a backend thread and
+ * another half before its callback runs on the client executor, so the client sees a
+ * network-like delay without any sockets. The round trip is the configured base plus
+ * exponentially distributed jitter, and a share of the requests can be failed.
+ */
+public class FakeTrackingBackend {
+
+    /**
+     * A stored position with the time the device took it and the time the backend received it
+     */
+    public static final class StoredLocation {
+        public final double latitude;
+        public final double longitude;
+        public final long fixTimeMs;
+        public final long serverTimeMs;
+
+        StoredLocation(double latitude, double longitude, long fixTimeMs, long serverTimeMs) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.fixTimeMs = fixTimeMs;
+            this.serverTimeMs = serverTimeMs;
+        }
+    }
+
+    public interface UploadCallback {
+        void onSuccess();
+
+        void onError(String error);
+    }
+
+    private final Map<String, StoredLocation> locations = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> activeUsers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService network;
+    private final Executor clientExecutor;
+    private final long baseRoundTripMicros;
+    private final long jitterMicros;
+    private final double errorRate;
+
+    private final AtomicLong uploadRequests = new AtomicLong();
+    private final AtomicLong locationRequests = new AtomicLong();
+    private final AtomicLong batchRequests = new AtomicLong();
+    private final AtomicLong statusRequests = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+
+    /**
+     * Creates a backend with its own network and handler threads
+     * @param clientExecutor Executor the callbacks run on, standing in for the app's callback thread
+     * @param baseRoundTripMs Fixed part of the round trip
+     * @param jitterMs Mean of the exponentially distributed extra round trip time
+     * @param errorRate Share of requests failed with an error, 0 to 1
+     * @param threads Number of backend threads
+     */
+    public FakeTrackingBackend(Executor clientExecutor, double baseRoundTripMs, double jitterMs,
+                               double errorRate, int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            Thread thread = new Thread(runnable, "FakeBackend-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.network = executor;
+        this.clientExecutor = clientExecutor;
+        this.baseRoundTripMicros = (long) (baseRoundTripMs * 1000);
+        this.jitterMicros = (long) (jitterMs * 1000);
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Registers a user as sharing, so status checks report it active
+     */
+    public void registerUser(String userId) {
+        activeUsers.put(userId, true);
+    }
+
+    /**
+     * Stores the latest fix of a user, like the location update endpoint
+     */
+    public void updateLocation(LocationFix fix, UploadCallback callback) {
+        uploadRequests.incrementAndGet();
+        exchange(() -> {
+            locations.put(fix.getUserId(), new StoredLocation(fix.getLatitude(), fix.getLongitude(),
+                    fix.getTimestampMs(), System.currentTimeMillis()));
+            return Boolean.TRUE;
+        }, new BatchLocationPoller.Callback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean result) {
+                callback.onSuccess();
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        });
+    }
+
+    /**
+     * Reads the current position of a user, failing like the backend for users without one
+     */
+    public void getUserLocation(String userId, BatchLocationPoller.Callback<StoredLocation> callback) {
+        locationRequests.incrementAndGet();
+        exchange(() -> locations.get(userId), callback);
+    }
+
+    /**
+     * Reads the current positions of several users with one request
+     */
+    public void getUserLocations(List<String> userIds, BatchLocationPoller.BatchCallback<StoredLocation> callback) {
+        batchRequests.incrementAndGet();
+        exchange(() -> {
+            Map<String, StoredLocation> results = new HashMap<>();
+            for (String userId : userIds) {
+                StoredLocation location = locations.get(userId);
+                if (location != null) {
+                    results.put(userId, location);
+                }
+            }
+            return results;
+        }, new BatchLocationPoller.Callback<Map<String, StoredLocation>>() {
+            @Override
+            public void onSuccess(Map<String, StoredLocation> results) {
+                callback.onSuccess(results);
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        });
+    }
+
+    /**
+     * Reports whether a user is sharing
+     */
+    public void getUserStatus(String userId, BatchLocationPoller.Callback<Boolean> callback) {
+        statusRequests.incrementAndGet();
+        exchange(() -> activeUsers.getOrDefault(userId, false), callback);
+    }
+
+    private interface Handler<T> {
+        /**
+         * @return The response, or null for "not found"
+         */
+        T handle();
+    }
+
+    /**
+     * Runs the handler half a round trip after the request and delivers its response
+     * to the client executor after the other half
+     */
+    private <T> void exchange(Handler<T> handler, BatchLocationPoller.Callback<T> callback) {
+        long halfRoundTrip = roundTripMicros() / 2;
+        try {
+            network.schedule(() -> {
+                final T result = handler.handle();
+                final boolean failed = errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+                network.schedule(() -> clientExecutor.execute(() -> {
+                    if (failed) {
+                        failedRequests.incrementAndGet();
+                        callback.onError("Injected backend error");
+                    } else if (result == null) {
+                        callback.onError("Not found");
+                    } else {
+                        callback.onSuccess(result);
+                    }
+                }), halfRoundTrip, TimeUnit.MICROSECONDS);
+            }, halfRoundTrip, TimeUnit.MICROSECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shut down, the request never completes like on a dropped connection
+        }
+    }
+
+    private long roundTripMicros() {
+        if (jitterMicros == 0) {
+            return baseRoundTripMicros;
+        }
+        Random random = ThreadLocalRandom.current();
+        return baseRoundTripMicros + (long) (-Math.log(1 - random.nextDouble()) * jitterMicros);
+    }
+
+    public long getUploadRequests() {
+        return uploadRequests.get();
+    }
+
+    public long getLocationRequests() {
+        return locationRequests.get();
+    }
+
+    public long getBatchRequests() {
+        return batchRequests.get();
+    }
+
+    public long getStatusRequests() {
+        return statusRequests.get();
+    }
+
+    public long getFailedRequests() {
+        return failedRequests.get();
+    }
+
+    public void shutdown() {
+        network.shutdownNow();
+    }
+}
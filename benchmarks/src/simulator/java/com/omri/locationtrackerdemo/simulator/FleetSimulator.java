@@ -0,0 +1,293 @@
+package com.omri.locationtrackerdemo.simulator;
+
+import com.omri.locationtrackerdemo.metrics.LatencyHistogram;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless load simulation of a fleet of app instances against a {@link FakeTrackingBackend}.
+ * Sharers upload along generated routes and watchers poll a random subset of them, both through
+ * the app's own upload queue, upload filter, poller, poll policy and freshness tracker, so the
+ * traffic has the app's shape: 3 s fixes, batched single-flight uploads, adaptive polling.
+ *
+ * After a warm-up the run reports the request rate per endpoint, client-side latency
+ * percentiles, how old fixes are when watchers receive them, the CPU time and allocation
+ * of the client threads per virtual device, and the heap the fleet and its fake backend
+ * retain per device once stopped.
+ *
+ * Usage: {@code ./gradlew :benchmarks:simulateFleet -Pfleet.args="--sharers 5000 --watchers 1000"}
+ * <ul>
+ *     <li>--sharers N: devices sharing their location (1000)</li>
+ *     <li>--watchers N: devices tracking others (200)</li>
+ *     <li>--tracked N: users each watcher tracks (5)</li>
+ *     <li>--duration S: measured seconds (60)</li>
+ *     <li>--warmup S: seconds before measuring (15)</li>
+ *     <li>--rtt MS: base round trip to the backend (40)</li>
+ *     <li>--jitter MS: mean extra round trip (20)</li>
+ *     <li>--errors RATE: share of failed requests, 0 to 1 (0)</li>
+ *     <li>--threads N: client threads (available processors)</li>
+ *     <li>--batch: watchers use the batch endpoint instead of single reads</li>
+ * </ul>
+ */
+public class FleetSimulator {
+    private static final double CENTER_LATITUDE = 32.08;
+    private static final double CENTER_LONGITUDE = 34.78;
+    private static final double AREA_METERS = 10_000;
+    private static final int HEAP_GC_PASSES = 5;
+
+    private int sharerCount = 1000;
+    private int watcherCount = 200;
+    private int trackedPerWatcher = 5;
+    private long durationSeconds = 60;
+    private long warmupSeconds = 15;
+    private double roundTripMs = 40;
+    private double jitterMs = 20;
+    private double errorRate;
+    private int clientThreads = Runtime.getRuntime().availableProcessors();
+    private boolean batch;
+
+    public static void main(String[] args) throws InterruptedException {
+        FleetSimulator simulator = new FleetSimulator();
+        simulator.parse(args);
+        simulator.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--batch")) {
+                batch = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--sharers":
+                    sharerCount = Integer.parseInt(value);
+                    break;
+                case "--watchers":
+                    watcherCount = Integer.parseInt(value);
+                    break;
+                case "--tracked":
+                    trackedPerWatcher = Integer.parseInt(value);
+                    break;
+                case "--duration":
+                    durationSeconds = Long.parseLong(value);
+                    break;
+                case "--warmup":
+                    warmupSeconds = Long.parseLong(value);
+                    break;
+                case "--rtt":
+                    roundTripMs = Double.parseDouble(value);
+                    break;
+                case "--jitter":
+                    jitterMs = Double.parseDouble(value);
+                    break;
+                case "--errors":
+                    errorRate = Double.parseDouble(value);
+                    break;
+                case "--threads":
+                    clientThreads = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (sharerCount < 1 || watcherCount < 0 || trackedPerWatcher < 1 || durationSeconds < 1
+                || clientThreads < 1) {
+            throw new IllegalArgumentException("Counts and duration must be positive");
+        }
+    }
+
+    private void run() throws InterruptedException {
+        long heapBefore = usedHeapAfterGc();
+        List<Thread> threads = new ArrayList<>();
+        AtomicInteger threadCount = new AtomicInteger();
+        // Stands in for every device's main and upload threads
+        ScheduledThreadPoolExecutor client = new ScheduledThreadPoolExecutor(clientThreads, runnable -> {
+            Thread thread = new Thread(runnable, "FleetClient-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            synchronized (threads) {
+                threads.add(thread);
+            }
+            return thread;
+        });
+        client.prestartAllCoreThreads();
+        FakeTrackingBackend backend = new FakeTrackingBackend(client, roundTripMs, jitterMs, errorRate,
+                Math.max(2, clientThreads / 2));
+        FleetStats stats = new FleetStats();
+        Random random = new Random(42);
+
+        List<VirtualSharer> sharers = new ArrayList<>(sharerCount);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < sharerCount; i++) {
+            sharers.add(new VirtualSharer("sharer-" + i, new SimulatedRoute(new Random(random.nextLong()),
+                    CENTER_LATITUDE, CENTER_LONGITUDE, AREA_METERS, speedMps(random), now),
+                    backend, client, stats));
+        }
+        List<VirtualWatcher> watchers = new ArrayList<>(watcherCount);
+        for (int i = 0; i < watcherCount; i++) {
+            List<String> tracked = new ArrayList<>(trackedPerWatcher);
+            for (int j = 0; j < trackedPerWatcher; j++) {
+                tracked.add(sharers.get(random.nextInt(sharerCount)).getUserId());
+            }
+            watchers.add(new VirtualWatcher(tracked, backend, client, stats, batch));
+        }
+
+        System.out.printf(Locale.US, "Fleet: %d sharers, %d watchers x %d users, %s polling, RTT %.0f+%.0f ms, "
+                        + "%.1f%% errors, %d client threads%n", sharerCount, watcherCount, trackedPerWatcher,
+                batch ? "batch" : "fan-out", roundTripMs, jitterMs, errorRate * 100, clientThreads);
+        for (VirtualSharer sharer : sharers) {
+            sharer.start(random.nextInt((int) VirtualSharer.FIX_INTERVAL_MS));
+        }
+        // Watchers start once the first uploads are stored
+        for (VirtualWatcher watcher : watchers) {
+            watcher.start(VirtualSharer.FIX_INTERVAL_MS + random.nextInt(1000));
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+        stats.reset();
+        long[] requestsBefore = requestCounts(backend);
+        long[] cpuBefore = threadTotals(threads);
+        long startNanos = System.nanoTime();
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long[] cpuAfter = threadTotals(threads);
+        long[] requestsAfter = requestCounts(backend);
+        client.shutdownNow();
+        backend.shutdown();
+        client.awaitTermination(5, TimeUnit.SECONDS);
+        // Sharers, watchers and backend are still used below, so they are all measured
+        long heapAfter = usedHeapAfterGc();
+
+        long skipped = 0;
+        for (VirtualWatcher watcher : watchers) {
+            skipped += watcher.getPoller().getSkippedCount();
+        }
+        long coalesced = 0;
+        for (VirtualSharer sharer : sharers) {
+            coalesced += sharer.getUploadQueue().getCoalescedCount();
+        }
+        report(stats, requestsBefore, requestsAfter, cpuBefore, cpuAfter, elapsedNanos,
+                heapAfter - heapBefore, skipped, coalesced, backend.getFailedRequests());
+    }
+
+    /**
+     * A third of the devices is parked, the rest walk or drive
+     */
+    private static double speedMps(Random random) {
+        switch (random.nextInt(3)) {
+            case 0:
+                return 0;
+            case 1:
+                return 1.4;
+            default:
+                return 12;
+        }
+    }
+
+    private static long[] requestCounts(FakeTrackingBackend backend) {
+        return new long[]{backend.getUploadRequests(), backend.getLocationRequests(),
+                backend.getBatchRequests(), backend.getStatusRequests()};
+    }
+
+    /**
+     * @return Total CPU nanoseconds and allocated bytes of the threads, -1 where unsupported
+     */
+    private static long[] threadTotals(List<Thread> threads) {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean extended = bean instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) bean : null;
+        long cpu = bean.isThreadCpuTimeSupported() ? 0 : -1;
+        long allocated = extended != null && extended.isThreadAllocatedMemorySupported() ? 0 : -1;
+        synchronized (threads) {
+            for (Thread thread : threads) {
+                if (cpu >= 0) {
+                    cpu += Math.max(0, bean.getThreadCpuTime(thread.getId()));
+                }
+                if (allocated >= 0) {
+                    allocated += Math.max(0, extended.getThreadAllocatedBytes(thread.getId()));
+                }
+            }
+        }
+        return new long[]{cpu, allocated};
+    }
+
+    /**
+     * @return The least used heap seen over several collections, so that garbage a single
+     *         collection left behind does not count as retained
+     */
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < HEAP_GC_PASSES; i++) {
+            System.gc();
+            least = Math.min(least, memory.getHeapMemoryUsage().getUsed());
+        }
+        return least;
+    }
+
+    private void report(FleetStats stats, long[] requestsBefore, long[] requestsAfter, long[] cpuBefore,
+                        long[] cpuAfter, long elapsedNanos, long retainedHeap, long skippedPolls,
+                        long coalescedFixes, long injectedErrors) {
+        double seconds = elapsedNanos / 1e9;
+        int devices = sharerCount + watcherCount;
+        String[] endpoints = {"upload", "location", "batch", "status"};
+        long total = 0;
+        StringBuilder rates = new StringBuilder();
+        for (int i = 0; i < endpoints.length; i++) {
+            long count = requestsAfter[i] - requestsBefore[i];
+            total += count;
+            rates.append(String.format(Locale.US, ", %s %.1f", endpoints[i], count / seconds));
+        }
+        System.out.printf(Locale.US, "Measured %.1f s after %d s warm-up%n", seconds, warmupSeconds);
+        System.out.printf(Locale.US, "Requests/s: total %.1f%s (%.3f per device)%n", total / seconds, rates,
+                total / seconds / devices);
+        printLatency("Upload latency", stats.uploadLatency);
+        printLatency("Location latency", stats.locationLatency);
+        printLatency("Status latency", stats.statusLatency);
+        printLatency("Staleness at watcher", stats.staleness);
+
+        long fixes = stats.fixes.get();
+        System.out.printf(Locale.US, "Fixes: %d, %.1f%% suppressed by the upload policy, %d coalesced in queues, "
+                        + "%d failed uploads%n", fixes, fixes == 0 ? 0 : 100.0 * stats.suppressedFixes.get() / fixes,
+                coalescedFixes, stats.failedUploads.get());
+        System.out.printf(Locale.US, "Updates: %d delivered, %d out of order, %d failed polls, %d skipped polls, "
+                        + "%d injected errors%n", stats.deliveredUpdates.get(), stats.rejectedUpdates.get(),
+                stats.failedPolls.get(), skippedPolls, injectedErrors);
+        if (cpuBefore[0] >= 0) {
+            double cpuMsPerDeviceMinute = (cpuAfter[0] - cpuBefore[0]) / 1e6 / devices / (seconds / 60);
+            System.out.printf(Locale.US, "Client CPU: %.2f ms per device-minute, %.2f cores for the fleet%n",
+                    cpuMsPerDeviceMinute, (cpuAfter[0] - cpuBefore[0]) / 1e9 / seconds);
+        }
+        if (cpuBefore[1] >= 0) {
+            System.out.printf(Locale.US, "Client allocation: %.1f KB per device-minute%n",
+                    (cpuAfter[1] - cpuBefore[1]) / 1024.0 / devices / (seconds / 60));
+        }
+        if (retainedHeap > 0) {
+            System.out.printf(Locale.US, "Fleet heap: %.1f KB retained per device%n", retainedHeap / 1024.0 / devices);
+        } else {
+            // The collector did not settle, e.g. a fleet too small to stand out
+            System.out.println("Fleet heap: not measurable in this run");
+        }
+    }
+
+    private static void printLatency(String name, LatencyHistogram histogram) {
+        System.out.printf(Locale.US, "%s ms: p50 %.1f, p99 %.1f, max %.1f (%d samples)%n", name,
+                histogram.getPercentileMicros(50) / 1000.0, histogram.getPercentileMicros(99) / 1000.0,
+                histogram.getMaxMicros() / 1000.0, histogram.getCount());
+    }
+}
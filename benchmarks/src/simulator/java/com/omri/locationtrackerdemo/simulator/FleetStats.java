@@ -0,0 +1,37 @@
+package com.omri.locationtrackerdemo.simulator;
+
+import com.omri.locationtrackerdemo.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measurements shared by all virtual devices of a run. Latencies are client-side, from
+ * issuing a request to its callback running on the client executor.
+ */
+class FleetStats {
+    final LatencyHistogram uploadLatency = new LatencyHistogram();
+    final LatencyHistogram locationLatency = new LatencyHistogram();
+    final LatencyHistogram statusLatency = new LatencyHistogram();
+    /** Age of a fix when a watcher receives it, device clock and watcher clock are the same here */
+    final LatencyHistogram staleness = new LatencyHistogram();
+
+    final AtomicLong fixes = new AtomicLong();
+    final AtomicLong suppressedFixes = new AtomicLong();
+    final AtomicLong failedUploads = new AtomicLong();
+    final AtomicLong deliveredUpdates = new AtomicLong();
+    final AtomicLong rejectedUpdates = new AtomicLong();
+    final AtomicLong failedPolls = new AtomicLong();
+
+    void reset() {
+        uploadLatency.reset();
+        locationLatency.reset();
+        statusLatency.reset();
+        staleness.reset();
+        fixes.set(0);
+        suppressedFixes.set(0);
+        failedUploads.set(0);
+        deliveredUpdates.set(0);
+        rejectedUpdates.set(0);
+        failedPolls.set(0);
+    }
+}
@@ -0,0 +1,105 @@
+package com.omri.locationtrackerdemo.simulator;
+
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+
+import java.util.Random;
+
+/**
+ * Generated movement of one virtual device: it travels at a constant speed between random
+ * waypoints within a city-sized area, or stays parked. Fixes carry GPS-like noise, so parked
+ * devices jitter by a few meters like real ones and exercise the upload and poll filters.
+ */
+public class SimulatedRoute {
+    private static final double METERS_PER_DEGREE = 111_320;
+    private static final double NOISE_METERS = 3;
+    private static final double WAYPOINT_RANGE_METERS = 2_000;
+
+    private final Random random;
+    private final double centerLatitude;
+    private final double centerLongitude;
+    private final double areaMeters;
+    private final double speedMps;
+    private double latitude;
+    private double longitude;
+    private double targetLatitude;
+    private double targetLongitude;
+    private double bearing;
+    private long lastTimeMs;
+
+    /**
+     * Places the device at a random point of the area
+     * @param random Source of the waypoints and noise, owned by this route
+     * @param centerLatitude Center of the area
+     * @param centerLongitude Center of the area
+     * @param areaMeters Half the side of the square area
+     * @param speedMps Travel speed, 0 for a parked device
+     * @param startTimeMs Time of the first fix
+     */
+    public SimulatedRoute(Random random, double centerLatitude, double centerLongitude, double areaMeters,
+                          double speedMps, long startTimeMs) {
+        this.random = random;
+        this.centerLatitude = centerLatitude;
+        this.centerLongitude = centerLongitude;
+        this.areaMeters = areaMeters;
+        this.speedMps = speedMps;
+        this.latitude = centerLatitude + offsetDegrees(areaMeters);
+        this.longitude = centerLongitude + offsetDegrees(areaMeters) / cosLatitude();
+        this.lastTimeMs = startTimeMs;
+        pickWaypoint();
+    }
+
+    /**
+     * Moves the device to the given time and returns a noisy fix of its position
+     * @param timeMs Time of the fix, not before the previous one
+     */
+    public LocationSample next(long timeMs) {
+        double seconds = Math.max(0, timeMs - lastTimeMs) / 1000.0;
+        lastTimeMs = timeMs;
+        double remaining = speedMps * seconds;
+        while (remaining > 0) {
+            double northMeters = (targetLatitude - latitude) * METERS_PER_DEGREE;
+            double eastMeters = (targetLongitude - longitude) * METERS_PER_DEGREE * cosLatitude();
+            double distance = Math.hypot(northMeters, eastMeters);
+            if (distance <= remaining) {
+                latitude = targetLatitude;
+                longitude = targetLongitude;
+                remaining -= distance;
+                pickWaypoint();
+            } else {
+                bearing = (Math.toDegrees(Math.atan2(eastMeters, northMeters)) + 360) % 360;
+                latitude += northMeters / distance * remaining / METERS_PER_DEGREE;
+                longitude += eastMeters / distance * remaining / (METERS_PER_DEGREE * cosLatitude());
+                remaining = 0;
+            }
+        }
+        double noiseLatitude = random.nextGaussian() * NOISE_METERS / METERS_PER_DEGREE;
+        double noiseLongitude = random.nextGaussian() * NOISE_METERS / (METERS_PER_DEGREE * cosLatitude());
+        return new LocationSample(latitude + noiseLatitude, longitude + noiseLongitude, (float) NOISE_METERS,
+                (float) speedMps, (float) bearing, timeMs);
+    }
+
+    public double getSpeedMps() {
+        return speedMps;
+    }
+
+    private void pickWaypoint() {
+        double north = Math.max(-areaMeters, Math.min(areaMeters,
+                (latitude - centerLatitude) * METERS_PER_DEGREE + offsetMeters(WAYPOINT_RANGE_METERS)));
+        double east = Math.max(-areaMeters, Math.min(areaMeters,
+                (longitude - centerLongitude) * METERS_PER_DEGREE * cosLatitude() + offsetMeters(WAYPOINT_RANGE_METERS)));
+        targetLatitude = centerLatitude + north / METERS_PER_DEGREE;
+        targetLongitude = centerLongitude + east / (METERS_PER_DEGREE * cosLatitude());
+    }
+
+    private double offsetMeters(double range) {
+        return (random.nextDouble() * 2 - 1) * range;
+    }
+
+    private double offsetDegrees(double rangeMeters) {
+        return offsetMeters(rangeMeters) / METERS_PER_DEGREE;
+    }
+
+    private double cosLatitude() {
+        return Math.cos(Math.toRadians(centerLatitude));
+    }
+}
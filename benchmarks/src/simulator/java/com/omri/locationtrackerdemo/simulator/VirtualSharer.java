@@ -0,0 +1,87 @@
+package com.omri.locationtrackerdemo.simulator;
+
+import com.omri.locationtrackerdemo.data.model.LocationFix;
+import com.omri.locationtrackerdemo.data.model.LocationSample;
+import com.omri.locationtrackerdemo.data.repository.DeltaUploadPolicy;
+import com.omri.locationtrackerdemo.data.repository.LocationUploadQueue;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A device sharing its location the way LocationRepository does: a fix every
+ * {@link #FIX_INTERVAL_MS}, filtered by a {@link DeltaUploadPolicy} and uploaded through a
+ * {@link LocationUploadQueue} that sends the newest fix of each batch.
+ */
+class VirtualSharer {
+    /** LocationManager's update interval */
+    static final long FIX_INTERVAL_MS = 3000;
+    // Same batching as LocationRepository
+    private static final int UPLOAD_BATCH_SIZE = 10;
+    private static final long UPLOAD_MAX_DELAY_MS = 1000;
+
+    private final String userId;
+    private final SimulatedRoute route;
+    private final FakeTrackingBackend backend;
+    private final ScheduledExecutorService client;
+    private final FleetStats stats;
+    private final DeltaUploadPolicy uploadPolicy = new DeltaUploadPolicy();
+    private final LocationUploadQueue uploadQueue;
+
+    VirtualSharer(String userId, SimulatedRoute route, FakeTrackingBackend backend,
+                  ScheduledExecutorService client, FleetStats stats) {
+        this.userId = userId;
+        this.route = route;
+        this.backend = backend;
+        this.client = client;
+        this.stats = stats;
+        this.uploadQueue = new LocationUploadQueue(this::upload, UPLOAD_BATCH_SIZE, UPLOAD_MAX_DELAY_MS, client);
+    }
+
+    /**
+     * Starts producing fixes
+     * @param phaseMs Delay of the first fix, so devices do not fire in lockstep
+     */
+    void start(long phaseMs) {
+        backend.registerUser(userId);
+        client.scheduleAtFixedRate(this::onFix, phaseMs, FIX_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void onFix() {
+        LocationSample sample = route.next(System.currentTimeMillis());
+        stats.fixes.incrementAndGet();
+        if (uploadPolicy.shouldUpload(sample)) {
+            uploadQueue.enqueue(new LocationFix(userId, sample.getLatitude(), sample.getLongitude(),
+                    sample.getTimestampMs()));
+        } else {
+            stats.suppressedFixes.incrementAndGet();
+        }
+    }
+
+    private void upload(List<LocationFix> fixes, LocationUploadQueue.SinkCallback callback) {
+        final long startNanos = System.nanoTime();
+        backend.updateLocation(fixes.get(fixes.size() - 1), new FakeTrackingBackend.UploadCallback() {
+            @Override
+            public void onSuccess() {
+                stats.uploadLatency.recordNanos(System.nanoTime() - startNanos);
+                callback.onSuccess();
+            }
+
+            @Override
+            public void onError(String error) {
+                stats.uploadLatency.recordNanos(System.nanoTime() - startNanos);
+                stats.failedUploads.incrementAndGet();
+                callback.onError(error);
+            }
+        });
+    }
+
+    String getUserId() {
+        return userId;
+    }
+
+    LocationUploadQueue getUploadQueue() {
+        return uploadQueue;
+    }
+}
@@ -0,0 +1,169 @@
+package com.omri.locationtrackerdemo.simulator;
+
+import com.omri.locationtrackerdemo.managers.AdaptivePollPolicy;
+import com.omri.locationtrackerdemo.managers.BatchLocationPoller;
+import com.omri.locationtrackerdemo.managers.FreshnessTracker;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A device tracking other users the way RemoteTrackingManager does: each user's status is
+ * checked before it is polled, polls run through a {@link BatchLocationPoller} ticking every
+ * {@link AdaptivePollPolicy#getMinIntervalMs()} with the policy deciding who is due, updates
+ * pass a {@link FreshnessTracker}, and a failed poll triggers a status re-check.
+ */
+class VirtualWatcher {
+    private final List<String> trackedUserIds;
+    private final FakeTrackingBackend backend;
+    private final ScheduledExecutorService client;
+    private final FleetStats stats;
+    private final AdaptivePollPolicy pollPolicy = new AdaptivePollPolicy();
+    private final FreshnessTracker freshnessTracker = new FreshnessTracker();
+    private final BatchLocationPoller<FakeTrackingBackend.StoredLocation> poller;
+    private final Set<String> statusChecksInFlight = Collections.synchronizedSet(new HashSet<>());
+
+    /**
+     * @param batch Whether the poller uses the batch endpoint instead of fanning out single reads
+     */
+    VirtualWatcher(List<String> trackedUserIds, FakeTrackingBackend backend, ScheduledExecutorService client,
+                   FleetStats stats, boolean batch) {
+        this.trackedUserIds = trackedUserIds;
+        this.backend = backend;
+        this.client = client;
+        this.stats = stats;
+        this.poller = new BatchLocationPoller<>(this::fetch, batch ? this::fetchBatch : null,
+                BatchLocationPoller.DEFAULT_MAX_CONCURRENT_REQUESTS, BatchLocationPoller.DEFAULT_MAX_BATCH_SIZE,
+                new BatchLocationPoller.Listener<FakeTrackingBackend.StoredLocation>() {
+                    @Override
+                    public void onLocation(String userId, FakeTrackingBackend.StoredLocation location) {
+                        deliver(userId, location);
+                    }
+
+                    @Override
+                    public void onError(String userId, String error) {
+                        stats.failedPolls.incrementAndGet();
+                        refreshUserStatus(userId);
+                    }
+
+                    @Override
+                    public void onFinished(String userId) {
+                        pollPolicy.onPolled(userId, monotonicMs());
+                    }
+                });
+    }
+
+    /**
+     * Checks the status of every tracked user and starts ticking
+     * @param phaseMs Delay of the first tick, so devices do not fire in lockstep
+     */
+    void start(long phaseMs) {
+        for (String userId : trackedUserIds) {
+            final long startNanos = System.nanoTime();
+            backend.getUserStatus(userId, new BatchLocationPoller.Callback<Boolean>() {
+                @Override
+                public void onSuccess(Boolean active) {
+                    stats.statusLatency.recordNanos(System.nanoTime() - startNanos);
+                    if (active) {
+                        pollPolicy.reset(userId);
+                        pollPolicy.onStatus(userId, true, monotonicMs());
+                        poller.addUser(userId);
+                    }
+                }
+
+                @Override
+                public void onError(String error) {
+                    stats.statusLatency.recordNanos(System.nanoTime() - startNanos);
+                }
+            });
+        }
+        client.scheduleWithFixedDelay(this::tick, phaseMs, pollPolicy.getMinIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    private void tick() {
+        if (!poller.isEmpty()) {
+            poller.pollTick(userId -> pollPolicy.isDue(userId, monotonicMs()));
+        }
+    }
+
+    private void fetch(String userId, BatchLocationPoller.Callback<FakeTrackingBackend.StoredLocation> callback) {
+        final long startNanos = System.nanoTime();
+        backend.getUserLocation(userId, new BatchLocationPoller.Callback<FakeTrackingBackend.StoredLocation>() {
+            @Override
+            public void onSuccess(FakeTrackingBackend.StoredLocation location) {
+                stats.locationLatency.recordNanos(System.nanoTime() - startNanos);
+                callback.onSuccess(location);
+            }
+
+            @Override
+            public void onError(String error) {
+                stats.locationLatency.recordNanos(System.nanoTime() - startNanos);
+                callback.onError(error);
+            }
+        });
+    }
+
+    private void fetchBatch(List<String> userIds,
+                            BatchLocationPoller.BatchCallback<FakeTrackingBackend.StoredLocation> callback) {
+        final long startNanos = System.nanoTime();
+        backend.getUserLocations(userIds, new BatchLocationPoller.BatchCallback<FakeTrackingBackend.StoredLocation>() {
+            @Override
+            public void onSuccess(Map<String, FakeTrackingBackend.StoredLocation> results) {
+                stats.locationLatency.recordNanos(System.nanoTime() - startNanos);
+                callback.onSuccess(results);
+            }
+
+            @Override
+            public void onError(String error) {
+                stats.locationLatency.recordNanos(System.nanoTime() - startNanos);
+                callback.onError(error);
+            }
+        });
+    }
+
+    private void deliver(String userId, FakeTrackingBackend.StoredLocation location) {
+        long nowMs = System.currentTimeMillis();
+        if (freshnessTracker.onUpdate(userId, location.fixTimeMs, location.serverTimeMs, nowMs)
+                == FreshnessTracker.REJECTED) {
+            stats.rejectedUpdates.incrementAndGet();
+            return;
+        }
+        stats.deliveredUpdates.incrementAndGet();
+        stats.staleness.record((nowMs - location.fixTimeMs) * 1000);
+        pollPolicy.onLocation(userId, location.latitude, location.longitude, monotonicMs());
+    }
+
+    private void refreshUserStatus(String userId) {
+        if (!statusChecksInFlight.add(userId)) {
+            return;
+        }
+        final long startNanos = System.nanoTime();
+        backend.getUserStatus(userId, new BatchLocationPoller.Callback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean active) {
+                stats.statusLatency.recordNanos(System.nanoTime() - startNanos);
+                statusChecksInFlight.remove(userId);
+                pollPolicy.onStatus(userId, active, monotonicMs());
+            }
+
+            @Override
+            public void onError(String error) {
+                stats.statusLatency.recordNanos(System.nanoTime() - startNanos);
+                statusChecksInFlight.remove(userId);
+            }
+        });
+    }
+
+    BatchLocationPoller<FakeTrackingBackend.StoredLocation> getPoller() {
+        return poller;
+    }
+
+    private static long monotonicMs() {
+        return System.nanoTime() / 1_000_000;
+    }
+}
@@ -14,4 +14,5 @@ dependencyResolutionManagement {
 }
 
 rootProject.name = "LocationTrackerDemo"
-include(":app")
\ No newline at end of file
+include(":app")
+include(":benchmarks")
\ No newline at end of file